@@ -0,0 +1,74 @@
+package org.gosparx.team1126.robot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gosparx.team1126.robot.Autonomous;
+import org.gosparx.team1126.robot.hal.SimHardware.SimChooser;
+import org.gosparx.team1126.robot.subsystem.BallAcqNew;
+import org.gosparx.team1126.robot.subsystem.Drives;
+import org.gosparx.team1126.robot.subsystem.SimRig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One autonomous loop: Autonomous.execute() running runAuto(), then the Drives and BallAcqNew loops
+ * that carry out its commands. Each iteration starts the low bar auto over.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutonomousBenchmark {
+
+	/**
+	 * The auto to run, as named in the Auto Chooser
+	 */
+	private static final String AUTO_NAME = "Low bar to low goal";
+
+	private SimRig rig;
+	private Autonomous auto;
+	private Drives drives;
+	private BallAcqNew ballAcq;
+
+	@Setup
+	public void setUp(){
+		rig = SimRig.getInstance();
+		drives = rig.startUp(Drives.getInstance());
+		ballAcq = rig.startUp(BallAcqNew.getInstance());
+		auto = rig.startUp(Autonomous.getInstance());
+		((SimChooser) rig.getHardware().getDashboard().get("Auto Chooser")).select(AUTO_NAME);
+		rig.getHardware().getDriverStation().setAutonomous();
+	}
+
+	/**
+	 * Starts the auto over, like the robot does when it enters autonomous
+	 */
+	@Setup(Level.Iteration)
+	public void restartAuto(){
+		auto.setRunAuto(false);
+		drives.killAutoDrive();
+		rig.step();
+		rig.execute(auto);
+		rig.execute(drives);
+		auto.setRunAuto(true);
+	}
+
+	@Benchmark
+	public boolean autonomousLoop(){
+		rig.step();
+		rig.execute(auto);
+		rig.execute(drives);
+		return rig.execute(ballAcq);
+	}
+}
@@ -0,0 +1,52 @@
+package org.gosparx.team1126.robot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gosparx.team1126.robot.subsystem.BallAcqNew;
+import org.gosparx.team1126.robot.subsystem.SimRig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One teleop loop of BallAcqNew.execute(), with the operator moving the arms every loop
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallAcqNewBenchmark {
+
+	private SimRig rig;
+	private BallAcqNew ballAcq;
+
+	/**
+	 * The arm power, flipped every loop
+	 */
+	private double power = .3;
+
+	@Setup
+	public void setUp(){
+		rig = SimRig.getInstance();
+		rig.getHardware().getDriverStation().setOperatorControl();
+		ballAcq = rig.startUp(BallAcqNew.getInstance());
+		ballAcq.setOpControl(true);
+	}
+
+	@Benchmark
+	public boolean teleop(){
+		power = -power;
+		ballAcq.setArmPower(power);
+		rig.step();
+		return rig.execute(ballAcq);
+	}
+}
@@ -0,0 +1,51 @@
+package org.gosparx.team1126.robot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gosparx.team1126.robot.subsystem.Drives;
+import org.gosparx.team1126.robot.subsystem.SimRig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One teleop loop of Drives.execute(), with a new joystick setpoint every loop
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrivesBenchmark {
+
+	private SimRig rig;
+	private Drives drives;
+
+	/**
+	 * The joystick power, flipped every loop so the robot doesn't drive off forever
+	 */
+	private double power = .5;
+
+	@Setup
+	public void setUp(){
+		rig = SimRig.getInstance();
+		rig.getHardware().getDriverStation().setOperatorControl();
+		drives = rig.startUp(Drives.getInstance());
+	}
+
+	@Benchmark
+	public boolean teleop(){
+		power = -power;
+		drives.setPower(power, power);
+		rig.step();
+		return rig.execute(drives);
+	}
+}
@@ -0,0 +1,55 @@
+package org.gosparx.team1126.robot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gosparx.team1126.robot.hal.SimHardware.SimEncoder;
+import org.gosparx.team1126.robot.sensors.EncoderData;
+import org.gosparx.team1126.robot.subsystem.SimRig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * EncoderData.calculateSpeed() once per 20ms loop, with the encoder moving
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderDataBenchmark {
+
+	/**
+	 * The drives' inches per tick
+	 */
+	private static final double DISTANCE_PER_TICK = 0.00689;
+
+	private SimRig rig;
+	private SimEncoder encoder;
+	private EncoderData data;
+	private int count;
+
+	@Setup
+	public void setUp(){
+		rig = SimRig.getInstance();
+		encoder = new SimEncoder();
+		data = new EncoderData(encoder, DISTANCE_PER_TICK);
+	}
+
+	@Benchmark
+	public double calculateSpeed(){
+		rig.advanceClock(SimRig.LOOP_TIME);
+		count += 50;
+		encoder.setCount(count);
+		data.calculateSpeed();
+		return data.getSpeed();
+	}
+}
@@ -0,0 +1,49 @@
+package org.gosparx.team1126.robot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gosparx.team1126.robot.subsystem.SimRig;
+import org.gosparx.team1126.robot.util.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What a subsystem pays for Logger.logMessage() and Logger.logEvent(). The LogWriter drains the queue and
+ * the ring on its own thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggerBenchmark {
+
+	private static final int EVENT = Logger.event("Powers (left, right): %f, %f Speeds (left, right): %f, %f");
+
+	private Logger log;
+
+	@Setup
+	public void setUp(){
+		SimRig.getInstance();
+		log = new Logger("Benchmark");
+	}
+
+	@Benchmark
+	public void logMessage(){
+		log.logMessage("We are currently in this auto state************ In Auto Standby");
+	}
+
+	@Benchmark
+	public void logEvent(){
+		log.logEvent(EVENT, 0.5, -0.5, 42.0, 41.5);
+	}
+}
@@ -0,0 +1,52 @@
+package org.gosparx.team1126.robot.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.gosparx.team1126.robot.sensors.PID;
+import org.gosparx.team1126.robot.subsystem.SimRig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PID.update() once per 20ms loop, closing the loop on a simple first order plant
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PIDBenchmark {
+
+	private SimRig rig;
+	private PID pid;
+
+	/**
+	 * Where the plant is
+	 */
+	private double position;
+
+	@Setup
+	public void setUp(){
+		rig = SimRig.getInstance();
+		rig.getHardware().getDriverStation().setOperatorControl();
+		pid = new PID(.05, .01, .5, .001, false, false);
+		pid.setGoal(10);
+	}
+
+	@Benchmark
+	public double update(){
+		rig.advanceClock(SimRig.LOOP_TIME);
+		double output = pid.update(position);
+		position += output * .2;
+		return output;
+	}
+}
@@ -0,0 +1,187 @@
+package org.gosparx.team1126.robot.subsystem;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+
+import org.gosparx.team1126.robot.IO;
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.hal.SimHardware;
+import org.gosparx.team1126.robot.hal.SimHardware.SimEncoder;
+import org.gosparx.team1126.robot.hal.SimHardware.SimMotor;
+import org.gosparx.team1126.robot.util.LogWriter;
+import org.gosparx.team1126.robot.util.Logger.Level;
+import org.gosparx.team1126.robot.util.WorldSampler;
+import org.gosparx.team1126.robot.util.WorldState;
+
+/**
+ * Sets up the robot on SimHardware for the benchmarks and steps it one loop at a time. Lives in the
+ * subsystem package so it can call init() and execute() directly, without the subsystem threads.
+ *
+ * Each step() moves the clock forward one 20ms loop, lets the drive encoders follow the drive motors
+ * and takes a new WorldState, so code that waits on time or distance moves along like it would on the
+ * robot.
+ */
+public class SimRig {
+
+	/**
+	 * The length of a loop, in microseconds
+	 */
+	public static final long LOOP_TIME = 20000;
+
+	/**
+	 * How far the drives go in a second at full power, in inches
+	 */
+	private static final double DRIVES_TOP_SPEED = 120;
+
+	/**
+	 * Support for singleton
+	 */
+	private static SimRig rig;
+
+	/**
+	 * The simulated devices
+	 */
+	private final SimHardware hardware;
+
+	/**
+	 * The clock the benchmark moves forward
+	 */
+	private final StepClock clock;
+
+	/**
+	 * Takes the WorldState every step
+	 */
+	private final WorldSampler sampler;
+
+	/**
+	 * The subsystems that have been through init()
+	 */
+	private final HashSet<GenericSubsystem> started = new HashSet<GenericSubsystem>();
+
+	/**
+	 * The drive distances the encoders are at, in inches
+	 */
+	private double leftDistance, rightDistance;
+
+	/**
+	 * @return the only SimRig, set up the first time this is called
+	 */
+	public static synchronized SimRig getInstance(){
+		if(rig == null){
+			rig = new SimRig();
+		}
+		return rig;
+	}
+
+	/**
+	 * Picks the SimHardware, starts the LogWriter writing to a temp folder without printing, and takes
+	 * the first WorldState
+	 */
+	private SimRig(){
+		if(System.getProperty("robot.logDir") == null){
+			// The log goes to a temp folder that is cleaned up on exit, so the benchmarks include the
+			// real file writes. Set robot.logDir to keep it.
+			try{
+				final File dir = Files.createTempDirectory("robot-benchmark").toFile();
+				Runtime.getRuntime().addShutdownHook(new Thread(){
+					public void run(){
+						File[] files = dir.listFiles();
+						if(files != null){
+							for(File file: files){
+								file.delete();
+							}
+						}
+						dir.delete();
+					}
+				});
+				System.setProperty("robot.logDir", dir.getPath() + File.separator);
+			}catch(IOException e){
+				throw new IllegalStateException("Can't make a temp folder", e);
+			}
+		}
+		clock = new StepClock();
+		hardware = new SimHardware(clock);
+		Hardware.use(hardware);
+		sampler = WorldSampler.getInstance();
+		// Printing every message would drown out JMH, they still go to the file
+		LogWriter.getInstance().getConsoleSink().setLevel(Level.OFF);
+		LogWriter.getInstance().start();
+	}
+
+	/**
+	 * @return the simulated devices
+	 */
+	public SimHardware getHardware(){
+		return hardware;
+	}
+
+	/**
+	 * Calls init() and liveWindow() the first time a subsystem is used
+	 * @param system the subsystem
+	 * @return the subsystem
+	 */
+	public synchronized <T extends GenericSubsystem> T startUp(T system){
+		if(started.add(system)){
+			system.startUp();
+		}
+		return system;
+	}
+
+	/**
+	 * Moves the clock forward without running anything
+	 * @param micros how far to move it
+	 */
+	public void advanceClock(long micros){
+		clock.advance(micros);
+	}
+
+	/**
+	 * Runs one loop of a subsystem, on the calling thread
+	 * @param system the subsystem, from startUp()
+	 * @return what execute() returned
+	 */
+	public boolean execute(GenericSubsystem system){
+		return system.execute(WorldState.current());
+	}
+
+	/**
+	 * Moves the robot forward one loop: the clock, the drive encoders, then the WorldState
+	 */
+	public void step(){
+		clock.advance(LOOP_TIME);
+		double seconds = LOOP_TIME / 1000000.0;
+		SimMotor left = hardware.getMotor(IO.CAN_DRIVES_LEFT_FRONT);
+		SimMotor right = hardware.getMotor(IO.CAN_DRIVES_RIGHT_FRONT);
+		SimEncoder leftEnc = hardware.getEncoder(IO.DIO_LEFT_DRIVES_ENC_A);
+		SimEncoder rightEnc = hardware.getEncoder(IO.DIO_RIGHT_DRIVES_ENC_A);
+		if(left != null && leftEnc != null){
+			leftDistance += left.get() * DRIVES_TOP_SPEED * seconds;
+			leftEnc.setDistance(leftDistance);
+		}
+		if(right != null && rightEnc != null){
+			rightDistance += right.get() * DRIVES_TOP_SPEED * seconds;
+			rightEnc.setDistance(rightDistance);
+		}
+		((GenericSubsystem) sampler).execute(WorldState.current());
+	}
+
+	/**
+	 * Real time plus however far the benchmark has stepped. Real time keeps the LogWriter's thread
+	 * sleeping normally, the steps make each loop look 20ms long to the code under test.
+	 */
+	private static class StepClock extends Clock{
+		private final long startNanos = System.nanoTime();
+		private volatile long offset;
+		public long getTime(){ return (System.nanoTime() - startNanos) / 1000 + offset; }
+
+		/**
+		 * @param micros how far to move the clock forward
+		 */
+		private void advance(long micros){
+			offset += micros;
+		}
+	}
+}
@@ -1,13 +1,14 @@
 package org.gosparx.team1126.robot;
 
+import org.gosparx.team1126.robot.hal.Chooser;
 import org.gosparx.team1126.robot.subsystem.BallAcqNew;
 //import org.gosparx.team1126.robot.subsystem.BallAcq;
 import org.gosparx.team1126.robot.subsystem.Drives;
 import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+import org.gosparx.team1126.robot.util.DashboardPublisher;
+import org.gosparx.team1126.robot.util.Logger;
+import org.gosparx.team1126.robot.util.WorldState;
 
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * A class for handling the autonomous functions of the robot
@@ -23,15 +24,15 @@ public class Autonomous extends GenericSubsystem{
 	/**
 	 * The selector for the AutoMode
 	 */
-	private SendableChooser chooser;
+	private Chooser chooser;
 
-	private SendableChooser actChooser;
-	private SendableChooser posChooser;
+	private Chooser actChooser;
+	private Chooser posChooser;
 
 	/**
 	 * Stores the current autonomous
 	 */
-	private int[][] currentAuto;
+	private Step[] currentAuto;
 
 	/**
 	 * The current step of the auto we are performing
@@ -58,6 +59,17 @@ public class Autonomous extends GenericSubsystem{
 	 */
 	private double waitTime = 0.0;
 
+	/**
+	 * When the current PARALLEL or RACE group started
+	 */
+	private double groupStartTime;
+
+	/**
+	 * The bits for the subsystems a group sends commands to
+	 */
+	private static final int DRIVES_GROUP = 1;
+	private static final int BALL_ACQ_GROUP = 2;
+
 	/**
 	 * The "critical" step of auto, what must happen if all else fails.
 	 */
@@ -93,6 +105,24 @@ public class Autonomous extends GenericSubsystem{
 	 */
 	private String currentAutoName;
 
+	/**
+	 * The selected auto's name on the SmartDashboard
+	 */
+	private static final DashboardPublisher.Slot AUTO_NAME_SLOT = DashboardPublisher.stringSlot("Auto Name: ", 0.5);
+
+	/**
+	 * Logged when we run out of time for the steps before the critical step, and when a step has a
+	 * command runAuto() doesn't know
+	 */
+	private static final int CRIT_STEP_EVENT = Logger.event("Jumping to crit step: %d");
+	private static final int UNKNOWN_COMMAND_EVENT = Logger.errorEvent("Unknown auto command: %d");
+
+	/**
+	 * Logged when a RACE group is joined, with 1 for each subsystem that finished and 0 for each that
+	 * was stopped or wasn't in it
+	 */
+	private static final int RACE_EVENT = Logger.event("Race over, drives done: %d ball acq done: %d");
+
 	/**
 	 * START PRESET ARRAYS
 	 */
@@ -331,75 +361,125 @@ public class Autonomous extends GenericSubsystem{
 			{AutoCommand.END.toId()}
 	};
 
+	/**
+	 * Every value the auto chooser can pick, in the order of the plan table
+	 */
+	private final int[] DEFENSES = {EMPTY_NUM, REACH_DEF_NUM, LOW_BAR_GOAL_NUM, CROSS_PASSIVE_NUM, SPY_BOT_NUM, PORTICULLIS_NUM, CHIVAL_NUM};
+
+	/**
+	 * The number of values the action chooser can pick, from 0, and the position chooser can pick, from 1
+	 */
+	private static final int ACTIONS = 3;
+	private static final int POSITIONS = 5;
+
+	/**
+	 * Every plan, compiled at start up and indexed by DEFENSES index, action and position - 1, so
+	 * picking one while disabled never allocates
+	 */
+	private Plan[][][] plans;
+
+	/**
+	 * The plan for anything the table doesn't have
+	 */
+	private Plan errorPlan;
+
+	/**
+	 * What was selected on each chooser the last time we looked
+	 */
+	private Object lastDefense, lastAction, lastPosition;
+
 	/**
 	 * Enum of all possible autocommands
 	 */
 	public enum AutoCommand{
 
 		/*DRIVES_FORWARD, inches*/
-		DRIVES_FORWARD(1),
+		DRIVES_FORWARD(1, 1),
 
 		/*DRIVES_REVERSE, inches*/
-		DRIVES_REVERSE(2),
+		DRIVES_REVERSE(2, 1),
 
 		/*DRIVES_TURN_LEFT, degrees*/
-		DRIVES_TURN_LEFT(3),
+		DRIVES_TURN_LEFT(3, 1),
 
 		/*DRIVES_TURN_RIGHT, degrees*/
-		DRIVES_TURN_RIGHT(4),
+		DRIVES_TURN_RIGHT(4, 1),
 
 		/*DRIVES_AUTO_DEF*/
-		DRIVES_AUTO_DEF(5),
+		DRIVES_AUTO_DEF(5, 0),
 
 		/*DRIVES_STOP*/
-		DRIVES_STOP(6),
+		DRIVES_STOP(6, 0),
 
-		DRIVES_RETURN_TO_ZERO(7),
+		DRIVES_RETURN_TO_ZERO(7, 0),
 
 		/*DRIVES_DONE*/
-		DRIVES_DONE(9),
+		DRIVES_DONE(9, 0),
 
 		/*BALL_ACQ_FLOOR*/
-		BALL_ACQ_FLOOR(10),
+		BALL_ACQ_FLOOR(10, 0),
 
-		BALL_ACQ_ACQ(11),
+		BALL_ACQ_ACQ(11, 0),
 
-		BALL_ACQ_HOME(12),
+		BALL_ACQ_HOME(12, 0),
 
-		BALL_ACQ_HOME_NO_ROLLER(13),
+		BALL_ACQ_HOME_NO_ROLLER(13, 0),
 
 		/*BALL_ACQ_ROLLER_TOGGLE*/
-		BALL_ACQ_ROLLER_TOGGLE(16),
+		BALL_ACQ_ROLLER_TOGGLE(16, 0),
 
 		/*BALL_ACQ_STOP*/
-		BALL_ACQ_STOP(18),
+		BALL_ACQ_STOP(18, 0),
 
 		/*BALL_ACQ_FIRE*/
-		BALL_ACQ_FIRE(17),
+		BALL_ACQ_FIRE(17, 0),
 
 		/*BALL_ACQ_DONE*/
-		BALL_ACQ_DONE(19),
+		BALL_ACQ_DONE(19, 0),
+
+		/*PARALLEL, starts a group that JOIN waits for all of*/
+		PARALLEL(20, 0),
+
+		/*RACE, timeout, starts a group that JOIN waits for the first of, 0 for no timeout*/
+		RACE(21, 1),
+
+		/*JOIN, ends a PARALLEL or RACE group*/
+		JOIN(22, 0),
 
 		/*CHECK_TIME, critTime, critStep*/
-		CHECK_TIME(97),
+		CHECK_TIME(97, 2),
 
 		/*WAIT, waitTime*/
-		WAIT(98),
+		WAIT(98, 1),
 
 		/*END*/
-		END(99);
+		END(99, 0);
 
 		/**
 		 * The ID of the autocommand
 		 */
 		private int id;
 
+		/**
+		 * The number of arguments that follow the ID in a routine
+		 */
+		private int args;
+
 		/**
 		 * Creates a new AutoCommand
 		 * @param id Tjhe autoCommand ID
+		 * @param args the number of arguments it takes
 		 */
-		private AutoCommand(int id){
+		private AutoCommand(int id, int args){
 			this.id = id;
+			this.args = args;
+		}
+
+		/**
+		 * @return The number of arguments this AutoCommand takes
+		 */
+		public int getArgs(){
+			return args;
 		}
 
 		/**
@@ -419,7 +499,7 @@ public class Autonomous extends GenericSubsystem{
 					return ac;
 				}
 			}
-			throw new RuntimeException("No auto exists for ID " + id);
+			throw new IllegalArgumentException("No auto exists for ID " + id);
 		}
 
 		/**
@@ -477,6 +557,15 @@ public class Autonomous extends GenericSubsystem{
 			case BALL_ACQ_DONE:
 				return "BALL_ACQ_DONE";
 
+			case PARALLEL:
+				return "PARALLEL";
+
+			case RACE:
+				return "RACE";
+
+			case JOIN:
+				return "JOIN";
+
 			case CHECK_TIME:
 				return "CHECK_TIME";
 
@@ -517,8 +606,10 @@ public class Autonomous extends GenericSubsystem{
 
 		drives = Drives.getInstance();
 		ballAcq = BallAcqNew.getInstance();
+		drives.getAutoCompletion().setListener(this);
+		ballAcq.getCompletion().setListener(this);
 
-		chooser = new SendableChooser();
+		chooser = hardware.getDashboard().createChooser();
 		chooser.addDefault(EMPTY_NAME, EMPTY_NUM);
 		chooser.addObject(REACH_DEF_NAME, REACH_DEF_NUM);
 		chooser.addObject(LOW_BAR_GOAL_NAME, LOW_BAR_GOAL_NUM);
@@ -527,21 +618,23 @@ public class Autonomous extends GenericSubsystem{
 		chooser.addObject(PORTICULLIS_NAME, PORTICULLIS_NUM);
 		chooser.addObject(CHIVAL_NAME, CHIVAL_NUM);
 
-		actChooser = new SendableChooser();
+		actChooser = hardware.getDashboard().createChooser();
 		actChooser.addDefault("Cross", new Integer(0));
 		actChooser.addObject("Point Guard", new Integer(1));
 		actChooser.addObject("Score", new Integer(2));
 
-		posChooser = new SendableChooser();
+		posChooser = hardware.getDashboard().createChooser();
 		posChooser.addDefault("1", new Integer(1));
 		posChooser.addObject("2", new Integer(2));
 		posChooser.addObject("3", new Integer(3));
 		posChooser.addObject("4", new Integer(4));
 		posChooser.addObject("5", new Integer(5));
 
-		SmartDashboard.putData("Auto Chooser", chooser);
-		SmartDashboard.putData("Action Chooser", actChooser);
-		SmartDashboard.putData("Position", posChooser);
+		hardware.getDashboard().putChooser("Auto Chooser", chooser);
+		hardware.getDashboard().putChooser("Action Chooser", actChooser);
+		hardware.getDashboard().putChooser("Position", posChooser);
+		compilePlans();
+		selectPlan();
 		return true;
 	}
 
@@ -549,106 +642,119 @@ public class Autonomous extends GenericSubsystem{
 	 * Loops after .start() is called.
 	 */
 	@Override
-	protected boolean execute() {
-		if(runAuto && ds.isEnabled()){
-			runAuto();
+	protected boolean execute(WorldState world) {
+		if(runAuto && world.isEnabled()){
+			runAuto(world);
 		}else{
-			buildAuto();
+			selectPlan();
 			currStep = 0;
-			autoStartTime = Timer.getFPGATimestamp();
+			autoStartTime = world.getTimestamp();
 		}
 		return false;
 	}
 
 	/**
-	 * Actually loops through auto commands
+	 * Actually loops through auto commands. Keeps moving to the next step until a step has to wait, so
+	 * a command that follows a finished DRIVES_DONE or BALL_ACQ_DONE is sent in the same loop. Drives and
+	 * BallAcq wake us up as soon as they finish.
+	 * @param world the snapshot for this loop
 	 */
-	private void runAuto(){
+	private void runAuto(WorldState world){
 		incStep = true;
-		if(ds.isEnabled() && ds.isAutonomous() && currStep < currentAuto.length){
+		while(incStep && world.isEnabled() && world.isAutonomous() && currStep < currentAuto.length){
 
-			switch(AutoCommand.fromId(currentAuto[currStep][0])){
+			Step step = currentAuto[currStep];
+			AutoCommand command = step.command;
+			switch(command){
 			case DRIVES_FORWARD:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
-				drives.driveWantedDistance(currentAuto[currStep][1]);
+				logStep(step);
+				drives.driveWantedDistance(step.arg);
 				break;
 			case DRIVES_REVERSE:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
-				drives.driveWantedDistance(-currentAuto[currStep][1]);
+				logStep(step);
+				drives.driveWantedDistance(-step.arg);
 				break;
 			case DRIVES_TURN_LEFT:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
-				drives.turn(-currentAuto[currStep][1]);
+				logStep(step);
+				drives.turn(-step.arg);
 				break;
 			case DRIVES_TURN_RIGHT:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
-				drives.turn(currentAuto[currStep][1]);
+				logStep(step);
+				drives.turn(step.arg);
 				break;
 			case DRIVES_RETURN_TO_ZERO:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				drives.returnToZero();
 				break;
 			case DRIVES_STOP:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				drives.autoEStop();
 				break;
 			case DRIVES_AUTO_DEF:
 
 				break;
 			case DRIVES_DONE:
-				incStep = drives.autoFunctionDone();
+				incStep = drives.getAutoCompletion().isDone();
 				break;
 			case BALL_ACQ_FLOOR:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.goToLowBarPosition();
 				break;
 			case BALL_ACQ_ACQ:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.acquireBall();
 				break;
 			case BALL_ACQ_HOME:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.homeRollers();
 				break;
 			case BALL_ACQ_HOME_NO_ROLLER:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.setHome();
 				break;
 			case BALL_ACQ_ROLLER_TOGGLE:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.toggleRoller();
 				break;
 			case BALL_ACQ_STOP:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.stopAll();
 				break;
 			case BALL_ACQ_DONE:
-				incStep = ballAcq.isDone();
+				incStep = ballAcq.getCompletion().isDone();
 				break;
 			case BALL_ACQ_FIRE:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				ballAcq.fire();
 				break;
+			case PARALLEL:
+			case RACE:
+				logStep(step);
+				groupStartTime = world.getTimestamp();
+				break;
+			case JOIN:
+				incStep = join(step, world);
+				break;
 			case CHECK_TIME:
-				LOG.logMessage("runAuto step: " + AutoCommand.fromId(currentAuto[currStep][0]).toString());
+				logStep(step);
 				checkTime = true;
-				critTime = currentAuto[currStep][1];
-				critStep = currentAuto[currStep][2];
+				critTime = step.arg;
+				critStep = step.arg2;
 				break;
 			case WAIT:
 				if(!waiting){
 					waiting = true;
-					waitTime = Timer.getFPGATimestamp() + currentAuto[currStep][1];
+					waitTime = world.getTimestamp() + step.arg;
 				}
 				break;
 			case END:
 				break;
 			default:
 				incStep = false;
-				LOG.logError("Unknown auto command: " + currentAuto[currStep]);
+				LOG.logEvent(UNKNOWN_COMMAND_EVENT, command.toId());
 				break;
 			}
-			if(waiting && waitTime < Timer.getFPGATimestamp()){
+			if(waiting && waitTime < world.getTimestamp()){
 				waiting = false;
 				waitTime = Double.MAX_VALUE;
 				incStep = true;
@@ -660,14 +766,63 @@ public class Autonomous extends GenericSubsystem{
 				currStep++;
 			}
 
-			if(checkTime && Timer.getFPGATimestamp() - autoStartTime >= critTime && currStep < critStep){
+			if(checkTime && world.getTimestamp() - autoStartTime >= critTime && currStep < critStep){
 				checkTime = false;
 				currStep = critStep;
-				LOG.logMessage("Jumping to crit step: " + critStep);
+				waiting = false;
+				incStep = true;
+				LOG.logEvent(CRIT_STEP_EVENT, critStep);
 			}
 		}
 	}
 
+	/**
+	 * Checks if a group is over. A PARALLEL group is over once every subsystem in it has finished. A RACE
+	 * group is over once one of them has, or its timeout has passed, and the others are stopped.
+	 * @param step the JOIN that ends the group
+	 * @param world the snapshot for this loop
+	 * @return true if the group is over
+	 */
+	private boolean join(Step step, WorldState world){
+		boolean drivesIn = (step.group & DRIVES_GROUP) != 0;
+		boolean ballAcqIn = (step.group & BALL_ACQ_GROUP) != 0;
+		boolean drivesDone = drivesIn && drives.getAutoCompletion().isDone();
+		boolean ballAcqDone = ballAcqIn && ballAcq.getCompletion().isDone();
+		if(!step.race){
+			return drivesDone == drivesIn && ballAcqDone == ballAcqIn;
+		}
+		boolean timedOut = step.arg > 0 && world.getTimestamp() - groupStartTime >= step.arg;
+		if(!drivesDone && !ballAcqDone && !timedOut){
+			return false;
+		}
+		if(drivesIn && !drivesDone){
+			drives.autoEStop();
+		}
+		if(ballAcqIn && !ballAcqDone){
+			ballAcq.stopAll();
+		}
+		LOG.logEvent(RACE_EVENT, drivesDone ? 1 : 0, ballAcqDone ? 1 : 0);
+		return true;
+	}
+
+	/**
+	 * Logs that a step has started, with its arguments
+	 * @param step the step
+	 */
+	private void logStep(Step step){
+		switch(step.command.getArgs()){
+		case 0:
+			LOG.logEvent(step.event);
+			break;
+		case 1:
+			LOG.logEvent(step.event, step.arg);
+			break;
+		default:
+			LOG.logEvent(step.event, step.arg, step.arg2);
+			break;
+		}
+	}
+
 	/**
 	 * Updates the livewindow functions
 	 */
@@ -692,143 +847,365 @@ public class Autonomous extends GenericSubsystem{
 
 	}
 
+	/**
+	 * Picks the plan for what is selected on the choosers. The choosers are only compared to what was
+	 * selected last time, and the plan is only looked up in the table when one of them changes.
+	 */
+	private void selectPlan(){
+		Object defense = chooser.getSelected();
+		Object action = actChooser.getSelected();
+		Object position = posChooser.getSelected();
+		if(defense == lastDefense && action == lastAction && position == lastPosition){
+			return;
+		}
+		lastDefense = defense;
+		lastAction = action;
+		lastPosition = position;
+		Plan plan = lookup(defense, action, position);
+		currentAuto = plan.steps;
+		currentAutoName = plan.name;
+		AUTO_NAME_SLOT.set(currentAutoName);
+		LOG.logMessage("Auto selected: %s", currentAutoName);
+	}
+
+	/**
+	 * @return the compiled plan for a selection, or the error plan if there isn't one
+	 */
+	private Plan lookup(Object defense, Object action, Object position){
+		if(!(defense instanceof Integer) || !(action instanceof Integer) || !(position instanceof Integer)){
+			return errorPlan;
+		}
+		int act = (Integer) action;
+		int pos = (Integer) position - 1;
+		if(act < 0 || act >= ACTIONS || pos < 0 || pos >= POSITIONS){
+			return errorPlan;
+		}
+		for(int def = 0; def < DEFENSES.length; def++){
+			if(DEFENSES[def] == (Integer) defense){
+				return plans[def][act][pos];
+			}
+		}
+		return errorPlan;
+	}
+
+	/**
+	 * Builds the plan for every defense, action and position the choosers can pick. A routine that
+	 * doesn't compile is logged and replaced by one that does nothing, so it shows up before the match.
+	 */
+	private void compilePlans(){
+		plans = new Plan[DEFENSES.length][ACTIONS][POSITIONS];
+		for(int def = 0; def < DEFENSES.length; def++){
+			for(int act = 0; act < ACTIONS; act++){
+				for(int pos = 0; pos < POSITIONS; pos++){
+					try{
+						plans[def][act][pos] = compile(DEFENSES[def], act, pos + 1);
+					}catch(IllegalArgumentException e){
+						LOG.logError("Bad auto routine: " + e.getMessage());
+						plans[def][act][pos] = new Plan("ERROR! " + e.getMessage(), EMPTY);
+					}
+				}
+			}
+		}
+		errorPlan = new Plan("ERROR!", EMPTY);
+	}
+
 	/**
 	 * Build our custom auto from chosen def and pos
+	 * @param defense the value picked on the auto chooser
+	 * @param action the value picked on the action chooser
+	 * @param position the value picked on the position chooser
+	 * @return the plan
 	 */
-	private void buildAuto(){
-		switch ((Integer)chooser.getSelected()){
+	private Plan compile(int defense, int action, int position){
+		switch (defense){
 		case 0:
-			currentAutoName = buildLowBar();
-			break;
+			return buildLowBar(action);
 		case 1:
-			currentAuto = REACH_DEF;
-			currentAutoName = REACH_DEF_NAME;
-			break;
+			return new Plan(REACH_DEF_NAME, REACH_DEF);
 		case 2:
-			currentAuto = CROSS_PASSIVE;
-			currentAutoName = CROSS_PASSIVE_NAME;
-			break;
+			return new Plan(CROSS_PASSIVE_NAME, CROSS_PASSIVE);
 		case 5:
-			currentAuto = SPY_BOT;
-			currentAutoName = SPY_BOT_NAME;
-			break;
+			return new Plan(SPY_BOT_NAME, SPY_BOT);
 		case 6:
-			currentAutoName = buildPort();
-			break;
+			return buildPort(action, position);
 		case 7:
-			currentAutoName = buildChival();
-			break;
+			return buildChival(action, position);
 		case 99:
-			currentAuto = EMPTY;
-			currentAutoName = EMPTY_NAME;
-			break;
+			return new Plan(EMPTY_NAME, EMPTY);
 		default:
-			currentAuto = EMPTY;
-			currentAutoName = "ERROR!";
-			break;
+			return new Plan("ERROR!", EMPTY);
 		}
-		SmartDashboard.putString("Auto Name: ", currentAutoName);
 	}
 
 	public void setRunAuto(boolean n){
 		runAuto = n;
-		LOG.logMessage("runAuto: " + n + " auto " + SmartDashboard.getString("Auto Name: ", "error"));
+		LOG.logMessage("runAuto: %s auto %s", n, currentAutoName);
 	}
 
-	private String buildLowBar(){
-		currentAuto = LOW_BAR_SETUP;
-		switch ((Integer)actChooser.getSelected()){
+	private Plan buildLowBar(int action){
+		switch (action){
 		case 1:
-			currentAuto = new int[LOW_BAR_SETUP.length + LOW_BAR_POINTGUARD.length][];
-			System.arraycopy(LOW_BAR_SETUP, 0, currentAuto, 0, LOW_BAR_SETUP.length);
-			System.arraycopy(LOW_BAR_POINTGUARD, 0, currentAuto, LOW_BAR_SETUP.length, LOW_BAR_POINTGUARD.length);
-			return "Low Bar Point Guard";
+			return new Plan("Low Bar Point Guard", LOW_BAR_SETUP, LOW_BAR_POINTGUARD);
 		case 2:
-			currentAuto = new int[LOW_BAR_SETUP.length + LOW_BAR_GOAL.length][];
-			System.arraycopy(LOW_BAR_SETUP, 0, currentAuto, 0, LOW_BAR_SETUP.length);
-			System.arraycopy(LOW_BAR_GOAL, 0, currentAuto, LOW_BAR_SETUP.length, LOW_BAR_GOAL.length);
-			return "Low Bar Goal";
+			return new Plan("Low Bar Goal", LOW_BAR_SETUP, LOW_BAR_GOAL);
 		default:
-			return "Low Bar Cross";
+			return new Plan("Low Bar Cross", LOW_BAR_SETUP);
 		}
 	}
 
-	private String buildPort(){
-		currentAuto = PORT_SETUP;
-		switch ((Integer)actChooser.getSelected()){
+	private Plan buildPort(int action, int position){
+		switch (action){
 		case 1:
-			currentAuto = new int[PORT_SETUP.length + PORT_POINTGUARD.length][];
-			System.arraycopy(PORT_SETUP, 0, currentAuto, 0, PORT_SETUP.length);
-			System.arraycopy(PORT_POINTGUARD, 0, currentAuto, PORT_SETUP.length, PORT_POINTGUARD.length);
-			return "Portculis Point Guard";
+			return new Plan("Portculis Point Guard", PORT_SETUP, PORT_POINTGUARD);
 		case 2:
-			switch((Integer)posChooser.getSelected()){
+			switch(position){
 			case 2:
-				currentAuto = new int[PORT_SETUP.length + SCORE_2.length][];
-				System.arraycopy(PORT_SETUP, 0, currentAuto, 0, PORT_SETUP.length);
-				System.arraycopy(SCORE_2, 0, currentAuto, PORT_SETUP.length, SCORE_2.length);
-				return "Port Score Pos 2";
+				return new Plan("Port Score Pos 2", PORT_SETUP, SCORE_2);
 			case 3:
-				currentAuto = new int[PORT_SETUP.length + SCORE_3.length][];
-				System.arraycopy(PORT_SETUP, 0, currentAuto, 0, PORT_SETUP.length);
-				System.arraycopy(SCORE_3, 0, currentAuto, PORT_SETUP.length, SCORE_3.length);
-				return "Port Score Pos 3";
+				return new Plan("Port Score Pos 3", PORT_SETUP, SCORE_3);
 			case 4:
-				currentAuto = new int[PORT_SETUP.length + SCORE_4.length][];
-				System.arraycopy(PORT_SETUP, 0, currentAuto, 0, PORT_SETUP.length);
-				System.arraycopy(SCORE_4, 0, currentAuto, PORT_SETUP.length, SCORE_4.length);
-				return "Port Score Pos 4";
+				return new Plan("Port Score Pos 4", PORT_SETUP, SCORE_4);
 			case 5:
-				currentAuto = new int[PORT_SETUP.length + SCORE_5.length][];
-				System.arraycopy(PORT_SETUP, 0, currentAuto, 0, PORT_SETUP.length);
-				System.arraycopy(SCORE_5, 0, currentAuto, PORT_SETUP.length, SCORE_5.length);
-				return "Port Score Pos 5";
+				return new Plan("Port Score Pos 5", PORT_SETUP, SCORE_5);
 			default:
-				currentAuto = EMPTY;
-				return "Not implemented";
+				return new Plan("Not implemented", EMPTY);
 			}
 		default:
-			return "Portculis Cross";
+			return new Plan("Portculis Cross", PORT_SETUP);
 		}
 	}
 
-	private String buildChival(){
-		currentAuto = CHIVAL_SETUP;
-		switch ((Integer)actChooser.getSelected()){
+	private Plan buildChival(int action, int position){
+		switch (action){
 		case 1:
-			currentAuto = new int[CHIVAL_SETUP.length + CHIVAL_POINTGUARD.length][];
-			System.arraycopy(CHIVAL_SETUP, 0, currentAuto, 0, CHIVAL_SETUP.length);
-			System.arraycopy(CHIVAL_POINTGUARD, 0, currentAuto, CHIVAL_SETUP.length, CHIVAL_POINTGUARD.length);
-			return "Chival Point Guard";
+			return new Plan("Chival Point Guard", CHIVAL_SETUP, CHIVAL_POINTGUARD);
 		case 2:
-			switch((Integer)posChooser.getSelected()){
+			switch(position){
 			case 2:
-				currentAuto = new int[CHIVAL_SETUP.length + SCORE_2.length][];
-				System.arraycopy(CHIVAL_SETUP, 0, currentAuto, 0, CHIVAL_SETUP.length);
-				System.arraycopy(SCORE_2, 0, currentAuto, CHIVAL_SETUP.length, SCORE_2.length);
-				return "Chival Score Pos 2";
+				return new Plan("Chival Score Pos 2", CHIVAL_SETUP, SCORE_2);
 			case 3:
-				currentAuto = new int[CHIVAL_SETUP.length + SCORE_3.length][];
-				System.arraycopy(CHIVAL_SETUP, 0, currentAuto, 0, CHIVAL_SETUP.length);
-				System.arraycopy(SCORE_3, 0, currentAuto, CHIVAL_SETUP.length, SCORE_3.length);
-				return "Chival Score Pos 3";
+				return new Plan("Chival Score Pos 3", CHIVAL_SETUP, SCORE_3);
 			case 4:
-				currentAuto = new int[CHIVAL_SETUP.length + SCORE_4.length][];
-				System.arraycopy(CHIVAL_SETUP, 0, currentAuto, 0, CHIVAL_SETUP.length);
-				System.arraycopy(SCORE_4, 0, currentAuto, CHIVAL_SETUP.length, SCORE_4.length);
-				return "Chival Score Pos 4";
+				return new Plan("Chival Score Pos 4", CHIVAL_SETUP, SCORE_4);
 			case 5:
-				currentAuto = new int[CHIVAL_SETUP.length + SCORE_5.length][];
-				System.arraycopy(CHIVAL_SETUP, 0, currentAuto, 0, CHIVAL_SETUP.length);
-				System.arraycopy(SCORE_5, 0, currentAuto, CHIVAL_SETUP.length, SCORE_5.length);
-				return "Chival Score Pos 5";
+				return new Plan("Chival Score Pos 5", CHIVAL_SETUP, SCORE_5);
 			default:
-				currentAuto = EMPTY;
-				return "Not implemented";
+				return new Plan("Not implemented", EMPTY);
 
 			}
 		default:
-			return "Chival Cross";
+			return new Plan("Chival Cross", CHIVAL_SETUP);
+		}
+	}
+
+	/**
+	 * An autonomous routine, compiled once and never changed
+	 */
+	private static final class Plan{
+
+		/**
+		 * What the routine is called on the SmartDashboard
+		 */
+		private final String name;
+
+		/**
+		 * The steps of the routine
+		 */
+		private final Step[] steps;
+
+		/**
+		 * Compiles a routine, checking that every step has the arguments its command takes, that every
+		 * group is joined and only sends one command to each subsystem, and that every CHECK_TIME jumps
+		 * to a later step that isn't inside a group
+		 * @param name what the routine is called
+		 * @param parts the steps of the routine as {id, arguments...}, joined one after another
+		 * @throws IllegalArgumentException if the routine is malformed
+		 */
+		private Plan(String name, int[][]... parts){
+			this.name = name;
+			int length = 0;
+			for(int[][] part: parts){
+				length += part.length;
+			}
+			steps = new Step[length];
+			boolean[] grouped = new boolean[length];
+			int groupStart = -1;
+			int group = 0;
+			int at = 0;
+			for(int[][] part: parts){
+				for(int[] row: part){
+					Step step = compile(name, at, row, length);
+					switch(step.command){
+					case PARALLEL:
+					case RACE:
+						if(groupStart >= 0){
+							throw error(name, at, "groups can't be nested");
+						}
+						groupStart = at;
+						group = 0;
+						break;
+					case JOIN:
+						if(groupStart < 0){
+							throw error(name, at, "JOIN without a PARALLEL or RACE");
+						}
+						if(group == 0){
+							throw error(name, at, "the group has no commands in it");
+						}
+						Step start = steps[groupStart];
+						step = new Step(AutoCommand.JOIN, start.arg, 0, group, start.command == AutoCommand.RACE);
+						grouped[at] = true;
+						groupStart = -1;
+						break;
+					default:
+						if(groupStart >= 0){
+							int target = target(step.command);
+							if(target == 0){
+								throw error(name, at, step.command + " can't be in a group, only commands Drives and BallAcq report finishing can");
+							}
+							if((group & target) != 0){
+								throw error(name, at, step.command + " is the second command in the group to the same subsystem");
+							}
+							group |= target;
+							grouped[at] = true;
+						}
+						break;
+					}
+					steps[at] = step;
+					at++;
+				}
+			}
+			if(groupStart >= 0){
+				throw error(name, groupStart, "the group is never joined");
+			}
+			for(int i = 0; i < length; i++){
+				if(steps[i].command == AutoCommand.CHECK_TIME && grouped[steps[i].arg2]){
+					throw error(name, i, "critical step " + steps[i].arg2 + " is inside a group");
+				}
+			}
+		}
+
+		/**
+		 * Only commands that always arm the subsystem's Completion can be in a group, since JOIN waits on
+		 * it. DRIVES_STOP, BALL_ACQ_FIRE and BALL_ACQ_ROLLER_TOGGLE never arm it, and
+		 * DRIVES_RETURN_TO_ZERO doesn't when we are already close to zero, so JOIN would see the last
+		 * command's state instead.
+		 * @return the bit for the subsystem a command is sent to, 0 if it can't be in a group
+		 */
+		private static int target(AutoCommand command){
+			switch(command){
+			case DRIVES_FORWARD:
+			case DRIVES_REVERSE:
+			case DRIVES_TURN_LEFT:
+			case DRIVES_TURN_RIGHT:
+				return DRIVES_GROUP;
+			case BALL_ACQ_FLOOR:
+			case BALL_ACQ_ACQ:
+			case BALL_ACQ_HOME:
+			case BALL_ACQ_HOME_NO_ROLLER:
+			case BALL_ACQ_STOP:
+				return BALL_ACQ_GROUP;
+			default:
+				return 0;
+			}
+		}
+
+		/**
+		 * @return an exception saying what is wrong with a step
+		 */
+		private static IllegalArgumentException error(String name, int index, String problem){
+			return new IllegalArgumentException(name + " step " + index + ": " + problem);
+		}
+
+		/**
+		 * Compiles one step
+		 * @param name what the routine is called
+		 * @param index where the step is in the routine
+		 * @param row the step as {id, arguments...}
+		 * @param length the number of steps in the routine
+		 * @return the step
+		 * @throws IllegalArgumentException if the step is malformed
+		 */
+		private static Step compile(String name, int index, int[] row, int length){
+			if(row.length == 0){
+				throw error(name, index, "the step is empty");
+			}
+			AutoCommand command;
+			try{
+				command = AutoCommand.fromId(row[0]);
+			}catch(IllegalArgumentException e){
+				throw error(name, index, e.getMessage());
+			}
+			if(row.length - 1 != command.getArgs()){
+				throw error(name, index, command + " takes " + command.getArgs() + " arguments, not " + (row.length - 1));
+			}
+			int arg = row.length > 1 ? row[1] : 0;
+			int arg2 = row.length > 2 ? row[2] : 0;
+			if(command == AutoCommand.CHECK_TIME && (arg2 <= index || arg2 >= length)){
+				throw error(name, index, "critical step " + arg2 + " isn't after it in the routine");
+			}
+			return new Step(command, arg, arg2);
+		}
+	}
+
+	/**
+	 * One step of a routine, with its command and arguments already looked up
+	 */
+	private static final class Step{
+
+		/**
+		 * What the step does
+		 */
+		private final AutoCommand command;
+
+		/**
+		 * The first argument: inches, degrees or seconds, the critical time for CHECK_TIME or the
+		 * timeout of a RACE group for its JOIN
+		 */
+		private final int arg;
+
+		/**
+		 * The second argument, the critical step for CHECK_TIME
+		 */
+		private final int arg2;
+
+		/**
+		 * For a JOIN, the bits for the subsystems in its group, and if the group is a RACE
+		 */
+		private final int group;
+		private final boolean race;
+
+		/**
+		 * Logged when the step starts
+		 */
+		private final int event;
+
+		/**
+		 * @param command what the step does
+		 * @param arg the first argument, 0 if there isn't one
+		 * @param arg2 the second argument, 0 if there isn't one
+		 */
+		private Step(AutoCommand command, int arg, int arg2){
+			this(command, arg, arg2, 0, false);
+		}
+
+		/**
+		 * @param command what the step does
+		 * @param arg the first argument, 0 if there isn't one
+		 * @param arg2 the second argument, 0 if there isn't one
+		 * @param group for a JOIN, the bits for the subsystems in its group
+		 * @param race for a JOIN, true if the group is a RACE
+		 */
+		private Step(AutoCommand command, int arg, int arg2, int group, boolean race){
+			this.command = command;
+			this.arg = arg;
+			this.arg2 = arg2;
+			this.group = group;
+			this.race = race;
+			StringBuilder template = new StringBuilder("runAuto step: ").append(command);
+			for(int i = 0; i < command.getArgs(); i++){
+				template.append(" %d");
+			}
+			event = Logger.event(template.toString());
 		}
 	}
 
@@ -0,0 +1,344 @@
+package org.gosparx.team1126.robot;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.hal.RecordingHardware;
+import org.gosparx.team1126.robot.hal.SimHardware;
+import org.gosparx.team1126.robot.hal.SimHardware.SimChooser;
+import org.gosparx.team1126.robot.hal.SimHardware.SimDriverStation;
+import org.gosparx.team1126.robot.hal.SimHardware.SimEncoder;
+import org.gosparx.team1126.robot.hal.SimHardware.SimGyro;
+import org.gosparx.team1126.robot.hal.SimHardware.SimJoystick;
+import org.gosparx.team1126.robot.hal.SimHardware.SimAnalogIn;
+import org.gosparx.team1126.robot.hal.SimHardware.SimDigital;
+import org.gosparx.team1126.robot.hal.SimHardware.SimMotor;
+import org.gosparx.team1126.robot.hal.SimHardware.SimSolenoid;
+import org.gosparx.team1126.robot.hal.VirtualClock;
+import org.gosparx.team1126.robot.subsystem.SubsystemScheduler;
+import org.gosparx.team1126.robot.util.TelemetryReader;
+
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Plays a match recorded by RecordingHardware back through the real subsystems with SimHardware on a
+ * VirtualClock, so it runs as fast as the loops can execute. A recording has one row for every tick of
+ * the SubsystemScheduler, holding the inputs the tick read and the outputs it set. For each row the
+ * replay sets the driver station, joysticks, choosers and sensors, tells the subsystems about any mode
+ * change in the same tick it happened in, runs the tick itself on this thread, then checks every motor
+ * and solenoid is set exactly as recorded.
+ *
+ * Prints how many rows of each output didn't match and exits with 1 if any didn't, so a script can
+ * replay every match of an event to find where a change made the robot behave differently. Exits with 2
+ * if the recording can't be replayed. Each match needs its own run, since the subsystems are singletons.
+ *
+ * Only what goes through the Hardware is recorded, so anything else a subsystem reads, like the camera,
+ * or a sensor that changes part way through a tick, can still make a real match replay differently.
+ *
+ * Usage: ReplayRobot <recording.tlm>
+ */
+public class ReplayRobot {
+
+	/**
+	 * Sets one input from a row of the recording
+	 */
+	private interface Input{
+		public void apply(int row);
+	}
+
+	/**
+	 * A recorded output, and how the replay compares
+	 */
+	private static abstract class Output{
+		final String name;
+		final double[] recorded;
+		int mismatches;
+		double maxError;
+		double firstMismatch = -1;
+
+		Output(String name, double[] recorded){
+			this.name = name;
+			this.recorded = recorded;
+		}
+
+		/**
+		 * @return what the replayed code has set the output to, NaN if it hasn't made it
+		 */
+		abstract double read();
+	}
+
+	public static void main(String[] args) throws IOException{
+		if(args.length != 1){
+			System.err.println("Usage: ReplayRobot <recording.tlm>");
+			System.exit(2);
+		}
+		TelemetryReader recording = TelemetryReader.load(new File(args[0]));
+		if(recording.getRows() == 0){
+			System.err.println("The recording is empty");
+			System.exit(2);
+		}
+		if(System.getProperty("robot.logDir") == null){
+			System.setProperty("robot.logDir", "./replay/");
+		}
+		final SimHardware sim = new SimHardware(new VirtualClock());
+		Hardware.use(sim);
+		SimDriverStation ds = sim.getDriverStation();
+		Clock clock = sim.getClock();
+		Clock.Sleeper sleeper = clock.createSleeper();
+		long realStart = System.nanoTime();
+
+		ArrayList<Input> inputs = new ArrayList<Input>();
+		ArrayList<Output> outputs = new ArrayList<Output>();
+		for(String name: recording.getChannels()){
+			final double[] values = recording.getDoubles(name);
+			input(sim, name, values, inputs, outputs);
+		}
+		double[] enabled = recording.getDoubles("DS.Enabled");
+		double[] autonomous = recording.getDoubles("DS.Autonomous");
+		double[] test = recording.getDoubles("DS.Test");
+		double[] fms = recording.getDoubles("DS.FMSAttached");
+		double[] alliance = recording.getDoubles("DS.Alliance");
+		double[] matchTime = recording.getDoubles("DS.MatchTime");
+		double[] modes = recording.getDoubles(Subsystems.MODE_CHANNEL);
+		double[] ticks = recording.getDoubles(Subsystems.TICK_CHANNEL);
+		if(enabled == null || autonomous == null){
+			System.err.println("The recording has no driver station channels");
+			System.exit(2);
+		}
+		if(modes == null || ticks == null){
+			System.err.println("The recording has no " + Subsystems.TICK_CHANNEL + " channel, it wasn't recorded in step with the scheduler");
+			System.exit(2);
+		}
+
+		SubsystemScheduler scheduler = Subsystems.startStepped();
+		ds.setDisabled();
+		long[] times = recording.getTimes();
+		String dsMode = "Disabled";
+		double mode = -1;
+		for(int row = 0; row < recording.getRows(); row++){
+			sleeper.sleepUntil(times[row]);
+			if(ticks[row] != scheduler.getTick()){
+				System.err.println("Row " + row + " was recorded in tick " + (long) ticks[row] + " but the replay is on tick " + scheduler.getTick() + ", the recording is missing rows");
+				System.exit(2);
+			}
+			for(Input input: inputs){
+				input.apply(row);
+			}
+			if(fms != null){
+				ds.setFMSAttached(fms[row] == 1);
+			}
+			if(alliance != null && alliance[row] >= 0 && alliance[row] < Alliance.values().length){
+				ds.setAlliance(Alliance.values()[(int) alliance[row]]);
+			}
+			if(matchTime != null){
+				ds.setMatchTime(matchTime[row]);
+			}
+			String wanted = enabled[row] != 1 ? "Disabled" : autonomous[row] == 1 ? "Autonomous" : test != null && test[row] == 1 ? "Test" : "Teleop";
+			if(!wanted.equals(dsMode)){
+				if(wanted.equals("Disabled")){
+					ds.setDisabled();
+				}else if(wanted.equals("Autonomous")){
+					ds.setAutonomous();
+				}else if(wanted.equals("Test")){
+					ds.setTest();
+				}else{
+					ds.setOperatorControl();
+				}
+				dsMode = wanted;
+			}
+			// Posted, so the subsystems hear about it at the start of this tick like they did in the match
+			if(modes[row] != mode && modes[row] >= 0){
+				switch(Subsystems.Mode.values()[(int) modes[row]]){
+				case DISABLED:
+					Subsystems.disabled();
+					break;
+				case AUTONOMOUS:
+					Subsystems.autonomous();
+					break;
+				case TELEOP:
+					Subsystems.operatorControl();
+					break;
+				case TEST:
+					Subsystems.test();
+					break;
+				}
+				mode = modes[row];
+			}
+			scheduler.tick();
+			compare(outputs, row, times[row] / 1e6);
+		}
+
+		int bad = 0;
+		for(Output output: outputs){
+			if(output.mismatches > 0){
+				bad++;
+				System.out.println(output.name + ": " + output.mismatches + " rows differ, first at " + output.firstMismatch + "s, most by " + output.maxError);
+			}else{
+				System.out.println(output.name + ": matches");
+			}
+		}
+		System.out.println("Replayed " + recording.getRows() + " rows, " + clock.getTimestamp() + "s in " + (System.nanoTime() - realStart) / 1e9 + "s");
+		System.exit(bad == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Makes the input or output for a recorded channel, if it is one
+	 * @param sim the simulated hardware
+	 * @param name the name of the channel
+	 * @param values the recorded values
+	 * @param inputs where to add it if it is an input
+	 * @param outputs where to add it if it is an output
+	 */
+	private static void input(final SimHardware sim, String name, final double[] values, ArrayList<Input> inputs, ArrayList<Output> outputs){
+		if(name.startsWith(RecordingHardware.ENCODER)){
+			final int channel = number(name, RecordingHardware.ENCODER);
+			inputs.add(new Input(){
+				public void apply(int row){
+					SimEncoder encoder = sim.getEncoder(channel);
+					if(encoder != null && !Double.isNaN(values[row])){
+						encoder.setCount((int) values[row]);
+					}
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.GYRO)){
+			final int channel = number(name, RecordingHardware.GYRO);
+			inputs.add(new Input(){
+				public void apply(int row){
+					SimGyro gyro = sim.getGyro(channel);
+					if(gyro != null && !Double.isNaN(values[row])){
+						gyro.setAngle(values[row]);
+					}
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.ANALOG)){
+			final int channel = number(name, RecordingHardware.ANALOG);
+			inputs.add(new Input(){
+				public void apply(int row){
+					SimAnalogIn analog = sim.getAnalogInput(channel);
+					if(analog != null && !Double.isNaN(values[row])){
+						analog.setVoltage(values[row]);
+					}
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.DIGITAL)){
+			final int channel = number(name, RecordingHardware.DIGITAL);
+			inputs.add(new Input(){
+				public void apply(int row){
+					SimDigital digital = sim.getDigital(channel);
+					if(digital != null && !Double.isNaN(values[row])){
+						digital.set(values[row] == 1);
+					}
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.CHOOSER)){
+			final int index = number(name, RecordingHardware.CHOOSER);
+			inputs.add(new Input(){
+				public void apply(int row){
+					SimChooser chooser = sim.getDashboard().getChooser(index);
+					if(chooser != null && !Double.isNaN(values[row])){
+						chooser.selectValue(values[row]);
+					}
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.JOYSTICK)){
+			joystick(sim, name, values, inputs);
+		}else if(name.startsWith("PDP.Current")){
+			final int channel = number(name, "PDP.Current");
+			inputs.add(new Input(){
+				public void apply(int row){
+					if(!Double.isNaN(values[row])){
+						sim.getPowerPanel().setCurrent(channel, values[row]);
+					}
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.MOTOR)){
+			final int id = number(name, RecordingHardware.MOTOR);
+			outputs.add(new Output(name, values){
+				double read(){
+					SimMotor motor = sim.getMotor(id);
+					return motor == null ? Double.NaN : motor.get();
+				}
+			});
+		}else if(name.startsWith(RecordingHardware.SOLENOID)){
+			final int channel = number(name, RecordingHardware.SOLENOID);
+			outputs.add(new Output(name, values){
+				double read(){
+					SimSolenoid solenoid = sim.getSolenoid(channel);
+					return solenoid == null ? Double.NaN : solenoid.get() ? 1 : 0;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Makes the input for a recorded joystick axis, buttons or hat
+	 */
+	private static void joystick(SimHardware sim, String name, final double[] values, ArrayList<Input> inputs){
+		String rest = name.substring(RecordingHardware.JOYSTICK.length());
+		int dot = rest.indexOf('.');
+		final SimJoystick joystick = sim.getJoystick(Integer.parseInt(rest.substring(0, dot)));
+		String part = rest.substring(dot);
+		if(part.startsWith(RecordingHardware.AXIS)){
+			final int axis = Integer.parseInt(part.substring(RecordingHardware.AXIS.length()));
+			inputs.add(new Input(){
+				public void apply(int row){
+					if(!Double.isNaN(values[row])){
+						joystick.setRawAxis(axis, values[row]);
+					}
+				}
+			});
+		}else if(part.equals(RecordingHardware.BUTTONS)){
+			inputs.add(new Input(){
+				public void apply(int row){
+					if(!Double.isNaN(values[row])){
+						int buttons = (int) values[row];
+						for(int button = 1; button <= RecordingHardware.BUTTON_COUNT; button++){
+							joystick.setRawButton(button, (buttons & 1 << (button - 1)) != 0);
+						}
+					}
+				}
+			});
+		}else if(part.equals(RecordingHardware.POV)){
+			inputs.add(new Input(){
+				public void apply(int row){
+					if(!Double.isNaN(values[row])){
+						joystick.setPOV((int) values[row]);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Checks every output against the recording, which has to match exactly
+	 * @param outputs the outputs
+	 * @param row the row
+	 * @param time the time of the row in seconds
+	 */
+	private static void compare(ArrayList<Output> outputs, int row, double time){
+		for(Output output: outputs){
+			double recorded = output.recorded[row];
+			if(Double.isNaN(recorded)){
+				continue;
+			}
+			double replayed = output.read();
+			if(replayed != recorded){
+				output.mismatches++;
+				output.maxError = Math.max(output.maxError, Double.isNaN(replayed) ? Double.NaN : Math.abs(replayed - recorded));
+				if(output.firstMismatch < 0){
+					output.firstMismatch = time;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number at the end of a channel name
+	 */
+	private static int number(String name, String prefix){
+		return Integer.parseInt(name.substring(prefix.length()));
+	}
+}
@@ -0,0 +1,92 @@
+package org.gosparx.team1126.robot;
+
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.hal.RecordingHardware;
+import org.gosparx.team1126.robot.hal.SimHardware;
+import org.gosparx.team1126.robot.hal.SimHardware.SimDriverStation;
+import org.gosparx.team1126.robot.hal.VirtualClock;
+
+/**
+ * Runs the robot code off the robot with SimHardware. Plays a match: disabled, autonomous, disabled,
+ * then teleop, and exits. Logs go to the robot.logDir system property, the working directory if it isn't set.
+ *
+ * The match runs on a VirtualClock, as fast as the loops can execute, unless the robot.realTime system
+ * property is true. If the robot.record system property is true the inputs and outputs are recorded like
+ * on the robot, so ReplayRobot can be tried without one.
+ *
+ * Usage: SimRobot [autonomous seconds] [teleop seconds]
+ */
+public class SimRobot {
+
+	/**
+	 * How long to stay disabled before and between the periods, in seconds
+	 */
+	private static final double DISABLED_TIME = 1;
+
+	/**
+	 * The length of autonomous and teleop if not given, in seconds
+	 */
+	private static final double AUTO_TIME = 15;
+	private static final double TELEOP_TIME = 135;
+
+	/**
+	 * How often to update the match time, in microseconds
+	 */
+	private static final long MATCH_TIME_STEP = 100000;
+
+	public static void main(String[] args) {
+		double autoTime = args.length > 0 ? Double.parseDouble(args[0]) : AUTO_TIME;
+		double teleopTime = args.length > 1 ? Double.parseDouble(args[1]) : TELEOP_TIME;
+		if(System.getProperty("robot.logDir") == null){
+			System.setProperty("robot.logDir", "./");
+		}
+		SimHardware sim = Boolean.getBoolean("robot.realTime") ? new SimHardware() : new SimHardware(new VirtualClock());
+		Hardware.use(Boolean.getBoolean("robot.record") ? new RecordingHardware(sim) : sim);
+		SimDriverStation ds = sim.getDriverStation();
+		Clock clock = sim.getClock();
+		// Made before the subsystems start so a VirtualClock waits for us too
+		Clock.Sleeper sleeper = clock.createSleeper();
+		long realStart = System.nanoTime();
+
+		Subsystems.start();
+		ds.setDisabled();
+		Subsystems.disabled();
+		run(clock, sleeper, ds, DISABLED_TIME);
+
+		ds.setAutonomous();
+		Subsystems.autonomous();
+		run(clock, sleeper, ds, autoTime);
+
+		ds.setDisabled();
+		Subsystems.disabled();
+		run(clock, sleeper, ds, DISABLED_TIME);
+
+		ds.setOperatorControl();
+		Subsystems.operatorControl();
+		run(clock, sleeper, ds, teleopTime);
+
+		ds.setDisabled();
+		Subsystems.disabled();
+		run(clock, sleeper, ds, DISABLED_TIME);
+		System.out.println("Simulated " + clock.getTimestamp() + "s in " + (System.nanoTime() - realStart) / 1e9 + "s");
+		System.exit(0);
+	}
+
+	/**
+	 * Stays in the current mode, counting down the match time
+	 * @param clock the simulation's clock
+	 * @param sleeper what the main thread sleeps with
+	 * @param ds the simulated driver station
+	 * @param seconds how long to stay in the mode
+	 */
+	private static void run(Clock clock, Clock.Sleeper sleeper, SimDriverStation ds, double seconds) {
+		long end = clock.getTime() + (long) (seconds * 1000000);
+		long left;
+		while((left = end - clock.getTime()) > 0){
+			ds.setMatchTime(left / 1000000.0);
+			sleeper.sleepUntil(clock.getTime() + Math.min(MATCH_TIME_STEP, left));
+		}
+		ds.setMatchTime(-1);
+	}
+}
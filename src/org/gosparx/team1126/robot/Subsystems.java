@@ -0,0 +1,258 @@
+package org.gosparx.team1126.robot;
+
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.hal.RecordingHardware;
+import org.gosparx.team1126.robot.subsystem.BallAcqNew;
+import org.gosparx.team1126.robot.subsystem.CameraController;
+import org.gosparx.team1126.robot.subsystem.Controls;
+import org.gosparx.team1126.robot.subsystem.Drives;
+import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+import org.gosparx.team1126.robot.subsystem.ScalingNew;
+import org.gosparx.team1126.robot.subsystem.SubsystemScheduler;
+import org.gosparx.team1126.robot.subsystem.SubsystemScheduler.Stage;
+import org.gosparx.team1126.robot.util.DashboardPublisher;
+import org.gosparx.team1126.robot.util.LogWriter;
+import org.gosparx.team1126.robot.util.Telemetry;
+import org.gosparx.team1126.robot.util.WorldSampler;
+
+/**
+ * Starts the subsystems and tells them when the mode changes. Shared by Robot on the roboRIO and
+ * SimRobot off of it, so both run the same code.
+ *
+ * When a match is recorded with RecordingHardware, the control subsystems always run on the
+ * SubsystemScheduler with the Telemetry taking a row at the end of every tick, and mode changes are
+ * carried out at the start of a tick. The tick and the mode are recorded too, so ReplayRobot can run the
+ * same ticks in the same order with startStepped().
+ */
+public class Subsystems {
+
+	/**
+	 * The modes the robot can be told it is in
+	 */
+	public enum Mode{
+		DISABLED,
+		AUTONOMOUS,
+		TELEOP,
+		TEST;
+
+		@Override
+		public String toString(){
+			switch(this){
+			case DISABLED:
+				return "Disabled";
+			case AUTONOMOUS:
+				return "Autonomous";
+			case TELEOP:
+				return "Teleop";
+			case TEST:
+				return "Test";
+			default:
+				return "Unknown Mode";
+			}
+		}
+	}
+
+	/**
+	 * The Telemetry channels of the mode, as the ordinal or -1 before the first one, and of the tick
+	 */
+	public static final String MODE_CHANNEL = "Robot.Mode", TICK_CHANNEL = "Scheduler.Tick";
+
+	/**
+	 * True to run the control subsystems together on the SubsystemScheduler, false to run every
+	 * subsystem on its own thread. Set with -Drobot.useScheduler=true.
+	 */
+	private static final boolean USE_SCHEDULER = Boolean.getBoolean("robot.useScheduler");
+
+	/**
+	 * An array of all of the subsystems on their own threads
+	 */
+	private static GenericSubsystem[] subsystems;
+
+	/**
+	 * The scheduler, null if every subsystem has its own thread
+	 */
+	private static SubsystemScheduler scheduler;
+
+	/**
+	 * The mode the subsystems were last told about, null before the first
+	 */
+	private static volatile Mode mode;
+
+	/**
+	 * Creates and starts every subsystem. Must only be called once, after the Hardware is picked.
+	 */
+	public static synchronized void start(){
+		boolean recording = Hardware.get() instanceof RecordingHardware;
+		if(USE_SCHEDULER || recording){
+			schedule(recording);
+			scheduler.start();
+		}else{
+			create();
+			subsystems = new GenericSubsystem[]{
+				WorldSampler.getInstance(),
+				ScalingNew.getInstance(),
+				Drives.getInstance(),
+				Autonomous.getInstance(),
+				BallAcqNew.getInstance(),
+				Controls.getInstance(),
+				CameraController.getInstance(), 
+				LogWriter.getInstance(),
+				Telemetry.getInstance(),
+				DashboardPublisher.getInstance()
+			};
+		}
+		startThreads();
+	}
+
+	/**
+	 * Creates every subsystem the way start() does when recording, but runs the scheduled ones on the
+	 * calling thread, one tick each time tick() is called on the scheduler. Used by ReplayRobot.
+	 * @return the scheduler to tick
+	 */
+	public static synchronized SubsystemScheduler startStepped(){
+		schedule(true);
+		scheduler.startStepped();
+		startThreads();
+		return scheduler;
+	}
+
+	/**
+	 * Makes sure nothing has been started yet and takes the first sample, so everything created after
+	 * this has a WorldState
+	 */
+	private static void create(){
+		if(subsystems != null){
+			throw new IllegalStateException("Subsystems already started");
+		}
+		WorldSampler.getInstance();
+	}
+
+	/**
+	 * Adds the control subsystems to the scheduler, and the Telemetry after them if recording
+	 * @param recording true to take a Telemetry row at the end of every tick
+	 */
+	private static void schedule(boolean recording){
+		create();
+		scheduler = SubsystemScheduler.getInstance();
+		scheduler.add(WorldSampler.getInstance(), Stage.INPUT);
+		scheduler.add(Controls.getInstance(), Stage.CONTROLS);
+		scheduler.add(Autonomous.getInstance(), Stage.AUTONOMOUS);
+		scheduler.add(Drives.getInstance(), Stage.MECHANISM);
+		scheduler.add(BallAcqNew.getInstance(), Stage.MECHANISM);
+		scheduler.add(ScalingNew.getInstance(), Stage.MECHANISM);
+
+		// The rest block on the camera, the USB stick and NetworkTables, so they keep their own threads.
+		// Except the Telemetry when recording, which takes its rows in step with the ticks and leaves
+		// writing them to a thread of its own.
+		if(recording){
+			Telemetry.getInstance().recordEveryCycle();
+			scheduler.add(Telemetry.getInstance(), Stage.OUTPUT);
+			Telemetry.addInput(MODE_CHANNEL, new WorldSampler.Source(){
+				public double read(){
+					Mode current = mode;
+					return current == null ? -1 : current.ordinal();
+				}
+			});
+			Telemetry.addInput(TICK_CHANNEL, new WorldSampler.Source(){
+				public double read(){
+					return scheduler.getTick();
+				}
+			});
+			subsystems = new GenericSubsystem[]{
+				CameraController.getInstance(),
+				LogWriter.getInstance(),
+				DashboardPublisher.getInstance()
+			};
+		}else{
+			subsystems = new GenericSubsystem[]{
+				CameraController.getInstance(),
+				LogWriter.getInstance(),
+				Telemetry.getInstance(),
+				DashboardPublisher.getInstance()
+			};
+		}
+	}
+
+	/**
+	 * Starts the subsystems that have their own threads
+	 */
+	private static void startThreads(){
+		for(GenericSubsystem system: subsystems){
+			system.start();
+			System.out.println(system.getName());
+		}
+	}
+
+	/**
+	 * Tells the subsystems about a new mode, at the start of the next tick if the scheduler is running
+	 * @param newMode the mode
+	 * @param change what the subsystems need doing
+	 */
+	private static void changeMode(final Mode newMode, final Runnable change){
+		Runnable run = new Runnable(){
+			public void run(){
+				mode = newMode;
+				change.run();
+			}
+		};
+		SubsystemScheduler sched = scheduler;
+		if(sched != null && sched.isRunning()){
+			sched.post(run);
+		}else{
+			run.run();
+		}
+	}
+
+	/**
+	 * @return the mode the subsystems were last told about, null before the first
+	 */
+	public static Mode getMode(){
+		return mode;
+	}
+
+	/**
+	 *  Called one time when the robot enters autonomous
+	 */
+	public static void autonomous() {
+		System.out.println("AUTO STARTED");
+		changeMode(Mode.AUTONOMOUS, new Runnable(){
+			public void run(){
+				Autonomous.getInstance().setRunAuto(true);
+			}
+		});
+	}
+
+	/**
+	 *  Called one time when the robot enters teleop
+	 */
+	public static void operatorControl() {
+		changeMode(Mode.TELEOP, new Runnable(){
+			public void run(){
+				Autonomous.getInstance().setRunAuto(false);
+				Drives.getInstance().killAutoDrive();
+			}
+		});
+	}
+
+	/**
+	 *  Called one time when the robot enters test
+	 */
+	public static void test() {
+		changeMode(Mode.TEST, new Runnable(){
+			public void run(){
+				Autonomous.getInstance().setRunAuto(false);
+			}
+		});
+	}
+
+	/**
+	 *  Called one time when the robot is disabled
+	 */
+	public static void disabled(){
+		changeMode(Mode.DISABLED, new Runnable(){
+			public void run(){
+				Autonomous.getInstance().setRunAuto(false);
+			}
+		});
+	}
+}
@@ -0,0 +1,17 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * An analog input channel
+ */
+public interface AnalogIn {
+
+	/**
+	 * @return the voltage on the channel
+	 */
+	public double getVoltage();
+
+	/**
+	 * @return the raw 12 bit value of the channel
+	 */
+	public int getValue();
+}
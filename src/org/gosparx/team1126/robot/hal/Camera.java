@@ -0,0 +1,22 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A USB camera that can send its images to the driver station
+ */
+public interface Camera {
+
+	/**
+	 * Opens the camera and starts capturing
+	 */
+	public void start();
+
+	/**
+	 * Stops capturing and closes the camera
+	 */
+	public void stop();
+
+	/**
+	 * Grabs the latest image and sends it to the driver station
+	 */
+	public void sendFrame();
+}
@@ -0,0 +1,22 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A list of options on the dashboard that the drivers pick one of
+ */
+public interface Chooser {
+
+	/**
+	 * Adds the option that is picked until the drivers pick another
+	 */
+	public void addDefault(String name, Object value);
+
+	/**
+	 * Adds an option
+	 */
+	public void addObject(String name, Object value);
+
+	/**
+	 * @return the value of the picked option
+	 */
+	public Object getSelected();
+}
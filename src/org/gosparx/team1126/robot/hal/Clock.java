@@ -0,0 +1,91 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * Where the robot gets the time from and how it sleeps. Everything that reads the time or sleeps goes
+ * through the Clock from Hardware.get().getClock(), so the simulation can swap in a VirtualClock that
+ * runs as fast as the CPU allows.
+ */
+public abstract class Clock {
+
+	/**
+	 * Puts one thread to sleep until a deadline on its Clock. Each thread that sleeps makes its own
+	 * Sleeper, before the thread starts if possible so a VirtualClock knows to wait for it.
+	 */
+	public interface Sleeper{
+
+		/**
+		 * Sleeps until the clock reaches the deadline or wake() is called
+		 * @param deadline the time to wake up at, in microseconds
+		 * @return true if we reached the deadline, false if we were woken up early. If wake() was called
+		 * while we weren't sleeping this returns false straight away.
+		 */
+		public boolean sleepUntil(long deadline);
+
+		/**
+		 * Ends the current sleepUntil() early. Can be called from any thread.
+		 */
+		public void wake();
+
+		/**
+		 * Called when the thread is done sleeping for good, like when it finishes
+		 */
+		public void close();
+	}
+
+	/**
+	 * @return the time in microseconds
+	 */
+	public abstract long getTime();
+
+	/**
+	 * @return the time in seconds
+	 */
+	public double getTimestamp(){
+		return getTime() / 1000000.0;
+	}
+
+	/**
+	 * @return a Sleeper for the thread that will use it
+	 */
+	public Sleeper createSleeper(){
+		return new MonitorSleeper();
+	}
+
+	/**
+	 * Sleeps with Object.wait(), for clocks that keep real time
+	 */
+	private class MonitorSleeper implements Sleeper{
+
+		/**
+		 * Set by wake() to end the current sleep early
+		 */
+		private boolean woken;
+
+		public synchronized boolean sleepUntil(long deadline){
+			long wait = deadline - getTime();
+			while(wait > 0 && !woken){
+				try {
+					wait(wait / 1000, (int) (wait % 1000) * 1000);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				wait = deadline - getTime();
+			}
+			if(woken && wait > 0){
+				woken = false;
+				return false;
+			}
+			woken = false;
+			return true;
+		}
+
+		public synchronized void wake(){
+			woken = true;
+			notifyAll();
+		}
+
+		public void close(){
+
+		}
+	}
+}
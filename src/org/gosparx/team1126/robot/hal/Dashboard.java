@@ -0,0 +1,32 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * Values shown to the drivers, like the SmartDashboard
+ */
+public interface Dashboard {
+
+	/**
+	 * Shows a number
+	 */
+	public void putNumber(String key, double value);
+
+	/**
+	 * Shows a boolean
+	 */
+	public void putBoolean(String key, boolean value);
+
+	/**
+	 * Shows a string
+	 */
+	public void putString(String key, String value);
+
+	/**
+	 * Shows a chooser the drivers can pick from
+	 */
+	public void putChooser(String key, Chooser chooser);
+
+	/**
+	 * @return a new, empty chooser
+	 */
+	public Chooser createChooser();
+}
@@ -0,0 +1,12 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A DIO channel used as an input, like a magnet or photo sensor
+ */
+public interface DigitalIn {
+
+	/**
+	 * @return the value of the channel
+	 */
+	public boolean get();
+}
@@ -0,0 +1,12 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A DIO channel used as an output, like an LED
+ */
+public interface DigitalOut {
+
+	/**
+	 * @param on the value to set the channel to
+	 */
+	public void set(boolean on);
+}
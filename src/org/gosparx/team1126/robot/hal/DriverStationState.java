@@ -0,0 +1,49 @@
+package org.gosparx.team1126.robot.hal;
+
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * What the driver station tells us about the match
+ */
+public interface DriverStationState {
+
+	/**
+	 * @return if the robot is enabled
+	 */
+	public boolean isEnabled();
+
+	/**
+	 * @return if the robot is disabled
+	 */
+	public boolean isDisabled();
+
+	/**
+	 * @return if we are in autonomous
+	 */
+	public boolean isAutonomous();
+
+	/**
+	 * @return if we are in teleop
+	 */
+	public boolean isOperatorControl();
+
+	/**
+	 * @return if we are in test
+	 */
+	public boolean isTest();
+
+	/**
+	 * @return if the field management system is attached
+	 */
+	public boolean isFMSAttached();
+
+	/**
+	 * @return our alliance
+	 */
+	public Alliance getAlliance();
+
+	/**
+	 * @return the seconds left in the current period of the match
+	 */
+	public double getMatchTime();
+}
@@ -0,0 +1,22 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * An analog gyro
+ */
+public interface Gyro {
+
+	/**
+	 * @return the degrees turned since the last reset
+	 */
+	public double getAngle();
+
+	/**
+	 * Sets the angle back to 0
+	 */
+	public void reset();
+
+	/**
+	 * Measures the drift of the gyro, the robot must be still
+	 */
+	public void calibrate();
+}
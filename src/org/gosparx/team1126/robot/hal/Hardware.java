@@ -0,0 +1,132 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * Creates every device the robot uses, so the same subsystems can run on the roboRIO or headless with
+ * simulated devices. Subsystems get their devices, the driver station, the dashboard and the clock from
+ * Hardware.get() instead of from WPILib.
+ *
+ * The backend is picked once at startup: SimHardware if the robot.sim system property is true or
+ * use() was called with one, RealHardware otherwise.
+ */
+public abstract class Hardware {
+
+	/**
+	 * The backend in use
+	 */
+	private static Hardware hardware;
+
+	/**
+	 * @return the backend in use, picking one if nothing has asked yet
+	 */
+	public static synchronized Hardware get(){
+		if(hardware == null){
+			hardware = Boolean.getBoolean("robot.sim") ? new SimHardware() : new RealHardware();
+		}
+		return hardware;
+	}
+
+	/**
+	 * Picks the backend. Must be called before any subsystem is created.
+	 * @param backend the backend to use
+	 * @throws IllegalStateException if a different backend is already in use
+	 */
+	public static synchronized void use(Hardware backend){
+		if(hardware != null && hardware != backend){
+			throw new IllegalStateException("Hardware is already " + hardware.getClass().getSimpleName());
+		}
+		hardware = backend;
+	}
+
+	/**
+	 * @param id the CAN id
+	 * @return a CANTalon
+	 */
+	public abstract Motor createCANTalon(int id);
+
+	/**
+	 * @param channelA the DIO channel of the A phase
+	 * @param channelB the DIO channel of the B phase
+	 * @return a quadrature encoder
+	 */
+	public abstract QuadEncoder createEncoder(int channelA, int channelB);
+
+	/**
+	 * @param channel the analog channel
+	 * @return an analog gyro
+	 */
+	public abstract Gyro createAnalogGyro(int channel);
+
+	/**
+	 * @param channel the PCM channel
+	 * @return a solenoid
+	 */
+	public abstract SolenoidValve createSolenoid(int channel);
+
+	/**
+	 * @param channel the DIO channel
+	 * @return a digital input
+	 */
+	public abstract DigitalIn createDigitalInput(int channel);
+
+	/**
+	 * @param channel the DIO channel
+	 * @return a digital output
+	 */
+	public abstract DigitalOut createDigitalOutput(int channel);
+
+	/**
+	 * @param channel the analog channel
+	 * @return an analog input
+	 */
+	public abstract AnalogIn createAnalogInput(int channel);
+
+	/**
+	 * @return the power distribution panel
+	 */
+	public abstract PowerPanel createPowerPanel();
+
+	/**
+	 * @param port the USB port on the driver station
+	 * @return a joystick
+	 */
+	public abstract JoystickDevice createJoystick(int port);
+
+	/**
+	 * @param name the name of the camera, like cam0
+	 * @param fps the most frames per second to capture
+	 * @param quality the image quality to send to the driver station, 0-100
+	 * @return a camera
+	 */
+	public abstract Camera createCamera(String name, int fps, int quality);
+
+	/**
+	 * @return the driver station
+	 */
+	public abstract DriverStationState getDriverStation();
+
+	/**
+	 * @return the dashboard
+	 */
+	public abstract Dashboard getDashboard();
+
+	/**
+	 * @return the clock everything reads the time from and sleeps on
+	 */
+	public abstract Clock getClock();
+
+	/**
+	 * Shows a sensor in LiveWindow during test mode
+	 * @param subsystem the LiveWindow group
+	 * @param name the name of the sensor
+	 * @param device a device from this Hardware
+	 */
+	public abstract void addSensor(String subsystem, String name, Object device);
+
+	/**
+	 * Shows an actuator in LiveWindow during test mode
+	 * @param subsystem the LiveWindow group
+	 * @param name the name of the actuator
+	 * @param device a device from this Hardware
+	 */
+	public abstract void addActuator(String subsystem, String name, Object device);
+}
@@ -0,0 +1,30 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A joystick or controller plugged into the driver station
+ */
+public interface JoystickDevice {
+
+	/**
+	 * @param button the button, starting at 1
+	 * @return if the button is pressed
+	 */
+	public boolean getRawButton(int button);
+
+	/**
+	 * @param axis the axis
+	 * @return the value of the axis, -1 to 1
+	 */
+	public double getRawAxis(int axis);
+
+	/**
+	 * @param pov the POV hat
+	 * @return the angle of the hat in degrees, -1 if it isn't pressed
+	 */
+	public int getPOV(int pov);
+
+	/**
+	 * @return the number of buttons
+	 */
+	public int getButtonCount();
+}
@@ -0,0 +1,22 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A motor controller, like a CANTalon
+ */
+public interface Motor {
+
+	/**
+	 * @param power the power to run at, -1 to 1
+	 */
+	public void set(double power);
+
+	/**
+	 * @return the power we were last set to
+	 */
+	public double get();
+
+	/**
+	 * @param inverted true to run the motor backwards
+	 */
+	public void setInverted(boolean inverted);
+}
@@ -0,0 +1,13 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * The power distribution panel
+ */
+public interface PowerPanel {
+
+	/**
+	 * @param channel the PDP channel
+	 * @return the current on the channel in amps
+	 */
+	public double getCurrent(int channel);
+}
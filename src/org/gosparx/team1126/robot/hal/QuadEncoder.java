@@ -0,0 +1,27 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A quadrature encoder on two DIO channels
+ */
+public interface QuadEncoder {
+
+	/**
+	 * @return the count since the last reset
+	 */
+	public int get();
+
+	/**
+	 * @return the count times the distance per pulse
+	 */
+	public double getDistance();
+
+	/**
+	 * @param distancePerPulse the distance of one count
+	 */
+	public void setDistancePerPulse(double distancePerPulse);
+
+	/**
+	 * Sets the count back to 0
+	 */
+	public void reset();
+}
@@ -0,0 +1,313 @@
+package org.gosparx.team1126.robot.hal;
+
+import com.ni.vision.NIVision;
+import com.ni.vision.NIVision.Image;
+
+import edu.wpi.first.wpilibj.AnalogGyro;
+import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.CANTalon;
+import edu.wpi.first.wpilibj.CameraServer;
+import edu.wpi.first.wpilibj.DigitalInput;
+import edu.wpi.first.wpilibj.DigitalOutput;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Encoder;
+import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.PowerDistributionPanel;
+import edu.wpi.first.wpilibj.Solenoid;
+import edu.wpi.first.wpilibj.Utility;
+import edu.wpi.first.wpilibj.livewindow.LiveWindow;
+import edu.wpi.first.wpilibj.livewindow.LiveWindowSendable;
+import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.vision.USBCamera;
+
+/**
+ * The devices on the roboRIO, through WPILib
+ */
+public class RealHardware extends Hardware {
+
+	/**
+	 * The driver station, made when first asked for
+	 */
+	private DriverStationState driverStation;
+
+	/**
+	 * The SmartDashboard
+	 */
+	private final Dashboard dashboard = new RealDashboard();
+
+	/**
+	 * The FPGA clock
+	 */
+	private final Clock clock = new FPGAClock();
+
+	@Override
+	public Motor createCANTalon(int id) {
+		return new RealMotor(new CANTalon(id));
+	}
+
+	@Override
+	public QuadEncoder createEncoder(int channelA, int channelB) {
+		return new RealEncoder(new Encoder(channelA, channelB));
+	}
+
+	@Override
+	public Gyro createAnalogGyro(int channel) {
+		return new RealGyro(new AnalogGyro(channel));
+	}
+
+	@Override
+	public SolenoidValve createSolenoid(int channel) {
+		return new RealSolenoid(new Solenoid(channel));
+	}
+
+	@Override
+	public DigitalIn createDigitalInput(int channel) {
+		return new RealDigitalIn(new DigitalInput(channel));
+	}
+
+	@Override
+	public DigitalOut createDigitalOutput(int channel) {
+		return new RealDigitalOut(new DigitalOutput(channel));
+	}
+
+	@Override
+	public AnalogIn createAnalogInput(int channel) {
+		return new RealAnalogIn(new AnalogInput(channel));
+	}
+
+	@Override
+	public PowerPanel createPowerPanel() {
+		return new RealPowerPanel(new PowerDistributionPanel());
+	}
+
+	@Override
+	public JoystickDevice createJoystick(int port) {
+		return new RealJoystick(new Joystick(port));
+	}
+
+	@Override
+	public Camera createCamera(String name, int fps, int quality) {
+		CameraServer.getInstance().setQuality(quality);
+		return new RealCamera(name, fps);
+	}
+
+	@Override
+	public synchronized DriverStationState getDriverStation() {
+		if(driverStation == null){
+			driverStation = new RealDriverStation(DriverStation.getInstance());
+		}
+		return driverStation;
+	}
+
+	@Override
+	public Dashboard getDashboard() {
+		return dashboard;
+	}
+
+	@Override
+	public Clock getClock() {
+		return clock;
+	}
+
+	@Override
+	public void addSensor(String subsystem, String name, Object device) {
+		LiveWindow.addSensor(subsystem, name, ((RealDevice) device).getSendable());
+	}
+
+	@Override
+	public void addActuator(String subsystem, String name, Object device) {
+		LiveWindow.addActuator(subsystem, name, ((RealDevice) device).getSendable());
+	}
+
+	/**
+	 * A device that WPILib can show in LiveWindow
+	 */
+	private interface RealDevice{
+		public LiveWindowSendable getSendable();
+	}
+
+	/**
+	 * A CANTalon
+	 */
+	private static class RealMotor implements Motor, RealDevice{
+		private final CANTalon talon;
+		private RealMotor(CANTalon talon){ this.talon = talon; }
+		public void set(double power){ talon.set(power); }
+		public double get(){ return talon.get(); }
+		public void setInverted(boolean inverted){ talon.setInverted(inverted); }
+		public LiveWindowSendable getSendable(){ return talon; }
+	}
+
+	/**
+	 * An Encoder
+	 */
+	private static class RealEncoder implements QuadEncoder, RealDevice{
+		private final Encoder encoder;
+		private RealEncoder(Encoder encoder){ this.encoder = encoder; }
+		public int get(){ return encoder.get(); }
+		public double getDistance(){ return encoder.getDistance(); }
+		public void setDistancePerPulse(double distancePerPulse){ encoder.setDistancePerPulse(distancePerPulse); }
+		public void reset(){ encoder.reset(); }
+		public LiveWindowSendable getSendable(){ return encoder; }
+	}
+
+	/**
+	 * An AnalogGyro
+	 */
+	private static class RealGyro implements Gyro, RealDevice{
+		private final AnalogGyro gyro;
+		private RealGyro(AnalogGyro gyro){ this.gyro = gyro; }
+		public double getAngle(){ return gyro.getAngle(); }
+		public void reset(){ gyro.reset(); }
+		public void calibrate(){ gyro.calibrate(); }
+		public LiveWindowSendable getSendable(){ return gyro; }
+	}
+
+	/**
+	 * A Solenoid
+	 */
+	private static class RealSolenoid implements SolenoidValve, RealDevice{
+		private final Solenoid solenoid;
+		private RealSolenoid(Solenoid solenoid){ this.solenoid = solenoid; }
+		public void set(boolean on){ solenoid.set(on); }
+		public boolean get(){ return solenoid.get(); }
+		public LiveWindowSendable getSendable(){ return solenoid; }
+	}
+
+	/**
+	 * A DigitalInput
+	 */
+	private static class RealDigitalIn implements DigitalIn, RealDevice{
+		private final DigitalInput input;
+		private RealDigitalIn(DigitalInput input){ this.input = input; }
+		public boolean get(){ return input.get(); }
+		public LiveWindowSendable getSendable(){ return input; }
+	}
+
+	/**
+	 * A DigitalOutput
+	 */
+	private static class RealDigitalOut implements DigitalOut, RealDevice{
+		private final DigitalOutput output;
+		private RealDigitalOut(DigitalOutput output){ this.output = output; }
+		public void set(boolean on){ output.set(on); }
+		public LiveWindowSendable getSendable(){ return output; }
+	}
+
+	/**
+	 * An AnalogInput
+	 */
+	private static class RealAnalogIn implements AnalogIn, RealDevice{
+		private final AnalogInput input;
+		private RealAnalogIn(AnalogInput input){ this.input = input; }
+		public double getVoltage(){ return input.getVoltage(); }
+		public int getValue(){ return input.getValue(); }
+		public LiveWindowSendable getSendable(){ return input; }
+	}
+
+	/**
+	 * The PowerDistributionPanel
+	 */
+	private static class RealPowerPanel implements PowerPanel, RealDevice{
+		private final PowerDistributionPanel pdp;
+		private RealPowerPanel(PowerDistributionPanel pdp){ this.pdp = pdp; }
+		public double getCurrent(int channel){ return pdp.getCurrent(channel); }
+		public LiveWindowSendable getSendable(){ return pdp; }
+	}
+
+	/**
+	 * A Joystick
+	 */
+	private static class RealJoystick implements JoystickDevice{
+		private final Joystick joy;
+		private RealJoystick(Joystick joy){ this.joy = joy; }
+		public boolean getRawButton(int button){ return joy.getRawButton(button); }
+		public double getRawAxis(int axis){ return joy.getRawAxis(axis); }
+		public int getPOV(int pov){ return joy.getPOV(pov); }
+		public int getButtonCount(){ return joy.getButtonCount(); }
+	}
+
+	/**
+	 * A USBCamera sending to the CameraServer
+	 */
+	private static class RealCamera implements Camera{
+
+		/**
+		 * Shared by every camera, only one sends at a time
+		 */
+		private static Image frame;
+
+		private final USBCamera cam;
+
+		private RealCamera(String name, int fps){
+			cam = new USBCamera(name);
+			cam.setFPS(fps);
+			synchronized(RealCamera.class){
+				if(frame == null){
+					frame = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_RGB, 0);
+				}
+			}
+		}
+
+		public void start(){
+			cam.openCamera();
+			cam.startCapture();
+		}
+
+		public void stop(){
+			cam.stopCapture();
+			cam.closeCamera();
+		}
+
+		public void sendFrame(){
+			cam.getImage(frame);
+			CameraServer.getInstance().setImage(frame);
+		}
+	}
+
+	/**
+	 * The DriverStation
+	 */
+	private static class RealDriverStation implements DriverStationState{
+		private final DriverStation ds;
+		private RealDriverStation(DriverStation ds){ this.ds = ds; }
+		public boolean isEnabled(){ return ds.isEnabled(); }
+		public boolean isDisabled(){ return ds.isDisabled(); }
+		public boolean isAutonomous(){ return ds.isAutonomous(); }
+		public boolean isOperatorControl(){ return ds.isOperatorControl(); }
+		public boolean isTest(){ return ds.isTest(); }
+		public boolean isFMSAttached(){ return ds.isFMSAttached(); }
+		public Alliance getAlliance(){ return ds.getAlliance(); }
+		public double getMatchTime(){ return ds.getMatchTime(); }
+	}
+
+	/**
+	 * The FPGA's microsecond timer
+	 */
+	private static class FPGAClock extends Clock{
+		public long getTime(){ return Utility.getFPGATime(); }
+	}
+
+	/**
+	 * The SmartDashboard
+	 */
+	private static class RealDashboard implements Dashboard{
+		public void putNumber(String key, double value){ SmartDashboard.putNumber(key, value); }
+		public void putBoolean(String key, boolean value){ SmartDashboard.putBoolean(key, value); }
+		public void putString(String key, String value){ SmartDashboard.putString(key, value); }
+		public void putChooser(String key, Chooser chooser){ SmartDashboard.putData(key, ((RealChooser) chooser).chooser); }
+		public Chooser createChooser(){ return new RealChooser(); }
+	}
+
+	/**
+	 * A SendableChooser
+	 */
+	private static class RealChooser implements Chooser{
+		private final SendableChooser chooser = new SendableChooser();
+		public void addDefault(String name, Object value){ chooser.addDefault(name, value); }
+		public void addObject(String name, Object value){ chooser.addObject(name, value); }
+		public Object getSelected(){ return chooser.getSelected(); }
+	}
+}
@@ -0,0 +1,236 @@
+package org.gosparx.team1126.robot.hal;
+
+import org.gosparx.team1126.robot.util.Telemetry;
+import org.gosparx.team1126.robot.util.WorldSampler;
+
+/**
+ * Hardware that records every input the robot reads and every motor and solenoid it sets as Telemetry
+ * channels, so ReplayRobot can play a match back through the same code. Everything else is done by the
+ * backend it wraps.
+ *
+ * The channels are named by device and channel, like "Input.Encoder3" or "Output.Motor5", with the
+ * names from the methods below so the replay can find the device again. Inputs are read at the start of
+ * each cycle and outputs at the end, so a row holds what one cycle saw and what it did about it.
+ */
+public class RecordingHardware extends Hardware {
+
+	/**
+	 * The start of the name of each kind of recorded channel
+	 */
+	public static final String ENCODER = "Input.Encoder", GYRO = "Input.Gyro", ANALOG = "Input.Analog",
+			DIGITAL = "Input.Digital", JOYSTICK = "Input.Joystick", CHOOSER = "Input.Chooser",
+			MOTOR = "Output.Motor", SOLENOID = "Output.Solenoid";
+
+	/**
+	 * The end of the name of a joystick's axes, buttons and hat
+	 */
+	public static final String AXIS = ".Axis", BUTTONS = ".Buttons", POV = ".POV";
+
+	/**
+	 * The joystick axes and buttons recorded
+	 */
+	public static final int AXES = 6, BUTTON_COUNT = 12;
+
+	/**
+	 * The hardware that really does everything
+	 */
+	private final Hardware backend;
+
+	/**
+	 * Records the choosers made on the backend's dashboard
+	 */
+	private final Dashboard dashboard;
+
+	/**
+	 * The number of choosers made so far
+	 */
+	private int choosers;
+
+	/**
+	 * @param backend the hardware that really does everything
+	 */
+	public RecordingHardware(Hardware backend){
+		this.backend = backend;
+		final Dashboard real = backend.getDashboard();
+		dashboard = new Dashboard(){
+			public void putNumber(String key, double value){ real.putNumber(key, value); }
+			public void putBoolean(String key, boolean value){ real.putBoolean(key, value); }
+			public void putString(String key, String value){ real.putString(key, value); }
+			public void putChooser(String key, Chooser chooser){ real.putChooser(key, chooser); }
+			public Chooser createChooser(){ return record(real.createChooser()); }
+		};
+	}
+
+	/**
+	 * Records an output every cycle, when the row is taken after the subsystems have set it
+	 * @param name the name of the channel
+	 * @param source where the value comes from
+	 */
+	private static void record(String name, WorldSampler.Source source){
+		Telemetry.getInstance().addSource(name, source);
+	}
+
+	/**
+	 * Records an input every cycle, at the start of the cycle before the subsystems read it
+	 * @param name the name of the channel
+	 * @param source where the value comes from
+	 */
+	private static void recordInput(String name, WorldSampler.Source source){
+		Telemetry.addInput(name, source);
+	}
+
+	@Override
+	public Motor createCANTalon(int id) {
+		final Motor motor = backend.createCANTalon(id);
+		record(MOTOR + id, new WorldSampler.Source(){
+			public double read(){
+				return motor.get();
+			}
+		});
+		return motor;
+	}
+
+	@Override
+	public QuadEncoder createEncoder(int channelA, int channelB) {
+		final QuadEncoder encoder = backend.createEncoder(channelA, channelB);
+		recordInput(ENCODER + channelA, new WorldSampler.Source(){
+			public double read(){
+				return encoder.get();
+			}
+		});
+		return encoder;
+	}
+
+	@Override
+	public Gyro createAnalogGyro(int channel) {
+		final Gyro gyro = backend.createAnalogGyro(channel);
+		recordInput(GYRO + channel, new WorldSampler.Source(){
+			public double read(){
+				return gyro.getAngle();
+			}
+		});
+		return gyro;
+	}
+
+	@Override
+	public SolenoidValve createSolenoid(int channel) {
+		final SolenoidValve solenoid = backend.createSolenoid(channel);
+		record(SOLENOID + channel, new WorldSampler.Source(){
+			public double read(){
+				return solenoid.get() ? 1 : 0;
+			}
+		});
+		return solenoid;
+	}
+
+	@Override
+	public DigitalIn createDigitalInput(int channel) {
+		final DigitalIn input = backend.createDigitalInput(channel);
+		recordInput(DIGITAL + channel, new WorldSampler.Source(){
+			public double read(){
+				return input.get() ? 1 : 0;
+			}
+		});
+		return input;
+	}
+
+	@Override
+	public DigitalOut createDigitalOutput(int channel) {
+		return backend.createDigitalOutput(channel);
+	}
+
+	@Override
+	public AnalogIn createAnalogInput(int channel) {
+		final AnalogIn input = backend.createAnalogInput(channel);
+		recordInput(ANALOG + channel, new WorldSampler.Source(){
+			public double read(){
+				return input.getVoltage();
+			}
+		});
+		return input;
+	}
+
+	@Override
+	public PowerPanel createPowerPanel() {
+		return backend.createPowerPanel();
+	}
+
+	/**
+	 * Records the axes, the buttons as bits with button 1 as bit 0, and the hat of the joystick
+	 */
+	@Override
+	public JoystickDevice createJoystick(int port) {
+		final JoystickDevice joystick = backend.createJoystick(port);
+		for(int i = 0; i < AXES; i++){
+			final int axis = i;
+			recordInput(JOYSTICK + port + AXIS + axis, new WorldSampler.Source(){
+				public double read(){
+					return joystick.getRawAxis(axis);
+				}
+			});
+		}
+		recordInput(JOYSTICK + port + BUTTONS, new WorldSampler.Source(){
+			public double read(){
+				int buttons = 0;
+				int count = Math.min(joystick.getButtonCount(), BUTTON_COUNT);
+				for(int button = 1; button <= count; button++){
+					if(joystick.getRawButton(button)){
+						buttons |= 1 << (button - 1);
+					}
+				}
+				return buttons;
+			}
+		});
+		recordInput(JOYSTICK + port + POV, new WorldSampler.Source(){
+			public double read(){
+				return joystick.getPOV(0);
+			}
+		});
+		return joystick;
+	}
+
+	/**
+	 * Records the value of the option picked on a chooser, -1 if it isn't a number
+	 * @param chooser the chooser
+	 * @return the chooser
+	 */
+	private synchronized Chooser record(final Chooser chooser){
+		recordInput(CHOOSER + choosers++, new WorldSampler.Source(){
+			public double read(){
+				Object selected = chooser.getSelected();
+				return selected instanceof Number ? ((Number) selected).doubleValue() : -1;
+			}
+		});
+		return chooser;
+	}
+
+	@Override
+	public Camera createCamera(String name, int fps, int quality) {
+		return backend.createCamera(name, fps, quality);
+	}
+
+	@Override
+	public DriverStationState getDriverStation() {
+		return backend.getDriverStation();
+	}
+
+	@Override
+	public Dashboard getDashboard() {
+		return dashboard;
+	}
+
+	@Override
+	public Clock getClock() {
+		return backend.getClock();
+	}
+
+	@Override
+	public void addSensor(String subsystem, String name, Object device) {
+		backend.addSensor(subsystem, name, device);
+	}
+
+	@Override
+	public void addActuator(String subsystem, String name, Object device) {
+		backend.addActuator(subsystem, name, device);
+	}
+}
@@ -0,0 +1,540 @@
+package org.gosparx.team1126.robot.hal;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Simulated devices that run in-process without a roboRIO. Every device just holds its value: outputs
+ * remember what they were set to and inputs return what the simulation set them to. Devices are kept by
+ * channel so a simulation can find the one a subsystem made and drive it.
+ */
+public class SimHardware extends Hardware {
+
+	/**
+	 * The devices made so far, by channel
+	 */
+	private final Map<Integer, SimMotor> motors = new ConcurrentHashMap<Integer, SimMotor>();
+	private final Map<Integer, SimEncoder> encoders = new ConcurrentHashMap<Integer, SimEncoder>();
+	private final Map<Integer, SimGyro> gyros = new ConcurrentHashMap<Integer, SimGyro>();
+	private final Map<Integer, SimSolenoid> solenoids = new ConcurrentHashMap<Integer, SimSolenoid>();
+	private final Map<Integer, SimDigital> digitals = new ConcurrentHashMap<Integer, SimDigital>();
+	private final Map<Integer, SimAnalogIn> analogs = new ConcurrentHashMap<Integer, SimAnalogIn>();
+	private final Map<Integer, SimJoystick> joysticks = new ConcurrentHashMap<Integer, SimJoystick>();
+
+	/**
+	 * The power distribution panel
+	 */
+	private final SimPowerPanel powerPanel = new SimPowerPanel();
+
+	/**
+	 * The driver station
+	 */
+	private final SimDriverStation driverStation = new SimDriverStation();
+
+	/**
+	 * The dashboard
+	 */
+	private final SimDashboard dashboard = new SimDashboard();
+
+	/**
+	 * The clock, real time unless we were given a VirtualClock
+	 */
+	private final Clock clock;
+
+	/**
+	 * Creates simulated hardware that keeps real time
+	 */
+	public SimHardware(){
+		this(new WallClock());
+	}
+
+	/**
+	 * Creates simulated hardware
+	 * @param clock the clock to use, like a VirtualClock to run faster than real time
+	 */
+	public SimHardware(Clock clock){
+		this.clock = clock;
+	}
+
+	@Override
+	public Motor createCANTalon(int id) {
+		return add(motors, id, new SimMotor());
+	}
+
+	@Override
+	public QuadEncoder createEncoder(int channelA, int channelB) {
+		return add(encoders, channelA, new SimEncoder());
+	}
+
+	@Override
+	public Gyro createAnalogGyro(int channel) {
+		return add(gyros, channel, new SimGyro());
+	}
+
+	@Override
+	public SolenoidValve createSolenoid(int channel) {
+		return add(solenoids, channel, new SimSolenoid());
+	}
+
+	@Override
+	public DigitalIn createDigitalInput(int channel) {
+		return add(digitals, channel, new SimDigital());
+	}
+
+	@Override
+	public DigitalOut createDigitalOutput(int channel) {
+		return add(digitals, channel, new SimDigital());
+	}
+
+	@Override
+	public AnalogIn createAnalogInput(int channel) {
+		return add(analogs, channel, new SimAnalogIn());
+	}
+
+	@Override
+	public PowerPanel createPowerPanel() {
+		return powerPanel;
+	}
+
+	@Override
+	public JoystickDevice createJoystick(int port) {
+		SimJoystick joy = joysticks.get(port);
+		if(joy == null){
+			joy = add(joysticks, port, new SimJoystick());
+		}
+		return joy;
+	}
+
+	@Override
+	public Camera createCamera(String name, int fps, int quality) {
+		return new Camera(){
+			public void start(){}
+			public void stop(){}
+			public void sendFrame(){}
+		};
+	}
+
+	@Override
+	public SimDriverStation getDriverStation() {
+		return driverStation;
+	}
+
+	@Override
+	public SimDashboard getDashboard() {
+		return dashboard;
+	}
+
+	@Override
+	public Clock getClock() {
+		return clock;
+	}
+
+	@Override
+	public void addSensor(String subsystem, String name, Object device) {
+
+	}
+
+	@Override
+	public void addActuator(String subsystem, String name, Object device) {
+
+	}
+
+	/**
+	 * @return the CANTalon with the id, null if none was made
+	 */
+	public SimMotor getMotor(int id){
+		return motors.get(id);
+	}
+
+	/**
+	 * @return the encoder on the A channel, null if none was made
+	 */
+	public SimEncoder getEncoder(int channelA){
+		return encoders.get(channelA);
+	}
+
+	/**
+	 * @return the gyro on the channel, null if none was made
+	 */
+	public SimGyro getGyro(int channel){
+		return gyros.get(channel);
+	}
+
+	/**
+	 * @return the solenoid on the channel, null if none was made
+	 */
+	public SimSolenoid getSolenoid(int channel){
+		return solenoids.get(channel);
+	}
+
+	/**
+	 * @return the digital input or output on the channel, null if none was made
+	 */
+	public SimDigital getDigital(int channel){
+		return digitals.get(channel);
+	}
+
+	/**
+	 * @return the analog input on the channel, null if none was made
+	 */
+	public SimAnalogIn getAnalogInput(int channel){
+		return analogs.get(channel);
+	}
+
+	/**
+	 * @return the joystick on the port, made if it doesn't exist yet so it can be set up before the
+	 * robot starts
+	 */
+	public SimJoystick getJoystick(int port){
+		return (SimJoystick) createJoystick(port);
+	}
+
+	/**
+	 * @return the power distribution panel
+	 */
+	public SimPowerPanel getPowerPanel(){
+		return powerPanel;
+	}
+
+	/**
+	 * Remembers a device by its channel
+	 * @throws IllegalStateException if the channel is already used, like WPILib does
+	 */
+	private static <T> T add(Map<Integer, T> devices, int channel, T device){
+		if(devices.put(channel, device) != null){
+			throw new IllegalStateException("Channel " + channel + " is already allocated");
+		}
+		return device;
+	}
+
+	/**
+	 * Real time, counting from when the simulation started
+	 */
+	private static class WallClock extends Clock{
+		private final long startNanos = System.nanoTime();
+		public long getTime(){ return (System.nanoTime() - startNanos) / 1000; }
+	}
+
+	/**
+	 * A CANTalon
+	 */
+	public static class SimMotor implements Motor{
+		private volatile double power;
+		private volatile boolean inverted;
+		public void set(double power){ this.power = power; }
+		public double get(){ return power; }
+		public void setInverted(boolean inverted){ this.inverted = inverted; }
+
+		/**
+		 * @return the power the motor is really running at, after inverting
+		 */
+		public double getOutput(){
+			return inverted ? -power : power;
+		}
+	}
+
+	/**
+	 * A quadrature encoder
+	 */
+	public static class SimEncoder implements QuadEncoder{
+		private volatile int count;
+		private volatile double distancePerPulse = 1;
+		public int get(){ return count; }
+		public double getDistance(){ return count * distancePerPulse; }
+		public void setDistancePerPulse(double distancePerPulse){ this.distancePerPulse = distancePerPulse; }
+		public void reset(){ count = 0; }
+
+		/**
+		 * @param count the counts since the last reset
+		 */
+		public void setCount(int count){
+			this.count = count;
+		}
+
+		/**
+		 * @param distance the distance since the last reset, in the units of the distance per pulse
+		 */
+		public void setDistance(double distance){
+			count = (int) Math.round(distance / distancePerPulse);
+		}
+	}
+
+	/**
+	 * An analog gyro
+	 */
+	public static class SimGyro implements Gyro{
+		private volatile double angle;
+		public double getAngle(){ return angle; }
+		public void reset(){ angle = 0; }
+		public void calibrate(){}
+
+		/**
+		 * @param angle the angle since the last reset, in degrees
+		 */
+		public void setAngle(double angle){
+			this.angle = angle;
+		}
+	}
+
+	/**
+	 * A solenoid
+	 */
+	public static class SimSolenoid implements SolenoidValve{
+		private volatile boolean on;
+		public void set(boolean on){ this.on = on; }
+		public boolean get(){ return on; }
+	}
+
+	/**
+	 * A digital input or output
+	 */
+	public static class SimDigital implements DigitalIn, DigitalOut{
+		private volatile boolean value;
+		public boolean get(){ return value; }
+		public void set(boolean value){ this.value = value; }
+	}
+
+	/**
+	 * An analog input
+	 */
+	public static class SimAnalogIn implements AnalogIn{
+		private volatile double voltage;
+		public double getVoltage(){ return voltage; }
+
+		/**
+		 * @return the voltage as a 12 bit reading of 0-5V
+		 */
+		public int getValue(){
+			return (int) Math.round(voltage / 5.0 * 4095);
+		}
+
+		/**
+		 * @param voltage the voltage on the input
+		 */
+		public void setVoltage(double voltage){
+			this.voltage = voltage;
+		}
+	}
+
+	/**
+	 * The power distribution panel
+	 */
+	public static class SimPowerPanel implements PowerPanel{
+		private final double[] currents = new double[16];
+		public synchronized double getCurrent(int channel){ return currents[channel]; }
+
+		/**
+		 * @param channel the PDP channel
+		 * @param current the current on the channel, in amps
+		 */
+		public synchronized void setCurrent(int channel, double current){
+			currents[channel] = current;
+		}
+	}
+
+	/**
+	 * A joystick
+	 */
+	public static class SimJoystick implements JoystickDevice{
+
+		/**
+		 * The most buttons and axes a driver station joystick has
+		 */
+		private static final int BUTTONS = 12;
+		private static final int AXES = 6;
+
+		private final boolean[] buttons = new boolean[BUTTONS + 1];
+		private final double[] axes = new double[AXES];
+		private volatile int pov = -1;
+
+		public synchronized boolean getRawButton(int button){ return buttons[button]; }
+		public synchronized double getRawAxis(int axis){ return axes[axis]; }
+		public int getPOV(int pov){ return this.pov; }
+		public int getButtonCount(){ return BUTTONS; }
+
+		/**
+		 * @param button the button, starting at 1
+		 * @param pressed if it is pressed
+		 */
+		public synchronized void setRawButton(int button, boolean pressed){
+			buttons[button] = pressed;
+		}
+
+		/**
+		 * @param axis the axis
+		 * @param value the value, -1 to 1
+		 */
+		public synchronized void setRawAxis(int axis, double value){
+			axes[axis] = value;
+		}
+
+		/**
+		 * @param pov the angle of the hat in degrees, -1 if not pressed
+		 */
+		public void setPOV(int pov){
+			this.pov = pov;
+		}
+	}
+
+	/**
+	 * A driver station the simulation controls
+	 */
+	public static class SimDriverStation implements DriverStationState{
+		private volatile boolean enabled, autonomous, test, fmsAttached;
+		private volatile Alliance alliance = Alliance.Red;
+		private volatile double matchTime = -1;
+
+		public boolean isEnabled(){ return enabled; }
+		public boolean isDisabled(){ return !enabled; }
+		public boolean isAutonomous(){ return autonomous; }
+		public boolean isOperatorControl(){ return !autonomous && !test; }
+		public boolean isTest(){ return test; }
+		public boolean isFMSAttached(){ return fmsAttached; }
+		public Alliance getAlliance(){ return alliance; }
+		public double getMatchTime(){ return matchTime; }
+
+		/**
+		 * Disables the robot
+		 */
+		public void setDisabled(){
+			enabled = false;
+		}
+
+		/**
+		 * Enables the robot in autonomous
+		 */
+		public void setAutonomous(){
+			autonomous = true;
+			test = false;
+			enabled = true;
+		}
+
+		/**
+		 * Enables the robot in teleop
+		 */
+		public void setOperatorControl(){
+			autonomous = false;
+			test = false;
+			enabled = true;
+		}
+
+		/**
+		 * Enables the robot in test
+		 */
+		public void setTest(){
+			autonomous = false;
+			test = true;
+			enabled = true;
+		}
+
+		/**
+		 * @param fmsAttached if the field is attached
+		 */
+		public void setFMSAttached(boolean fmsAttached){
+			this.fmsAttached = fmsAttached;
+		}
+
+		/**
+		 * @param alliance our alliance
+		 */
+		public void setAlliance(Alliance alliance){
+			this.alliance = alliance;
+		}
+
+		/**
+		 * @param matchTime the seconds left in the current period, -1 if not in a match
+		 */
+		public void setMatchTime(double matchTime){
+			this.matchTime = matchTime;
+		}
+	}
+
+	/**
+	 * A dashboard that remembers everything put on it
+	 */
+	public static class SimDashboard implements Dashboard{
+		private final Map<String, Object> values = new ConcurrentHashMap<String, Object>();
+		public void putNumber(String key, double value){ values.put(key, value); }
+		public void putBoolean(String key, boolean value){ values.put(key, value); }
+		public void putString(String key, String value){ values.put(key, value); }
+		public void putChooser(String key, Chooser chooser){ values.put(key, chooser); }
+		public Chooser createChooser(){
+			SimChooser chooser = new SimChooser();
+			choosers.add(chooser);
+			return chooser;
+		}
+
+		/**
+		 * The choosers made, in order
+		 */
+		private final List<SimChooser> choosers = new CopyOnWriteArrayList<SimChooser>();
+
+		/**
+		 * @param index the number of choosers made before it
+		 * @return the chooser, null if it hasn't been made
+		 */
+		public SimChooser getChooser(int index){
+			return index < choosers.size() ? choosers.get(index) : null;
+		}
+
+		/**
+		 * @return the value put with the key, null if nothing was
+		 */
+		public Object get(String key){
+			return values.get(key);
+		}
+	}
+
+	/**
+	 * A chooser the simulation can pick from
+	 */
+	public static class SimChooser implements Chooser{
+		private final Map<String, Object> options = new LinkedHashMap<String, Object>();
+		private Object selected;
+
+		public synchronized void addDefault(String name, Object value){
+			options.put(name, value);
+			selected = value;
+		}
+
+		public synchronized void addObject(String name, Object value){
+			options.put(name, value);
+		}
+
+		public synchronized Object getSelected(){
+			return selected;
+		}
+
+		/**
+		 * Picks an option
+		 * @param name the name it was added with
+		 * @throws IllegalArgumentException if there is no option with the name
+		 */
+		public synchronized void select(String name){
+			if(!options.containsKey(name)){
+				throw new IllegalArgumentException("No option " + name);
+			}
+			selected = options.get(name);
+		}
+
+		/**
+		 * Picks the option with a number as its value
+		 * @param value the number
+		 * @return false if no option has that value
+		 */
+		public synchronized boolean selectValue(double value){
+			for(Object option: options.values()){
+				if(option instanceof Number && ((Number) option).doubleValue() == value){
+					selected = option;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package org.gosparx.team1126.robot.hal;
+
+/**
+ * A single solenoid on the PCM
+ */
+public interface SolenoidValve {
+
+	/**
+	 * @param on true to turn the solenoid on
+	 */
+	public void set(boolean on);
+
+	/**
+	 * @return if the solenoid is on
+	 */
+	public boolean get();
+}
@@ -0,0 +1,155 @@
+package org.gosparx.team1126.robot.hal;
+
+import java.util.ArrayList;
+
+/**
+ * A clock that only moves when every thread using it is asleep, and then jumps straight to the earliest
+ * deadline. Nothing ever really sleeps, so a match runs as fast as the loops can execute and the
+ * robot sees the same times no matter how fast the computer is.
+ *
+ * Every thread that runs on the clock must have a Sleeper, made before the thread starts and closed
+ * when it finishes. A thread that blocks on anything other than its Sleeper stops the clock.
+ */
+public class VirtualClock extends Clock {
+
+	/**
+	 * The time in microseconds
+	 */
+	private volatile long now;
+
+	/**
+	 * The Sleepers that are not sleeping
+	 */
+	private int running;
+
+	/**
+	 * The Sleepers that are sleeping
+	 */
+	private final ArrayList<VirtualSleeper> sleeping = new ArrayList<VirtualSleeper>();
+
+	/**
+	 * Creates a clock starting at 0
+	 */
+	public VirtualClock(){
+		now = 0;
+		running = 0;
+	}
+
+	@Override
+	public long getTime() {
+		return now;
+	}
+
+	/**
+	 * @return a Sleeper that counts as running until it first sleeps
+	 */
+	@Override
+	public synchronized Sleeper createSleeper() {
+		running++;
+		return new VirtualSleeper();
+	}
+
+	/**
+	 * Moves the clock to the earliest deadline if nobody is running, and wakes everyone whose deadline
+	 * that is. Must hold the lock.
+	 */
+	private void advance(){
+		if(running > 0 || sleeping.isEmpty()){
+			return;
+		}
+		long next = Long.MAX_VALUE;
+		for(VirtualSleeper s: sleeping){
+			next = Math.min(next, s.deadline);
+		}
+		if(next > now){
+			now = next;
+		}
+		for(int i = sleeping.size() - 1; i >= 0; i--){
+			if(sleeping.get(i).deadline <= now){
+				sleeping.remove(i);
+				running++;
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * A thread's place in the virtual clock. Uses the clock's lock for everything.
+	 */
+	private class VirtualSleeper implements Sleeper{
+
+		/**
+		 * What we are sleeping until
+		 */
+		private long deadline;
+
+		/**
+		 * Set by wake() to end the current sleep early
+		 */
+		private boolean woken;
+
+		/**
+		 * Set once we stop counting towards running
+		 */
+		private boolean closed;
+
+		public boolean sleepUntil(long wakeAt){
+			synchronized(VirtualClock.this){
+				if(reached(wakeAt) || woken){
+					return finish(wakeAt);
+				}
+				deadline = wakeAt;
+				sleeping.add(this);
+				running--;
+				advance();
+				while(sleeping.contains(this)){
+					try {
+						VirtualClock.this.wait();
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+				return finish(wakeAt);
+			}
+		}
+
+		/**
+		 * @return if the clock has reached the time
+		 */
+		private boolean reached(long time){
+			return time <= now;
+		}
+
+		/**
+		 * Clears the wake flag after a sleep
+		 * @return true if we got to the deadline
+		 */
+		private boolean finish(long wakeAt){
+			boolean reached = reached(wakeAt);
+			woken = false;
+			return reached;
+		}
+
+		public void wake(){
+			synchronized(VirtualClock.this){
+				woken = true;
+				if(sleeping.remove(this)){
+					running++;
+					VirtualClock.this.notifyAll();
+				}
+			}
+		}
+
+		public void close(){
+			synchronized(VirtualClock.this){
+				if(!closed){
+					closed = true;
+					if(!sleeping.remove(this)){
+						running--;
+					}
+					advance();
+				}
+			}
+		}
+	}
+}
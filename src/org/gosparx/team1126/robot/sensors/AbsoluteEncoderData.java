@@ -1,6 +1,7 @@
 package org.gosparx.team1126.robot.sensors;
 
-import edu.wpi.first.wpilibj.AnalogInput;
+import org.gosparx.team1126.robot.hal.AnalogIn;
+import org.gosparx.team1126.robot.hal.Hardware;
 
 /**
  * A class for interpreting data from an absolute encoder
@@ -11,7 +12,7 @@ public class AbsoluteEncoderData {
 	/**
 	 * The analog input of the absolute encoder
 	 */
-	private AnalogInput input;
+	private AnalogIn input;
 
 	/**
 	 * How many degrees do we go per volt change?
@@ -34,7 +35,7 @@ public class AbsoluteEncoderData {
 	 * @param degPerVolt How many degrees we have turned per volt
 	 */
 	public AbsoluteEncoderData(int port, double degPerVolt){
-		input = new AnalogInput(port);
+		input = Hardware.get().createAnalogInput(port);
 		degreesPerVolt = degPerVolt; 
 	}
 
@@ -1,8 +1,8 @@
 package org.gosparx.team1126.robot.sensors;
 
-import edu.wpi.first.wpilibj.AnalogInput;
-import edu.wpi.first.wpilibj.DigitalOutput;
-import edu.wpi.first.wpilibj.livewindow.LiveWindow;
+import org.gosparx.team1126.robot.hal.AnalogIn;
+import org.gosparx.team1126.robot.hal.DigitalOut;
+import org.gosparx.team1126.robot.hal.Hardware;
 
 /* This returns the color 
  * Version 1.0 Season 2015
@@ -26,22 +26,22 @@ public class ColorSensor {
 	/**
 	 * Red input
 	 */
-	private AnalogInput redAnalogInput;
+	private AnalogIn redAnalogInput;
 	
 	/**
 	 * Green input
 	 */
-	private AnalogInput greenAnalogInput;
+	private AnalogIn greenAnalogInput;
 	
 	/**
 	 * Blue input
 	 */
-	private AnalogInput blueAnalogInput;
+	private AnalogIn blueAnalogInput;
 	
 	/**
 	 * LED ouput
 	 */
-	private DigitalOutput lightLED;
+	private DigitalOut lightLED;
 	
 	/**
 	 * we treat white as 70 % of light returned
@@ -58,6 +58,11 @@ public class ColorSensor {
 	 */
 	private final boolean useGreen;
 
+	/**
+	 * Where the inputs and LED come from
+	 */
+	private final Hardware hardware = Hardware.get();
+
 	/**
 	 * Constructs a colorSenosr object
 	 * @param redChannel - red analog channel
@@ -66,10 +71,10 @@ public class ColorSensor {
 	 * @param ledChannel - DIO LED channel
 	 */
 	public ColorSensor(int redChannel, int greenChannel, int blueChannel, int ledChannel, String liveSubsystem, String liveName){
-		redAnalogInput = new AnalogInput(redChannel);
-		greenAnalogInput = new AnalogInput(greenChannel);
-		blueAnalogInput = new AnalogInput(blueChannel);
-		lightLED = new DigitalOutput(ledChannel);
+		redAnalogInput = hardware.createAnalogInput(redChannel);
+		greenAnalogInput = hardware.createAnalogInput(greenChannel);
+		blueAnalogInput = hardware.createAnalogInput(blueChannel);
+		lightLED = hardware.createDigitalOutput(ledChannel);
 		lightLED.set(true);
 		useGreen = true;
 		liveWindow(true, liveSubsystem, liveName);
@@ -82,9 +87,9 @@ public class ColorSensor {
 	 * @param ledChannel - DIO LED channel
 	 */
 	public ColorSensor(int redChannel, int blueChannel, int ledChannel, String liveSubsystem, String liveName){
-		redAnalogInput = new AnalogInput(redChannel);
-		blueAnalogInput = new AnalogInput(blueChannel);
-		lightLED = new DigitalOutput(ledChannel);
+		redAnalogInput = hardware.createAnalogInput(redChannel);
+		blueAnalogInput = hardware.createAnalogInput(blueChannel);
+		lightLED = hardware.createDigitalOutput(ledChannel);
 		lightLED.set(true);
 		useGreen = false;
 		liveWindow(false, liveSubsystem, liveName);
@@ -185,9 +190,9 @@ public class ColorSensor {
 	
 	private void liveWindow(boolean hasGreen, String subsystem, String name){
 		if(hasGreen){
-			LiveWindow.addSensor(subsystem, name + " Green Color", greenAnalogInput);
+			hardware.addSensor(subsystem, name + " Green Color", greenAnalogInput);
 		}
-		LiveWindow.addSensor(subsystem, name + "Red Color", redAnalogInput);
-		LiveWindow.addSensor(subsystem, name + " Blue Color", blueAnalogInput);
+		hardware.addSensor(subsystem, name + "Red Color", redAnalogInput);
+		hardware.addSensor(subsystem, name + " Blue Color", blueAnalogInput);
 	}
 }
@@ -1,8 +1,10 @@
 package org.gosparx.team1126.robot.sensors;
 
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.hal.QuadEncoder;
+
 import edu.wpi.first.wpilibj.Counter;
-import edu.wpi.first.wpilibj.Encoder;
-import edu.wpi.first.wpilibj.Utility;
 
 /**
  * Class for obtaining more reliable data from an encoder.
@@ -11,7 +13,7 @@ import edu.wpi.first.wpilibj.Utility;
  * @version 1.5 Pre 2012
  */
 public class EncoderData {
-    private Encoder controlled;
+    private QuadEncoder controlled;
     private Counter counter;
     private double distPerTick;
     private long lastTime;
@@ -20,37 +22,49 @@ public class EncoderData {
     
     private boolean USE_COUNTER;
     
+    /**
+     * Where we get the time from
+     */
+    private final Clock clock = Hardware.get().getClock();
+    
+    /**
+     * The minimum time in microseconds between speed calculations. A little under 20ms so that a loop
+     * running every 20ms still updates when it wakes up slightly early.
+     */
+    private static final long MIN_ELAPSED_TIME = 18000;
+    
     /**
      * Constructor for the EncoderData.
      * @param controlled - the Encoder we wish to obtain accurate speeds for.
      * @param distPerTick - the distance per tick of this particular encoder.
      */
-    public EncoderData(Encoder controlled, double distPerTick){
+    public EncoderData(QuadEncoder controlled, double distPerTick){
         this.controlled = controlled;
         controlled.setDistancePerPulse(distPerTick);
         this.distPerTick = distPerTick;
-        lastTime = Utility.getFPGATime();
+        lastTime = clock.getTime();
         USE_COUNTER = false;
     }
     
     public EncoderData(Counter controlled, double distPerTick){
         this.counter = controlled;
         this.distPerTick = distPerTick;
-        lastTime = Utility.getFPGATime();
+        lastTime = clock.getTime();
         USE_COUNTER = true;
     }
     
     /**
      * Method to accurately calculate speeds based on an encoder.  This routine
      * should be run with a minimum of 20 milliseconds between executions
-     * to allow for enough time to get an accurate speed calculation.
+     * to allow for enough time to get an accurate speed calculation. Calls
+     * less than MIN_ELAPSED_TIME apart are ignored.
      */
     public void calculateSpeed() {
-        long currentTime = Utility.getFPGATime();
+        long currentTime = clock.getTime();
         long encoderCount = USE_COUNTER ? counter.get() : controlled.get();
         long elapsedTime = currentTime - lastTime;
         long deltaCount;
-        if (elapsedTime < 20000)
+        if (elapsedTime < MIN_ELAPSED_TIME)
             return;
         deltaCount = encoderCount - lastEncoderCount;
         lastTime = currentTime;
@@ -84,7 +98,7 @@ public class EncoderData {
         } else {
             controlled.reset();
         }
-        lastTime = Utility.getFPGATime();
+        lastTime = clock.getTime();
         lastEncoderCount =  USE_COUNTER ? counter.get() : controlled.get();
     }
     
@@ -92,6 +106,6 @@ public class EncoderData {
      * @return the time (in seconds) that the encoder has updated its values 
      */
     public double getLastReadingTime(){
-        return Utility.getFPGATime() - lastTime;
+        return clock.getTime() - lastTime;
     }
 }
@@ -1,6 +1,7 @@
 package org.gosparx.team1126.robot.sensors;
 
-import edu.wpi.first.wpilibj.DigitalInput;
+import org.gosparx.team1126.robot.hal.DigitalIn;
+import org.gosparx.team1126.robot.hal.Hardware;
 
 /**
  * A class for interpreting the data from Magnetic Limit Switch
@@ -11,7 +12,7 @@ public class MagnetSensor {
 	/**
 	 * The digital input for the Magnetic Sensor
 	 */
-	public DigitalInput in;
+	public DigitalIn in;
 	
 	/**
 	 * Is the output inversed
@@ -22,7 +23,7 @@ public class MagnetSensor {
 	 * @param dio - The digitalinput the sensor is in
 	 * @param inverse - do we inverse the output
 	 */
-	public MagnetSensor(DigitalInput dio, boolean inverse){
+	public MagnetSensor(DigitalIn dio, boolean inverse){
 		in = dio;
 		inversed = inverse;
 	}
@@ -33,7 +34,7 @@ public class MagnetSensor {
 	 * @param inverse - do we inverse the output
 	 */
 	public MagnetSensor(int port, boolean inverse){
-		this(new DigitalInput(port), inverse);
+		this(Hardware.get().createDigitalInput(port), inverse);
 	}
 
 	/**
@@ -1,6 +1,9 @@
 package org.gosparx.team1126.robot.sensors;
 
-import edu.wpi.first.wpilibj.DriverStation;
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.util.WorldState;
+
 /**
  * Logic of a Proportional Integral Derivative loop. Must be constructed first,
  * then it must receive continual updates in order to receive accurate output
@@ -52,6 +55,11 @@ public class PID {
      * The time since the last run of the PID loop
      */
     private double elapsedtime;
+    
+    /**
+     * Where we get the time from
+     */
+    private final Clock clock = Hardware.get().getClock();
 
     /**
      * Limitless Constructor - initializes PID
@@ -81,7 +89,7 @@ public class PID {
 
         brake_FLAG = fastBrake;
         reverse_FLAG = reversed;
-        lasttime = System.currentTimeMillis();
+        lasttime = clock.getTime() / 1000;
     }
     
     /**
@@ -114,7 +122,7 @@ public class PID {
         this.lowerLimit = lowerLimit;
         brake_FLAG = fastBrake;
         reverse_FLAG = reversed;
-        lasttime = System.currentTimeMillis();
+        lasttime = clock.getTime() / 1000;
     }
     
     /**
@@ -132,7 +140,7 @@ public class PID {
         // interval (either through delays in processing or changes in Sleep
         // time between executions).
         
-        currenttime = System.currentTimeMillis();
+        currenttime = clock.getTime() / 1000;
         elapsedtime = ((double) (currenttime - lasttime)) / 1000.0;
 
         // The brake flag automatically sets the output to zero when the goal
@@ -230,9 +238,10 @@ public class PID {
         updated_FLAG = true;
 
         // Check to see if the robot is disabled.  If so, then zero out the
-        // intgral and output.
+        // intgral and output. Uses this loop's WorldState rather than the
+        // driver station, so it agrees with the rest of the loop.
         
-        if (!DriverStation.getInstance().isEnabled()) {
+        if (!WorldState.current().isEnabled()) {
             integral = 0;
             output = 0;
         }
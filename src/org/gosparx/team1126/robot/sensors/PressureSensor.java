@@ -1,6 +1,7 @@
 package org.gosparx.team1126.robot.sensors;
 
-import edu.wpi.first.wpilibj.AnalogInput;
+import org.gosparx.team1126.robot.hal.AnalogIn;
+import org.gosparx.team1126.robot.hal.Hardware;
 
 /**
  * A class for easily interfacing with the REV-11-1107
@@ -11,7 +12,7 @@ public class PressureSensor {
 	/**
 	 * The analog input that the sensor is on
 	 */
-	private AnalogInput input;
+	private AnalogIn input;
 	
 	/**
 	 * The input voltage provided to the sensor
@@ -39,7 +40,7 @@ public class PressureSensor {
 	 * @param volts The voltage we are providing to the sensor
 	 */
 	public PressureSensor(int in, double volts){
-		input = new AnalogInput(in);
+		input = Hardware.get().createAnalogInput(in);
 		inputVoltage = volts;
 	}
 	
@@ -1,17 +1,19 @@
 package org.gosparx.team1126.robot.subsystem;
 
 import org.gosparx.team1126.robot.IO;
+import org.gosparx.team1126.robot.hal.DigitalIn;
+import org.gosparx.team1126.robot.hal.Motor;
+import org.gosparx.team1126.robot.hal.PowerPanel;
+import org.gosparx.team1126.robot.hal.QuadEncoder;
+import org.gosparx.team1126.robot.hal.SolenoidValve;
 import org.gosparx.team1126.robot.sensors.EncoderData;
 import org.gosparx.team1126.robot.sensors.MagnetSensor;
-
-import edu.wpi.first.wpilibj.CANTalon;
-import edu.wpi.first.wpilibj.DigitalInput;
-import edu.wpi.first.wpilibj.Encoder;
-import edu.wpi.first.wpilibj.PowerDistributionPanel;
-import edu.wpi.first.wpilibj.Solenoid;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.livewindow.LiveWindow;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import org.gosparx.team1126.robot.util.CommandMailbox;
+import org.gosparx.team1126.robot.util.Completion;
+import org.gosparx.team1126.robot.util.DashboardPublisher;
+import org.gosparx.team1126.robot.util.WorldSampler;
+import org.gosparx.team1126.robot.util.WorldState;
+import org.gosparx.team1126.robot.util.WorldState.Channel;
 
 /**
  * Purpose: to acquire/get the balls and then score them or pass them to teammates.
@@ -29,6 +31,11 @@ public class BallAcqNew extends GenericSubsystem{
 	 */
 	private final double DEADBAND = 1;
 
+	/**
+	 * The arm angle that keeps the arms out of the way of scaling
+	 */
+	private static final double SCALE_ARM_ANGLE = 115;
+
 	/**
 	 * Distance per tick
 	 */
@@ -44,6 +51,11 @@ public class BallAcqNew extends GenericSubsystem{
 	 */
 	private static final double WAIT_FIRE_TIME = 2;
 
+	/**
+	 * The time the ball keeper needs to open or close before the flipper moves (in seconds)
+	 */
+	private static final double KEEPER_WAIT_TIME = .25;
+
 	/**
 	 * The power to use when kicking the ball out of the robot
 	 */
@@ -94,6 +106,13 @@ public class BallAcqNew extends GenericSubsystem{
 	 */
 	private static final double RIGHT_ENC_OFFSET = 3;
 
+	/**
+	 * The photo eyes and the flappy on the SmartDashboard, sent at most 10 times a second
+	 */
+	private static final DashboardPublisher.Slot BALL_ENTERED_SLOT = DashboardPublisher.booleanSlot("Ball Entered?", 0.1);
+	private static final DashboardPublisher.Slot BALL_IN_SLOT = DashboardPublisher.booleanSlot("Ball in Flipper?", 0.1);
+	private static final DashboardPublisher.Slot FLAPPY_SLOT = DashboardPublisher.booleanSlot("Flappy Down", 0.1);
+
 	//*****************************Objects*******************
 
 	/**
@@ -124,42 +143,42 @@ public class BallAcqNew extends GenericSubsystem{
 	/**
 	 * the rightmost arm motor
 	 */
-	private CANTalon armMotorRight;
+	private Motor armMotorRight;
 
 	/**
 	 * the leftmost arm motor
 	 */
-	private CANTalon armMotorLeft;
+	private Motor armMotorLeft;
 
 	/**
 	 * the rightmost roller motor
 	 */
-	private CANTalon rollerMotorRight;
+	private Motor rollerMotorRight;
 
 	/**
 	 * the leftmost roller motor
 	 */
-	private CANTalon rollerMotorLeft;
+	private Motor rollerMotorLeft;
 
 	/**
 	 * the solenoid of the flipper
 	 */
-	private Solenoid flipper;
+	private SolenoidValve flipper;
 
 	/**
 	 * the solenoid for the supposed piece to hold the ball
 	 */
-	private Solenoid ballKeeper;
+	private SolenoidValve ballKeeper;
 
 	/**
 	 * the rightmost arm encoder
 	 */
-	private Encoder armEncoderRight;
+	private QuadEncoder armEncoderRight;
 
 	/**
 	 * the leftmost arm encoder
 	 */
-	private Encoder armEncoderLeft;
+	private QuadEncoder armEncoderLeft;
 
 	/**
 	 * the encoder data for the rightmost arm encoder
@@ -194,17 +213,17 @@ public class BallAcqNew extends GenericSubsystem{
 	/**
 	 * the photo electric sensor to see if the ball is in
 	 */
-	private DigitalInput ballEntered;
+	private DigitalIn ballEntered;
 
 	/**
 	 * the photo electric sensor to see if the ball is fully in the robot.
 	 */
-	private DigitalInput ballFullyIn;
+	private DigitalIn ballFullyIn;
 
 	/**
 	 * the power distribution panel
 	 */
-	private PowerDistributionPanel pdp;
+	private PowerPanel pdp;
 
 	//************************Variables*********************
 
@@ -305,6 +324,46 @@ public class BallAcqNew extends GenericSubsystem{
 	private double scaleStartTime = 0;
 	private boolean goToScale = false;
 
+	/**
+	 * Finishes when the arms are done moving
+	 */
+	private Completion completion = new Completion();
+
+	/**
+	 * Samples the arm encoders for us
+	 */
+	private WorldSampler sampler;
+
+	/**
+	 * The sample that was in progress when we last reset the left and right arm encoders. Snapshots from
+	 * before then still have the old distance.
+	 */
+	private long leftArmReset, rightArmReset;
+
+	/**
+	 * When the flipper is done waiting for the ball keeper
+	 */
+	private double flipperWaitEnd;
+
+	/**
+	 * Commands from other threads, carried out at the start of execute()
+	 */
+	private CommandMailbox<Command> mailbox = new CommandMailbox<Command>(Command.class, Command.SET_ARM_POWER);
+
+	/**
+	 * The snapshot for the loop the mailbox is being drained in
+	 */
+	private WorldState world;
+
+	/**
+	 * Carries out the commands from the mailbox
+	 */
+	private CommandMailbox.Handler<Command> handler = new CommandMailbox.Handler<Command>(){
+		public void handle(Command command, double arg0, double arg1){
+			handleCommand(command, arg0);
+		}
+	};
+
 	/**
 	 * constructs a BallAcqNew Object
 	 */
@@ -333,23 +392,36 @@ public class BallAcqNew extends GenericSubsystem{
 		currentFlipperState = FlipperState.STANDBY;
 		currentRollerState = RollerState.STANDBY;
 		currentBallKeeperState = BallKeeperState.STANDBY;
-		armMotorRight = new CANTalon(IO.CAN_ACQ_SHOULDER_R);
-		armMotorLeft = new CANTalon(IO.CAN_ACQ_SHOULDER_L);
-		rollerMotorRight = new CANTalon(IO.CAN_ACQ_ROLLERS_R);
-		rollerMotorLeft = new CANTalon(IO.CAN_ACQ_ROLLERS_L);
-		flipper = new Solenoid(IO.PNU_FLIPPER_RELEASE);
-		ballKeeper = new Solenoid(IO.PNU_FLAPPY);
-		armEncoderRight = new Encoder(IO.DIO_SHOULDER_ENC_RIGHT_A, IO.DIO_SHOULDER_ENC_RIGHT_B);
-		armEncoderLeft = new Encoder(IO.DIO_SHOULDER_ENC_LEFT_A, IO.DIO_SHOULDER_ENC_LEFT_B);
+		armMotorRight = hardware.createCANTalon(IO.CAN_ACQ_SHOULDER_R);
+		armMotorLeft = hardware.createCANTalon(IO.CAN_ACQ_SHOULDER_L);
+		rollerMotorRight = hardware.createCANTalon(IO.CAN_ACQ_ROLLERS_R);
+		rollerMotorLeft = hardware.createCANTalon(IO.CAN_ACQ_ROLLERS_L);
+		flipper = hardware.createSolenoid(IO.PNU_FLIPPER_RELEASE);
+		ballKeeper = hardware.createSolenoid(IO.PNU_FLAPPY);
+		armEncoderRight = hardware.createEncoder(IO.DIO_SHOULDER_ENC_RIGHT_A, IO.DIO_SHOULDER_ENC_RIGHT_B);
+		armEncoderLeft = hardware.createEncoder(IO.DIO_SHOULDER_ENC_LEFT_A, IO.DIO_SHOULDER_ENC_LEFT_B);
 		armEncoderDataR = new EncoderData(armEncoderRight, DISTANCE_PER_TICK);
 		armEncoderDataL = new EncoderData(armEncoderLeft, DISTANCE_PER_TICK);
+		sampler = WorldSampler.getInstance();
+		sampler.addSource(Channel.LEFT_ARM_DISTANCE, new WorldSampler.Source(){
+			public double read(){
+				return armEncoderLeft.getDistance();
+			}
+		});
+		sampler.addSource(Channel.RIGHT_ARM_DISTANCE, new WorldSampler.Source(){
+			public double read(){
+				return armEncoderRight.getDistance();
+			}
+		});
+		leftArmReset = sampler.getStartedSequence();
+		rightArmReset = sampler.getStartedSequence();
 		armHomeSwitchL = new MagnetSensor(IO.DIO_MAG_ACQ_SHOULDER_HOME_L, true);
 		armHomeSwitchR = new MagnetSensor(IO.DIO_MAG_ACQ_SHOULDER_HOME_R, true);
 		armStopSwitchL = new MagnetSensor(IO.DIO_MAG_ACQ_SHOULDER_STOP_L, true);
 		armStopSwitchR = new MagnetSensor(IO.DIO_MAG_ACQ_SHOULDER_STOP_R, true);
-		ballEntered = new DigitalInput(IO.DIO_PHOTO_BALL_ACQ);
-		ballFullyIn = new DigitalInput(IO.DIO_PHOTO_BALL_IN);
-		pdp = new PowerDistributionPanel();
+		ballEntered = hardware.createDigitalInput(IO.DIO_PHOTO_BALL_ACQ);
+		ballFullyIn = hardware.createDigitalInput(IO.DIO_PHOTO_BALL_IN);
+		pdp = hardware.createPowerPanel();
 		wantedArmAngle = 0;
 		timeFired = 0;
 		wantedPowerRR = 0;
@@ -367,6 +439,7 @@ public class BallAcqNew extends GenericSubsystem{
 		fixHomeStarted = false;
 		firstHome = false;
 		startFixHome = 0;
+		completion.arm();
 		return false;
 	}
 
@@ -378,16 +451,16 @@ public class BallAcqNew extends GenericSubsystem{
 		String subsystemName = "BallAcq1";
 		String subsyst = "BallAcq2";
 		String sub = "BallAcq3";
-		LiveWindow.addActuator(subsystemName, "RightArmMotor", armMotorRight);
-		LiveWindow.addActuator(subsystemName, "LeftArmMotor", armMotorLeft);
-		LiveWindow.addActuator(subsystemName, "RightRollerMotor", rollerMotorRight);
-		LiveWindow.addActuator(subsystemName, "LeftRollerMotor", rollerMotorLeft);
-		LiveWindow.addActuator(sub, "RightArmEncoder", armEncoderRight);
-		LiveWindow.addActuator(sub, "LeftArmEncoder", armEncoderLeft);
-		LiveWindow.addActuator(subsyst, "Flipper", flipper);
-		LiveWindow.addActuator(subsyst, "BallKeeperSolenoid", ballKeeper); 
-		LiveWindow.addSensor(subsyst, "BallEnteredSensor", ballEntered);
-		LiveWindow.addSensor(subsyst, "BallFullyInSensor", ballFullyIn);
+		hardware.addActuator(subsystemName, "RightArmMotor", armMotorRight);
+		hardware.addActuator(subsystemName, "LeftArmMotor", armMotorLeft);
+		hardware.addActuator(subsystemName, "RightRollerMotor", rollerMotorRight);
+		hardware.addActuator(subsystemName, "LeftRollerMotor", rollerMotorLeft);
+		hardware.addActuator(sub, "RightArmEncoder", armEncoderRight);
+		hardware.addActuator(sub, "LeftArmEncoder", armEncoderLeft);
+		hardware.addActuator(subsyst, "Flipper", flipper);
+		hardware.addActuator(subsyst, "BallKeeperSolenoid", ballKeeper); 
+		hardware.addSensor(subsyst, "BallEnteredSensor", ballEntered);
+		hardware.addSensor(subsyst, "BallFullyInSensor", ballFullyIn);
 
 	}
 
@@ -396,11 +469,15 @@ public class BallAcqNew extends GenericSubsystem{
 	 * it is what actually makes the robot do things
 	 */
 	@Override
-	protected boolean execute() {
-		leftDistance = armEncoderLeft.getDistance() + LEFT_ENC_OFFSET;
-		rightDistance = -armEncoderRight.getDistance() + RIGHT_ENC_OFFSET;
-		armHomeL = armHomeSwitchL.isTripped() && ds.isEnabled();
-		armHomeR = armHomeSwitchR.isTripped() && ds.isEnabled();
+	protected boolean execute(WorldState world) {
+		long sequence = completion.getArmed();
+		this.world = world;
+		double now = world.getTimestamp();
+		mailbox.drain(handler);
+		leftDistance = (world.getSequence() > leftArmReset ? world.get(Channel.LEFT_ARM_DISTANCE) : 0) + LEFT_ENC_OFFSET;
+		rightDistance = -(world.getSequence() > rightArmReset ? world.get(Channel.RIGHT_ARM_DISTANCE) : 0) + RIGHT_ENC_OFFSET;
+		armHomeL = armHomeSwitchL.isTripped() && world.isEnabled();
+		armHomeR = armHomeSwitchR.isTripped() && world.isEnabled();
 
 		switch(currentArmState){
 		case STANDBY:
@@ -446,6 +523,7 @@ public class BallAcqNew extends GenericSubsystem{
 				armMotorLeft.set(0);
 				wantedArmPowerLeft = 0;
 				armEncoderLeft.reset();
+				leftArmReset = sampler.getStartedSequence();
 				armHomeSetL = true;
 			}else if(!armHomeSetL){
 				if(firstHome){
@@ -462,6 +540,7 @@ public class BallAcqNew extends GenericSubsystem{
 				armMotorRight.set(0);
 				wantedArmPowerRight = 0;
 				armEncoderRight.reset();
+				rightArmReset = sampler.getStartedSequence();
 				armHomeSetR = true;
 			} if(!armHomeSetR){
 				if(firstHome){
@@ -486,13 +565,13 @@ public class BallAcqNew extends GenericSubsystem{
 				wantedArmPowerRight = 0;
 				wantedArmPowerLeft = 0;
 				if(wantedPowerRL != 0 && wantedPowerRR != 0){
-					flappyTime = Timer.getFPGATimestamp();
+					flappyTime = now;
 					flappyDelay = true;
 				}
 			}
 			break;
 		case HOLDING:
-			if(armEncoderDataL.getDistance() < wantedArmAngle){
+			if(leftDistance - LEFT_ENC_OFFSET < wantedArmAngle){
 				wantedArmPowerRight = 0;
 				wantedArmPowerLeft = 0;
 			}else{
@@ -510,7 +589,7 @@ public class BallAcqNew extends GenericSubsystem{
 			if((armHomeL || armHomeR) && !fixHomeStarted){
 				fixHomeStarted = true;
 			}
-			if(fixHomeStarted && startFixHome + .75 < Timer.getFPGATimestamp()){
+			if(fixHomeStarted && startFixHome + .75 < now){
 				LOG.logError("Going to find home: " + leftDistance + " " + rightDistance);
 				wantedArmPowerLeft = 0;
 				wantedArmPowerRight = 0;
@@ -522,18 +601,19 @@ public class BallAcqNew extends GenericSubsystem{
 			wantedArmPowerLeft = -1;
 			wantedArmPowerRight = -1;
 			if(scaleStartTime == 0 && leftDistance > 110 && rightDistance > 110){
-				scaleStartTime = Timer.getFPGATimestamp();
+				scaleStartTime = now;
 			}else if(scaleStartTime == 0){
 				wantedArmPowerLeft = -.7;
 				wantedArmPowerRight = -.7;
 			}
-			if(scaleStartTime != 0 && scaleStartTime + 2.25 <= Timer.getFPGATimestamp()){
+			if(scaleStartTime != 0 && scaleStartTime + 2.25 <= now){
 				wantedArmPowerLeft = 0;
 				wantedArmPowerRight = 0;
 				LOG.logMessage("SCALING BALL ACQ STOPPED! STOPPING MOTORS");
 				goToScale = false;
 				currentArmState = ArmState.STANDBY;
-				afterPushingDown();
+				handleCommand(Command.AFTER_PUSHING_DOWN, 0);
+				completion.arm();
 			}
 			break;
 		default:
@@ -548,9 +628,9 @@ public class BallAcqNew extends GenericSubsystem{
 		case FIRING:
 			if(!firing && ballKeeper.get() == BALL_KEEPER_OPEN){
 				flipper.set(EXTENDED_FLIPPER);
-				timeFired = Timer.getFPGATimestamp();
+				timeFired = now;
 				firing = true;
-			}else if(Timer.getFPGATimestamp() >= timeFired + WAIT_FIRE_TIME && firing){
+			}else if(now >= timeFired + WAIT_FIRE_TIME && firing){
 				flipper.set(CONTRACTED_FLIPPER);
 				firing = false;
 				LOG.logMessage("Succeeded in firing the flipper");
@@ -561,6 +641,23 @@ public class BallAcqNew extends GenericSubsystem{
 		case HOLD_UP:
 			flipper.set(EXTENDED_FLIPPER);
 			break;	
+		case OPENING_TO_FIRE:
+			if(now >= flipperWaitEnd){
+				currentFlipperState = FlipperState.FIRING;
+			}
+			break;
+		case OPENING_TO_HOLD:
+			if(now >= flipperWaitEnd){
+				currentFlipperState = FlipperState.HOLD_UP;
+			}
+			break;
+		case LOWERING:
+			flipper.set(CONTRACTED_FLIPPER);
+			if(now >= flipperWaitEnd){
+				currentBallKeeperState = BallKeeperState.STANDBY;
+				currentFlipperState = FlipperState.STANDBY;
+			}
+			break;
 		default:
 			System.out.println("INVALID STATE: " + currentFlipperState);
 			break;
@@ -596,7 +693,7 @@ public class BallAcqNew extends GenericSubsystem{
 			if(!flappyDelay){
 				ballKeeper.set(BALL_KEEPER_CLOSED);
 			}
-			if(flappyDelay && flappyTime + .5 <= Timer.getFPGATimestamp()){
+			if(flappyDelay && flappyTime + .5 <= now){
 				flappyDelay = false;
 			}
 			break;
@@ -609,14 +706,15 @@ public class BallAcqNew extends GenericSubsystem{
 			System.out.println("INVALID STATE " + currentBallKeeperState);
 			break;
 		}
-		if((armStopSwitchL.isTripped() || armStopSwitchR.isTripped()) && !fixHomeStarted && ds.isEnabled()){
+		if((armStopSwitchL.isTripped() || armStopSwitchR.isTripped()) && !fixHomeStarted && world.isEnabled()){
 			LOG.logMessage("OH NO, WE HIT THE STOP!");
 			fixHomeStarted = true;
 			wantedArmPowerLeft = 0;
 			wantedArmPowerRight = 0;
 			currentArmState = ArmState.FIX_STOP;
 			currentRollerState = RollerState.STANDBY;
-			startFixHome = Timer.getFPGATimestamp();
+			startFixHome = now;
+			completion.arm();
 		}
 
 		wantedPowerRR = (reverseRollers) ? wantedPowerRR * -1: wantedPowerRR;
@@ -625,9 +723,12 @@ public class BallAcqNew extends GenericSubsystem{
 		rollerMotorLeft.set(-wantedPowerRL);
 		armMotorRight.set(-wantedArmPowerRight);
 		armMotorLeft.set(wantedArmPowerLeft);
-		SmartDashboard.putBoolean("Ball Entered?", ballEntered.get());
-		SmartDashboard.putBoolean("Ball in Flipper?", ballFullyIn.get());
-		SmartDashboard.putBoolean("Flappy Down", ballKeeper.get());
+		BALL_ENTERED_SLOT.set(ballEntered.get());
+		BALL_IN_SLOT.set(ballFullyIn.get());
+		FLAPPY_SLOT.set(ballKeeper.get());
+		if(isDone()){
+			completion.complete(sequence);
+		}
 		return false;
 	}
 
@@ -636,10 +737,7 @@ public class BallAcqNew extends GenericSubsystem{
 	 * @param pow the controller input
 	 */
 	public void setArmPower(double pow){
-		if(currentArmState == ArmState.OP_CONTROL){
-			wantedArmPowerLeft = pow;
-			wantedArmPowerRight = pow;
-		}
+		mailbox.post(Command.SET_ARM_POWER, pow);
 	}
 
 	/**
@@ -648,81 +746,55 @@ public class BallAcqNew extends GenericSubsystem{
 	 * sets the arm state for operator control
 	 */
 	public void setOpControl(boolean opControl){
-		currentArmState = (opControl) ? ArmState.OP_CONTROL : ArmState.STANDBY;
+		mailbox.post(Command.SET_OP_CONTROL, opControl ? 1 : 0);
+		completion.arm();
 	}
 
 	/**
 	 * sets the home position
 	 */
 	public void setHome(){
-		currentArmState = ArmState.ROTATE_FINDING_HOME;
-		currentFlipperState = FlipperState.STANDBY;
-		currentRollerState = RollerState.STANDBY;
-		reverseRoller(false);
-		armHomeSetL = false;
-		armHomeSetR = false;
+		mailbox.post(Command.SET_HOME);
+		completion.arm();
 	}
 
 	/**
 	 * home with rollers on
 	 */
 	public void homeRollers(){
-		currentArmState = ArmState.ROTATE_FINDING_HOME;
-		currentRollerState = RollerState.ROLLER_ON;
-		currentBallKeeperState = BallKeeperState.KEEPER_OPEN;
-		reverseRoller(false);
-		armHomeSetL = false;
-		armHomeSetR = false;
+		mailbox.post(Command.HOME_ROLLERS);
+		completion.arm();
 	}
 
 	/**
 	 * acquires the ball from the ground to the flipper
 	 */
 	public void acquireBall(){
-		wantedArmAngle = 84.5;
-		currentArmState = ArmState.ROTATE;
-		currentRollerState = RollerState.ROLLER_ON;
-		currentBallKeeperState = BallKeeperState.KEEPER_OPEN;		
-		reverseRoller(false);
+		mailbox.post(Command.ACQUIRE_BALL);
+		completion.arm();
 	}
 
 	/**
 	 * raise the gate
 	 */
 	public void raiseGate(){
-		wantedArmAngle = 0;
-		currentArmState = ArmState.ROTATE;
-		reverseRoller(false);
-		currentRollerState = RollerState.STANDBY;
+		mailbox.post(Command.RAISE_GATE);
+		completion.arm();
 	}
 
 	/**
 	 * goes to the angle we need to be at when crossing the sally port 
 	 */
 	public void goToSallyPortPosition(){
-		wantedArmAngle = 85;
-		currentArmState = ArmState.ROTATE;
-		currentRollerState = RollerState.STANDBY;
-		flipper.set(CONTRACTED_FLIPPER);
-		flappyDelay = true;
-		flappyTime = Timer.getFPGATimestamp();
-		currentBallKeeperState = BallKeeperState.STANDBY;
-		reverseRoller(false);
+		mailbox.post(Command.SALLY_PORT);
+		completion.arm();
 	}
 	/**
 	 * moves to low bar position
 	 */
 	public void goToLowBarPosition(){
-		wantedArmAngle = 115;
-		currentArmState = ArmState.ROTATE;
-		currentFlipperState = FlipperState.STANDBY;
-		currentRollerState = RollerState.STANDBY;
-		flipper.set(CONTRACTED_FLIPPER);
-		firing = false;
-		flappyTime = Timer.getFPGATimestamp();
-		flappyDelay = true;
-		currentBallKeeperState = BallKeeperState.STANDBY;
-		reverseRoller(false);
+		mailbox.post(Command.LOW_BAR);
+		completion.arm();
 	}
 
 	/**
@@ -730,15 +802,10 @@ public class BallAcqNew extends GenericSubsystem{
 	 * @return true if the arms are out of the way, false if they are in the way
 	 */
 	public boolean moveToScale(){
-		wantedArmAngle = 115;
-		currentArmState = ArmState.ROTATE;
-		currentRollerState = RollerState.STANDBY;
-		flappyDelay = true;
-		flappyTime = Timer.getFPGATimestamp();
-		currentBallKeeperState = BallKeeperState.STANDBY;
-		reverseRoller(false);
-		if(averageArmDistance > wantedArmAngle - DEADBAND && 
-				averageArmDistance < wantedArmAngle + DEADBAND){
+		mailbox.post(Command.MOVE_TO_SCALE);
+		completion.arm();
+		if(averageArmDistance > SCALE_ARM_ANGLE - DEADBAND && 
+				averageArmDistance < SCALE_ARM_ANGLE + DEADBAND){
 			return true;
 		}else
 			return false;
@@ -748,14 +815,8 @@ public class BallAcqNew extends GenericSubsystem{
 	 * is called after the arms are pushed to set the values to what we want them to be 
 	 */
 	public void afterPushingDown(){
-		wantedArmAngle = 15;
-		currentArmState = ArmState.ROTATE;
-		currentRollerState = RollerState.STANDBY;
-		flipper.set(CONTRACTED_FLIPPER);
-		flappyDelay = true;
-		flappyTime = Timer.getFPGATimestamp();
-		currentBallKeeperState = BallKeeperState.STANDBY;
-		reverseRoller(false);
+		mailbox.post(Command.AFTER_PUSHING_DOWN);
+		completion.arm();
 	}
 	
 	/**
@@ -763,63 +824,221 @@ public class BallAcqNew extends GenericSubsystem{
 	 * @return true if the flipper fires and false if the flipper is already firing
 	 */
 	public boolean fire(){
-		currentBallKeeperState = BallKeeperState.KEEPER_OPEN;
-		Timer.delay(.25);
-		currentFlipperState = FlipperState.FIRING;
+		mailbox.post(Command.FIRE);
 		return true;
 	}
 
 	/**
 	 * Toggles roller.
-	 * @return true if the roller is on, false if the roller is off
+	 * @return true if the roller will be on, false if the roller will be off
 	 */
 	public boolean toggleRoller(){
-		if(currentRollerState == RollerState.ROLLER_ON){
-			currentRollerState = RollerState.STANDBY;
-			return false;
-		}else{
-			currentRollerState = RollerState.ROLLER_ON;
-			return true;
-		}
+		boolean on = currentRollerState != RollerState.ROLLER_ON;
+		mailbox.post(Command.TOGGLE_ROLLER);
+		return on;
 	}
 
 	/**
 	 * Reverses roller.
 	 */
 	public void reverseRoller(){
-		reverseRollers = !reverseRollers;
+		mailbox.post(Command.TOGGLE_REVERSE_ROLLER);
 	}
 
 	/**
 	 * Set the reverse of the rollers
 	 */
 	public void reverseRoller(boolean rev){
-		reverseRollers = rev;
+		mailbox.post(Command.SET_REVERSE_ROLLER, rev ? 1 : 0);
 	}
 
 	/**
 	 * manually toggle flappy
 	 */
 	public void toggleFlappy(){	
-		currentBallKeeperState = BallKeeperState.MANUAL;
-		ballKeeper.set(ballKeeper.get() == BALL_KEEPER_OPEN ? BALL_KEEPER_CLOSED : BALL_KEEPER_OPEN);
+		mailbox.post(Command.TOGGLE_FLAPPY);
 	}
 
 	/**
 	 * stops the entire system
 	 */
 	public void stopAll(){
-		currentArmState = ArmState.STANDBY;
-		currentBallKeeperState = BallKeeperState.STANDBY;
-		flipper.set(CONTRACTED_FLIPPER);
-		currentFlipperState = FlipperState.STANDBY;
-		currentRollerState = RollerState.STANDBY;
-		reverseRoller(false);
+		mailbox.post(Command.STOP_ALL);
+		completion.arm();
+	}
+
+	/**
+	 * Carries out a command from the mailbox, on our thread
+	 * @param command the command
+	 * @param arg0 the argument, booleans are 1 for true
+	 */
+	private void handleCommand(Command command, double arg0){
+		switch(command){
+		case SET_ARM_POWER:
+			if(currentArmState == ArmState.OP_CONTROL){
+				wantedArmPowerLeft = arg0;
+				wantedArmPowerRight = arg0;
+			}
+			break;
+		case SET_OP_CONTROL:
+			currentArmState = (arg0 != 0) ? ArmState.OP_CONTROL : ArmState.STANDBY;
+			break;
+		case SET_HOME:
+			currentArmState = ArmState.ROTATE_FINDING_HOME;
+			currentFlipperState = FlipperState.STANDBY;
+			currentRollerState = RollerState.STANDBY;
+			reverseRollers = false;
+			armHomeSetL = false;
+			armHomeSetR = false;
+			break;
+		case HOME_ROLLERS:
+			currentArmState = ArmState.ROTATE_FINDING_HOME;
+			currentRollerState = RollerState.ROLLER_ON;
+			currentBallKeeperState = BallKeeperState.KEEPER_OPEN;
+			reverseRollers = false;
+			armHomeSetL = false;
+			armHomeSetR = false;
+			break;
+		case ACQUIRE_BALL:
+			wantedArmAngle = 84.5;
+			currentArmState = ArmState.ROTATE;
+			currentRollerState = RollerState.ROLLER_ON;
+			currentBallKeeperState = BallKeeperState.KEEPER_OPEN;		
+			reverseRollers = false;
+			break;
+		case RAISE_GATE:
+			wantedArmAngle = 0;
+			currentArmState = ArmState.ROTATE;
+			reverseRollers = false;
+			currentRollerState = RollerState.STANDBY;
+			break;
+		case SALLY_PORT:
+			wantedArmAngle = 85;
+			currentArmState = ArmState.ROTATE;
+			currentRollerState = RollerState.STANDBY;
+			flipper.set(CONTRACTED_FLIPPER);
+			flappyDelay = true;
+			flappyTime = world.getTimestamp();
+			currentBallKeeperState = BallKeeperState.STANDBY;
+			reverseRollers = false;
+			break;
+		case LOW_BAR:
+			wantedArmAngle = 115;
+			currentArmState = ArmState.ROTATE;
+			currentFlipperState = FlipperState.STANDBY;
+			currentRollerState = RollerState.STANDBY;
+			flipper.set(CONTRACTED_FLIPPER);
+			firing = false;
+			flappyTime = world.getTimestamp();
+			flappyDelay = true;
+			currentBallKeeperState = BallKeeperState.STANDBY;
+			reverseRollers = false;
+			break;
+		case MOVE_TO_SCALE:
+			wantedArmAngle = SCALE_ARM_ANGLE;
+			currentArmState = ArmState.ROTATE;
+			currentRollerState = RollerState.STANDBY;
+			flappyDelay = true;
+			flappyTime = world.getTimestamp();
+			currentBallKeeperState = BallKeeperState.STANDBY;
+			reverseRollers = false;
+			break;
+		case AFTER_PUSHING_DOWN:
+			wantedArmAngle = 15;
+			currentArmState = ArmState.ROTATE;
+			currentRollerState = RollerState.STANDBY;
+			flipper.set(CONTRACTED_FLIPPER);
+			flappyDelay = true;
+			flappyTime = world.getTimestamp();
+			currentBallKeeperState = BallKeeperState.STANDBY;
+			reverseRollers = false;
+			break;
+		case FIRE:
+			// Held triggers keep sending this, so don't start over while already firing
+			if(currentFlipperState != FlipperState.OPENING_TO_FIRE && currentFlipperState != FlipperState.FIRING){
+				currentBallKeeperState = BallKeeperState.KEEPER_OPEN;
+				flipperWaitEnd = world.getTimestamp() + KEEPER_WAIT_TIME;
+				currentFlipperState = FlipperState.OPENING_TO_FIRE;
+			}
+			break;
+		case TOGGLE_ROLLER:
+			if(currentRollerState == RollerState.ROLLER_ON){
+				currentRollerState = RollerState.STANDBY;
+			}else{
+				currentRollerState = RollerState.ROLLER_ON;
+			}
+			break;
+		case TOGGLE_REVERSE_ROLLER:
+			reverseRollers = !reverseRollers;
+			break;
+		case SET_REVERSE_ROLLER:
+			reverseRollers = arg0 != 0;
+			break;
+		case TOGGLE_FLAPPY:
+			currentBallKeeperState = BallKeeperState.MANUAL;
+			ballKeeper.set(ballKeeper.get() == BALL_KEEPER_OPEN ? BALL_KEEPER_CLOSED : BALL_KEEPER_OPEN);
+			break;
+		case STOP_ALL:
+			currentArmState = ArmState.STANDBY;
+			currentBallKeeperState = BallKeeperState.STANDBY;
+			flipper.set(CONTRACTED_FLIPPER);
+			currentFlipperState = FlipperState.STANDBY;
+			currentRollerState = RollerState.STANDBY;
+			reverseRollers = false;
+			break;
+		case FLIPPER_SCALE:
+			currentBallKeeperState = BallKeeperState.KEEPER_OPEN;
+			flipperWaitEnd = world.getTimestamp() + KEEPER_WAIT_TIME;
+			currentFlipperState = FlipperState.OPENING_TO_HOLD;
+			break;
+		case FLIPPER_DOWN:
+			flipperWaitEnd = world.getTimestamp() + KEEPER_WAIT_TIME;
+			currentFlipperState = FlipperState.LOWERING;
+			break;
+		case SCALE:
+			currentArmState = ArmState.SCALE;
+			break;
+		default:
+			LOG.logError("Unknown command: " + command);
+			break;
+		}
+	}
+
+	/**
+	 * The commands other threads can send to ball acq
+	 */
+	private enum Command{
+		SET_ARM_POWER,
+		SET_OP_CONTROL,
+		SET_HOME,
+		HOME_ROLLERS,
+		ACQUIRE_BALL,
+		RAISE_GATE,
+		SALLY_PORT,
+		LOW_BAR,
+		MOVE_TO_SCALE,
+		AFTER_PUSHING_DOWN,
+		FIRE,
+		TOGGLE_ROLLER,
+		TOGGLE_REVERSE_ROLLER,
+		SET_REVERSE_ROLLER,
+		TOGGLE_FLAPPY,
+		STOP_ALL,
+		FLIPPER_SCALE,
+		FLIPPER_DOWN,
+		SCALE;
 	}
 
 	public boolean isDone(){
 		return currentArmState == ArmState.HOLDING || currentArmState == ArmState.STANDBY || (currentArmState == ArmState.SCALE && scaleStartTime != 0);
 	}
+
+	/**
+	 * @return a Completion that finishes when the arms are done moving, see isDone()
+	 */
+	public Completion getCompletion(){
+		return completion;
+	}
 	/**
 	 * time to rest the system between loops
 	 */
@@ -832,15 +1051,14 @@ public class BallAcqNew extends GenericSubsystem{
 	 * moves flipper to scaling
 	 */
 	public void flipperScale(){
-		currentBallKeeperState = BallKeeperState.KEEPER_OPEN;
-		Timer.delay(.25);
-		currentFlipperState = FlipperState.HOLD_UP;
+		mailbox.post(Command.FLIPPER_SCALE);
 	}
 
+	/**
+	 * moves flipper down from scaling, then closes the keeper
+	 */
 	public void flipperDown(){
-		currentFlipperState = FlipperState.STANDBY;
-		Timer.delay(.25);
-		currentBallKeeperState = BallKeeperState.STANDBY;
+		mailbox.post(Command.FLIPPER_DOWN);
 	}
 
 	/**
@@ -863,6 +1081,7 @@ public class BallAcqNew extends GenericSubsystem{
 		LOG.logMessage("The Arm Right Degrees: " + -armEncoderDataR.getDistance());
 		LOG.logMessage("Arm Stop L: " + armStopSwitchL.isTripped());
 		LOG.logMessage("Arm Stop R: " + armStopSwitchR.isTripped());
+		LOG.logMessage("Command latency p99 (us): " + mailbox.getLatency().getPercentile(99) + " max: " + mailbox.getLatency().getMax() + " dropped: " + mailbox.getDropped());
 	}
 
 	/**
@@ -910,8 +1129,11 @@ public class BallAcqNew extends GenericSubsystem{
 	 */
 	public enum FlipperState{
 		STANDBY,
+		OPENING_TO_FIRE,
 		FIRING,
-		HOLD_UP;
+		OPENING_TO_HOLD,
+		HOLD_UP,
+		LOWERING;
 
 		/**
 		 * Gets the name of the state
@@ -924,8 +1146,14 @@ public class BallAcqNew extends GenericSubsystem{
 				return "The flipper is in Standby";
 			case FIRING:
 				return "The flipper is firing";
+			case OPENING_TO_FIRE:
+				return "The flipper is waiting for the keeper to fire";
 			case HOLD_UP:
 				return "The flipper is being held up";
+			case OPENING_TO_HOLD:
+				return "The flipper is waiting for the keeper to hold up";
+			case LOWERING:
+				return "The flipper is lowering";
 			default:
 				return "Error :( The flipper is in " + this;
 			}
@@ -984,6 +1212,7 @@ public class BallAcqNew extends GenericSubsystem{
 	}
 
 	public void scale(){
-		currentArmState = ArmState.SCALE;
+		mailbox.post(Command.SCALE);
+		completion.arm();
 	}
 }
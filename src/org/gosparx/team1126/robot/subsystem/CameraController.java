@@ -3,12 +3,8 @@ package org.gosparx.team1126.robot.subsystem;
 import java.util.ArrayList;
 
 import org.gosparx.team1126.robot.IO;
-
-import com.ni.vision.NIVision;
-import com.ni.vision.NIVision.Image;
-
-import edu.wpi.first.wpilibj.CameraServer;
-import edu.wpi.first.wpilibj.vision.USBCamera;
+import org.gosparx.team1126.robot.hal.Camera;
+import org.gosparx.team1126.robot.util.WorldState;
 
 /**
  * A class for controlling multiple USBCameras at once.
@@ -21,15 +17,10 @@ public class CameraController extends GenericSubsystem {
 	 */
 	private static CameraController camera;
 
-	/**
-	 * The image to push to the CameraServer
-	 */
-	private Image frame;
-
 	/**
 	 * The list of all attached cameras
 	 */
-	private ArrayList<USBCamera> cams;
+	private ArrayList<Camera> cams;
 
 	/**
 	 * The index of the current camera we are looking at
@@ -44,7 +35,7 @@ public class CameraController extends GenericSubsystem {
 	/**
 	 * The current camera we are viewing.
 	 */
-	private USBCamera cam;
+	private Camera cam;
 
 	/**
 	 * The maximum fps for all of the cameras
@@ -57,9 +48,19 @@ public class CameraController extends GenericSubsystem {
 	private final int QUALITY = 10;
 	
 	/**
-	 * Time to sleep after changing camera views. This is to prevent errors as USBCamera.startCapture() returns before it is ready to be seen 
+	 * Time to wait after changing camera views before grabbing images, in seconds. This is to prevent errors as USBCamera.startCapture() returns before it is ready to be seen 
+	 */
+	private final double SWITCH_WAIT_TIME = .1;
+
+	/**
+	 * Set by switchCamera(), the switch itself happens on our thread
 	 */
-	private final long SLEEP_TIME = 100;
+	private volatile boolean switchRequested;
+
+	/**
+	 * The time the current camera is ready to be seen
+	 */
+	private double cameraReadyTime;
 
 	/**
 	 * Singleton
@@ -84,16 +85,13 @@ public class CameraController extends GenericSubsystem {
 	 */
 	@Override
 	protected boolean init() {
-		cams = new ArrayList<USBCamera>();
-		frame = NIVision.imaqCreateImage(NIVision.ImageType.IMAGE_RGB, 0);
+		cams = new ArrayList<Camera>();
 		currCam = 0;
-		CameraServer.getInstance().setQuality(QUALITY);
 		for(String s: IO.CAMS){
 			addCamera(s);
 		}
 		cam = cams.get(currCam);
-		cam.openCamera();
-		cam.startCapture();
+		cam.start();
 		return true;
 	}
 
@@ -101,10 +99,14 @@ public class CameraController extends GenericSubsystem {
 	 * runs every sleepTime() ms
 	 */
 	@Override
-	protected boolean execute() {
+	protected boolean execute(WorldState world) {
 		if(!isKilled){
-			cams.get(currCam).getImage(frame);
-			CameraServer.getInstance().setImage(frame);
+			if(switchRequested){
+				switchRequested = false;
+				changeCamera(world);
+			}else if(world.getTimestamp() >= cameraReadyTime){
+				cams.get(currCam).sendFrame();
+			}
 		}
 		return isKilled;
 	}
@@ -114,25 +116,28 @@ public class CameraController extends GenericSubsystem {
 	 * @param camName The name of the camera
 	 */
 	private void addCamera(String camName){
-		USBCamera temp = new USBCamera(camName);
-		temp.setFPS(MAX_FPS);
-		cams.add(temp);
-		temp = null;
+		cams.add(hardware.createCamera(camName, MAX_FPS, QUALITY));
 	}
 
 	/**
-	 * Switch to the next camera in our ArrayList
+	 * Switch to the next camera in our ArrayList. Returns straight away, the camera switches on our next loop.
 	 */
 	public void switchCamera(){
+		switchRequested = true;
+	}
+
+	/**
+	 * Stops the current camera and starts the next one
+	 * @param world the snapshot for this loop
+	 */
+	private void changeCamera(WorldState world){
 		try{
-			cam.stopCapture();
-			cam.closeCamera();
+			cam.stop();
 			currCam++;
 			currCam %= cams.size();
 			cam = cams.get(currCam);
-			cam.openCamera();
-			cam.startCapture();
-			Thread.sleep(SLEEP_TIME);
+			cam.start();
+			cameraReadyTime = world.getTimestamp() + SWITCH_WAIT_TIME;
 		}catch(Exception e){
 			e.printStackTrace();
 			isKilled = true;
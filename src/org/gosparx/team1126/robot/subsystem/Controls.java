@@ -2,12 +2,11 @@ package org.gosparx.team1126.robot.subsystem;
 
 import org.gosparx.team1126.robot.IO;
 import org.gosparx.team1126.robot.subsystem.BallAcqNew;
+import org.gosparx.team1126.robot.subsystem.SubsystemScheduler.Stage;
 import org.gosparx.team1126.robot.util.AdvancedJoystick;
 import org.gosparx.team1126.robot.util.AdvancedJoystick.ButtonEvent;
 import org.gosparx.team1126.robot.util.AdvancedJoystick.JoystickListener;
-
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
+import org.gosparx.team1126.robot.util.WorldState;
 
 /**
  * A class for controlling the inputs from controls.
@@ -46,11 +45,6 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 	 */
 	private static CameraController camCont;
 
-	/**
-	 * The instance of driver station
-	 */
-	private static DriverStation ds;
-
 	/**
 	 * Support for singleton
 	 */
@@ -149,7 +143,7 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 		driverLeft.addButton(NEW_JOY_TRIGGER);
 		driverLeft.addButton(NEW_JOY_RIGHT);
 		driverLeft.addButton(NEW_JOY_MIDDLE);
-		driverLeft.start();
+		SubsystemScheduler.launch(driverLeft, Stage.INPUT);
 
 		driverRight = new AdvancedJoystick("Driver Right", IO.USB_DRIVER_RIGHT,4,DEADBAND);
 		driverRight.addActionListener(this);
@@ -157,7 +151,7 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 		driverRight.addButton(NEW_JOY_MIDDLE);
 		driverRight.addButton(NEW_JOY_RIGHT);
 		driverRight.addButton(NEW_JOY_TRIGGER);
-		driverRight.start();
+		SubsystemScheduler.launch(driverRight, Stage.INPUT);
 
 		opJoy = new AdvancedJoystick("Operator Joy", IO.USB_OPERATOR, 10, 0.25);
 		opJoy.addActionListener(this);
@@ -171,7 +165,7 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 		opJoy.addButton(XBOX_A);
 		opJoy.addButton(XBOX_X);
 		opJoy.addButton(XBOX_Y);
-		opJoy.start();
+		SubsystemScheduler.launch(opJoy, Stage.INPUT);
 
 		leftPower = 0;
 		rightPower = 0;
@@ -179,7 +173,6 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 		opControlPrev = false;
 		holdFirstPrev = false;
 		drives = Drives.getInstance();
-		ds = DriverStation.getInstance();
 		ballAcq = BallAcqNew.getInstance();
 		camCont = CameraController.getInstance();
 		scales = ScalingNew.getInstance();
@@ -199,8 +192,8 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 	 * Loops, controls drives
 	 */
 	@Override
-	protected boolean execute() {
-		if(ds.isOperatorControl()){
+	protected boolean execute(WorldState world) {
+		if(world.isOperatorControl()){
 			leftPower = driverLeft.getAxis(NEW_JOY_Y_AXIS);
 			rightPower = driverRight.getAxis(NEW_JOY_Y_AXIS);
 			if(manScale)
@@ -235,7 +228,7 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 				ballAcq.setArmPower((-opJoy.getAxis(XBOX_RIGHT_Y))/3);
 			}
 			
-			if(Timer.getFPGATimestamp() > drawbridgeStart + DRAWBRIDGE_TIME){
+			if(world.getTimestamp() > drawbridgeStart + DRAWBRIDGE_TIME){
 				ballAcq.goToLowBarPosition();
 				drawbridgeStart = Double.MAX_VALUE;
 			}
@@ -268,7 +261,8 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 	}
 
 	public void actionPerformed(ButtonEvent e) {
-		if(ds.isOperatorControl()){
+		WorldState world = WorldState.current();
+		if(world.isOperatorControl()){
 			switch(e.getPort()){
 			case IO.USB_OPERATOR:
 				switch(e.getID()){
@@ -296,7 +290,7 @@ public class Controls extends GenericSubsystem implements JoystickListener{
 				case XBOX_X:
 					//DRAWBRIDGE
 					if(e.isRising()){
-						drawbridgeStart = Timer.getFPGATimestamp();
+						drawbridgeStart = world.getTimestamp();
 						ballAcq.setHome();
 						LOG.logMessage("OP Button: Draw bridge");
 					}
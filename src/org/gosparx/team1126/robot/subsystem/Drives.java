@@ -1,17 +1,21 @@
 package org.gosparx.team1126.robot.subsystem;
 
 import org.gosparx.team1126.robot.IO;
+import org.gosparx.team1126.robot.hal.Gyro;
+import org.gosparx.team1126.robot.hal.Motor;
+import org.gosparx.team1126.robot.hal.QuadEncoder;
+import org.gosparx.team1126.robot.hal.SolenoidValve;
 import org.gosparx.team1126.robot.sensors.EncoderData;
+import org.gosparx.team1126.robot.util.CommandMailbox;
+import org.gosparx.team1126.robot.util.Completion;
+import org.gosparx.team1126.robot.util.DashboardPublisher;
+import org.gosparx.team1126.robot.util.Logger;
+import org.gosparx.team1126.robot.util.Telemetry;
+import org.gosparx.team1126.robot.util.WorldSampler;
+import org.gosparx.team1126.robot.util.WorldState;
+import org.gosparx.team1126.robot.util.WorldState.Channel;
 
 
-import edu.wpi.first.wpilibj.Encoder;
-import edu.wpi.first.wpilibj.Solenoid;
-import edu.wpi.first.wpilibj.AnalogGyro;
-import edu.wpi.first.wpilibj.CANTalon;
-import edu.wpi.first.wpilibj.DigitalInput;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.livewindow.LiveWindow;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /**
  * This class is intended to drive the robot in tank drive
@@ -31,29 +35,29 @@ public class Drives extends GenericSubsystem{
 	/**
 	 * the controller to the right front motor
 	 */
-	private CANTalon rightFront;
+	private Motor rightFront;
 
 	/**
 	 * the controller to the right back motor
 	 */
-	private CANTalon rightBack;
+	private Motor rightBack;
 
 	/**
 	 * the controller to the left front motor
 	 */
-	private CANTalon leftFront;
+	private Motor leftFront;
 
 	/**
 	 * the controller to the left back motor
 	 */
-	private CANTalon leftBack;
+	private Motor leftBack;
 
 	//*********************PNEUMATICS****************************
 
 	/**
 	 * the solenoid to shift between high and low gear
 	 */
-	private Solenoid shiftingSol;
+	private SolenoidValve shiftingSol;
 
 	/**
 	 * the solenoid used to engage and disengage the pto
@@ -62,25 +66,15 @@ public class Drives extends GenericSubsystem{
 
 	//*********************SENSORS************************
 
-	/**
-	 * 
-	 */
-	private DigitalInput leftA;
-
-	/**
-	 * 
-	 */
-	private DigitalInput leftB;
-
 	/**
 	 * Used to get the distance the robot has traveled for the left drives 
 	 */
-	private Encoder encoderLeft;
+	private QuadEncoder encoderLeft;
 
 	/**
 	 * Used to get the distance the robot has traveled for the right drives
 	 */
-	private Encoder encoderRight;
+	private QuadEncoder encoderRight;
 
 	/**
 	 * makes the left encoder data which calculates how far the robot traveled in inches
@@ -95,7 +89,7 @@ public class Drives extends GenericSubsystem{
 	/**
 	 * gyro used to keep ourselves align and to turn in Auto
 	 */
-	private AnalogGyro angleGyro;
+	private Gyro angleGyro;
 
 	//*********************CONSTANTS**********************
 
@@ -117,6 +111,16 @@ public class Drives extends GenericSubsystem{
 	 */
 	private static final double UPPER_SHIFTING_SPEED = 45;
 
+	/**
+	 * the time to let the angle gyro settle after resetting it before turning, in seconds
+	 */
+	private static final double GYRO_SETTLE_TIME = .25;
+
+	/**
+	 * the time to wait after the hooks are hooked before winching, in seconds
+	 */
+	private static final double HOOK_WAIT_TIME = .15;
+
 	/**
 	 * the time required to pause for shifting in seconds, not accurate yet, in seconds
 	 */
@@ -177,6 +181,35 @@ public class Drives extends GenericSubsystem{
 	 */
 	private static final double AUTO_DRIVE_RAMPING = 31.0/500.0;
 
+	/**
+	 * Logged every loop: the powers sent to the motors and the speeds of each side
+	 */
+	private static final int POWERS_EVENT = Logger.traceEvent("Powers (left, right): %f, %f Speeds (left, right): %f, %f");
+
+	/**
+	 * Logged every loop of AUTO_DRIVE: how far we want to go, how fast, and how far each side has gone
+	 */
+	private static final int AUTO_DRIVE_EVENT = Logger.traceEvent("Auto drive wanted %f at %f traveled (left, right): %f, %f");
+
+	/**
+	 * Recorded every loop: the powers we want, the powers the motors have, the speeds of each side in
+	 * inches per second, and the ordinals of the DriveState and AutoState
+	 */
+	private static final int WANTED_LEFT_CHANNEL = Telemetry.doubleChannel("Drives.WantedLeftPower");
+	private static final int WANTED_RIGHT_CHANNEL = Telemetry.doubleChannel("Drives.WantedRightPower");
+	private static final int ACTUAL_LEFT_CHANNEL = Telemetry.doubleChannel("Drives.ActualLeftPower");
+	private static final int ACTUAL_RIGHT_CHANNEL = Telemetry.doubleChannel("Drives.ActualRightPower");
+	private static final int LEFT_SPEED_CHANNEL = Telemetry.doubleChannel("Drives.LeftSpeed");
+	private static final int RIGHT_SPEED_CHANNEL = Telemetry.doubleChannel("Drives.RightSpeed");
+	private static final int DRIVE_STATE_CHANNEL = Telemetry.intChannel("Drives.DriveState");
+	private static final int AUTO_STATE_CHANNEL = Telemetry.intChannel("Drives.AutoState");
+
+	/**
+	 * The speed of each side on the SmartDashboard, sent at most 10 times a second
+	 */
+	private static final DashboardPublisher.Slot LEFT_SPEED_SLOT = DashboardPublisher.numberSlot("Left Drives Speed", 0.1);
+	private static final DashboardPublisher.Slot RIGHT_SPEED_SLOT = DashboardPublisher.numberSlot("Right Drives Speed", 0.1);
+
 	//*********************VARIABLES**********************
 
 	/**
@@ -338,7 +371,7 @@ public class Drives extends GenericSubsystem{
 	/**
 	 * The gyro that measures tilt.
 	 */
-	private AnalogGyro tiltGyro;
+	private Gyro tiltGyro;
 
 	/*****************************************END AUTO DEF*************************************/
 	/**
@@ -375,6 +408,51 @@ public class Drives extends GenericSubsystem{
 	
 	private double scalingStartTime;
 
+	/**
+	 * Finishes when the current auto function is done
+	 */
+	private Completion autoCompletion = new Completion();
+
+	/**
+	 * Samples the encoders and gyros for us
+	 */
+	private WorldSampler sampler;
+
+	/**
+	 * The sample that was in progress when we last reset the drive encoders, the angle gyro and the tilt
+	 * gyro. Snapshots from before then still have the old values.
+	 */
+	private volatile long encoderReset, angleGyroReset, tiltGyroReset;
+
+	/**
+	 * The time the angle gyro will have settled after its last reset
+	 */
+	private double gyroSettledTime;
+
+	/**
+	 * The time the hooks were first seen hooked, Double.MAX_VALUE if they aren't
+	 */
+	private double hookedTime = Double.MAX_VALUE;
+
+	/**
+	 * Commands from other threads, carried out at the start of execute()
+	 */
+	private CommandMailbox<Command> mailbox = new CommandMailbox<Command>(Command.class, Command.SET_POWER, Command.MANUAL_SCALE);
+
+	/**
+	 * The snapshot for the loop the mailbox is being drained in
+	 */
+	private WorldState world;
+
+	/**
+	 * Carries out the commands from the mailbox
+	 */
+	private CommandMailbox.Handler<Command> handler = new CommandMailbox.Handler<Command>(){
+		public void handle(Command command, double arg0, double arg1){
+			handleCommand(command, arg0, arg1);
+		}
+	};
+
 	/**
 	 * Creates a drives with normal priority
 	 */
@@ -400,37 +478,58 @@ public class Drives extends GenericSubsystem{
 	protected boolean init() {
 
 		//RIGHT
-		rightFront = new CANTalon(IO.CAN_DRIVES_RIGHT_FRONT);
-		rightBack = new CANTalon(IO.CAN_DRIVES_RIGHT_BACK);
+		rightFront = hardware.createCANTalon(IO.CAN_DRIVES_RIGHT_FRONT);
+		rightBack = hardware.createCANTalon(IO.CAN_DRIVES_RIGHT_BACK);
 		//TODO:: real robot has it A, B.
-		encoderRight = new Encoder(IO.DIO_RIGHT_DRIVES_ENC_A,IO.DIO_RIGHT_DRIVES_ENC_B);
+		encoderRight = hardware.createEncoder(IO.DIO_RIGHT_DRIVES_ENC_A,IO.DIO_RIGHT_DRIVES_ENC_B);
 		//encoderRight = new Encoder(IO.DIO_RIGHT_DRIVES_ENC_B,IO.DIO_RIGHT_DRIVES_ENC_A);
 		encoderDataRight = new EncoderData(encoderRight,DISTANCE_PER_TICK);
 		//LEFT
-		leftBack = new CANTalon(IO.CAN_DRIVES_LEFT_BACK);
+		leftBack = hardware.createCANTalon(IO.CAN_DRIVES_LEFT_BACK);
 		leftBack.setInverted(true);
-		leftFront = new CANTalon(IO.CAN_DRIVES_LEFT_FRONT);
+		leftFront = hardware.createCANTalon(IO.CAN_DRIVES_LEFT_FRONT);
 		leftFront.setInverted(true);
 		//TODO:: same as right encoder
-		//encoderLeft = new Encoder(IO.DIO_LEFT_DRIVES_ENC_A,IO.DIO_LEFT_DRIVES_ENC_B);
-		leftA = new DigitalInput(IO.DIO_LEFT_DRIVES_ENC_A);
-		leftB = new DigitalInput(IO.DIO_LEFT_DRIVES_ENC_B);
-		encoderLeft = new Encoder(leftA, leftB);
+		encoderLeft = hardware.createEncoder(IO.DIO_LEFT_DRIVES_ENC_A,IO.DIO_LEFT_DRIVES_ENC_B);
 		//encoderLeft = new Encoder(IO.DIO_LEFT_DRIVES_ENC_B,IO.DIO_LEFT_DRIVES_ENC_A);
 		encoderDataLeft = new EncoderData(encoderLeft,-DISTANCE_PER_TICK);
 		//OTHER
-		angleGyro = new AnalogGyro(IO.ANALOG_IN_ANGLE_GYRO);
+		angleGyro = hardware.createAnalogGyro(IO.ANALOG_IN_ANGLE_GYRO);
 		angleGyro.calibrate();
 		wantedLeftPower = 0;
 		wantedRightPower = 0;
 		currentDriveState = DriveState.IN_LOW_GEAR;
-		shiftingSol = new Solenoid(IO.PNU_SHIFTER);
+		shiftingSol = hardware.createSolenoid(IO.PNU_SHIFTER);
 		//		ptoSol = new Solenoid(IO.PNU_PTO);
 		autoState = AutoState.AUTO_STANDBY;
 		currentScaleState = ScalingState.SCALING_STANDBY;
 		defState = AutoState.AUTO_DEF;
-		tiltGyro = new AnalogGyro(IO.ANALOG_IN_TILT_GYRO);
+		tiltGyro = hardware.createAnalogGyro(IO.ANALOG_IN_TILT_GYRO);
 		tiltGyro.calibrate();
+		sampler = WorldSampler.getInstance();
+		sampler.addSource(Channel.LEFT_DRIVE_DISTANCE, new WorldSampler.Source(){
+			public double read(){
+				return encoderDataLeft.getDistance();
+			}
+		});
+		sampler.addSource(Channel.RIGHT_DRIVE_DISTANCE, new WorldSampler.Source(){
+			public double read(){
+				return encoderDataRight.getDistance();
+			}
+		});
+		sampler.addSource(Channel.ANGLE_GYRO, new WorldSampler.Source(){
+			public double read(){
+				return angleGyro.getAngle();
+			}
+		});
+		sampler.addSource(Channel.TILT_GYRO, new WorldSampler.Source(){
+			public double read(){
+				return tiltGyro.getAngle();
+			}
+		});
+		encoderReset = sampler.getStartedSequence();
+		angleGyroReset = sampler.getStartedSequence();
+		tiltGyroReset = sampler.getStartedSequence();
 		scaling = Scaling.getInstance(); 
 		scale = false;
 		holdFirst = false;
@@ -445,16 +544,16 @@ public class Drives extends GenericSubsystem{
 	protected void liveWindow() {
 		String subsystemMotorName = "DrivesMotors";
 		String subsystemSensorName = "DrivesSensors";
-		LiveWindow.addSensor(subsystemSensorName, "RightEncoder", encoderRight);
-		LiveWindow.addSensor(subsystemSensorName, "LeftEncoder", encoderLeft);
-		LiveWindow.addSensor(subsystemSensorName, "angleGyro", angleGyro);
-		LiveWindow.addSensor(subsystemSensorName, "tiltGyro", tiltGyro);
-		LiveWindow.addActuator(subsystemMotorName, "Shifting", shiftingSol);
-		//	LiveWindow.addActuator(subsystemMotorName, "ptoSol", ptoSol);
-		LiveWindow.addActuator(subsystemMotorName, "RightFrontMotor", rightFront);
-		LiveWindow.addActuator(subsystemMotorName, "RightBackMotor", rightBack);
-		LiveWindow.addActuator(subsystemMotorName, "LeftFrontMotor", leftFront);
-		LiveWindow.addActuator(subsystemMotorName, "LeftBackMotor", leftBack);
+		hardware.addSensor(subsystemSensorName, "RightEncoder", encoderRight);
+		hardware.addSensor(subsystemSensorName, "LeftEncoder", encoderLeft);
+		hardware.addSensor(subsystemSensorName, "angleGyro", angleGyro);
+		hardware.addSensor(subsystemSensorName, "tiltGyro", tiltGyro);
+		hardware.addActuator(subsystemMotorName, "Shifting", shiftingSol);
+		//	hardware.addActuator(subsystemMotorName, "ptoSol", ptoSol);
+		hardware.addActuator(subsystemMotorName, "RightFrontMotor", rightFront);
+		hardware.addActuator(subsystemMotorName, "RightBackMotor", rightBack);
+		hardware.addActuator(subsystemMotorName, "LeftFrontMotor", leftFront);
+		hardware.addActuator(subsystemMotorName, "LeftBackMotor", leftBack);
 	}
 
 	/**
@@ -462,7 +561,11 @@ public class Drives extends GenericSubsystem{
 	 * is what actually makes the robot do things
 	 */
 	@Override
-	protected boolean execute() {
+	protected boolean execute(WorldState world) {
+		long autoSequence = autoCompletion.getArmed();
+		this.world = world;
+		double now = world.getTimestamp();
+		mailbox.drain(handler);
 		//TODO: look for negations for encoder and drives motors
 		wantedLeftPower = controlsLeftPower;
 		wantedRightPower = controlsRightPower;
@@ -480,7 +583,7 @@ public class Drives extends GenericSubsystem{
 					if((toggleShift)){
 						System.out.println("SHIFTING HIGH TOGGLE!");
 						toggleShift = false;
-						shiftingTime = Timer.getFPGATimestamp();
+						shiftingTime = now;
 						currentDriveState = DriveState.SHIFTING_HIGH;
 						if(currentSpeedAvg > 0 && Math.abs((wantedLeftPower + wantedRightPower) / 2) > SHIFTING_POWER){
 							wantedLeftPower = (SHIFTING_POWER * -1);
@@ -491,10 +594,10 @@ public class Drives extends GenericSubsystem{
 						}
 					}
 				}else{
-					if((Math.abs(currentSpeedAvg)>= UPPER_SHIFTING_SPEED && shiftStartTime + SHIFT_MIN_BETWEEN < Timer.getFPGATimestamp()) && !scale){
+					if((Math.abs(currentSpeedAvg)>= UPPER_SHIFTING_SPEED && shiftStartTime + SHIFT_MIN_BETWEEN < now) && !scale){
 						System.out.println("SHIFTING HIGH!");
-						shiftingTime = Timer.getFPGATimestamp();
-						shiftStartTime = Timer.getFPGATimestamp();
+						shiftingTime = now;
+						shiftStartTime = now;
 						currentDriveState = DriveState.SHIFTING_HIGH;
 						if(currentSpeedAvg > 0 && Math.abs((wantedLeftPower + wantedRightPower) / 2) > SHIFTING_POWER){
 							wantedLeftPower = (SHIFTING_POWER * -1);
@@ -519,7 +622,7 @@ public class Drives extends GenericSubsystem{
 					wantedRightPower = (SHIFTING_POWER);
 				}
 			}
-			if(Timer.getFPGATimestamp() >= shiftingTime + SHIFTING_TIME){
+			if(now >= shiftingTime + SHIFTING_TIME){
 				currentDriveState = DriveState.IN_HIGH_GEAR;
 			}
 
@@ -530,7 +633,7 @@ public class Drives extends GenericSubsystem{
 				if(toggleShift){
 					System.out.println("SHIFTING LOW TOGGLE!");
 					toggleShift = false;
-					shiftingTime = Timer.getFPGATimestamp();
+					shiftingTime = now;
 					currentDriveState = DriveState.SHIFTING_LOW;
 					if(currentSpeedAvg > 0 && Math.abs((wantedLeftPower + wantedRightPower) / 2) > SHIFTING_POWER){
 						wantedLeftPower = (SHIFTING_POWER * -1);
@@ -541,10 +644,10 @@ public class Drives extends GenericSubsystem{
 					}
 				}
 			}else{
-				if(Math.abs(currentSpeedAvg) <= LOWER_SHIFTING_SPEED && shiftStartTime + SHIFT_MIN_BETWEEN < Timer.getFPGATimestamp() || holdFirst || scale){
+				if(Math.abs(currentSpeedAvg) <= LOWER_SHIFTING_SPEED && shiftStartTime + SHIFT_MIN_BETWEEN < now || holdFirst || scale){
 					System.out.println("SHIFTING LOW!");
-					shiftingTime = Timer.getFPGATimestamp();
-					shiftStartTime = Timer.getFPGATimestamp();
+					shiftingTime = now;
+					shiftStartTime = now;
 					currentDriveState = DriveState.SHIFTING_LOW;
 					if(currentSpeedAvg > 0 && Math.abs((wantedLeftPower + wantedRightPower) / 2) > SHIFTING_POWER){
 						wantedLeftPower = (SHIFTING_POWER * -1);
@@ -568,7 +671,7 @@ public class Drives extends GenericSubsystem{
 					wantedRightPower = (SHIFTING_POWER);
 				}
 			}
-			if(Timer.getFPGATimestamp() >= shiftingTime + SHIFTING_POWER){
+			if(now >= shiftingTime + SHIFTING_POWER){
 				currentDriveState = DriveState.IN_LOW_GEAR;
 			}
 			break;
@@ -579,19 +682,15 @@ public class Drives extends GenericSubsystem{
 		case AUTO_STANDBY:
 			break;
 		case AUTO_DRIVE:
-			traveledLeftDistanceAuto = Math.abs(encoderDataLeft.getDistance());
-			traveledRightDistanceAuto = Math.abs(encoderDataRight.getDistance());
+			traveledLeftDistanceAuto = Math.abs(sinceReset(world, Channel.LEFT_DRIVE_DISTANCE, encoderReset));
+			traveledRightDistanceAuto = Math.abs(sinceReset(world, Channel.RIGHT_DRIVE_DISTANCE, encoderReset));
 			currentAutoDist = (traveledLeftDistanceAuto + traveledRightDistanceAuto)/2;
 			// FIXME: Extract 1/8 into constant
 			if(!scale){
 				wantedAutoSpeed = (AUTO_DRIVE_RAMPING)*(Math.sqrt(Math.abs(wantedAutoDist - currentAutoDist)));
 				wantedAutoSpeed = wantedAutoSpeed > .7 ? .7: wantedAutoSpeed;
 				wantedAutoSpeed = wantedAutoSpeed < MIN_AUTO_DRIVE_SPEED ? MIN_AUTO_DRIVE_SPEED: wantedAutoSpeed;
-				//			LOG.logMessage("wantedAutoDist " + wantedAutoDist);
-				//			LOG.logMessage("currentAutoDist " + currentAutoDist);
-				//			LOG.logMessage("wantedAutoSpeed " + wantedAutoSpeed);
-				//			LOG.logMessage("traveledLeftDistanceAuto " + traveledLeftDistanceAuto);
-				//			LOG.logMessage("traveledRightDistanceAuto " + traveledRightDistanceAuto);
+				LOG.logEvent(AUTO_DRIVE_EVENT, wantedAutoDist, wantedAutoSpeed, traveledLeftDistanceAuto, traveledRightDistanceAuto);
 
 				if(Math.abs(traveledLeftDistanceAuto-traveledRightDistanceAuto) < MAX_OFF_DISTANCE_AUTO){
 					wantedLeftPower = wantedAutoSpeed;
@@ -616,7 +715,7 @@ public class Drives extends GenericSubsystem{
 					wantedLeftPower = -wantedLeftPower;
 				}
 			}else{
-				if(scalingStartTime + .25 <= Timer.getFPGATimestamp()){
+				if(scalingStartTime + .25 <= now){
 					wantedLeftPower = 1;
 					wantedRightPower = 1;
 				}else{
@@ -640,7 +739,13 @@ public class Drives extends GenericSubsystem{
 			break;
 
 		case AUTO_TURN:
-			double currentAngle = angleGyro.getAngle();
+			if(now < gyroSettledTime){
+				// The gyro was just reset, give it time to settle before turning
+				wantedRightPower = STOP_MOTOR;
+				wantedLeftPower = STOP_MOTOR;
+				break;
+			}
+			double currentAngle = sinceReset(world, Channel.ANGLE_GYRO, angleGyroReset);
 			double angleDiff = Math.abs(turnDegreesAuto - currentAngle);
 			double speed = angleDiff > 10 ? .75 : .25;//angleDiff > turnDegreesAuto*.2 ? .75 : .15;
 
@@ -666,7 +771,7 @@ public class Drives extends GenericSubsystem{
 				System.out.println("AUTO_REACH_DEF");
 				wantedLeftPower = REACH_SPEED;
 				wantedRightPower = REACH_SPEED;
-				if(tiltGyro.getAngle() > -RAMP_ANGLE){
+				if(sinceReset(world, Channel.TILT_GYRO, tiltGyroReset) > -RAMP_ANGLE){
 					defState = AutoState.AUTO_CROSS_DEF;
 					System.out.println("Reached the def");
 				}
@@ -674,7 +779,7 @@ public class Drives extends GenericSubsystem{
 			case AUTO_CROSS_DEF:
 				wantedLeftPower = CROSS_SPEED;
 				wantedRightPower = CROSS_SPEED;
-				if(tiltGyro.getAngle() < RAMP_ANGLE){
+				if(sinceReset(world, Channel.TILT_GYRO, tiltGyroReset) < RAMP_ANGLE){
 					defState = AutoState.AUTO_COME_DOWN;
 					System.out.println("Crossed the def");
 				}
@@ -682,7 +787,7 @@ public class Drives extends GenericSubsystem{
 			case AUTO_COME_DOWN:
 				wantedLeftPower = COME_DOWN_SPEED;
 				wantedRightPower = COME_DOWN_SPEED;
-				if(tiltGyro.getAngle() > FLAT_TOL){
+				if(sinceReset(world, Channel.TILT_GYRO, tiltGyroReset) > FLAT_TOL){
 					defState = AutoState.AUTO_REACH_DEF;
 					autoState = AutoState.AUTO_STANDBY;
 					System.out.println("On the other side");
@@ -704,20 +809,25 @@ public class Drives extends GenericSubsystem{
 			if(scaling.hooked()){
 				//ptoSol.set(true);
 				//TODO: Set to low gear
-				Timer.delay(.15);
-				if(wantToScale){
+				if(hookedTime == Double.MAX_VALUE){
+					hookedTime = now;
+				}
+				if(wantToScale && now >= hookedTime + HOOK_WAIT_TIME){
 					if(scaleOpControl){
 						currentScaleState = ScalingState.MANUAL_SCALING_SCALING;
 					}else{
 						currentScaleState = ScalingState.SCALING_SCALING;
 					}
+					hookedTime = Double.MAX_VALUE;
 				}
+			}else{
+				hookedTime = Double.MAX_VALUE;
 			}
 			break;
 		}
 		case SCALING_SCALING:
-			traveledLeftDistanceScale = Math.abs(encoderDataLeft.getDistance());
-			traveledRightDistanceScale = Math.abs(encoderDataRight.getDistance());
+			traveledLeftDistanceScale = Math.abs(sinceReset(world, Channel.LEFT_DRIVE_DISTANCE, encoderReset));
+			traveledRightDistanceScale = Math.abs(sinceReset(world, Channel.RIGHT_DRIVE_DISTANCE, encoderReset));
 			currentScaleDist = (traveledLeftDistanceScale + traveledRightDistanceScale)/2;	
 			wantedWinchInPower = (.8/10)*(Math.sqrt(Math.abs(wantedWinchInDistance - currentScaleDist)));
 			wantedWinchInPower = wantedWinchInPower > 1 ? 1: wantedWinchInPower;
@@ -742,8 +852,8 @@ public class Drives extends GenericSubsystem{
 			}
 			break; 
 		case MANUAL_SCALING_SCALING:
-			traveledLeftDistanceScale = Math.abs(encoderDataLeft.getDistance());
-			traveledRightDistanceScale = Math.abs(encoderDataRight.getDistance());
+			traveledLeftDistanceScale = Math.abs(sinceReset(world, Channel.LEFT_DRIVE_DISTANCE, encoderReset));
+			traveledRightDistanceScale = Math.abs(sinceReset(world, Channel.RIGHT_DRIVE_DISTANCE, encoderReset));
 			currentScaleDist = (traveledLeftDistanceScale + traveledRightDistanceScale)/2;				
 			wantedRightPower = wantedWinchInPower;
 			wantedLeftPower = wantedWinchInPower;
@@ -765,7 +875,7 @@ public class Drives extends GenericSubsystem{
 				scalingDone = true;
 				currentScaleState = ScalingState.SCALING_STANDBY;
 			}
-
+			break;
 		default: LOG.logError("Were are in this state for scaling: " + currentScaleState);
 		break;
 		}
@@ -780,14 +890,25 @@ public class Drives extends GenericSubsystem{
 			wantedRightPower = wantedWinchInPower;
 		}
 
-		SmartDashboard.putNumber("Left Drives Speed", currentLeftSpeed);
-		SmartDashboard.putNumber("Right Drives Speed", currentRightSpeed);
+		LEFT_SPEED_SLOT.set(currentLeftSpeed);
+		RIGHT_SPEED_SLOT.set(currentRightSpeed);
 		leftFront.set(wantedLeftPower);
 		leftBack.set(wantedLeftPower);
 		rightFront.set(wantedRightPower);
 		rightBack.set(wantedRightPower);
+		LOG.logEvent(POWERS_EVENT, wantedLeftPower, wantedRightPower, currentLeftSpeed, currentRightSpeed);
+		Telemetry.put(WANTED_LEFT_CHANNEL, wantedLeftPower);
+		Telemetry.put(WANTED_RIGHT_CHANNEL, wantedRightPower);
+		Telemetry.put(ACTUAL_LEFT_CHANNEL, leftFront.get());
+		Telemetry.put(ACTUAL_RIGHT_CHANNEL, rightFront.get());
+		Telemetry.put(LEFT_SPEED_CHANNEL, currentLeftSpeed);
+		Telemetry.put(RIGHT_SPEED_CHANNEL, currentRightSpeed);
+		Telemetry.put(DRIVE_STATE_CHANNEL, currentDriveState.ordinal());
+		Telemetry.put(AUTO_STATE_CHANNEL, autoState.ordinal());
+		if(autoState == AutoState.AUTO_STANDBY){
+			autoCompletion.complete(autoSequence);
+		}
 		//System.out.println("Left:  " + -encoderDataLeft.getDistance() + "                         " + "Right:  " + encoderDataRight.getDistance());
-		//System.out.println("Left A input" + leftA.get() + " Left B input " + leftB.get());
 		return false;
 	}
 
@@ -805,13 +926,14 @@ public class Drives extends GenericSubsystem{
 	 */
 	@Override
 	protected void writeLog() {
-		LOG.logMessage("The wanted powers are (left, right): " + wantedLeftPower + ", " + wantedRightPower);
-		LOG.logMessage("The speeds are (left, right): " + currentLeftSpeed +", " + currentRightSpeed);
-		LOG.logMessage("We are currently in this state-------- " + currentDriveState);
-		LOG.logMessage("Left:  " + encoderDataLeft.getDistance() + "                         " + "Right:  " + encoderDataRight.getDistance());
-		LOG.logMessage("The current winch in distance left is " + (Math.abs(wantedWinchInDistance) - Math.abs(currentScaleDist)));
-		LOG.logMessage("We are currently in this Scaling state-------- " + currentScaleState);
-		LOG.logMessage("We are currently in this auto state************ " + autoState);
+		LOG.logMessage("The wanted powers are (left, right): %s, %s", wantedLeftPower, wantedRightPower);
+		LOG.logMessage("The speeds are (left, right): %s, %s", currentLeftSpeed, currentRightSpeed);
+		LOG.logMessage("We are currently in this state-------- %s", currentDriveState);
+		LOG.logMessage("Left:  %s                         Right:  %s", encoderDataLeft.getDistance(), encoderDataRight.getDistance());
+		LOG.logMessage("The current winch in distance left is %s", Math.abs(wantedWinchInDistance) - Math.abs(currentScaleDist));
+		LOG.logMessage("We are currently in this Scaling state-------- %s", currentScaleState);
+		LOG.logMessage("We are currently in this auto state************ %s", autoState);
+		LOG.logMessage("Command latency p99 (us): %s max: %s dropped: %s", mailbox.getLatency().getPercentile(99), mailbox.getLatency().getMax(), mailbox.getDropped());
 		//		System.out.println("The wanted powers are (left, right): " + wantedLeftPower + ", " + wantedRightPower);
 		//		System.out.println("The speeds are (left, right): " + currentLeftSpeed +", " + currentRightSpeed);
 		//		System.out.println("Speed Average: " + currentSpeedAvg);
@@ -831,11 +953,117 @@ public class Drives extends GenericSubsystem{
 	 * @param right the right joystick input from -1 to 1
 	 */
 	public void setPower(double left, double right) {
-		if(currentDriveState != DriveState.SHIFTING_HIGH && currentDriveState != DriveState.SHIFTING_LOW){
-			controlsLeftPower = left;
-			controlsRightPower = right;
+		mailbox.post(Command.SET_POWER, left, right);
+	}
+
+	/**
+	 * Carries out a command from the mailbox, on our thread
+	 * @param command the command
+	 * @param arg0 the first argument, booleans are 1 for true
+	 * @param arg1 the second argument
+	 */
+	private void handleCommand(Command command, double arg0, double arg1){
+		switch(command){
+		case SET_POWER:
+			if(currentDriveState != DriveState.SHIFTING_HIGH && currentDriveState != DriveState.SHIFTING_LOW){
+				controlsLeftPower = arg0;
+				controlsRightPower = arg1;
+			}
+			break;
+		case MANUAL_SCALE:
+			// Sets the wanted power like it always has, which the rest of execute() replaces
+			wantedLeftPower = arg0;
+			wantedRightPower = arg0;
+			break;
+		case HOLD_FIRST:
+			holdFirst = arg0 != 0;
+			break;
+		case KILL_AUTO_DRIVE:
+			autoState = AutoState.AUTO_STANDBY;
+			break;
+		case DRIVE_DISTANCE:
+			encoderLeft.reset();
+			encoderRight.reset();
+			encoderReset = sampler.getStartedSequence();
+			wantedAutoDist = ((Math.abs(encoderDataLeft.getDistance()) + Math.abs(encoderDataRight.getDistance())) / 2) + arg0;
+			autoState = AutoState.AUTO_DRIVE;
+			break;
+		case TURN:
+			angleGyro.reset();
+			angleGyroReset = sampler.getStartedSequence();
+			gyroSettledTime = world.getTimestamp() + GYRO_SETTLE_TIME;
+			turnDegreesAuto = arg0;
+			autoState = AutoState.AUTO_TURN;
+			break;
+		case AUTO_ESTOP:
+			autoState = AutoState.AUTO_STANDBY;
+			currentDriveState = DriveState.IN_LOW_GEAR;
+			currentScaleState = ScalingState.SCALING_STANDBY;
+			wantedLeftPower = STOP_MOTOR;
+			wantedRightPower = STOP_MOTOR;
+			break;
+		case START_AUTO_DEF:
+			autoState = AutoState.AUTO_DEF;
+			defState = AutoState.AUTO_REACH_DEF;
+			tiltGyro.reset();
+			tiltGyroReset = sampler.getStartedSequence();
+			break;
+		case SCALE_WINCH:
+			currentScaleState = ScalingState.SCALING_HOOKS;
+			wantedWinchInDistance = arg0;
+			engagePto = true;
+			break;
+		case DRIVER_SHIFTING:
+			driverShift = !driverShift;
+			break;
+		case TOGGLE_SHIFTING:
+			toggleShift = true;
+			break;
+		case MANUAL_PTO:
+			engagePto = !engagePto;
+			scaleOpControl = !engagePto;
+			currentScaleState = scaleOpControl == false ? ScalingState.SCALING_STANDBY :ScalingState.SCALING_HOOKS;
+			break;
+		case BEGIN_SCALING:
+			wantToScale = !wantToScale;
+			break;
+		case ESTOP_SCALING:
+			wantedWinchInPower = STOP_MOTOR;
+			currentScaleState = ScalingState.SCALING_STANDBY;
+			break;
+		case SCALE:
+			wantedAutoDist = 36 * 6;
+			scale = true;
+			scalingStartTime = world.getTimestamp();
+			autoState = AutoState.AUTO_DRIVE;
+			break;
+		default:
+			LOG.logError("Unknown command: " + command);
+			break;
 		}
 	}
+
+	/**
+	 * The commands other threads can send to drives
+	 */
+	private enum Command{
+		SET_POWER,
+		MANUAL_SCALE,
+		HOLD_FIRST,
+		KILL_AUTO_DRIVE,
+		DRIVE_DISTANCE,
+		TURN,
+		AUTO_ESTOP,
+		START_AUTO_DEF,
+		SCALE_WINCH,
+		DRIVER_SHIFTING,
+		TOGGLE_SHIFTING,
+		MANUAL_PTO,
+		BEGIN_SCALING,
+		ESTOP_SCALING,
+		SCALE;
+	}
+
 	/**
 	 *Makes the states for drives
 	 */
@@ -934,16 +1162,25 @@ public class Drives extends GenericSubsystem{
 		}
 	}
 
+	/**
+	 * Gets a sensor value from a snapshot, ignoring snapshots taken before the sensor was reset.
+	 * @param world the snapshot
+	 * @param channel the sensor
+	 * @param reset the sample that was in progress when the sensor was reset
+	 * @return the value, or 0 if the snapshot is from before the reset
+	 */
+	private double sinceReset(WorldState world, Channel channel, long reset){
+		return world.getSequence() > reset ? world.get(channel) : 0;
+	}
+
 	/**
 	 * drives the robot to a certain distance
 	 * @param length: the length you want it to go
 	 * @param speed: the speed you want it to go
 	 */
 	public void driveWantedDistance(double length){
-		encoderLeft.reset();
-		encoderRight.reset();
-		wantedAutoDist = ((Math.abs(encoderDataLeft.getDistance()) + Math.abs(encoderDataRight.getDistance())) / 2) + length;
-		autoState = AutoState.AUTO_DRIVE;
+		mailbox.post(Command.DRIVE_DISTANCE, length);
+		autoCompletion.arm();
 	}
 
 	/**
@@ -952,10 +1189,8 @@ public class Drives extends GenericSubsystem{
 	 */
 	public void turn(double angle){
 		System.out.println("were are going to turn: " + angle);
-		angleGyro.reset();
-		Timer.delay(.25);
-		turnDegreesAuto = angle;
-		autoState = AutoState.AUTO_TURN;
+		mailbox.post(Command.TURN, angle);
+		autoCompletion.arm();
 	}
 
 	/**
@@ -965,24 +1200,27 @@ public class Drives extends GenericSubsystem{
 		return autoState == AutoState.AUTO_STANDBY;
 	}
 
+	/**
+	 * @return a Completion that finishes when the current auto function is done, meant for waiting on
+	 * driveWantedDistance(), turn(), returnToZero(), startAutoDef() and scale().
+	 */
+	public Completion getAutoCompletion(){
+		return autoCompletion;
+	}
+
 	/**
 	 * stops everything in drives and puts auto in standby
 	 */
 	public void autoEStop(){
-		autoState = AutoState.AUTO_STANDBY;
-		currentDriveState = DriveState.IN_LOW_GEAR;
-		currentScaleState = ScalingState.SCALING_STANDBY;
-		wantedLeftPower = STOP_MOTOR;
-		wantedRightPower = STOP_MOTOR;
+		mailbox.post(Command.AUTO_ESTOP);
 	}
 
 	/**
 	 * called to set the auto state to auto defense
 	 */
 	public void startAutoDef(){
-		autoState = AutoState.AUTO_DEF;
-		defState = AutoState.AUTO_REACH_DEF;
-		tiltGyro.reset();
+		mailbox.post(Command.START_AUTO_DEF);
+		autoCompletion.arm();
 		System.out.println("AUTO DEFFFFFFFFFFFFFFFFFFFFFF");
 	}
 
@@ -992,9 +1230,7 @@ public class Drives extends GenericSubsystem{
 	 * @param winchInPower= the power to winch in
 	 */
 	public void scaleWinch(double distanceToScale) {
-		currentScaleState = ScalingState.SCALING_HOOKS;
-		wantedWinchInDistance = distanceToScale;
-		engagePto = true;
+		mailbox.post(Command.SCALE_WINCH, distanceToScale);
 	}
 
 	/**
@@ -1013,23 +1249,21 @@ public class Drives extends GenericSubsystem{
 	 * if called, lets the driver manually shift
 	 */
 	public void driverShifting(){
-		driverShift = !driverShift;
+		mailbox.post(Command.DRIVER_SHIFTING);
 	}
 
 	/**
 	 * called to manually shift up or down
 	 */
 	public void toggleShifting(){
-		toggleShift = true;
+		mailbox.post(Command.TOGGLE_SHIFTING);
 	}
 
 	/**
 	 * If called, will either engage or disengage the pto depending on it's previous state, toggle on off
 	 */
 	public void manualPtoEngage(){
-		engagePto = !engagePto;
-		scaleOpControl = !engagePto;
-		currentScaleState = scaleOpControl == false ? ScalingState.SCALING_STANDBY :ScalingState.SCALING_HOOKS;
+		mailbox.post(Command.MANUAL_PTO);
 	}
 
 	/**
@@ -1037,8 +1271,7 @@ public class Drives extends GenericSubsystem{
 	 * @param power the power that the joystick is giving 
 	 */
 	public void manualScale(double power){
-		wantedLeftPower = power;
-		wantedRightPower = power;
+		mailbox.post(Command.MANUAL_SCALE, power);
 	}
 
 	/**
@@ -1046,39 +1279,35 @@ public class Drives extends GenericSubsystem{
 	 */
 	public void beginScaling(){
 		//youre cute :)
-		wantToScale = !wantToScale;
+		mailbox.post(Command.BEGIN_SCALING);
 	}
 
 	/**
 	 * called to emergency stop the scaling, will not retract the winch
 	 */
 	public void eStopScaling(){
-		wantedWinchInPower = STOP_MOTOR;
 		//ptoSol.set(false);
-		currentScaleState = ScalingState.SCALING_STANDBY;
+		mailbox.post(Command.ESTOP_SCALING);
 	}
 
 	public void holdFirst(boolean newVal){
-		holdFirst = newVal;
+		mailbox.post(Command.HOLD_FIRST, newVal ? 1 : 0);
 	}
 
 	public void killAutoDrive(){
-		autoState = AutoState.AUTO_STANDBY;
+		mailbox.post(Command.KILL_AUTO_DRIVE);
 	}
 
 	public void returnToZero(){
-		if(Math.abs(angleGyro.getAngle()) > 5){
-			turnDegreesAuto = -angleGyro.getAngle();
-			angleGyro.reset();
-			Timer.delay(.25);
-			autoState = AutoState.AUTO_TURN;
+		double angle = angleGyro.getAngle();
+		if(Math.abs(angle) > 5){
+			mailbox.post(Command.TURN, -angle);
+			autoCompletion.arm();
 		}
 	}
 
 	public void scale(){
-		wantedAutoDist = 36 * 6;
-		scale = true;
-		scalingStartTime = Timer.getFPGATimestamp(); 
-		autoState = AutoState.AUTO_DRIVE;
+		mailbox.post(Command.SCALE);
+		autoCompletion.arm();
 	}
 }
\ No newline at end of file
@@ -2,11 +2,16 @@ package org.gosparx.team1126.robot.subsystem;
 
 import java.security.InvalidParameterException;
 
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.DriverStationState;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.util.DashboardPublisher;
 import org.gosparx.team1126.robot.util.Logger;
-
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import org.gosparx.team1126.robot.util.LoopStats;
+import org.gosparx.team1126.robot.util.LoopStats.Phase;
+import org.gosparx.team1126.robot.util.LoopTimer;
+import org.gosparx.team1126.robot.util.LoopTimer.OverrunPolicy;
+import org.gosparx.team1126.robot.util.WorldState;
 
 /**
  * This class is designed to be the base class of all the subsystems on the
@@ -23,10 +28,15 @@ public abstract class GenericSubsystem extends Thread {
 	 */
 	protected Logger LOG;
 
+	/**
+	 * Where the subsystem gets its devices from, real or simulated
+	 */
+	protected Hardware hardware;
+
 	/**
 	 * An instance of driverstation
 	 */
-	protected DriverStation ds;
+	protected DriverStationState ds;
 
 	/**
 	 * This constructs a new subsystem with the given name and priority.
@@ -44,7 +54,10 @@ public abstract class GenericSubsystem extends Thread {
 		if(name != "LogWriter"){
 			LOG = new Logger(name);
 		}
-		ds = DriverStation.getInstance();
+		hardware = Hardware.get();
+		ds = hardware.getDriverStation();
+		stats = new LoopStats(name);
+		statusSlot = DashboardPublisher.booleanSlot(name, STATUS_PERIOD);
 	}
 
 	/**
@@ -62,10 +75,12 @@ public abstract class GenericSubsystem extends Thread {
 	/**
 	 * Once start is called, this method is called until it returns true.
 	 * 
+	 * @param world the snapshot for this loop. Use it rather than WorldState.current(), which can move
+	 *        on part way through the loop.
 	 * @return true if execution has complete and we do not need the method
 	 *         restarted, false otherwise.
 	 */
-	abstract protected boolean execute();
+	abstract protected boolean execute(WorldState world);
 
 	/**
 	 * The amount of time you want to sleep for after a cycle.
@@ -74,6 +89,13 @@ public abstract class GenericSubsystem extends Thread {
 	 */
 	abstract protected long sleepTime();
 
+	/**
+	 * What to do when execute() runs past the start of the next loop.
+	 * 
+	 * @return SKIP to drop the missed loops, CATCH_UP to run them back to back.
+	 */
+	protected OverrunPolicy overrunPolicy() { return OverrunPolicy.SKIP; }
+
 	/**
 	 * The amount of time between calling writeLog().
 	 * 
@@ -87,51 +109,173 @@ public abstract class GenericSubsystem extends Thread {
 	abstract protected void writeLog();
 
 	public boolean isWorking = true;
+
+	/**
+	 * The shortest time between sending isWorking to the SmartDashboard, in seconds
+	 */
+	private static final double STATUS_PERIOD = 0.5;
+
+	/**
+	 * Where isWorking is shown on the SmartDashboard
+	 */
+	private final DashboardPublisher.Slot statusSlot;
+
 	/**
 	 * Is the subsystem Working?
 	 */
 	private void updateSmartStatus(){
-		SmartDashboard.putBoolean(getName(), isWorking);
+		statusSlot.set(isWorking);
 	}
 
 	/**
-	 * Runs and loops the execute() until execute returns false, logging ever logTime() seconds.
+	 * The last time writeLog() was called.
+	 */
+	private double lastLogged = 0;
+
+	/**
+	 * Keeps run() looping every sleepTime() milliseconds
+	 */
+	private volatile LoopTimer loopTimer;
+
+	/**
+	 * What run() sleeps with, made by start() so the Clock counts us before the thread runs
+	 */
+	private Clock.Sleeper sleeper;
+
+	/**
+	 * The number of overruns we have already logged
+	 */
+	private long loggedOverruns = 0;
+
+	/**
+	 * Timing of execute() and of the loop
+	 */
+	private LoopStats stats;
+
+	/**
+	 * The last exception thrown by execute(), so its stack trace is only printed once while it keeps
+	 * happening. null once execute() works again.
+	 */
+	private String lastException;
+
+	/**
+	 * Runs and loops the execute() until execute returns false, logging ever logTime() seconds. Each loop
+	 * starts sleepTime() milliseconds after the start of the last one, no matter how long execute() took.
 	 */
 	@Override
 	public void run(){
-		boolean retVal = false;
-		double lastLogged = 0;
+		if(sleeper == null){
+			sleeper = hardware.getClock().createSleeper();
+		}
+		try{
+			boolean retVal = false;
+			startUp();
+			loopTimer = new LoopTimer(sleepTime(), overrunPolicy(), sleeper);
+			long late = -1;
+			do{
+				retVal = cycle(late);
+				late = loopTimer.waitForNextPeriod() ? loopTimer.getLateness() : -1;
+			}while(!retVal);
+			if(LOG != null)
+				LOG.logMessage("Completing thread: " + getName());
+		}finally{
+			sleeper.close();
+		}
+	}
+
+	/**
+	 * Starts the subsystem on its own thread
+	 */
+	@Override
+	public synchronized void start(){
+		sleeper = hardware.getClock().createSleeper();
+		super.start();
+	}
+
+	/**
+	 * Starts the next loop now rather than waiting for the rest of sleepTime(). Used when something the
+	 * subsystem is waiting on has finished. Does nothing when the subsystem is run by the
+	 * SubsystemScheduler, which already runs subsystems in order every tick.
+	 */
+	public void wake(){
+		LoopTimer timer = loopTimer;
+		if(timer != null){
+			timer.wake();
+		}
+	}
+
+	/**
+	 * @return the number of loops that have run past the start of the next loop, 0 if this subsystem is
+	 * not running on its own thread.
+	 */
+	public long getOverruns(){
+		return loopTimer == null ? 0 : loopTimer.getOverruns();
+	}
+
+	/**
+	 * Calls init() and liveWindow(). Called once before the first cycle(), either by run() or by the
+	 * SubsystemScheduler when the subsystem is not running on its own thread.
+	 */
+	void startUp(){
 		if(LOG != null)
 			LOG.logMessage("***Starting: " + getName());
 		init();
 		liveWindow();
 		if(LOG != null)
 			LOG.logMessage("***Executing: " + getName());
-		do{
-			if(!ds.isTest()){
-				try{
-					retVal = execute();
-					updateSmartStatus();
-				}catch(Exception e){
-					if(LOG != null)
-						LOG.logError("Uncaught Exception! " + e.getMessage());
+	}
+
+	/**
+	 * @return the loop timing of this subsystem
+	 */
+	public LoopStats getLoopStats(){
+		return stats;
+	}
+
+	/**
+	 * Performs a single loop of the subsystem: execute(), the smart dashboard status and writeLog() 
+	 * if it is due. Does nothing while in test mode. The WorldState is read once and passed to execute().
+	 * 
+	 * @param late how many microseconds after its deadline this loop started, -1 if unknown
+	 * @return true if execute() has reported that the subsystem is complete, false otherwise.
+	 */
+	boolean cycle(long late){
+		boolean retVal = false;
+		WorldState world = WorldState.current();
+		if(!world.isTest()){
+			long start = System.nanoTime();
+			try{
+				retVal = execute(world);
+				updateSmartStatus();
+				lastException = null;
+			}catch(Exception e){
+				if(LOG != null)
+					LOG.logError("Uncaught Exception! " + e.getMessage());
+				if(!e.toString().equals(lastException)){
 					e.printStackTrace(System.err);
+					lastException = e.toString();
 				}
-				if(Timer.getFPGATimestamp() >= lastLogged + logTime()){
-					writeLog();
-					lastLogged = Timer.getFPGATimestamp();
+			}
+			long end = System.nanoTime();
+			Phase ended = stats.record(world.isDisabled() ? Phase.DISABLED : world.isAutonomous() ? Phase.AUTONOMOUS : Phase.TELEOP,
+					start, end, late);
+			if(ended != null && LOG != null){
+				stats.logSummary(LOG, ended);
+			}
+			stats.publish(end / 1000, getOverruns());
+			if(world.getTimestamp() >= lastLogged + logTime()){
+				writeLog();
+				if(LOG != null && getOverruns() != loggedOverruns){
+					LOG.logError("Overran " + (getOverruns() - loggedOverruns) + " loops, skipped " + loopTimer.getSkipped() + " total");
+					loggedOverruns = getOverruns();
 				}
-				try {
-					Thread.sleep(sleepTime());
-				} catch (InterruptedException e) {
-					e.printStackTrace();
+				if(LOG != null){
+					LOG.flushRepeats();
 				}
-			}else{
-				retVal = false;
+				lastLogged = world.getTimestamp();
 			}
-		}while(!retVal);
-		if(LOG != null)
-			LOG.logMessage("Completing thread: " + getName());
+		}
+		return retVal;
 	}
 
 	/**
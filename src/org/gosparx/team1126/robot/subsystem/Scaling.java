@@ -1,8 +1,8 @@
 package org.gosparx.team1126.robot.subsystem;
 import org.gosparx.team1126.robot.subsystem.Drives;
 import org.gosparx.team1126.robot.IO;
-import edu.wpi.first.wpilibj.Solenoid;
-import edu.wpi.first.wpilibj.livewindow.LiveWindow;
+import org.gosparx.team1126.robot.hal.SolenoidValve;
+import org.gosparx.team1126.robot.util.WorldState;
 
 /**
  * Allows the robot to scale the tower
@@ -25,7 +25,7 @@ public class Scaling extends GenericSubsystem{
 	/**
 	 * Solenoid to extend arms to scaling position
 	 */
-	private Solenoid arms;
+	private SolenoidValve arms;
 	
 	//******************************CONSTANTS***********************************
 
@@ -73,7 +73,7 @@ public class Scaling extends GenericSubsystem{
 	@Override
 	protected boolean init() {
 		drives = Drives.getInstance(); 
-		arms = new Solenoid(IO.PNU_CLIMBER_SCALE);
+		arms = hardware.createSolenoid(IO.PNU_CLIMBER_SCALE);
 		currentScalingState = State.STANDBY;
 		setArms(ARMS_DOWN);
 		//drives.setWinchDistance(WINCH_IN_DISTANCE);
@@ -86,14 +86,14 @@ public class Scaling extends GenericSubsystem{
 	@Override
 	protected void liveWindow() {
 		String subsystemName = "Scaling";
-		LiveWindow.addActuator(subsystemName, "Arms", arms);
+		hardware.addActuator(subsystemName, "Arms", arms);
 	}
 	
 	/**
 	 * Loops
 	 */
 	@Override
-	protected boolean execute() {
+	protected boolean execute(WorldState world) {
 		switch(currentScalingState){
 		case STANDBY:{
 			break;
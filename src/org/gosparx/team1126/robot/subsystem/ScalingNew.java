@@ -1,25 +1,64 @@
 package org.gosparx.team1126.robot.subsystem;
 
 import org.gosparx.team1126.robot.IO;
+import org.gosparx.team1126.robot.hal.SolenoidValve;
 import org.gosparx.team1126.robot.sensors.PressureSensor;
-
-import edu.wpi.first.wpilibj.DoubleSolenoid;
-import edu.wpi.first.wpilibj.Solenoid;
-import edu.wpi.first.wpilibj.Timer;
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import org.gosparx.team1126.robot.util.CommandMailbox;
+import org.gosparx.team1126.robot.util.DashboardPublisher;
+import org.gosparx.team1126.robot.util.WorldState;
 
 public class ScalingNew extends GenericSubsystem {
 
 	private static ScalingNew scalingNew;
 	
 	//private DoubleSolenoid pto;
-	private Solenoid forward;
-	private Solenoid reverse;
-	private Solenoid arms;
+	private SolenoidValve forward;
+	private SolenoidValve reverse;
+	private SolenoidValve arms;
 	private Drives drives;
 	private PressureSensor press;
 	private boolean firstLoop;
-	private Solenoid latch;
+	private SolenoidValve latch;
+	private BallAcqNew ballAcq;
+
+	/**
+	 * The time to wait for the latch or the PTO to move, in seconds
+	 */
+	private static final double PNU_WAIT_TIME = .25;
+
+	/**
+	 * The pressure on the SmartDashboard, sent at most twice a second
+	 */
+	private static final DashboardPublisher.Slot PRESSURE_SLOT = DashboardPublisher.numberSlot("Pressue", 0.5);
+
+	/**
+	 * Where we are in raising the arms or scaling
+	 */
+	private ScaleState currentScaleState;
+
+	/**
+	 * When the current wait for the pneumatics is over
+	 */
+	private double waitEnd;
+
+	/**
+	 * Commands from other threads, carried out at the start of execute()
+	 */
+	private CommandMailbox<Command> mailbox = new CommandMailbox<Command>(Command.class);
+
+	/**
+	 * The snapshot for the loop the mailbox is being drained in
+	 */
+	private WorldState world;
+
+	/**
+	 * Carries out the commands from the mailbox
+	 */
+	private CommandMailbox.Handler<Command> handler = new CommandMailbox.Handler<Command>(){
+		public void handle(Command command, double arg0, double arg1){
+			handleCommand(command);
+		}
+	};
 	
 	public static synchronized ScalingNew getInstance(){
 		if(scalingNew == null){
@@ -35,15 +74,17 @@ public class ScalingNew extends GenericSubsystem {
 	@Override
 	protected boolean init() {
 		drives = Drives.getInstance();
+		ballAcq = BallAcqNew.getInstance();
+		currentScaleState = ScaleState.STANDBY;
 		press = new PressureSensor(IO.ANALOG_IN_PNU_PRESSURE_SENSOR);
 		//pto = new DoubleSolenoid(5, 7);
-		forward = new Solenoid(IO.PNU_PTO_FORWARD);
-		reverse = new Solenoid(IO.PNU_PTO_REVERSE);
-		arms = new Solenoid(IO.PNU_CLIMBER_SCALE);
+		forward = hardware.createSolenoid(IO.PNU_PTO_FORWARD);
+		reverse = hardware.createSolenoid(IO.PNU_PTO_REVERSE);
+		arms = hardware.createSolenoid(IO.PNU_CLIMBER_SCALE);
 		forward.set(false);
 		reverse.set(true);
 		firstLoop = true;
-		latch = new Solenoid(IO.PNU_LATCH_SCALE);
+		latch = hardware.createSolenoid(IO.PNU_LATCH_SCALE);
 		latch.set(false);
 		return true;
 	}
@@ -54,49 +95,156 @@ public class ScalingNew extends GenericSubsystem {
 	}
 
 	@Override
-	protected boolean execute() {
-		SmartDashboard.putNumber("Pressue", press.getPressure());
-		if(firstLoop && ds.isEnabled()){
+	protected boolean execute(WorldState world) {
+		this.world = world;
+		mailbox.drain(handler);
+		PRESSURE_SLOT.set(press.getPressure());
+		if(firstLoop && world.isEnabled()){
 			forward.set(false);
 			reverse.set(true);
 			firstLoop = false;
 		}
+		switch(currentScaleState){
+		case STANDBY:
+			break;
+		case UNLATCHING:
+			if(world.getTimestamp() >= waitEnd){
+				arms.set(true);
+				currentScaleState = ScaleState.STANDBY;
+			}
+			break;
+		case ENGAGING_PTO:
+			if(world.getTimestamp() >= waitEnd){
+				currentScaleState = ScaleState.WAITING_FOR_ARMS;
+			}
+			break;
+		case WAITING_FOR_ARMS:
+			if(ballAcq.getCompletion().isDone()){
+				drives.scale();
+				currentScaleState = ScaleState.STANDBY;
+			}
+			break;
+		default:
+			LOG.logError("Invalid state: " + currentScaleState);
+			break;
+		}
 		return false;
 	}
 
+	/**
+	 * Short enough that the pneumatic waits are close to PNU_WAIT_TIME
+	 */
 	@Override
 	protected long sleepTime() {
-		return 100;
+		return 20;
 	}
 
 	@Override
 	protected void writeLog() {
 		LOG.logMessage("Air Pressure: " + press.getPressure());
+		LOG.logMessage("Scale state: " + currentScaleState);
 	}
-	
+
+	/**
+	 * Unlatches, then raises the arms once the latch is open
+	 */
 	public void armsUp(){
-		latch.set(true);
-		Timer.delay(.25);
-		arms.set(true);
+		mailbox.post(Command.ARMS_UP);
 	}
-	
+
+	/**
+	 * Lowers the arms, engages the PTO and, once ball acq has pushed its arms down, drives up
+	 */
 	public void scale(){
-		armsDown();
-		BallAcqNew.getInstance().scale();
-		reverse.set(false);
-		forward.set(true);
-		Timer.delay(.25);
-		while(!BallAcqNew.getInstance().isDone()){
-			
-		}
-		drives.scale();
+		mailbox.post(Command.SCALE);
 	}
-	
+
+	/**
+	 * Stops scaling and drives
+	 */
 	public void estop(){
-		drives.autoEStop();
+		mailbox.post(Command.ESTOP);
 	}
-	
+
+	/**
+	 * Lowers the arms
+	 */
 	public void armsDown(){
-		arms.set(false);
+		mailbox.post(Command.ARMS_DOWN);
+	}
+
+	/**
+	 * Carries out a command from the mailbox, on our thread
+	 * @param command the command
+	 */
+	private void handleCommand(Command command){
+		switch(command){
+		case ARMS_UP:
+			latch.set(true);
+			waitEnd = world.getTimestamp() + PNU_WAIT_TIME;
+			currentScaleState = ScaleState.UNLATCHING;
+			break;
+		case ARMS_DOWN:
+			arms.set(false);
+			if(currentScaleState == ScaleState.UNLATCHING){
+				currentScaleState = ScaleState.STANDBY;
+			}
+			break;
+		case SCALE:
+			arms.set(false);
+			ballAcq.scale();
+			reverse.set(false);
+			forward.set(true);
+			waitEnd = world.getTimestamp() + PNU_WAIT_TIME;
+			currentScaleState = ScaleState.ENGAGING_PTO;
+			break;
+		case ESTOP:
+			drives.autoEStop();
+			currentScaleState = ScaleState.STANDBY;
+			break;
+		default:
+			LOG.logError("Unknown command: " + command);
+			break;
+		}
+	}
+
+	/**
+	 * The commands other threads can send to scaling
+	 */
+	private enum Command{
+		ARMS_UP,
+		ARMS_DOWN,
+		SCALE,
+		ESTOP;
+	}
+
+	/**
+	 * Makes the states for scaling
+	 */
+	public enum ScaleState{
+		STANDBY,
+		UNLATCHING,
+		ENGAGING_PTO,
+		WAITING_FOR_ARMS;
+
+		/**
+		 * Gets the name of the state
+		 * @return the correct state
+		 */
+		@Override
+		public String toString(){
+			switch(this){
+			case STANDBY:
+				return "In Standby";
+			case UNLATCHING:
+				return "Unlatching the arms";
+			case ENGAGING_PTO:
+				return "Engaging the PTO";
+			case WAITING_FOR_ARMS:
+				return "Waiting for ball acq arms";
+			default:
+				return "Error :(";
+			}
+		}
 	}
 }
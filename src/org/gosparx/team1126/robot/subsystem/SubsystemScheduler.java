@@ -0,0 +1,394 @@
+package org.gosparx.team1126.robot.subsystem;
+
+import java.util.ArrayList;
+
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+import org.gosparx.team1126.robot.util.Logger;
+import org.gosparx.team1126.robot.util.LoopTimer;
+import org.gosparx.team1126.robot.util.LoopTimer.OverrunPolicy;
+
+/**
+ * Runs a set of subsystems cooperatively on a single thread instead of giving each one its own thread.
+ * Every tick the subsystems are cycled in a fixed order of stages (inputs, controls, autonomous,
+ * mechanisms, outputs) so that a joystick or sensor change reaches the motors in one tick. The tick
+ * length is the longest time that every registered sleepTime() is a multiple of, and every subsystem
+ * is placed in a rate group that runs every sleepTime() / tick ticks.
+ *
+ * The ReplayRobot runs the ticks itself instead, with startStepped() and tick(), so a recorded match
+ * goes through the subsystems in exactly the same order.
+ */
+public class SubsystemScheduler extends Thread {
+
+	/**
+	 * The order that subsystems are run in during a tick.
+	 */
+	public enum Stage{
+		/* Raw inputs, such as the WorldSampler and joysticks */
+		INPUT,
+
+		/* Turns inputs into commands for the mechanisms */
+		CONTROLS,
+
+		/* Issues commands during autonomous */
+		AUTONOMOUS,
+
+		/* Acts on commands and drives the motors */
+		MECHANISM,
+
+		/* Reports what happened during the tick */
+		OUTPUT;
+	}
+
+	/**
+	 * The most subsystems the scheduler can run
+	 */
+	private static final int MAX_SUBSYSTEMS = 16;
+
+	/**
+	 * The shortest tick we will use to run every period exactly, in milliseconds. Below this the tick is
+	 * the shortest period and the others are rounded to the nearest number of ticks.
+	 */
+	private static final long MIN_TICK = 5;
+
+	/**
+	 * Support for singleton
+	 */
+	private static SubsystemScheduler scheduler;
+
+	/**
+	 * The logger for the scheduler
+	 */
+	private Logger LOG;
+
+	/**
+	 * The subsystems we are running, sorted by stage
+	 */
+	private GenericSubsystem[] systems;
+
+	/**
+	 * The stage of each subsystem in systems
+	 */
+	private Stage[] stages;
+
+	/**
+	 * How many ticks there are between each cycle of the subsystem
+	 */
+	private int[] divisors;
+
+	/**
+	 * Whether the subsystem has returned true from execute()
+	 */
+	private boolean[] finished;
+
+	/**
+	 * The number of subsystems in systems
+	 */
+	private int count;
+
+	/**
+	 * Subsystems that have been added but not yet started
+	 */
+	private GenericSubsystem[] pending;
+
+	/**
+	 * The stage of each subsystem in pending
+	 */
+	private Stage[] pendingStages;
+
+	/**
+	 * The number of subsystems in pending
+	 */
+	private int pendingCount;
+
+	/**
+	 * The length of a tick in milliseconds
+	 */
+	private long tickLength;
+
+	/**
+	 * Keeps the ticks tickLength apart
+	 */
+	private LoopTimer loopTimer;
+
+	/**
+	 * What run() sleeps with, made by start() so the Clock counts us before the thread runs
+	 */
+	private Clock.Sleeper sleeper;
+
+	/**
+	 * The number of ticks we have run
+	 */
+	private volatile long tick;
+
+	/**
+	 * When the current tick started, from System.nanoTime(), and how late it started in microseconds,
+	 * -1 if unknown
+	 */
+	private long tickStart, tickLate = -1;
+
+	/**
+	 * Changes to carry out at the start of the next tick, see post()
+	 */
+	private final ArrayList<Runnable> posted = new ArrayList<Runnable>();
+
+	/**
+	 * Has the scheduler been started
+	 */
+	private volatile boolean running;
+
+	/**
+	 * @return the only SubsystemScheduler
+	 */
+	public static synchronized SubsystemScheduler getInstance(){
+		if(scheduler == null){
+			scheduler = new SubsystemScheduler();
+		}
+		return scheduler;
+	}
+
+	/**
+	 * Creates the scheduler
+	 */
+	private SubsystemScheduler(){
+		super("Scheduler");
+		setPriority(Thread.MAX_PRIORITY);
+		LOG = new Logger("Scheduler");
+		systems = new GenericSubsystem[MAX_SUBSYSTEMS];
+		stages = new Stage[MAX_SUBSYSTEMS];
+		divisors = new int[MAX_SUBSYSTEMS];
+		finished = new boolean[MAX_SUBSYSTEMS];
+		pending = new GenericSubsystem[MAX_SUBSYSTEMS];
+		pendingStages = new Stage[MAX_SUBSYSTEMS];
+		count = 0;
+		pendingCount = 0;
+		tick = 0;
+	}
+
+	/**
+	 * Starts the subsystem on the scheduler if the scheduler is running, otherwise starts the subsystem
+	 * on its own thread. Used by subsystems that own other subsystems, such as Controls and its joysticks.
+	 * @param system the subsystem to start
+	 * @param stage the stage to run it in if we are scheduling
+	 */
+	public static void launch(GenericSubsystem system, Stage stage){
+		SubsystemScheduler sched = scheduler;
+		if(sched != null && sched.running){
+			sched.add(system, stage);
+		}else{
+			system.start();
+		}
+	}
+
+	/**
+	 * Adds a subsystem to be run by the scheduler. It is started at the beginning of the next tick.
+	 * @param system the subsystem to run
+	 * @param stage the stage to run it in
+	 */
+	public synchronized void add(GenericSubsystem system, Stage stage){
+		if(count + pendingCount >= MAX_SUBSYSTEMS){
+			throw new IllegalStateException("Too many subsystems for the scheduler: " + system.getName());
+		}
+		pending[pendingCount] = system;
+		pendingStages[pendingCount] = stage;
+		pendingCount++;
+	}
+
+	/**
+	 * Starts the scheduling thread
+	 */
+	@Override
+	public synchronized void start(){
+		running = true;
+		sleeper = Hardware.get().getClock().createSleeper();
+		super.start();
+	}
+
+	/**
+	 * Starts the subsystems added so far on the calling thread without starting the scheduling thread.
+	 * The caller then runs each tick with tick(). Used by the ReplayRobot.
+	 */
+	public synchronized void startStepped(){
+		running = true;
+		LOG.logMessage("***Stepping: " + getName());
+		startPending();
+	}
+
+	/**
+	 * Runs every subsystem that is due in stage order, then sleeps until the next tick.
+	 */
+	@Override
+	public void run(){
+		LOG.logMessage("***Executing: " + getName());
+		startPending();
+		loopTimer = new LoopTimer(tickLength, OverrunPolicy.SKIP, sleeper);
+		tickStart = System.nanoTime();
+		while(true){
+			tick();
+			loopTimer.waitForNextPeriod();
+			tickStart = System.nanoTime();
+			tickLate = loopTimer.getLateness();
+		}
+	}
+
+	/**
+	 * Runs one tick: the posted changes, then every subsystem that is due in stage order. Only called by
+	 * run(), or by whoever called startStepped().
+	 */
+	public void tick(){
+		Runnable[] changes = null;
+		synchronized(posted){
+			if(!posted.isEmpty()){
+				changes = posted.toArray(new Runnable[posted.size()]);
+				posted.clear();
+			}
+		}
+		if(changes != null){
+			for(Runnable change: changes){
+				change.run();
+			}
+		}
+		startPending();
+		for(int i = 0; i < count; i++){
+			if(!finished[i] && tick % divisors[i] == 0){
+				// The subsystem is as late as the tick, plus however long the earlier subsystems took
+				long late = tickLate < 0 ? -1 : tickLate + (System.nanoTime() - tickStart) / 1000;
+				finished[i] = systems[i].cycle(late);
+				if(finished[i]){
+					LOG.logMessage("Completing subsystem: " + systems[i].getName());
+				}
+			}
+		}
+		tick++;
+	}
+
+	/**
+	 * Carries out a change, like the robot changing mode, at the start of the next tick rather than part
+	 * way through one, so every subsystem in a tick sees the same thing and a recorded match knows which
+	 * tick it happened in.
+	 * @param change what to do
+	 */
+	public void post(Runnable change){
+		synchronized(posted){
+			posted.add(change);
+		}
+	}
+
+	/**
+	 * @return the number of ticks run so far, which is the number of the tick running now during a tick
+	 */
+	public long getTick(){
+		return tick;
+	}
+
+	/**
+	 * @return true once the scheduler has been started, on its own thread or stepped
+	 */
+	public boolean isRunning(){
+		return running;
+	}
+
+	/**
+	 * @return the number of ticks that ran past the start of the next tick
+	 */
+	public long getOverruns(){
+		return loopTimer == null ? 0 : loopTimer.getOverruns();
+	}
+
+	/**
+	 * Moves any newly added subsystems into the run order and starts them. Starting a subsystem can add
+	 * more subsystems, so this repeats until nothing is pending.
+	 */
+	private void startPending(){
+		while(true){
+			GenericSubsystem system;
+			Stage stage;
+			synchronized(this){
+				if(pendingCount == 0){
+					return;
+				}
+				pendingCount--;
+				system = pending[0];
+				stage = pendingStages[0];
+				System.arraycopy(pending, 1, pending, 0, pendingCount);
+				System.arraycopy(pendingStages, 1, pendingStages, 0, pendingCount);
+				pending[pendingCount] = null;
+				insert(system, stage);
+			}
+			try{
+				system.startUp();
+			}catch(Exception e){
+				LOG.logError("Failed to start " + system.getName() + ": " + e.getMessage());
+				e.printStackTrace(System.err);
+				finished[indexOf(system)] = true;
+			}
+		}
+	}
+
+	/**
+	 * Inserts the subsystem after every subsystem in the same or an earlier stage, and recalculates the
+	 * rate groups.
+	 * @param system the subsystem to insert
+	 * @param stage the stage it runs in
+	 */
+	private void insert(GenericSubsystem system, Stage stage){
+		int index = count;
+		while(index > 0 && stages[index - 1].ordinal() > stage.ordinal()){
+			systems[index] = systems[index - 1];
+			stages[index] = stages[index - 1];
+			finished[index] = finished[index - 1];
+			index--;
+		}
+		systems[index] = system;
+		stages[index] = stage;
+		finished[index] = false;
+		count++;
+
+		long shortest = Long.MAX_VALUE;
+		long common = 0;
+		for(int i = 0; i < count; i++){
+			long period = Math.max(1, systems[i].sleepTime());
+			shortest = Math.min(shortest, period);
+			common = gcd(common, period);
+		}
+		tickLength = common >= MIN_TICK ? common : shortest;
+		for(int i = 0; i < count; i++){
+			divisors[i] = (int) Math.max(1, Math.round(Math.max(1, systems[i].sleepTime()) / (double) tickLength));
+		}
+		if(loopTimer != null){
+			loopTimer.setPeriod(tickLength);
+		}
+		if(divisors[index] * tickLength != system.sleepTime()){
+			LOG.logError("Can't run " + system.getName() + " every " + system.sleepTime() + "ms with a "
+					+ tickLength + "ms tick, running it every " + divisors[index] * tickLength + "ms");
+		}
+		LOG.logMessage("Scheduling " + system.getName() + " in " + stage + " every " + divisors[index] * tickLength + "ms");
+	}
+
+	/**
+	 * @param a a period in milliseconds, or 0
+	 * @param b a period in milliseconds
+	 * @return the longest period that both are a multiple of
+	 */
+	private static long gcd(long a, long b){
+		while(b != 0){
+			long next = a % b;
+			a = b;
+			b = next;
+		}
+		return a;
+	}
+
+	/**
+	 * @param system the subsystem to find
+	 * @return the index of the subsystem in systems
+	 */
+	private int indexOf(GenericSubsystem system){
+		for(int i = 0; i < count; i++){
+			if(systems[i] == system){
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -2,10 +2,9 @@ package org.gosparx.team1126.robot.util;
 
 import java.util.ArrayList;
 
+import org.gosparx.team1126.robot.hal.JoystickDevice;
 import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
 
-import edu.wpi.first.wpilibj.Joystick;
-
 /**
  * A class for more advanced data collection from the joysticks.
  * @author Alex Mechler {amechler1998@gmail.com}
@@ -15,7 +14,7 @@ public class AdvancedJoystick extends GenericSubsystem{
 	/**
 	 * The joystick we are gathering data from
 	 */
-	private Joystick joy;
+	private JoystickDevice joy;
 
 	/**
 	 * The previous value of the joystick buttons
@@ -54,7 +53,7 @@ public class AdvancedJoystick extends GenericSubsystem{
 	 */
 	public AdvancedJoystick(String name, int joyPort) {
 		super(name, Thread.NORM_PRIORITY);
-		joy = new Joystick(joyPort);
+		joy = hardware.createJoystick(joyPort);
 		port = joyPort;
 		buttons = new ArrayList<Integer>();
 		multibuttons = new ArrayList<Multibutton>();
@@ -106,7 +105,7 @@ public class AdvancedJoystick extends GenericSubsystem{
 	 * loops, updates and compares values
 	 */
 	@Override
-	protected boolean execute() {
+	protected boolean execute(WorldState world) {
 		for(Multibutton m: multibuttons){
 			m.update();
 		}
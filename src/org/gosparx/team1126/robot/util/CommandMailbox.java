@@ -0,0 +1,405 @@
+package org.gosparx.team1126.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Passes commands from other threads to a subsystem without locks or allocation. The subsystem drains
+ * the mailbox at the start of execute(), so commands are only ever carried out on the subsystem's own
+ * thread.
+ *
+ * Each thread that posts gets its own lane, a fixed size ring that only that thread writes and only the
+ * subsystem reads. A lane whose thread has died is handed to the next new thread once it is empty, and
+ * if every lane is still taken the command goes into one shared lane that any thread can write.
+ * Commands marked as setpoints (like a joystick power) don't queue: each one has a single slot and only
+ * the latest value is kept. When draining, commands from every lane and setpoint are carried out in
+ * the order they were posted.
+ *
+ * @param <E> the commands the subsystem understands
+ */
+public class CommandMailbox<E extends Enum<E>> {
+
+	/**
+	 * Carries out a command. Called on the subsystem's thread.
+	 */
+	public interface Handler<E>{
+		public void handle(E command, double arg0, double arg1);
+	}
+
+	/**
+	 * The number of lanes that one thread each can own, then the shared lane
+	 */
+	private static final int LANES = 8, SHARED = LANES;
+
+	/**
+	 * The most commands each lane can hold, must be a power of 2
+	 */
+	private static final int LANE_SIZE = 16;
+
+	/**
+	 * The commands, indexed by ordinal
+	 */
+	private final E[] commands;
+
+	/**
+	 * The thread that owns each lane, null if it hasn't been claimed
+	 */
+	private final AtomicReferenceArray<Thread> owners;
+
+	/**
+	 * The lanes, with the shared lane last
+	 */
+	private final Lane[] lanes;
+
+	/**
+	 * The setpoint slot for each command, null for commands that queue
+	 */
+	private final Setpoint[] setpoints;
+
+	/**
+	 * The version of each setpoint we last carried out
+	 */
+	private final long[] appliedVersions;
+
+	/**
+	 * The lane ends and setpoint values as of the start of a drain
+	 */
+	private final long[] drainTails;
+	private final double[] pendingArg0, pendingArg1;
+	private final long[] pendingTimes;
+	private final boolean[] pending;
+
+	/**
+	 * The time from posting to carrying out each command, in microseconds
+	 */
+	private final LatencyHistogram latency;
+
+	/**
+	 * The number of commands dropped because a lane was full
+	 */
+	private final AtomicLong dropped;
+
+	/**
+	 * The name of the commands, for the error when the first one is dropped
+	 */
+	private final String name;
+
+	/**
+	 * Creates a mailbox
+	 * @param type the class of the commands
+	 * @param setpointCommands the commands where only the latest value matters
+	 */
+	@SafeVarargs
+	public CommandMailbox(Class<E> type, E... setpointCommands){
+		commands = type.getEnumConstants();
+		name = type.getSimpleName();
+		owners = new AtomicReferenceArray<Thread>(LANES);
+		lanes = new Lane[LANES + 1];
+		for(int i = 0; i < LANES; i++){
+			lanes[i] = new Lane(false);
+		}
+		lanes[SHARED] = new Lane(true);
+		setpoints = new Setpoint[commands.length];
+		for(E command: setpointCommands){
+			setpoints[command.ordinal()] = new Setpoint();
+		}
+		appliedVersions = new long[commands.length];
+		drainTails = new long[LANES + 1];
+		pendingArg0 = new double[commands.length];
+		pendingArg1 = new double[commands.length];
+		pendingTimes = new long[commands.length];
+		pending = new boolean[commands.length];
+		latency = new LatencyHistogram();
+		dropped = new AtomicLong(0);
+	}
+
+	/**
+	 * Posts a command with no arguments
+	 * @return false if the command was dropped
+	 */
+	public boolean post(E command){
+		return post(command, 0, 0);
+	}
+
+	/**
+	 * Posts a command with one argument
+	 * @return false if the command was dropped
+	 */
+	public boolean post(E command, double arg0){
+		return post(command, arg0, 0);
+	}
+
+	/**
+	 * Posts a command with two arguments
+	 * @return false if the command was dropped
+	 */
+	public boolean post(E command, double arg0, double arg1){
+		long now = System.nanoTime();
+		Setpoint setpoint = setpoints[command.ordinal()];
+		if(setpoint != null){
+			setpoint.write(arg0, arg1, now);
+			return true;
+		}
+		Lane lane = laneFor(Thread.currentThread());
+		if(!lane.offer(command.ordinal(), arg0, arg1, now)){
+			if(dropped.incrementAndGet() == 1){
+				new Logger("CommandMailbox").logError("Dropped " + command + ", the " + name + " mailbox is full");
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Carries out every command posted before the drain started, oldest first. Must only be called from
+	 * the subsystem's thread.
+	 * @param handler what to carry the commands out with
+	 */
+	public void drain(Handler<E> handler){
+		for(int i = 0; i < lanes.length; i++){
+			drainTails[i] = lanes[i].published();
+		}
+		for(int i = 0; i < setpoints.length; i++){
+			pending[i] = setpoints[i] != null && setpoints[i].read(this, i);
+		}
+		while(true){
+			// Find the oldest command, whether in a lane or a setpoint
+			boolean found = false;
+			long oldest = 0;
+			int oldestLane = -1;
+			int oldestSetpoint = -1;
+			for(int i = 0; i < lanes.length; i++){
+				Lane lane = lanes[i];
+				long head = lane.head.get();
+				if(head < drainTails[i]){
+					long time = lane.times[(int) head & (LANE_SIZE - 1)];
+					if(!found || time - oldest < 0){
+						found = true;
+						oldest = time;
+						oldestLane = i;
+					}
+				}
+			}
+			for(int i = 0; i < pending.length; i++){
+				if(pending[i] && (!found || pendingTimes[i] - oldest < 0)){
+					found = true;
+					oldest = pendingTimes[i];
+					oldestSetpoint = i;
+					oldestLane = -1;
+				}
+			}
+			if(oldestSetpoint != -1){
+				pending[oldestSetpoint] = false;
+				latency.record((System.nanoTime() - oldest) / 1000);
+				handler.handle(commands[oldestSetpoint], pendingArg0[oldestSetpoint], pendingArg1[oldestSetpoint]);
+			}else if(oldestLane != -1){
+				Lane lane = lanes[oldestLane];
+				long head = lane.head.get();
+				int index = (int) head & (LANE_SIZE - 1);
+				E command = commands[lane.commands[index]];
+				double arg0 = lane.arg0[index];
+				double arg1 = lane.arg1[index];
+				lane.head.lazySet(head + 1);
+				latency.record((System.nanoTime() - oldest) / 1000);
+				handler.handle(command, arg0, arg1);
+			}else{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the time from posting to carrying out each command, in microseconds. Only read from the
+	 * subsystem's thread.
+	 */
+	public LatencyHistogram getLatency(){
+		return latency;
+	}
+
+	/**
+	 * @return the number of commands dropped because a lane was full
+	 */
+	public long getDropped(){
+		return dropped.get();
+	}
+
+	/**
+	 * @return the lane owned by the thread, claiming a new one or the empty lane of a dead thread if it
+	 * doesn't have one. The shared lane if all the lanes are taken.
+	 */
+	private Lane laneFor(Thread thread){
+		for(int i = 0; i < LANES; i++){
+			Thread owner = owners.get(i);
+			if(owner == thread || (owner == null && owners.compareAndSet(i, null, thread))){
+				return lanes[i];
+			}
+		}
+		for(int i = 0; i < LANES; i++){
+			Thread owner = owners.get(i);
+			// A dead thread can't post again, so once its lane is drained nothing else will touch it
+			if(!owner.isAlive() && lanes[i].isEmpty() && owners.compareAndSet(i, owner, thread)){
+				return lanes[i];
+			}
+		}
+		return lanes[SHARED];
+	}
+
+	/**
+	 * A ring of commands read by the subsystem. An owned lane is only written by the thread that owns it.
+	 * The shared lane can be written by any thread: each one takes a slot by moving tail on, and marks
+	 * the slot in ready when it is filled in, so the subsystem stops at a slot still being written.
+	 */
+	private static class Lane{
+
+		/**
+		 * True if any thread can write the lane
+		 */
+		private final boolean shared;
+
+		/**
+		 * One more than the position last written into each slot, only used by the shared lane
+		 */
+		private final AtomicLongArray ready;
+
+		/**
+		 * The command ordinals, arguments and post times
+		 */
+		private final int[] commands = new int[LANE_SIZE];
+		private final double[] arg0 = new double[LANE_SIZE];
+		private final double[] arg1 = new double[LANE_SIZE];
+		private final long[] times = new long[LANE_SIZE];
+
+		/**
+		 * The number of commands read, only written by the subsystem
+		 */
+		private final AtomicLong head = new AtomicLong(0);
+
+		/**
+		 * The number of commands written, or taken a slot for in the shared lane
+		 */
+		private final AtomicLong tail = new AtomicLong(0);
+
+		/**
+		 * @param shared true if any thread can write the lane
+		 */
+		private Lane(boolean shared){
+			this.shared = shared;
+			ready = shared ? new AtomicLongArray(LANE_SIZE) : null;
+		}
+
+		/**
+		 * Adds a command to the lane
+		 * @return false if the lane is full
+		 */
+		private boolean offer(int command, double a0, double a1, long time){
+			long t;
+			if(shared){
+				do{
+					t = tail.get();
+					if(t - head.get() >= LANE_SIZE){
+						return false;
+					}
+				}while(!tail.compareAndSet(t, t + 1));
+			}else{
+				t = tail.get();
+				if(t - head.get() >= LANE_SIZE){
+					return false;
+				}
+			}
+			int index = (int) t & (LANE_SIZE - 1);
+			commands[index] = command;
+			arg0[index] = a0;
+			arg1[index] = a1;
+			times[index] = time;
+			// Publishes the slot to the subsystem
+			if(shared){
+				ready.lazySet(index, t + 1);
+			}else{
+				tail.lazySet(t + 1);
+			}
+			return true;
+		}
+
+		/**
+		 * @return the end of the commands that are ready to read. Only called by the subsystem.
+		 */
+		private long published(){
+			if(!shared){
+				return tail.get();
+			}
+			long end = head.get();
+			long t = tail.get();
+			while(end < t && ready.get((int) end & (LANE_SIZE - 1)) == end + 1){
+				end++;
+			}
+			return end;
+		}
+
+		/**
+		 * @return true if every command written has been read
+		 */
+		private boolean isEmpty(){
+			return head.get() == tail.get();
+		}
+	}
+
+	/**
+	 * The latest value of a setpoint. Writers take turns by making the version odd while they write, and
+	 * the reader retries if the version changed while it was reading.
+	 */
+	private static class Setpoint{
+
+		/**
+		 * Even when the values can be read, odd while they are being written
+		 */
+		private final AtomicLong version = new AtomicLong(0);
+
+		/**
+		 * The values and the time they were written
+		 */
+		private volatile double arg0, arg1;
+		private volatile long time;
+
+		/**
+		 * Replaces the value
+		 */
+		private void write(double a0, double a1, long now){
+			long v;
+			do{
+				v = version.get();
+			}while((v & 1) != 0 || !version.compareAndSet(v, v + 1));
+			arg0 = a0;
+			arg1 = a1;
+			time = now;
+			version.set(v + 2);
+		}
+
+		/**
+		 * Copies the value into the mailbox's pending arrays if it changed since it was last carried out
+		 * @return true if there is a new value
+		 */
+		private boolean read(CommandMailbox<?> box, int index){
+			while(true){
+				long v = version.get();
+				if(v == box.appliedVersions[index]){
+					return false;
+				}
+				if((v & 1) != 0){
+					// Being written, pick it up next time rather than waiting on the writer
+					return false;
+				}
+				double a0 = arg0;
+				double a1 = arg1;
+				long t = time;
+				if(version.get() == v){
+					box.pendingArg0[index] = a0;
+					box.pendingArg1[index] = a1;
+					box.pendingTimes[index] = t;
+					box.appliedVersions[index] = v;
+					return true;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package org.gosparx.team1126.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+
+/**
+ * Lets a subsystem tell another one that something it was asked to do has finished, and wakes the
+ * waiting subsystem up instead of making it wait for its next loop to notice.
+ *
+ * Each time the work is started the Completion is armed, which hands out a new sequence number. The
+ * subsystem doing the work reads getArmed() at the start of its loop and, if the work is finished at
+ * the end of the loop, completes that sequence number. Completing an old sequence number does nothing,
+ * so a loop that started before the work was handed to it can't finish it by mistake.
+ */
+public class Completion {
+
+	/**
+	 * The sequence number of the most recent work
+	 */
+	private final AtomicLong armed;
+
+	/**
+	 * The sequence number of the most recent work to finish
+	 */
+	private volatile long completed;
+
+	/**
+	 * The subsystem to wake when work finishes
+	 */
+	private volatile GenericSubsystem listener;
+
+	/**
+	 * Creates a new Completion with nothing to wait for
+	 */
+	public Completion(){
+		armed = new AtomicLong(0);
+		completed = 0;
+	}
+
+	/**
+	 * Marks that new work has started. Call after the work has been handed to the subsystem doing it.
+	 * @return the sequence number of the new work
+	 */
+	public long arm(){
+		return armed.incrementAndGet();
+	}
+
+	/**
+	 * @return the sequence number of the most recent work
+	 */
+	public long getArmed(){
+		return armed.get();
+	}
+
+	/**
+	 * Marks the work as finished and wakes the listener, if it is still the most recent work.
+	 * @param sequence the sequence number from getArmed() when the subsystem started checking the work
+	 */
+	public void complete(long sequence){
+		if(sequence == armed.get() && completed != sequence){
+			completed = sequence;
+			GenericSubsystem toWake = listener;
+			if(toWake != null){
+				toWake.wake();
+			}
+		}
+	}
+
+	/**
+	 * @return true if the most recent work has finished
+	 */
+	public boolean isDone(){
+		return completed == armed.get();
+	}
+
+	/**
+	 * @param listener the subsystem to wake when work finishes, or null for none
+	 */
+	public void setListener(GenericSubsystem listener){
+		this.listener = listener;
+	}
+}
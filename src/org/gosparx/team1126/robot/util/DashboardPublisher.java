@@ -0,0 +1,364 @@
+package org.gosparx.team1126.robot.util;
+
+import org.gosparx.team1126.robot.hal.Dashboard;
+import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+
+/**
+ * Sends values to the SmartDashboard from one low priority thread, so the loops never wait on
+ * NetworkTables. A subsystem makes a Slot for each key once, with the shortest time allowed between
+ * updates of that key, and sets it every loop, which only stores the value. This thread sends a key when
+ * its value has changed and it hasn't been sent for at least that long, so values that never change are
+ * sent once and fast changing ones are sent at their own rate.
+ *
+ * The number of updates actually sent each second is shown as "Dashboard Updates/s".
+ */
+public class DashboardPublisher extends GenericSubsystem{
+
+	/**
+	 * What a slot holds
+	 */
+	public enum Type{
+		NUMBER,
+		BOOLEAN,
+		STRING;
+
+		/**
+		 * @return a human readable version of the type
+		 */
+		@Override
+		public String toString(){
+			switch(this){
+			case NUMBER:
+				return "Number";
+			case BOOLEAN:
+				return "Boolean";
+			case STRING:
+				return "String";
+			default:
+				return "Unknown type";
+			}
+		}
+	}
+
+	/**
+	 * One key on the dashboard. Setting it doesn't lock or allocate, and can be done from any thread.
+	 */
+	public static final class Slot{
+
+		/**
+		 * The key on the dashboard
+		 */
+		private final String key;
+
+		/**
+		 * What the slot holds
+		 */
+		private final Type type;
+
+		/**
+		 * The shortest time between updates, in microseconds
+		 */
+		private final long period;
+
+		/**
+		 * The latest number, or 1 or 0 for a boolean, as the bits of a double
+		 */
+		private volatile long bits;
+
+		/**
+		 * The latest string
+		 */
+		private volatile String text;
+
+		/**
+		 * True once the slot has been set
+		 */
+		private volatile boolean hasValue;
+
+		/**
+		 * What was last sent, and when in microseconds. Only used by the publisher.
+		 */
+		private long sentBits;
+		private String sentText;
+		private boolean sent;
+		private long lastSent;
+
+		/**
+		 * @param key the key on the dashboard
+		 * @param type what the slot holds
+		 * @param period the shortest time between updates, in microseconds
+		 */
+		private Slot(String key, Type type, long period){
+			this.key = key;
+			this.type = type;
+			this.period = period;
+		}
+
+		/**
+		 * Sets a number slot
+		 * @param value the number to show
+		 */
+		public void set(double value){
+			bits = Double.doubleToRawLongBits(value);
+			if(!hasValue){
+				hasValue = true;
+			}
+		}
+
+		/**
+		 * Sets a boolean slot
+		 * @param value the boolean to show
+		 */
+		public void set(boolean value){
+			set(value ? 1.0 : 0.0);
+		}
+
+		/**
+		 * Sets a string slot
+		 * @param value the string to show
+		 */
+		public void set(String value){
+			text = value;
+			if(!hasValue){
+				hasValue = true;
+			}
+		}
+
+		/**
+		 * @return the key on the dashboard
+		 */
+		public String getKey(){
+			return key;
+		}
+
+		/**
+		 * @return what the slot holds
+		 */
+		public Type getType(){
+			return type;
+		}
+	}
+
+	/**
+	 * How often the updates per second are worked out, in microseconds
+	 */
+	private static final long RATE_TIME = 1000000;
+
+	/**
+	 * Every slot, replaced rather than changed so a half added slot is never seen
+	 */
+	private static volatile Slot[] slots = new Slot[0];
+
+	/**
+	 * Support for the singleton model
+	 */
+	private static DashboardPublisher publisher;
+
+	/**
+	 * Shows how many updates are sent each second
+	 */
+	private static final Slot RATE_SLOT = numberSlot("Dashboard Updates/s", 1);
+
+	/**
+	 * Where the values are sent
+	 */
+	private Dashboard dashboard;
+
+	/**
+	 * The updates sent since rateStart
+	 */
+	private long rateCount;
+
+	/**
+	 * The updates sent in total
+	 */
+	private volatile long updates;
+
+	/**
+	 * When the updates per second were last worked out, in microseconds
+	 */
+	private long rateStart;
+
+	/**
+	 * The updates sent per second, over the last RATE_TIME
+	 */
+	private volatile double updateRate;
+
+	/**
+	 * @return the only DashboardPublisher
+	 */
+	public static synchronized DashboardPublisher getInstance(){
+		if(publisher == null){
+			publisher = new DashboardPublisher();
+		}
+		return publisher;
+	}
+
+	/**
+	 * Creates the publisher
+	 */
+	private DashboardPublisher(){
+		super("DashboardPublisher", Thread.MIN_PRIORITY);
+	}
+
+	/**
+	 * Makes a slot for a number. Call once, usually into a final field.
+	 * @param key the key on the dashboard
+	 * @param period the shortest time between updates, in seconds
+	 * @return the slot to set the number with
+	 */
+	public static Slot numberSlot(String key, double period){
+		return slot(key, Type.NUMBER, period);
+	}
+
+	/**
+	 * Makes a slot for a boolean. Call once, usually into a final field.
+	 * @param key the key on the dashboard
+	 * @param period the shortest time between updates, in seconds
+	 * @return the slot to set the boolean with
+	 */
+	public static Slot booleanSlot(String key, double period){
+		return slot(key, Type.BOOLEAN, period);
+	}
+
+	/**
+	 * Makes a slot for a string. Call once, usually into a final field.
+	 * @param key the key on the dashboard
+	 * @param period the shortest time between updates, in seconds
+	 * @return the slot to set the string with
+	 */
+	public static Slot stringSlot(String key, double period){
+		return slot(key, Type.STRING, period);
+	}
+
+	/**
+	 * Makes a slot, or finds the one already made for the key
+	 * @param key the key on the dashboard
+	 * @param type what it holds
+	 * @param period the shortest time between updates, in seconds
+	 * @return the slot
+	 */
+	private static synchronized Slot slot(String key, Type type, double period){
+		for(Slot slot: slots){
+			if(slot.key.equals(key)){
+				if(slot.type != type){
+					throw new IllegalArgumentException(key + " is already a " + slot.type + " slot");
+				}
+				return slot;
+			}
+		}
+		Slot slot = new Slot(key, type, (long) (period * 1000000));
+		Slot[] newSlots = new Slot[slots.length + 1];
+		System.arraycopy(slots, 0, newSlots, 0, slots.length);
+		newSlots[slots.length] = slot;
+		slots = newSlots;
+		return slot;
+	}
+
+	/**
+	 * Gets the dashboard to send to
+	 */
+	@Override
+	protected boolean init(){
+		dashboard = hardware.getDashboard();
+		return true;
+	}
+
+	/**
+	 * Sends every slot that has changed and is due, and works out the updates per second
+	 */
+	@Override
+	protected boolean execute(WorldState world){
+		long now = hardware.getClock().getTime();
+		int sent = 0;
+		for(Slot slot: slots){
+			if(send(slot, now)){
+				sent++;
+			}
+		}
+		rateCount += sent;
+		updates += sent;
+		if(rateStart == 0){
+			rateStart = now;
+		}else if(now - rateStart >= RATE_TIME){
+			updateRate = rateCount * 1000000.0 / (now - rateStart);
+			rateCount = 0;
+			rateStart = now;
+			RATE_SLOT.set(updateRate);
+		}
+		return false;
+	}
+
+	/**
+	 * Sends a slot if it has a value that hasn't been sent, and it hasn't been sent in the last period
+	 * @param slot the slot
+	 * @param now the time in microseconds
+	 * @return true if it was sent
+	 */
+	private boolean send(Slot slot, long now){
+		if(!slot.hasValue || (slot.sent && now - slot.lastSent < slot.period)){
+			return false;
+		}
+		switch(slot.type){
+		case STRING:
+			String text = slot.text;
+			if(slot.sent && (text == null ? slot.sentText == null : text.equals(slot.sentText))){
+				return false;
+			}
+			dashboard.putString(slot.key, text);
+			slot.sentText = text;
+			break;
+		default:
+			long bits = slot.bits;
+			if(slot.sent && bits == slot.sentBits){
+				return false;
+			}
+			double value = Double.longBitsToDouble(bits);
+			if(slot.type == Type.BOOLEAN){
+				dashboard.putBoolean(slot.key, value != 0);
+			}else{
+				dashboard.putNumber(slot.key, value);
+			}
+			slot.sentBits = bits;
+			break;
+		}
+		slot.sent = true;
+		slot.lastSent = now;
+		return true;
+	}
+
+	/**
+	 * @return the updates sent per second, over the last second
+	 */
+	public double getUpdateRate(){
+		return updateRate;
+	}
+
+	/**
+	 * @return the updates sent so far
+	 */
+	public long getUpdates(){
+		return updates;
+	}
+
+	/**
+	 * Checks the slots every cycle, the fastest any key can be sent
+	 */
+	@Override
+	protected long sleepTime(){
+		return 20;
+	}
+
+	/**
+	 * Logs how much is being sent
+	 */
+	@Override
+	protected void writeLog(){
+		LOG.logMessage("Dashboard keys: %d updates/s: %.1f total: %d", slots.length, updateRate, updates);
+	}
+
+	@Override
+	protected void liveWindow(){
+
+	}
+}
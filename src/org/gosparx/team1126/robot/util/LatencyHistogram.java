@@ -0,0 +1,170 @@
+package org.gosparx.team1126.robot.util;
+
+/**
+ * A histogram of times in microseconds with a fixed set of buckets, so recording never allocates.
+ * Times under 16us get their own bucket, larger times are split into 8 buckets per power of two, which
+ * keeps every bucket within 12.5% of the times in it. Times of 2^27us (about 2 minutes) or more all
+ * land in the last bucket.
+ *
+ * Only one thread may record into a histogram. Other threads may read it, but may see a sample
+ * half recorded.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Times below this each get their own bucket
+	 */
+	private static final int LINEAR_BUCKETS = 16;
+
+	/**
+	 * The number of buckets for each power of two above LINEAR_BUCKETS
+	 */
+	private static final int SUB_BUCKETS = 8;
+
+	/**
+	 * The log2 of SUB_BUCKETS
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * The log2 of LINEAR_BUCKETS, the first power of two split into sub buckets
+	 */
+	private static final int FIRST_EXPONENT = 4;
+
+	/**
+	 * The last power of two with its own buckets
+	 */
+	private static final int LAST_EXPONENT = 26;
+
+	/**
+	 * The total number of buckets
+	 */
+	private static final int BUCKETS = LINEAR_BUCKETS + (LAST_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+	/**
+	 * The number of times recorded in each bucket
+	 */
+	private final long[] counts;
+
+	/**
+	 * The number of times recorded
+	 */
+	private long count;
+
+	/**
+	 * The sum of all times recorded
+	 */
+	private long total;
+
+	/**
+	 * The largest time recorded
+	 */
+	private long max;
+
+	/**
+	 * Creates a new empty histogram
+	 */
+	public LatencyHistogram(){
+		counts = new long[BUCKETS];
+	}
+
+	/**
+	 * Records a time
+	 * @param micros the time in microseconds. Negative times are recorded as 0.
+	 */
+	public void record(long micros){
+		if(micros < 0){
+			micros = 0;
+		}
+		counts[bucketOf(micros)]++;
+		count++;
+		total += micros;
+		if(micros > max){
+			max = micros;
+		}
+	}
+
+	/**
+	 * Empties the histogram
+	 */
+	public void reset(){
+		for(int i = 0; i < BUCKETS; i++){
+			counts[i] = 0;
+		}
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	/**
+	 * @return the number of times recorded
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	/**
+	 * @return the largest time recorded in microseconds
+	 */
+	public long getMax(){
+		return max;
+	}
+
+	/**
+	 * @return the average time recorded in microseconds, 0 if nothing has been recorded
+	 */
+	public double getMean(){
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * @param percentile the percentile to find, from 0 to 100
+	 * @return the time in microseconds that the given percent of the recorded times are at or under,
+	 * rounded up to the top of its bucket. 0 if nothing has been recorded.
+	 */
+	public long getPercentile(double percentile){
+		if(count == 0){
+			return 0;
+		}
+		long wanted = (long) Math.ceil(count * percentile / 100.0);
+		wanted = Math.max(1, Math.min(count, wanted));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += counts[i];
+			if(seen >= wanted){
+				return Math.min(max, upperBoundOf(i));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param micros a time in microseconds, at least 0
+	 * @return the bucket the time belongs in
+	 */
+	private static int bucketOf(long micros){
+		if(micros < LINEAR_BUCKETS){
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if(exponent > LAST_EXPONENT){
+			return BUCKETS - 1;
+		}
+		int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @param bucket the bucket
+	 * @return the largest time in microseconds that belongs in the bucket
+	 */
+	private static long upperBoundOf(int bucket){
+		if(bucket < LINEAR_BUCKETS){
+			return bucket;
+		}
+		int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+		int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + sub) * width) + width - 1;
+	}
+}
@@ -0,0 +1,583 @@
+package org.gosparx.team1126.robot.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Turns a binary log from the LogWriter back into the text log, one line per entry in the same format as
+ * Logger.logMessage(). Run it off the robot:
+ *
+ * java -cp robot.jar org.gosparx.team1126.robot.util.LogDecoder log.bin [more logs]
+ *
+ * Segments from LogSegments are decoded too, up to the length in their header. Name them in order to get
+ * the whole log. Compressed logs and segments are uncompressed as they are read.
+ *
+ * To follow a log as the robot writes it, like tail -f, put -f before it:
+ *
+ * java -cp robot.jar org.gosparx.team1126.robot.util.LogDecoder -f log.binz
+ *
+ * Following a segment goes on to the next segment of the same log when the robot starts it.
+ */
+public class LogDecoder {
+
+	/**
+	 * The subsystem names, indexed by id
+	 */
+	private final ArrayList<String> sources = new ArrayList<String>();
+
+	/**
+	 * The event templates and their levels, indexed by id
+	 */
+	private final ArrayList<String> events = new ArrayList<String>();
+	private final ArrayList<Logger.Level> levels = new ArrayList<Logger.Level>();
+
+	/**
+	 * The version of the log being decoded
+	 */
+	private byte version = LogFormat.VERSION;
+
+	/**
+	 * The first byte of a compressed log, the start of a zlib stream
+	 */
+	private static final int ZLIB = 0x78;
+
+	/**
+	 * How long to wait for more of a followed log, in milliseconds
+	 */
+	private static final long FOLLOW_PAUSE = 200;
+
+	/**
+	 * True to print each line as soon as it is decoded, when following a log
+	 */
+	private boolean follow;
+
+	/**
+	 * Formats the time the same way Logger does
+	 */
+	private final DecimalFormat formatter = new DecimalFormat("0000.0000");
+
+	/**
+	 * Reused for each record
+	 */
+	private final LogRecord record = new LogRecord();
+
+	/**
+	 * Prints every log named on the command line as text
+	 * @param args the logs to decode
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length == 0 || (args[0].equals("-f") && args.length != 2)){
+			System.err.println("Usage: LogDecoder <log> [more logs]");
+			System.err.println("       LogDecoder -f <log>");
+			System.exit(1);
+		}
+		if(args[0].equals("-f")){
+			LogDecoder decoder = new LogDecoder();
+			decoder.follow = true;
+			File file = new File(args[1]);
+			if(!isSegment(file)){
+				decoder.decode(new Follow(new FileInputStream(file)), System.out);
+				return;
+			}
+			while(file != null){
+				FollowSegment segment = new FollowSegment(file);
+				try{
+					decoder.decode(segment, System.out);
+				}finally{
+					segment.close();
+				}
+				file = FollowSegment.next(file);
+			}
+			return;
+		}
+		for(String name: args){
+			InputStream in = new BufferedInputStream(new FileInputStream(name));
+			try{
+				new LogDecoder().decode(in, System.out);
+			}finally{
+				in.close();
+			}
+		}
+		System.out.flush();
+	}
+
+	/**
+	 * Prints a whole log as text. A log that ends part way through an entry, like one cut off by the
+	 * robot losing power, is printed up to that entry, as is a journal up to a torn frame. A segment is only read up to the length in its
+	 * header, the rest of it is unused.
+	 * @param in the log
+	 * @param out where to print it
+	 * @return the number of lines printed
+	 * @throws IOException if the log can't be read or isn't a log
+	 */
+	public int decode(InputStream in, PrintStream out) throws IOException{
+		DataInputStream data = new DataInputStream(in);
+		StringBuilder line = new StringBuilder(200);
+		int lines = 0;
+		LogJournal.Reader frames = null;
+		try{
+			int magic = data.readInt();
+			if(magic == LogSegments.MAGIC){
+				data = segment(data);
+				magic = data.readInt();
+			}
+			if(magic == LogJournal.MAGIC){
+				byte version = data.readByte();
+				if(version < 1 || version > LogJournal.VERSION){
+					throw new IOException("Unknown journal version " + version);
+				}
+				frames = new LogJournal.Reader(data);
+				data = new DataInputStream(frames);
+				magic = data.readInt();
+			}
+			if(magic >>> 24 == ZLIB){
+				data = inflate(magic, data);
+				magic = data.readInt();
+			}
+			if(magic != LogFormat.MAGIC){
+				throw new IOException("Not a log");
+			}
+			version = data.readByte();
+			if(version < 1 || version > LogFormat.VERSION){
+				throw new IOException("Unknown log version " + version);
+			}
+			while(true){
+				int type;
+				try {
+					type = data.read();
+				} catch (EOFException e) {
+					// A compressed log is never finished, so it ends like this between entries
+					type = -1;
+				}
+				if(type == -1){
+					break;
+				}
+				line.setLength(0);
+				if(next((byte) type, data, line)){
+					out.print(line);
+					lines++;
+					if(follow){
+						out.flush();
+					}
+				}
+			}
+		}catch(EOFException e){
+			System.err.println("The log ends part way through an entry, decoded " + lines + " lines");
+		}
+		if(frames != null && frames.isTorn()){
+			System.err.println("The log ends with a torn frame, decoded up to it");
+		}
+		return lines;
+	}
+
+	/**
+	 * @param file a log or segment
+	 * @return true if the file starts like a segment
+	 * @throws IOException if the file can't be read
+	 */
+	private static boolean isSegment(File file) throws IOException{
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try{
+			return in.readInt() == LogSegments.MAGIC;
+		}catch(EOFException e){
+			return false;
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the rest of a segment header, magic already read
+	 * @param data the segment
+	 * @return the log in the segment
+	 * @throws IOException if the segment can't be read or is from a newer LogSegments
+	 */
+	private static DataInputStream segment(DataInputStream data) throws IOException{
+		byte version = data.readByte();
+		if(version < 1 || version > LogSegments.VERSION){
+			throw new IOException("Unknown segment version " + version);
+		}
+		data.skipBytes(3);
+		data.readLong();
+		data.readInt();
+		int length = data.readInt();
+		data.readLong();
+		byte[] log = new byte[length];
+		data.readFully(log);
+		return new DataInputStream(new ByteArrayInputStream(log));
+	}
+
+	/**
+	 * Uncompresses a compressed log
+	 * @param magic the first 4 bytes, already read
+	 * @param data the rest of the log
+	 * @return the uncompressed log
+	 */
+	private static DataInputStream inflate(int magic, DataInputStream data){
+		byte[] start = {(byte) (magic >>> 24), (byte) (magic >>> 16), (byte) (magic >>> 8), (byte) magic};
+		return new DataInputStream(new InflaterInputStream(new SequenceInputStream(new ByteArrayInputStream(start), data)));
+	}
+
+	/**
+	 * Reads the rest of one entry
+	 * @param type the type of the entry, already read
+	 * @param data the rest of the entry
+	 * @param line where to put the text, if the entry has any
+	 * @return true if the entry was a line of text
+	 */
+	private boolean next(byte type, DataInputStream data, StringBuilder line) throws IOException{
+		switch(type){
+		case LogFormat.SOURCE:{
+			int id = data.readShort();
+			defineSource(id, readString(data, data.readUnsignedShort()));
+			return false;
+		}
+		case LogFormat.EVENT:{
+			int id = data.readInt();
+			byte level = data.readByte();
+			Logger.Level[] all = Logger.Level.values();
+			if(version == 1){
+				// Version 1 only had a byte that was 1 for errors
+				defineEvent(id, level != 0 ? Logger.Level.ERROR : Logger.Level.DEBUG, readString(data, data.readUnsignedShort()));
+			}else{
+				defineEvent(id, level >= 0 && level < all.length ? all[level] : Logger.Level.DEBUG, readString(data, data.readUnsignedShort()));
+			}
+			return false;
+		}
+		case LogFormat.TEXT:
+			line.append(readString(data, data.readInt()));
+			return true;
+		case LogFormat.RECORD:
+			record.source = data.readShort();
+			record.status = data.readByte();
+			record.event = data.readInt();
+			record.time = data.readLong();
+			record.argCount = data.readUnsignedByte();
+			for(int i = 0; i < record.argCount; i++){
+				double arg = data.readDouble();
+				if(i < LogRecord.MAX_ARGS){
+					record.args[i] = arg;
+				}
+			}
+			render(record, line);
+			return true;
+		default:
+			throw new IOException("Unknown entry type " + type);
+		}
+	}
+
+	/**
+	 * Sets the name of a subsystem
+	 * @param id the id of the subsystem
+	 * @param name the name
+	 */
+	void defineSource(int id, String name){
+		set(sources, id, name);
+	}
+
+	/**
+	 * Sets the template of an event
+	 * @param id the id of the event
+	 * @param level the level of the event
+	 * @param template the template
+	 */
+	void defineEvent(int id, Logger.Level level, String template){
+		set(levels, id, level);
+		set(events, id, template);
+	}
+
+	/**
+	 * Puts a record in the same format as Logger.logMessage()
+	 * @param record the record
+	 * @param line where to put it
+	 */
+	public void render(LogRecord record, StringBuilder line){
+		String source = get(sources, record.source);
+		String template = get(events, record.event);
+		Logger.Level level = get(levels, record.event);
+		line.append(level == null ? Logger.Level.DEBUG : level);
+		line.append('[').append(LogRecord.statusName(record.status)).append("]{");
+		line.append(source == null ? "#" + record.source : source);
+		line.append("}(").append(formatter.format(record.time / 1e6)).append("):");
+		if(template == null){
+			line.append("Unknown event #").append(record.event);
+			for(int i = 0; i < Math.min(record.argCount, LogRecord.MAX_ARGS); i++){
+				line.append(' ').append(record.args[i]);
+			}
+		}else{
+			fill(template, record, line);
+		}
+		line.append('\n');
+	}
+
+	/**
+	 * Puts a template with its numbers filled in. %f is filled with the next number as a double, %d with
+	 * the next number as a whole number and %% with a %.
+	 * @param template the template
+	 * @param record where the numbers come from
+	 * @param line where to put it
+	 */
+	private static void fill(String template, LogRecord record, StringBuilder line){
+		int arg = 0;
+		for(int i = 0; i < template.length(); i++){
+			char c = template.charAt(i);
+			if(c == '%' && i + 1 < template.length()){
+				char spec = template.charAt(i + 1);
+				if(spec == 'f' || spec == 'd'){
+					if(arg < Math.min(record.argCount, LogRecord.MAX_ARGS)){
+						if(spec == 'f'){
+							line.append(record.args[arg]);
+						}else{
+							line.append((long) record.args[arg]);
+						}
+					}else{
+						line.append('?');
+					}
+					arg++;
+					i++;
+					continue;
+				}else if(spec == '%'){
+					line.append('%');
+					i++;
+					continue;
+				}
+			}
+			line.append(c);
+		}
+	}
+
+	/**
+	 * @return length bytes of UTF-8 read as a String
+	 */
+	private static String readString(DataInputStream data, int length) throws IOException{
+		byte[] bytes = new byte[length];
+		data.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sets list[index], growing the list if needed
+	 */
+	private static <T> void set(ArrayList<T> list, int index, T value){
+		while(list.size() <= index){
+			list.add(null);
+		}
+		list.set(index, value);
+	}
+
+	/**
+	 * @return list[index], or null if there isn't one
+	 */
+	private static <T> T get(ArrayList<T> list, int index){
+		return index >= 0 && index < list.size() ? list.get(index) : null;
+	}
+
+	/**
+	 * A file that is still being written. Reading waits for more rather than ending.
+	 */
+	private static class Follow extends InputStream{
+
+		/**
+		 * The file
+		 */
+		private final InputStream in;
+
+		/**
+		 * @param in the file to follow
+		 */
+		public Follow(InputStream in){
+			this.in = in;
+		}
+
+		/**
+		 * Reads the next byte, waiting until there is one
+		 */
+		@Override
+		public int read() throws IOException{
+			byte[] one = new byte[1];
+			read(one, 0, 1);
+			return one[0] & 0xFF;
+		}
+
+		/**
+		 * Reads at least one byte, waiting until there is one
+		 */
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException{
+			if(length == 0){
+				return 0;
+			}
+			while(true){
+				int read = in.read(bytes, offset, length);
+				if(read > 0){
+					return read;
+				}
+				try {
+					Thread.sleep(FOLLOW_PAUSE);
+				} catch (InterruptedException e) {
+					throw new IOException("Stopped following the log");
+				}
+			}
+		}
+
+		/**
+		 * Closes the file
+		 */
+		@Override
+		public void close() throws IOException{
+			in.close();
+		}
+	}
+
+	/**
+	 * A segment that is still being written. The length in the header is read again each time we run out,
+	 * and the segment ends once the robot has started the next one and there is nothing more in it.
+	 */
+	private static class FollowSegment extends InputStream{
+
+		/**
+		 * The segment
+		 */
+		private final File file;
+		private final RandomAccessFile in;
+
+		/**
+		 * How much of the log after the header has been read, and how much the header says there is
+		 */
+		private long read, length;
+
+		/**
+		 * @param file the segment to follow
+		 * @throws IOException if the segment can't be opened or is from a newer LogSegments
+		 */
+		public FollowSegment(File file) throws IOException{
+			this.file = file;
+			in = new RandomAccessFile(file, "r");
+			if(in.readInt() != LogSegments.MAGIC){
+				in.close();
+				throw new IOException(file + " is not a segment");
+			}
+			byte version = in.readByte();
+			if(version < 1 || version > LogSegments.VERSION){
+				in.close();
+				throw new IOException("Unknown segment version " + version);
+			}
+		}
+
+		/**
+		 * Reads the next byte, waiting until there is one
+		 */
+		@Override
+		public int read() throws IOException{
+			byte[] one = new byte[1];
+			return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+		}
+
+		/**
+		 * Reads at least one byte, waiting until there is one, or -1 once the segment is finished
+		 */
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException{
+			if(length == 0){
+				return 0;
+			}
+			while(true){
+				if(read < this.length || moreWritten()){
+					in.seek(LogSegments.HEADER_SIZE + read);
+					int count = in.read(bytes, offset, (int) Math.min(length, this.length - read));
+					if(count > 0){
+						read += count;
+						return count;
+					}
+				}
+				// The robot is done with a segment before it starts the next, so one last look is enough
+				if(next(file) != null && !moreWritten()){
+					return -1;
+				}
+				try {
+					Thread.sleep(FOLLOW_PAUSE);
+				} catch (InterruptedException e) {
+					throw new IOException("Stopped following the log");
+				}
+			}
+		}
+
+		/**
+		 * Reads the length in the header again
+		 * @return true if there is more to read
+		 */
+		private boolean moreWritten() throws IOException{
+			in.seek(LogSegments.LENGTH_AT);
+			int now = in.readInt();
+			if(now >= 0 && now <= in.length() - LogSegments.HEADER_SIZE){
+				length = now;
+			}
+			return read < length;
+		}
+
+		/**
+		 * Closes the segment
+		 */
+		@Override
+		public void close() throws IOException{
+			in.close();
+		}
+
+		/**
+		 * @param file a segment
+		 * @return the next segment of the same log in the folder, null if there isn't one yet
+		 */
+		private static File next(File file){
+			String name = file.getName();
+			int dash = name.lastIndexOf('-');
+			if(dash < 0 || !name.endsWith(LogSegments.EXTENSION)){
+				return null;
+			}
+			String base = name.substring(0, dash + 1);
+			int number = number(name, dash);
+			File dir = file.getAbsoluteFile().getParentFile();
+			String[] all = dir == null ? null : dir.list();
+			if(number < 0 || all == null){
+				return null;
+			}
+			String found = null;
+			int foundNumber = Integer.MAX_VALUE;
+			for(String other: all){
+				if(other.startsWith(base) && other.endsWith(LogSegments.EXTENSION)){
+					int otherNumber = number(other, base.length() - 1);
+					if(otherNumber > number && otherNumber < foundNumber){
+						found = other;
+						foundNumber = otherNumber;
+					}
+				}
+			}
+			return found == null ? null : new File(dir, found);
+		}
+
+		/**
+		 * @param name the name of a segment
+		 * @param dash where the dash before its number is
+		 * @return the number of the segment, -1 if it doesn't have one
+		 */
+		private static int number(String name, int dash){
+			try{
+				return Integer.parseInt(name.substring(dash + 1, name.length() - LogSegments.EXTENSION.length()));
+			}catch(NumberFormatException e){
+				return -1;
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package org.gosparx.team1126.robot.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The binary layout of the log file. A file starts with MAGIC and VERSION, then holds entries one after
+ * another, each starting with its type:
+ *
+ * SOURCE: short id, short length, the subsystem name in UTF-8
+ * EVENT:  int id, byte Logger.Level ordinal, short length, the template in UTF-8
+ * TEXT:   int length, a finished line of text in UTF-8
+ * RECORD: short source, byte status, int event, long time in microseconds, byte count, count doubles
+ *
+ * Sources and events are written once, before the first record that uses them. Numbers are big endian.
+ * The LogDecoder turns a file back into the text log.
+ */
+public class LogFormat {
+
+	/**
+	 * The first 4 bytes of every log, "SPRX"
+	 */
+	public static final int MAGIC = 0x53505258;
+
+	/**
+	 * The version of this layout
+	 */
+	public static final byte VERSION = 2;
+
+	/**
+	 * The size of the MAGIC and VERSION
+	 */
+	public static final int HEADER_SIZE = 5;
+
+	/**
+	 * The entry types
+	 */
+	public static final byte SOURCE = 1, EVENT = 2, TEXT = 3, RECORD = 4;
+
+	/**
+	 * The size of each entry before its text or numbers
+	 */
+	public static final int SOURCE_SIZE = 5, EVENT_SIZE = 8, TEXT_SIZE = 5, RECORD_SIZE = 17;
+
+	/**
+	 * Writes the start of a log
+	 * @param out where to write it, must have HEADER_SIZE bytes left
+	 */
+	public static void putHeader(ByteBuffer out){
+		out.putInt(MAGIC);
+		out.put(VERSION);
+	}
+
+	/**
+	 * Writes the name of a subsystem
+	 * @param out where to write it, must have SOURCE_SIZE + name.length bytes left
+	 * @param id the id of the subsystem
+	 * @param name the name in UTF-8
+	 */
+	public static void putSource(ByteBuffer out, int id, byte[] name){
+		out.put(SOURCE);
+		out.putShort((short) id);
+		out.putShort((short) name.length);
+		out.put(name);
+	}
+
+	/**
+	 * Writes the template of an event
+	 * @param out where to write it, must have EVENT_SIZE + template.length bytes left
+	 * @param id the id of the event
+	 * @param level the level of the event
+	 * @param template the template in UTF-8
+	 */
+	public static void putEvent(ByteBuffer out, int id, Logger.Level level, byte[] template){
+		out.put(EVENT);
+		out.putInt(id);
+		out.put((byte) level.ordinal());
+		out.putShort((short) template.length);
+		out.put(template);
+	}
+
+	/**
+	 * @param chars a line of text
+	 * @param length how many of chars are used
+	 * @return the number of bytes putText() will write for it
+	 */
+	public static int textSize(char[] chars, int length){
+		int bytes = 0;
+		for(int i = 0; i < length; i++){
+			char c = chars[i];
+			if(c < 0x80){
+				bytes++;
+			}else if(c < 0x800){
+				bytes += 2;
+			}else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])){
+				bytes += 4;
+				i++;
+			}else if(Character.isSurrogate(c)){
+				bytes++;
+			}else{
+				bytes += 3;
+			}
+		}
+		return TEXT_SIZE + bytes;
+	}
+
+	/**
+	 * Writes a finished line of text in UTF-8 without making a byte array. Surrogates that aren't in a
+	 * pair are written as '?', like String.getBytes() does.
+	 * @param out where to write it, must have textSize(chars, length) bytes left
+	 * @param chars the line
+	 * @param length how many of chars are used
+	 */
+	public static void putText(ByteBuffer out, char[] chars, int length){
+		out.put(TEXT);
+		out.putInt(textSize(chars, length) - TEXT_SIZE);
+		for(int i = 0; i < length; i++){
+			char c = chars[i];
+			if(c < 0x80){
+				out.put((byte) c);
+			}else if(c < 0x800){
+				out.put((byte) (0xC0 | (c >> 6)));
+				out.put((byte) (0x80 | (c & 0x3F)));
+			}else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])){
+				int point = Character.toCodePoint(c, chars[++i]);
+				out.put((byte) (0xF0 | (point >> 18)));
+				out.put((byte) (0x80 | ((point >> 12) & 0x3F)));
+				out.put((byte) (0x80 | ((point >> 6) & 0x3F)));
+				out.put((byte) (0x80 | (point & 0x3F)));
+			}else if(Character.isSurrogate(c)){
+				out.put((byte) '?');
+			}else{
+				out.put((byte) (0xE0 | (c >> 12)));
+				out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				out.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	/**
+	 * @param record a record
+	 * @return the number of bytes putRecord() will write for it
+	 */
+	public static int recordSize(LogRecord record){
+		return RECORD_SIZE + record.argCount * 8;
+	}
+
+	/**
+	 * Writes a record
+	 * @param out where to write it, must have recordSize(record) bytes left
+	 * @param record the record
+	 */
+	public static void putRecord(ByteBuffer out, LogRecord record){
+		out.put(RECORD);
+		out.putShort(record.source);
+		out.put(record.status);
+		out.putInt(record.event);
+		out.putLong(record.time);
+		out.put((byte) record.argCount);
+		for(int i = 0; i < record.argCount; i++){
+			out.putDouble(record.args[i]);
+		}
+	}
+}
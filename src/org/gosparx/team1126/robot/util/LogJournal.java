@@ -0,0 +1,244 @@
+package org.gosparx.team1126.robot.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The frames the log is written in, so a log cut off by a brownout can be told apart from a good one. The
+ * log, compressed or not, is cut into frames, one each time the LogWriter writes its buffer. A journal
+ * starts with MAGIC and VERSION, then holds frames one after another:
+ *
+ * int length, int CRC32 of the payload, length bytes of payload
+ *
+ * Frames are only ever added to the end. A frame that is cut short or whose CRC doesn't match was being
+ * written when the power went, so it and everything after it is thrown away.
+ */
+public class LogJournal {
+
+	/**
+	 * The first 4 bytes of every journal, "SPRJ"
+	 */
+	public static final int MAGIC = 0x5350524A;
+
+	/**
+	 * The version of the framing
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * The size of the MAGIC and VERSION
+	 */
+	public static final int HEADER_SIZE = 5;
+
+	/**
+	 * The size of each frame before its payload
+	 */
+	public static final int FRAME_SIZE = 8;
+
+	/**
+	 * The biggest payload a frame can have, anything bigger is taken to be garbage
+	 */
+	public static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+	/**
+	 * Writes the start of a journal
+	 * @param out where to write it, must have HEADER_SIZE bytes left
+	 */
+	public static void putHeader(ByteBuffer out){
+		out.putInt(MAGIC);
+		out.put(VERSION);
+	}
+
+	/**
+	 * Fills in the length and CRC at the start of a frame
+	 * @param frame the frame, with its payload starting at FRAME_SIZE
+	 * @param length the size of the payload
+	 */
+	public static void putFrame(byte[] frame, int length){
+		CRC32 crc = new CRC32();
+		crc.update(frame, FRAME_SIZE, length);
+		ByteBuffer.wrap(frame, 0, FRAME_SIZE).putInt(length).putInt((int) crc.getValue());
+	}
+
+	/**
+	 * Cuts any torn frame off the end of a log file from an earlier run
+	 * @param file the log
+	 * @return the number of bytes cut off, 0 if it was whole or isn't a journal
+	 * @throws IOException if the log can't be read or cut
+	 */
+	public static long recover(File file) throws IOException{
+		long length = file.length();
+		long good;
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try{
+			good = goodLength(in);
+		}finally{
+			in.close();
+		}
+		if(good < 0 || good >= length){
+			return 0;
+		}
+		RandomAccessFile log = new RandomAccessFile(file, "rw");
+		try{
+			log.setLength(good);
+		}finally{
+			log.close();
+		}
+		return length - good;
+	}
+
+	/**
+	 * Reads a journal through to the end of its last whole frame
+	 * @param in the journal, from its start
+	 * @return the bytes from the start to the end of the last whole frame, or -1 if it isn't a journal
+	 * @throws IOException if it can't be read
+	 */
+	public static long goodLength(InputStream in) throws IOException{
+		DataInputStream data = new DataInputStream(in);
+		try{
+			if(data.readInt() != MAGIC || data.readByte() != VERSION){
+				return -1;
+			}
+		}catch(EOFException e){
+			return -1;
+		}
+		Reader reader = new Reader(in);
+		byte[] skip = new byte[4096];
+		while(reader.read(skip, 0, skip.length) != -1){}
+		return HEADER_SIZE + reader.getGoodLength();
+	}
+
+	/**
+	 * Reads the payloads of a journal's frames, after its header, as one stream. It ends at the end of the
+	 * last whole frame.
+	 */
+	public static class Reader extends InputStream{
+
+		/**
+		 * The frames
+		 */
+		private final DataInputStream in;
+
+		/**
+		 * The payload of the current frame
+		 */
+		private byte[] payload = new byte[0];
+
+		/**
+		 * How much of the payload has been read and how big it is
+		 */
+		private int position, length;
+
+		/**
+		 * The bytes of whole frames read so far
+		 */
+		private long goodLength;
+
+		/**
+		 * True once the end of the frames has been reached, and if that was a torn frame
+		 */
+		private boolean ended, torn;
+
+		/**
+		 * @param in the frames, just after the journal header
+		 */
+		public Reader(InputStream in){
+			this.in = new DataInputStream(in);
+		}
+
+		/**
+		 * Reads the next byte
+		 */
+		@Override
+		public int read() throws IOException{
+			byte[] one = new byte[1];
+			return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+		}
+
+		/**
+		 * Reads from the current frame, reading the next one once it is used up
+		 */
+		@Override
+		public int read(byte[] bytes, int offset, int count) throws IOException{
+			if(count == 0){
+				return 0;
+			}
+			while(position == length){
+				if(ended || !next()){
+					return -1;
+				}
+			}
+			int read = Math.min(count, length - position);
+			System.arraycopy(payload, position, bytes, offset, read);
+			position += read;
+			return read;
+		}
+
+		/**
+		 * Reads and checks the next frame
+		 * @return false if there are no more whole frames
+		 */
+		private boolean next() throws IOException{
+			int first = in.read();
+			if(first == -1){
+				return end(false);
+			}
+			int size, crc;
+			try{
+				size = first << 24 | in.readUnsignedByte() << 16 | in.readUnsignedShort();
+				crc = in.readInt();
+				if(size < 0 || size > MAX_PAYLOAD){
+					return end(true);
+				}
+				if(payload.length < size){
+					payload = new byte[size];
+				}
+				in.readFully(payload, 0, size);
+			}catch(EOFException e){
+				return end(true);
+			}
+			CRC32 check = new CRC32();
+			check.update(payload, 0, size);
+			if((int) check.getValue() != crc){
+				return end(true);
+			}
+			position = 0;
+			length = size;
+			goodLength += FRAME_SIZE + size;
+			return true;
+		}
+
+		/**
+		 * Stops reading
+		 * @param torn true if it stopped at a bad frame rather than the end
+		 * @return false
+		 */
+		private boolean end(boolean torn){
+			ended = true;
+			this.torn = torn;
+			return false;
+		}
+
+		/**
+		 * @return the bytes of whole frames read so far
+		 */
+		public long getGoodLength(){
+			return goodLength;
+		}
+
+		/**
+		 * @return true if the frames ended with one that was cut off or didn't match its CRC
+		 */
+		public boolean isTorn(){
+			return torn;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package org.gosparx.team1126.robot.util;
+
+/**
+ * One binary log record: an event from a subsystem at a time, with up to MAX_ARGS numbers. The text of
+ * the event is only put together by the LogDecoder, so logging one costs no more than copying it into
+ * the LogRing. A record taken from the LogRing may instead be a finished line of text. Records are
+ * reused, so copy anything you want to keep.
+ */
+public class LogRecord {
+
+	/**
+	 * The most numbers one record can hold
+	 */
+	public static final int MAX_ARGS = 4;
+
+	/**
+	 * The most characters in a line of text
+	 */
+	public static final int MAX_TEXT = 256;
+
+	/**
+	 * The robot mode when it was logged, as shown in the text log
+	 */
+	public static final byte STATUS_NONE = 0, STATUS_DISABLED = 1, STATUS_AUTO = 2, STATUS_TELEOP = 3;
+
+	/**
+	 * True if this is a line of text in chars rather than a binary record
+	 */
+	public boolean text;
+
+	/**
+	 * The level it was logged at
+	 */
+	public Logger.Level level;
+
+	/**
+	 * The line of text, and how many of chars it uses
+	 */
+	public final char[] chars = new char[MAX_TEXT];
+	public int length;
+
+	/**
+	 * The id of the subsystem that logged it, from Logger.source()
+	 */
+	public short source;
+
+	/**
+	 * The id of the event, from Logger.event() or Logger.errorEvent()
+	 */
+	public int event;
+
+	/**
+	 * One of the STATUS_ constants
+	 */
+	public byte status;
+
+	/**
+	 * When it was logged, in microseconds on the robot's Clock
+	 */
+	public long time;
+
+	/**
+	 * How many of args are used
+	 */
+	public int argCount;
+
+	/**
+	 * The numbers filled into the event's template
+	 */
+	public final double[] args = new double[MAX_ARGS];
+
+	/**
+	 * @param world the state of the robot
+	 * @return the STATUS_ constant for the robot's mode
+	 */
+	public static byte status(WorldState world){
+		if(world.isDisabled()){
+			return STATUS_DISABLED;
+		}else if(world.isAutonomous()){
+			return STATUS_AUTO;
+		}else if(world.isEnabled()){
+			return STATUS_TELEOP;
+		}
+		return STATUS_NONE;
+	}
+
+	/**
+	 * @param status one of the STATUS_ constants
+	 * @return how the status is shown in the text log
+	 */
+	public static String statusName(byte status){
+		switch(status){
+		case STATUS_DISABLED:
+			return "Dis";
+		case STATUS_AUTO:
+			return "Aut";
+		case STATUS_TELEOP:
+			return "Tel";
+		default:
+			return "";
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package org.gosparx.team1126.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size ring of log entries, either binary records or lines of text. Every field has its own
+ * preallocated array and each slot has room for LogRecord.MAX_TEXT characters, so adding and taking
+ * entries never allocates or locks.
+ *
+ * Any thread may add entries. Adding is done in three steps: claim() a slot, fill it with putRecord() or
+ * putText(), then publish() it. Only the LogWriter takes entries with poll(), but any thread may throw
+ * away the oldest with discardOldest() to make room. Each slot has a sequence number that says whose turn
+ * it is: pos when it is free to claim, pos + 1 once it is published, and pos + size once it has been
+ * taken and is free for the next time round.
+ */
+public class LogRing {
+
+	/**
+	 * One less than the number of slots, which is a power of 2
+	 */
+	private final int mask;
+
+	/**
+	 * The sequence number of each slot
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * The next position to claim and the next position to take
+	 */
+	private final AtomicLong head, tail;
+
+	/**
+	 * The fields of each slot
+	 */
+	private final boolean[] texts;
+	private final Logger.Level[] levels;
+	private final short[] sources;
+	private final int[] events;
+	private final byte[] statuses;
+	private final long[] times;
+	private final byte[] argCounts;
+	private final double[] args;
+	private final char[] chars;
+	private final int[] lengths;
+
+	/**
+	 * Creates a ring
+	 * @param size the number of entries it can hold, must be a power of 2
+	 */
+	public LogRing(int size){
+		if(size <= 0 || (size & (size - 1)) != 0){
+			throw new IllegalArgumentException("Ring size must be a power of 2: " + size);
+		}
+		mask = size - 1;
+		sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++){
+			sequences.set(i, i);
+		}
+		head = new AtomicLong(0);
+		tail = new AtomicLong(0);
+		texts = new boolean[size];
+		levels = new Logger.Level[size];
+		sources = new short[size];
+		events = new int[size];
+		statuses = new byte[size];
+		times = new long[size];
+		argCounts = new byte[size];
+		args = new double[size * LogRecord.MAX_ARGS];
+		chars = new char[size * LogRecord.MAX_TEXT];
+		lengths = new int[size];
+	}
+
+	/**
+	 * Claims the next slot. It must be filled and then published.
+	 * @return the position of the slot, or -1 if the ring is full
+	 */
+	public long claim(){
+		long pos = head.get();
+		while(true){
+			long turn = sequences.get((int) pos & mask) - pos;
+			if(turn == 0){
+				if(head.compareAndSet(pos, pos + 1)){
+					return pos;
+				}
+				pos = head.get();
+			}else if(turn < 0){
+				return -1;
+			}else{
+				pos = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Fills a claimed slot with a binary record
+	 * @param pos the position from claim()
+	 * @param source the id of the subsystem
+	 * @param event the id of the event
+	 * @param level the level of the event
+	 * @param status the robot's mode, one of the LogRecord.STATUS_ constants
+	 * @param time when it happened, in microseconds
+	 * @param argCount how many of a, b, c and d are used
+	 */
+	public void putRecord(long pos, short source, int event, Logger.Level level, byte status, long time,
+			int argCount, double a, double b, double c, double d){
+		int slot = (int) pos & mask;
+		texts[slot] = false;
+		levels[slot] = level;
+		sources[slot] = source;
+		events[slot] = event;
+		statuses[slot] = status;
+		times[slot] = time;
+		argCounts[slot] = (byte) argCount;
+		int arg = slot * LogRecord.MAX_ARGS;
+		args[arg] = a;
+		args[arg + 1] = b;
+		args[arg + 2] = c;
+		args[arg + 3] = d;
+	}
+
+	/**
+	 * Fills a claimed slot with a line of text. Lines longer than LogRecord.MAX_TEXT are cut short and
+	 * end with "...".
+	 * @param pos the position from claim()
+	 * @param text the line
+	 * @param level the level of the line
+	 */
+	public void putText(long pos, String text, Logger.Level level){
+		int slot = (int) pos & mask;
+		int start = slot * LogRecord.MAX_TEXT;
+		int length = text.length();
+		texts[slot] = true;
+		levels[slot] = level;
+		if(length <= LogRecord.MAX_TEXT){
+			text.getChars(0, length, chars, start);
+			lengths[slot] = length;
+		}else{
+			int kept = LogRecord.MAX_TEXT - 4;
+			text.getChars(0, kept, chars, start);
+			chars[start + kept] = '.';
+			chars[start + kept + 1] = '.';
+			chars[start + kept + 2] = '.';
+			chars[start + kept + 3] = '\n';
+			lengths[slot] = LogRecord.MAX_TEXT;
+		}
+	}
+
+	/**
+	 * Lets the LogWriter take a filled slot
+	 * @param pos the position from claim()
+	 */
+	public void publish(long pos){
+		sequences.lazySet((int) pos & mask, pos + 1);
+	}
+
+	/**
+	 * Takes the oldest entry. Only the LogWriter may call this.
+	 * @param into the record to copy it into
+	 * @return false if there was nothing published to take
+	 */
+	public boolean poll(LogRecord into){
+		return take(into);
+	}
+
+	/**
+	 * Throws away the oldest entry to make room
+	 * @return false if there was nothing published to throw away
+	 */
+	public boolean discardOldest(){
+		return take(null);
+	}
+
+	/**
+	 * Takes the oldest published entry
+	 * @param into the record to copy it into, null to throw it away
+	 * @return false if there was nothing published to take
+	 */
+	private boolean take(LogRecord into){
+		long pos = tail.get();
+		while(true){
+			long turn = sequences.get((int) pos & mask) - (pos + 1);
+			if(turn == 0){
+				if(tail.compareAndSet(pos, pos + 1)){
+					break;
+				}
+				pos = tail.get();
+			}else if(turn < 0){
+				return false;
+			}else{
+				pos = tail.get();
+			}
+		}
+		int slot = (int) pos & mask;
+		if(into != null){
+			into.text = texts[slot];
+			into.level = levels[slot];
+			if(into.text){
+				into.length = lengths[slot];
+				System.arraycopy(chars, slot * LogRecord.MAX_TEXT, into.chars, 0, into.length);
+			}else{
+				into.source = sources[slot];
+				into.event = events[slot];
+				into.status = statuses[slot];
+				into.time = times[slot];
+				into.argCount = argCounts[slot];
+				System.arraycopy(args, slot * LogRecord.MAX_ARGS, into.args, 0, LogRecord.MAX_ARGS);
+			}
+		}
+		sequences.lazySet(slot, pos + mask + 1);
+		return true;
+	}
+
+	/**
+	 * @return about how many entries are waiting to be taken
+	 */
+	public int size(){
+		long size = head.get() - tail.get();
+		return size < 0 ? 0 : (int) Math.min(size, mask + 1);
+	}
+}
@@ -0,0 +1,285 @@
+package org.gosparx.team1126.robot.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Writes the log into fixed size, memory mapped segment files instead of one ever growing file. Writing is
+ * a copy into the mapping, and force() makes sure it is on the USB stick. When a segment is full the next
+ * one is started, and the oldest segments in the folder are deleted to keep them all under a total size,
+ * so the stick never fills up part way through an event.
+ *
+ * Each segment starts with a HEADER_SIZE header, then holds a complete log as laid out in LogFormat, so
+ * any segment can be decoded on its own:
+ *
+ * int MAGIC, byte VERSION, 3 bytes unused, long time the segment was started in microseconds,
+ * int segment number, int bytes of log after the header, long time of the last write in microseconds
+ *
+ * The length in the header is only moved on after the log it covers has been copied in, so a segment cut
+ * off by the robot losing power ends at the last complete write. The log after the header is a
+ * LogJournal, since the OS may write the pages of a mapping in any order, and recover() drops a frame
+ * that didn't make it.
+ */
+public class LogSegments {
+
+	/**
+	 * The first 4 bytes of every segment, "SPRS"
+	 */
+	public static final int MAGIC = 0x53505253;
+
+	/**
+	 * The version of the segment header
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * The size of the header at the start of each segment
+	 */
+	public static final int HEADER_SIZE = 32;
+
+	/**
+	 * Where in the header the length and the time of the last write are
+	 */
+	static final int LENGTH_AT = 20, LAST_TIME_AT = 24;
+
+	/**
+	 * What segment file names end with
+	 */
+	public static final String EXTENSION = ".seg";
+
+	/**
+	 * The smallest segment allowed, in bytes, so there is always room for a full buffer and the
+	 * definitions
+	 */
+	public static final int MIN_SEGMENT_SIZE = 256 * 1024;
+
+	/**
+	 * The folder the segments are in
+	 */
+	private final File dir;
+
+	/**
+	 * The start of the name of every segment of this log
+	 */
+	private final String baseName;
+
+	/**
+	 * The size of each segment, and the most all the segments in the folder can add up to, in bytes
+	 */
+	private final int segmentSize;
+	private final long totalSize;
+
+	/**
+	 * The current segment, null if none is open
+	 */
+	private MappedByteBuffer mapping;
+
+	/**
+	 * The file of the current segment
+	 */
+	private File current;
+
+	/**
+	 * The number of the current segment, and the number of segments deleted to stay under totalSize
+	 */
+	private int segment, deleted;
+
+	/**
+	 * Creates segments, without opening one
+	 * @param dir the folder to write the segments in
+	 * @param baseName the start of the name of every segment
+	 * @param segmentSize the size of each segment in bytes, at least MIN_SEGMENT_SIZE
+	 * @param totalSize the most all the segments in the folder can add up to, in bytes
+	 */
+	public LogSegments(File dir, String baseName, int segmentSize, long totalSize){
+		if(segmentSize < MIN_SEGMENT_SIZE){
+			throw new IllegalArgumentException("Segments must be at least " + MIN_SEGMENT_SIZE + " bytes");
+		}
+		this.dir = dir;
+		this.baseName = baseName;
+		this.segmentSize = segmentSize;
+		this.totalSize = Math.max(totalSize, 2L * segmentSize);
+	}
+
+	/**
+	 * Starts the next segment, deleting the oldest segments in the folder if they add up to more than
+	 * the total size. A number that already has a file is skipped, so a segment is never written over.
+	 * @param now the time in microseconds
+	 * @throws IOException if the segment can't be made
+	 */
+	public void roll(long now) throws IOException{
+		close();
+		dir.mkdirs();
+		try{
+			do{
+				segment++;
+				current = new File(dir, baseName + "-" + String.format("%04d", segment) + EXTENSION);
+			}while(!current.createNewFile());
+		}catch(IOException e){
+			// Try the same number again next time, so a reader following the segments finds it
+			segment--;
+			throw e;
+		}
+		RandomAccessFile file = new RandomAccessFile(current, "rw");
+		try{
+			file.setLength(segmentSize);
+			mapping = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}finally{
+			// The mapping stays valid after the file is closed
+			file.close();
+		}
+		mapping.putInt(MAGIC);
+		mapping.put(VERSION);
+		mapping.put((byte) 0);
+		mapping.put((byte) 0);
+		mapping.put((byte) 0);
+		mapping.putLong(now);
+		mapping.putInt(segment);
+		mapping.putInt(0);
+		mapping.putLong(now);
+		ageOut();
+	}
+
+	/**
+	 * Deletes the oldest segments in the folder, never the current one, until they add up to no more
+	 * than the total size
+	 */
+	private void ageOut(){
+		File[] all = dir.listFiles();
+		if(all == null){
+			return;
+		}
+		long total = 0;
+		int count = 0;
+		for(File file: all){
+			if(file.getName().endsWith(EXTENSION)){
+				all[count++] = file;
+				total += file.length();
+			}
+		}
+		File[] segments = Arrays.copyOf(all, count);
+		Arrays.sort(segments, new Comparator<File>(){
+			@Override
+			public int compare(File a, File b){
+				int byTime = Long.compare(a.lastModified(), b.lastModified());
+				return byTime != 0 ? byTime : a.getName().compareTo(b.getName());
+			}
+		});
+		for(int i = 0; i < segments.length && total > totalSize; i++){
+			if(!segments[i].equals(current)){
+				long size = segments[i].length();
+				if(segments[i].delete()){
+					total -= size;
+					deleted++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the length in the header of a segment from an earlier run back to the end of its last whole
+	 * journal frame, so a frame torn by a brownout is left out
+	 * @param file the segment
+	 * @return the number of bytes left out, 0 if it was whole or isn't a journal
+	 * @throws IOException if the segment can't be read or changed
+	 */
+	public static long recover(File file) throws IOException{
+		RandomAccessFile segment = new RandomAccessFile(file, "rw");
+		try{
+			if(segment.length() < HEADER_SIZE || segment.readInt() != MAGIC){
+				return 0;
+			}
+			segment.seek(LENGTH_AT);
+			int length = segment.readInt();
+			if(length < 0 || length > segment.length() - HEADER_SIZE){
+				length = (int) (segment.length() - HEADER_SIZE);
+			}
+			byte[] log = new byte[length];
+			segment.seek(HEADER_SIZE);
+			segment.readFully(log);
+			long good = LogJournal.goodLength(new ByteArrayInputStream(log));
+			if(good < 0 || good >= length){
+				return 0;
+			}
+			segment.seek(LENGTH_AT);
+			segment.writeInt((int) good);
+			return length - good;
+		}finally{
+			segment.close();
+		}
+	}
+
+	/**
+	 * @return the bytes of log the current segment still has room for, 0 if none is open
+	 */
+	public int remaining(){
+		return mapping == null ? 0 : mapping.remaining();
+	}
+
+	/**
+	 * @return true if a segment is open
+	 */
+	public boolean isOpen(){
+		return mapping != null;
+	}
+
+	/**
+	 * Copies log into the current segment and moves the length in the header on past it
+	 * @param from the log, everything from its position to its limit is copied
+	 * @param now the time in microseconds
+	 * @throws IOException if there isn't room or no segment is open
+	 */
+	public void write(ByteBuffer from, long now) throws IOException{
+		if(mapping == null || from.remaining() > mapping.remaining()){
+			throw new IOException("No room in the log segment");
+		}
+		mapping.put(from);
+		mapping.putInt(LENGTH_AT, mapping.position() - HEADER_SIZE);
+		mapping.putLong(LAST_TIME_AT, now);
+	}
+
+	/**
+	 * Makes sure everything copied in so far is on the USB stick
+	 */
+	public void force(){
+		if(mapping != null){
+			mapping.force();
+		}
+	}
+
+	/**
+	 * Forces and lets go of the current segment. The memory is given back once the mapping is garbage
+	 * collected.
+	 */
+	public void close(){
+		if(mapping != null){
+			try{
+				mapping.force();
+			}catch(RuntimeException e){
+				// The stick may be gone, there is nothing more we can do with this segment
+			}
+			mapping = null;
+		}
+	}
+
+	/**
+	 * @return the number of the current segment, starting at 1
+	 */
+	public int getSegment(){
+		return segment;
+	}
+
+	/**
+	 * @return the number of old segments deleted to stay under the total size
+	 */
+	public int getDeleted(){
+		return deleted;
+	}
+}
@@ -0,0 +1,107 @@
+package org.gosparx.team1126.robot.util;
+
+/**
+ * One place the LogWriter sends messages: the log file, the console or the network. Each has its own
+ * least important level and its own rate limit, and can be changed while the robot is running. Messages
+ * that don't make it are counted, not queued.
+ */
+public class LogSink {
+
+	/**
+	 * The name of the sink, for the dashboard
+	 */
+	private final String name;
+
+	/**
+	 * The least important level sent
+	 */
+	private volatile Logger.Level level;
+
+	/**
+	 * The rate limit, null for none. Replaced, never changed, so the writer can use it without locking.
+	 */
+	private volatile TokenBucket limit;
+
+	/**
+	 * The number of messages below level, and the number over the rate limit
+	 */
+	private volatile long filtered, limited;
+
+	/**
+	 * Creates a sink
+	 * @param name the name of the sink
+	 * @param level the least important level sent
+	 * @param perSecond the most messages sent per second on average, 0 for no limit
+	 * @param burst the most messages sent at once
+	 */
+	public LogSink(String name, Logger.Level level, double perSecond, int burst){
+		this.name = name;
+		this.level = level;
+		setRateLimit(perSecond, burst);
+	}
+
+	/**
+	 * Decides if a message is sent. Only called by the LogWriter.
+	 * @param messageLevel the level of the message
+	 * @param now the time in microseconds
+	 * @return true if the message should be sent
+	 */
+	boolean accept(Logger.Level messageLevel, long now){
+		Logger.Level min = level;
+		if(min == Logger.Level.OFF || messageLevel.compareTo(min) < 0){
+			filtered++;
+			return false;
+		}
+		TokenBucket bucket = limit;
+		if(bucket != null && !bucket.take(now)){
+			limited++;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param level the least important level sent, OFF to send nothing
+	 */
+	public void setLevel(Logger.Level level){
+		this.level = level;
+	}
+
+	/**
+	 * @return the least important level sent
+	 */
+	public Logger.Level getLevel(){
+		return level;
+	}
+
+	/**
+	 * Sets the rate limit
+	 * @param perSecond the most messages sent per second on average, 0 for no limit
+	 * @param burst the most messages sent at once
+	 */
+	public void setRateLimit(double perSecond, int burst){
+		limit = perSecond > 0 ? new TokenBucket(perSecond, burst) : null;
+	}
+
+	/**
+	 * @return the number of messages not sent because of the rate limit
+	 */
+	public long getLimited(){
+		return limited;
+	}
+
+	/**
+	 * @return the number of messages not sent because they were below the level
+	 */
+	public long getFiltered(){
+		return filtered;
+	}
+
+	/**
+	 * @return the name of the sink
+	 */
+	@Override
+	public String toString(){
+		return name;
+	}
+}
@@ -2,24 +2,43 @@ package org.gosparx.team1126.robot.util;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
 
 import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+import org.gosparx.team1126.robot.util.Logger.Level;
+import org.gosparx.team1126.robot.util.LoopStats.Phase;
 
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 
 /**
- * Used to log messages to files. This is the singleton LogWriter that writes to the files.
+ * Used to log messages to files. This is the singleton LogWriter that writes to the files. The log is
+ * binary, laid out as in LogFormat, and the LogDecoder turns it back into text. Messages are also sent
+ * as text to the console and, if a target is set, over UDP to the network. Each of those has its own
+ * LogSink with a level and a rate limit. The log can instead be written to memory mapped LogSegments
+ * that roll over and age out, set by useSegments() or the robot.logSegmentKB and robot.logCapMB system
+ * properties. Either can be compressed as it is written, set by useCompression() or the
+ * robot.logCompress system property. Whatever is written is framed as a LogJournal, and at start up a
+ * torn frame at the end of the last run's log, from a brownout, is cut off.
  * @author Alex Mechler {amechler1998@gmail.com}
  */
 public class LogWriter extends GenericSubsystem{
 
 	/**
-	 * The file path to store the logs in. /mnt/sda1 is the USB port.
+	 * The file path to store the logs in. /U/sda1 is the USB port, the robot.logDir system property
+	 * overrides it when running off the robot.
 	 */
-	private static final String FILE_PATH = "/U/sda1/";
+	private static final String FILE_PATH = System.getProperty("robot.logDir", "/U/sda1/");
 
 	/**
 	 * The name of the log
@@ -27,26 +46,326 @@ public class LogWriter extends GenericSubsystem{
 	private String logName;
 
 	/**
-	 * A file for checking if the current log exists
+	 * The current log
 	 */
 	private File file;
 
 	/**
-	 * The FileOutputStream for accessing the log
+	 * The name the log was meant to have and its extension, kept so open() can find a free name later
+	 * if the log folder couldn't be read when we started
 	 */
-	private FileOutputStream dos;
+	private String baseName, extension;
+
+	/**
+	 * True once the log has a name no other log in the folder has
+	 */
+	private boolean named;
+
+	/**
+	 * The log, kept open for the whole run. null while it is not open.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The segments the log is written to instead of the channel, null when it is one file
+	 */
+	private LogSegments segments;
+
+	/**
+	 * The size of each segment in kilobytes, 0 to write one file, and the most all the segments can add up
+	 * to in megabytes
+	 */
+	private volatile int segmentKB = Integer.getInteger("robot.logSegmentKB", 0), capMB = Integer.getInteger("robot.logCapMB", 512);
+
+	/**
+	 * How often the log is forced to the USB stick, in microseconds. Writing it only hands it to the OS,
+	 * so this is the most a brownout can lose.
+	 */
+	private static final long FORCE_TIME = 1000000;
+
+	/**
+	 * When the log was last forced, in microseconds
+	 */
+	private long lastForce;
+
+	/**
+	 * If the log is compressed as it is written
+	 */
+	private volatile boolean compress = Boolean.getBoolean("robot.logCompress");
+
+	/**
+	 * Compresses the log, one block each time the buffer is written. null when not compressing.
+	 */
+	private Deflater deflater;
+
+	/**
+	 * The block being compressed, copied out of the buffer since a Deflater only takes arrays
+	 */
+	private final byte[] block = new byte[BUFFER_SIZE];
+
+	/**
+	 * The journal frame of the last block, compressed or not, and what of it is still to be written to
+	 * the log
+	 */
+	private byte[] frame = new byte[LogJournal.FRAME_SIZE + BUFFER_SIZE + 1024];
+	private ByteBuffer pendingFrame = ByteBuffer.wrap(frame, 0, 0);
+
+	/**
+	 * The most a frame can be bigger than the block in it, in bytes
+	 */
+	private static final int BLOCK_OVERHEAD = LogJournal.FRAME_SIZE + 128;
+
+	/**
+	 * The bytes cut off the end of the last run's log because they were torn
+	 */
+	private volatile long recoveredBytes;
+
+	/**
+	 * Logged by the writer when the last run's log was torn
+	 */
+	private static final int RECOVERED_EVENT = Logger.errorEvent("The last log was cut off, dropped %d torn bytes");
+
+	/**
+	 * The bytes of log given to the file or segments, and the bytes written to them after compression
+	 */
+	private volatile long bytesIn, bytesOut;
+
+	/**
+	 * By default the buffer is written to the log every FLUSH_TIME milliseconds or once it holds FLUSH_KB
+	 * kilobytes, whichever comes first. It is never held longer than MAX_FLUSH_TIME.
+	 */
+	private static final int FLUSH_TIME = 500, FLUSH_KB = 16, MAX_FLUSH_TIME = 1000;
+
+	/**
+	 * The most we can hold between writes to the log, in bytes. Anything past this while the log can't be
+	 * written is dropped.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * How long to wait after a failure before opening the log again, in microseconds
+	 */
+	private static final long RETRY_TIME = 1000000;
+
+	/**
+	 * Messages waiting to be written to the log
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/**
+	 * How long to hold messages before writing them, in microseconds
+	 */
+	private volatile long flushTime = FLUSH_TIME * 1000L;
+
+	/**
+	 * How many bytes to hold before writing them
+	 */
+	private volatile int flushBytes = FLUSH_KB * 1024;
+
+	/**
+	 * When the buffer was last written and when we can next try to open the log, in microseconds
+	 */
+	private long lastFlush, nextRetry;
+
+	/**
+	 * True until the log has been opened once, so we replace an old log with the same name but append to
+	 * our own after a failure
+	 */
+	private boolean firstOpen = true;
+
+	/**
+	 * The robot mode in the last loop, to write everything when it changes
+	 */
+	private Phase lastMode = Phase.DISABLED;
+
+	/**
+	 * The number of bytes that have been dropped because the log couldn't be written
+	 */
+	private volatile long droppedBytes;
 
 	/**
 	 * Support for the singleton model
 	 */
 	private static LogWriter lw;
 
+	/**
+	 * If the log is open and the last write worked
+	 */
 	private boolean loggerWorking = true;
 
 	/**
-	 * A queue of log messages we need to write so that they always appear in chronological order.
+	 * Messages and binary records waiting to be written, in the order they were logged
+	 */
+	private final LogRing toLog;
+
+	/**
+	 * The most messages and records the ring can hold
 	 */
-	private LinkedBlockingQueue<String> toLog;
+	private static final int RING_SIZE = 1024;
+
+	/**
+	 * What to do with a message when the ring is full
+	 */
+	public enum OverflowPolicy{
+		DROP_NEWEST,
+		DROP_OLDEST,
+		BLOCK_ERRORS;
+
+		/**
+		 * @return a human readable version of the policy
+		 */
+		@Override
+		public String toString(){
+			switch(this){
+			case DROP_NEWEST:
+				return "Drop the new message";
+			case DROP_OLDEST:
+				return "Drop the oldest message";
+			case BLOCK_ERRORS:
+				return "Wait for room for errors, drop other new messages";
+			default:
+				return "Unknown policy";
+			}
+		}
+	}
+
+	/**
+	 * What is done with messages when the ring is full
+	 */
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+	/**
+	 * The longest an error waits for room with BLOCK_ERRORS before it is dropped, and how long it sleeps
+	 * between looks, in nanoseconds. Real time, since it is the writer's thread we wait on.
+	 */
+	private static final long BLOCK_TIME = 5000000, BLOCK_PAUSE = 50000;
+
+	/**
+	 * The number of messages dropped because the ring was full
+	 */
+	private final AtomicLong droppedMessages = new AtomicLong();
+
+	/**
+	 * The number of dropped messages already reported in the log
+	 */
+	private long droppedReported;
+
+	/**
+	 * Logged by the writer when messages have been dropped
+	 */
+	private static final int DROPPED_EVENT = Logger.errorEvent("The log queue was full, dropped %d messages");
+
+	/**
+	 * The id of the LogWriter in the records it logs itself
+	 */
+	private final short source;
+
+	/**
+	 * The record being written, reused every time
+	 */
+	private final LogRecord record = new LogRecord();
+
+	/**
+	 * The number of subsystem names and event templates already in the log
+	 */
+	private int sourcesWritten, eventsWritten;
+
+	/**
+	 * The most messages written in one batch. If there are more we go again without sleeping.
+	 */
+	private static final int MAX_BATCH = 512;
+
+	/**
+	 * How often to work out the drain rate and send the metrics to the dashboard, in microseconds
+	 */
+	private static final long METRICS_TIME = 1000000;
+
+	/**
+	 * Where the metrics are shown on the SmartDashboard
+	 */
+	private static final DashboardPublisher.Slot QUEUE_DEPTH_SLOT = metricSlot("LogWriter Queue Depth"),
+			MAX_QUEUE_DEPTH_SLOT = metricSlot("LogWriter Max Queue Depth"),
+			DRAIN_RATE_SLOT = metricSlot("LogWriter Drain Rate (msg/s)"),
+			DROPPED_BYTES_SLOT = metricSlot("LogWriter Dropped Bytes"),
+			DROPPED_MESSAGES_SLOT = metricSlot("LogWriter Dropped Messages"),
+			CONSOLE_LIMITED_SLOT = metricSlot("LogWriter Console Limited"),
+			NETWORK_LIMITED_SLOT = metricSlot("LogWriter Network Limited"),
+			NETWORK_FAILURES_SLOT = metricSlot("LogWriter Network Failures"),
+			MODE_SLOT = DashboardPublisher.stringSlot("LogWriter Mode", METRICS_TIME / 1e6),
+			BYTES_IN_SLOT = metricSlot("LogWriter Bytes In"),
+			BYTES_OUT_SLOT = metricSlot("LogWriter Bytes Out"),
+			RECOVERED_BYTES_SLOT = metricSlot("LogWriter Recovered Bytes"),
+			SEGMENT_SLOT = metricSlot("LogWriter Segment"),
+			SEGMENTS_DELETED_SLOT = metricSlot("LogWriter Segments Deleted");
+
+	/**
+	 * The text of the batch being printed to the console, reused every loop
+	 */
+	private final StringBuilder batchText = new StringBuilder(MAX_BATCH * 100);
+
+	/**
+	 * Where messages go. The file gets everything, the console DEBUG and above at up to 100 a second,
+	 * and the network DEBUG and above at up to 50 a second once it has a target.
+	 */
+	private final LogSink fileSink = new LogSink("File", Level.TRACE, 0, 0);
+	private final LogSink consoleSink = new LogSink("Console", Level.DEBUG, 100, 200);
+	private final LogSink networkSink = new LogSink("Network", Level.DEBUG, 50, 100);
+
+	/**
+	 * Where the network sink sends to, null to send nothing. Set by setNetworkTarget() or the
+	 * robot.logHost system property, as host:port.
+	 */
+	private volatile InetSocketAddress networkTarget;
+
+	/**
+	 * Sends the network sink's packets, made when first needed
+	 */
+	private DatagramSocket socket;
+
+	/**
+	 * The most characters sent in one packet
+	 */
+	private static final int PACKET_SIZE = 1200;
+
+	/**
+	 * The text of the packet being filled for the network, reused every loop
+	 */
+	private final StringBuilder packetText = new StringBuilder(PACKET_SIZE);
+
+	/**
+	 * The number of packets that couldn't be sent
+	 */
+	private volatile long networkFailures;
+
+	/**
+	 * One record as text for the console or network, reused every time
+	 */
+	private final StringBuilder line = new StringBuilder(LogRecord.MAX_TEXT);
+
+	/**
+	 * Turns records into text for the console and network
+	 */
+	private final LogDecoder renderer = new LogDecoder();
+
+	/**
+	 * The number of subsystem names and event templates already given to the renderer
+	 */
+	private int sourcesRendered, eventsRendered;
+
+	/**
+	 * The number of messages waiting at the start of the last loop, and the most there has ever been
+	 */
+	private volatile int queueDepth, maxQueueDepth;
+
+	/**
+	 * The messages written per second, over the last METRICS_TIME
+	 */
+	private volatile double drainRate;
+
+	/**
+	 * The messages written since metricsStart, and when that was in microseconds
+	 */
+	private long metricsCount, metricsStart;
 
 	/**
 	 * Supports singleton model.
@@ -64,7 +383,12 @@ public class LogWriter extends GenericSubsystem{
 	 */
 	private LogWriter(){
 		super("LogWriter", Thread.NORM_PRIORITY);
-		toLog = new LinkedBlockingQueue<String>();
+		toLog = new LogRing(RING_SIZE);
+		source = (short) Logger.source("LogWriter");
+		String host = System.getProperty("robot.logHost");
+		if(host != null && host.lastIndexOf(':') > 0){
+			setNetworkTarget(host.substring(0, host.lastIndexOf(':')), Integer.parseInt(host.substring(host.lastIndexOf(':') + 1)));
+		}
 	}
 
 	/**
@@ -72,41 +396,463 @@ public class LogWriter extends GenericSubsystem{
 	 */
 	@Override
 	protected boolean init() {
+		if(segmentKB != 0 && (segmentKB < 0 || segmentKB * 1024L < LogSegments.MIN_SEGMENT_SIZE)){
+			System.out.println("Segments of " + segmentKB + "KB are too small, writing one log file instead");
+			segmentKB = 0;
+		}
+		Calendar cal = Calendar.getInstance();
+		baseName = "log" + (cal.get(Calendar.MONTH) + 1) + "-" + cal.get(Calendar.DATE) + "-" + cal.get(Calendar.YEAR) + "(" + cal.get(Calendar.HOUR_OF_DAY) + "-" + cal.get(Calendar.MINUTE) + "-" + cal.get(Calendar.SECOND) + ") " + (ds.isFMSAttached() ? (ds.getAlliance() == Alliance.Red ? "Red" : "Blue") : "Practice");
+		extension = compress ? ".binz" : ".bin";
+		if(compress){
+			deflater = new Deflater(Deflater.BEST_SPEED);
+		}
+		// Until open() can claim a free name, like when there is no USB stick
+		logName = baseName + extension;
+		file = new File(FILE_PATH, logName).getAbsoluteFile();
 		try {
-			Calendar cal = Calendar.getInstance();
-			logName = "log" + cal.get(Calendar.MONTH) + "-" + cal.get(Calendar.DATE) + "-" + cal.get(Calendar.YEAR) + "(" + cal.get(Calendar.HOUR_OF_DAY) + "-" + cal.get(Calendar.MINUTE) + ") " + (ds.isFMSAttached() ? (ds.getAlliance() == Alliance.Red ? "Red" : "Blue") : "Practice") + ".txt";
-			file = new File(FILE_PATH + logName);
-			file.mkdirs();
-			file.setWritable(true, false);
-			if(file.exists()){
-				file.delete();
-			}
-			file.createNewFile();
+			recover(file.getParentFile());
+			claimName();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		System.out.println("********************************************" + file.exists() + " " + file.isHidden() + " " + file.getAbsolutePath());
+		// Segments put the header in each one, one file needs it first
+		if(segmentKB <= 0){
+			LogFormat.putHeader(buffer);
+		}
+		open();
 		return true;
 	}
 
 	/**
-	 * Loops and sleeps until toLog is no longer empty, and then writes the information to the log file.
+	 * Picks a name for the log no other log in the folder has, and sets up the segments if we use them
+	 * @throws IOException if the folder can't be read or the log file can't be made
+	 */
+	private void claimName() throws IOException{
+		File dir = file.getParentFile();
+		dir.mkdirs();
+		if(!dir.isDirectory()){
+			throw new IOException("Can't make the log folder " + dir);
+		}
+		String name = newName(dir, baseName, extension, segmentKB <= 0);
+		logName = name + extension;
+		file = new File(dir, logName);
+		if(segmentKB > 0){
+			segments = new LogSegments(dir, name, segmentKB * 1024, capMB * 1024L * 1024);
+		}
+		named = true;
+	}
+
+	/**
+	 * Finds a name no log or segment in the folder has, adding a count if one from the same second is
+	 * already there, so a quick reboot never writes over the last match
+	 * @param dir - the log folder
+	 * @param name - the name to start from
+	 * @param extension - what the log file name ends with
+	 * @param create - true to make the empty log file, so the name is ours
+	 * @return the name, without the extension
+	 * @throws IOException if the log file can't be made
+	 */
+	private static String newName(File dir, String name, String extension, boolean create) throws IOException{
+		String[] taken = dir.list();
+		if(taken == null){
+			taken = new String[0];
+		}
+		String found = name;
+		for(int count = 1; isTaken(taken, found) || (create && !new File(dir, found + extension).createNewFile()); count++){
+			found = name + "-" + count;
+		}
+		return found;
+	}
+
+	/**
+	 * @param taken - the names of the files in the log folder
+	 * @param name - a log name, without the extension
+	 * @return true if a log or a segment in the folder starts with the name
+	 */
+	private static boolean isTaken(String[] taken, String name){
+		for(String file: taken){
+			if(file.startsWith(name + ".") || file.startsWith(name + "-")){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Cuts a torn frame off the end of the newest log and the newest segment in the folder, which are from
+	 * the last run, and logs how much was lost
+	 * @param dir - the log folder
+	 */
+	private void recover(File dir){
+		File[] all = dir == null ? null : dir.listFiles();
+		if(all == null){
+			return;
+		}
+		File log = null, segment = null;
+		for(File found: all){
+			String name = found.getName();
+			if((name.endsWith(".bin") || name.endsWith(".binz")) && (log == null || found.lastModified() > log.lastModified())){
+				log = found;
+			}else if(name.endsWith(LogSegments.EXTENSION) && (segment == null || found.lastModified() > segment.lastModified())){
+				segment = found;
+			}
+		}
+		long lost = 0;
+		try {
+			if(log != null){
+				lost += LogJournal.recover(log);
+			}
+			if(segment != null){
+				lost += LogSegments.recover(segment);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if(lost > 0){
+			recoveredBytes = lost;
+			System.out.println("Cut " + lost + " torn bytes off the end of the last log");
+			logRecord(source, RECOVERED_EVENT, Level.ERROR, LogRecord.STATUS_NONE, hardware.getClock().getTime(), 1, lost, 0, 0, 0);
+		}
+	}
+
+	/**
+	 * Writes the log to memory mapped segments instead of one file. Must be called before the LogWriter
+	 * starts.
+	 * @param segmentKB - the size of each segment in kilobytes, at least 256, 0 to write one file
+	 * @param capMB - the most all the segments in the log folder can add up to, in megabytes. The oldest
+	 * are deleted to stay under it.
+	 */
+	public void useSegments(int segmentKB, int capMB){
+		if(segmentKB < 0 || (segmentKB != 0 && segmentKB * 1024L < LogSegments.MIN_SEGMENT_SIZE)){
+			throw new IllegalArgumentException("Segments must be 0 or at least " + LogSegments.MIN_SEGMENT_SIZE / 1024 + "KB");
+		}
+		this.segmentKB = segmentKB;
+		this.capMB = capMB;
+	}
+
+	/**
+	 * Compresses the log with deflate as it is written, on this thread, one block each time the buffer is
+	 * written. The LogDecoder reads it the same as any other log. Must be called before the LogWriter
+	 * starts.
+	 * @param compress - true to compress the log
+	 */
+	public void useCompression(boolean compress){
+		this.compress = compress;
+	}
+
+	/**
+	 * Sets how often the buffered messages are written to the log. They are also always written when the
+	 * robot changes mode.
+	 * @param flushTimeMs - the longest to hold messages, in milliseconds, at most MAX_FLUSH_TIME
+	 * @param flushKB - the most to hold before writing, in kilobytes
+	 */
+	public void setGroupCommit(long flushTimeMs, int flushKB){
+		flushTime = Math.min(flushTimeMs, MAX_FLUSH_TIME) * 1000;
+		flushBytes = Math.min(flushKB * 1024, BUFFER_SIZE);
+	}
+
+	/**
+	 * Moves up to MAX_BATCH waiting messages into the buffer, then writes the buffer to the log if it is
+	 * full enough, old enough or the robot has changed mode. If that didn't empty the ring we run again
+	 * straight away, otherwise we sleep until the next loop. Sleeps on the robot's Clock rather than
+	 * blocking on the ring, so a VirtualClock can move on while there is nothing to write.
 	 */
 	@Override
-	protected boolean execute(){
-		String toWrite = null;
-		while(toWrite == null){
-			try {
-				toWrite = toLog.poll(10, TimeUnit.SECONDS);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	protected boolean execute(WorldState world){
+		long now = hardware.getClock().getTime();
+		int depth = toLog.size();
+		queueDepth = depth;
+		if(depth > maxQueueDepth){
+			maxQueueDepth = depth;
+		}
+		int count = 0;
+		updateRenderer();
+		if(writeDefinitions()){
+			reportDropped(now);
+			while(count < MAX_BATCH && toLog.poll(record)){
+				send(record, now);
+				count++;
 			}
 		}
-		write(toWrite.getBytes());
-		System.out.print(toWrite);
+		if(batchText.length() > 0){
+			System.out.print(batchText);
+			batchText.setLength(0);
+		}
+		if(packetText.length() > 0){
+			sendPacket();
+		}
+		Phase mode = world.isDisabled() ? Phase.DISABLED : world.isAutonomous() ? Phase.AUTONOMOUS : Phase.TELEOP;
+		if(mode != lastMode){
+			flush(true);
+			lastMode = mode;
+		}else if(buffer.position() >= flushBytes || now - lastFlush >= flushTime){
+			flush(false);
+		}
+		updateMetrics(now, count);
+		if(count == MAX_BATCH){
+			wake();
+		}
 		return false;
 	}
 
+	/**
+	 * Sends a message or record to each sink that takes it
+	 * @param record the message or record
+	 * @param now the time in microseconds
+	 */
+	private void send(LogRecord record, long now){
+		if(fileSink.accept(record.level, now)){
+			if(record.text){
+				if(room(LogFormat.textSize(record.chars, record.length))){
+					LogFormat.putText(buffer, record.chars, record.length);
+				}
+			}else if(room(LogFormat.recordSize(record))){
+				LogFormat.putRecord(buffer, record);
+			}
+		}
+		boolean console = consoleSink.accept(record.level, now);
+		boolean network = networkTarget != null && networkSink.accept(record.level, now);
+		if(console || network){
+			line.setLength(0);
+			if(record.text){
+				line.append(record.chars, 0, record.length);
+			}else{
+				renderer.render(record, line);
+			}
+			if(console){
+				batchText.append(line);
+			}
+			if(network){
+				if(packetText.length() + line.length() > PACKET_SIZE){
+					sendPacket();
+				}
+				packetText.append(line);
+			}
+		}
+	}
+
+	/**
+	 * Sends what is in packetText to the network target as one UDP packet
+	 */
+	private void sendPacket(){
+		InetSocketAddress target = networkTarget;
+		if(target != null){
+			try {
+				if(socket == null){
+					socket = new DatagramSocket();
+				}
+				byte[] bytes = packetText.toString().getBytes(StandardCharsets.UTF_8);
+				socket.send(new DatagramPacket(bytes, bytes.length, target));
+			} catch (IOException e) {
+				networkFailures++;
+				if(socket != null){
+					socket.close();
+					socket = null;
+				}
+			}
+		}
+		packetText.setLength(0);
+	}
+
+	/**
+	 * Logs how many messages have been dropped since the last time, if any have
+	 * @param now the time in microseconds
+	 */
+	private void reportDropped(long now){
+		long dropped = droppedMessages.get();
+		if(dropped != droppedReported){
+			record.text = false;
+			record.level = Level.ERROR;
+			record.source = source;
+			record.event = DROPPED_EVENT;
+			record.status = LogRecord.status(WorldState.current());
+			record.time = now;
+			record.argCount = 1;
+			record.args[0] = dropped - droppedReported;
+			send(record, now);
+			droppedReported = dropped;
+		}
+	}
+
+	/**
+	 * Gives the renderer the name of every subsystem and the template of every event made since the last
+	 * time
+	 */
+	private void updateRenderer(){
+		int sources = Logger.getSourceCount();
+		for(; sourcesRendered < sources; sourcesRendered++){
+			renderer.defineSource(sourcesRendered, Logger.getSource(sourcesRendered));
+		}
+		int events = Logger.getEventCount();
+		for(; eventsRendered < events; eventsRendered++){
+			renderer.defineEvent(eventsRendered, Logger.getEventLevel(eventsRendered), Logger.getEventTemplate(eventsRendered));
+		}
+	}
+
+	/**
+	 * Writes the name of every subsystem and the template of every event that has been made since the
+	 * last time, so the records that use them can be decoded
+	 * @return false if there wasn't room for them all, the rest are written next time
+	 */
+	private boolean writeDefinitions(){
+		int sources = Logger.getSourceCount();
+		while(sourcesWritten < sources){
+			byte[] name = Logger.getSource(sourcesWritten).getBytes(StandardCharsets.UTF_8);
+			if(!room(LogFormat.SOURCE_SIZE + name.length)){
+				return false;
+			}
+			LogFormat.putSource(buffer, sourcesWritten, name);
+			sourcesWritten++;
+		}
+		int events = Logger.getEventCount();
+		while(eventsWritten < events){
+			byte[] template = Logger.getEventTemplate(eventsWritten).getBytes(StandardCharsets.UTF_8);
+			if(!room(LogFormat.EVENT_SIZE + template.length)){
+				return false;
+			}
+			LogFormat.putEvent(buffer, eventsWritten, Logger.getEventLevel(eventsWritten), template);
+			eventsWritten++;
+		}
+		return true;
+	}
+
+	/**
+	 * Makes the slot for one of the metrics, sent at most once every METRICS_TIME
+	 * @param key the key on the SmartDashboard
+	 * @return the slot
+	 */
+	private static DashboardPublisher.Slot metricSlot(String key){
+		return DashboardPublisher.numberSlot(key, METRICS_TIME / 1e6);
+	}
+
+	/**
+	 * Counts the messages written and, once every METRICS_TIME, works out the drain rate and sends the
+	 * metrics to the dashboard
+	 * @param now the time in microseconds
+	 * @param written the messages written this loop
+	 */
+	private void updateMetrics(long now, int written){
+		metricsCount += written;
+		if(metricsStart == 0){
+			metricsStart = now;
+		}else if(now - metricsStart >= METRICS_TIME){
+			drainRate = metricsCount * 1000000.0 / (now - metricsStart);
+			metricsCount = 0;
+			metricsStart = now;
+			QUEUE_DEPTH_SLOT.set(queueDepth);
+			MAX_QUEUE_DEPTH_SLOT.set(maxQueueDepth);
+			DRAIN_RATE_SLOT.set(drainRate);
+			DROPPED_BYTES_SLOT.set(droppedBytes);
+			DROPPED_MESSAGES_SLOT.set(droppedMessages.get());
+			CONSOLE_LIMITED_SLOT.set(consoleSink.getLimited());
+			NETWORK_LIMITED_SLOT.set(networkSink.getLimited());
+			NETWORK_FAILURES_SLOT.set(networkFailures);
+			MODE_SLOT.set(segments != null ? (deflater != null ? "Segments, compressed" : "Segments") : (deflater != null ? "File, compressed" : "File"));
+			BYTES_IN_SLOT.set(bytesIn);
+			BYTES_OUT_SLOT.set(bytesOut);
+			RECOVERED_BYTES_SLOT.set(recoveredBytes);
+			if(segments != null){
+				SEGMENT_SLOT.set(segments.getSegment());
+				SEGMENTS_DELETED_SLOT.set(segments.getDeleted());
+			}
+		}
+	}
+
+	/**
+	 * @return the number of messages and records waiting to be written at the start of the last loop
+	 */
+	public int getQueueDepth(){
+		return queueDepth;
+	}
+
+	/**
+	 * @return the most messages that have ever been waiting to be written
+	 */
+	public int getMaxQueueDepth(){
+		return maxQueueDepth;
+	}
+
+	/**
+	 * @return the number of bytes dropped because the log couldn't be written
+	 */
+	public long getDroppedBytes(){
+		return droppedBytes;
+	}
+
+	/**
+	 * @return the bytes cut off the end of the last run's log because they were torn
+	 */
+	public long getRecoveredBytes(){
+		return recoveredBytes;
+	}
+
+	/**
+	 * @return the bytes of log given to the file or segments, before compression
+	 */
+	public long getBytesIn(){
+		return bytesIn;
+	}
+
+	/**
+	 * @return the bytes written to the file or segments, after compression
+	 */
+	public long getBytesOut(){
+		return bytesOut;
+	}
+
+	/**
+	 * @return the number of messages and records dropped because they came faster than they could be
+	 * written
+	 */
+	public long getDroppedMessages(){
+		return droppedMessages.get();
+	}
+
+	/**
+	 * @return where messages are written to the log file
+	 */
+	public LogSink getFileSink(){
+		return fileSink;
+	}
+
+	/**
+	 * @return where messages are printed to the console
+	 */
+	public LogSink getConsoleSink(){
+		return consoleSink;
+	}
+
+	/**
+	 * @return where messages are sent over the network
+	 */
+	public LogSink getNetworkSink(){
+		return networkSink;
+	}
+
+	/**
+	 * Sets where the network sink sends messages, as UDP packets of text lines
+	 * @param host - the computer to send to, null to stop sending
+	 * @param port - the port to send to
+	 */
+	public void setNetworkTarget(String host, int port){
+		networkTarget = host == null ? null : new InetSocketAddress(host, port);
+	}
+
+	/**
+	 * Sets what is done with messages when the ring is full. Defaults to DROP_NEWEST.
+	 * @param policy - the policy
+	 */
+	public void setOverflowPolicy(OverflowPolicy policy){
+		overflowPolicy = policy;
+	}
+
+	/**
+	 * @return the messages written per second, averaged over the last second
+	 */
+	public double getDrainRate(){
+		return drainRate;
+	}
+
 	/**
 	 * The amount of time for the sleeping between loops of execute()
 	 */
@@ -122,31 +868,340 @@ public class LogWriter extends GenericSubsystem{
 	protected void writeLog() {}
 
 	/**
-	 * writes the passed byte array to the file and then closes the output stream
-	 * @param bytes - the array of bytes to write
+	 * Makes room in the buffer for an entry, writing the buffer to the log first if needed
+	 * @param bytes - the size of the entry
+	 * @return false if the log can't be written and there still isn't room, the entry is dropped
 	 */
-	private synchronized void write(byte[] bytes) {
-		if(loggerWorking){
-			try {
-				dos = new FileOutputStream(file,true);
-				dos.write(bytes);
-				dos.flush();
-				dos.close();
-				dos = null;
-			} catch (Exception e) {
-				//			e.printStackTrace();
-				loggerWorking = false;
-				System.out.println("LOGGER FAILED******************************************************");
+	private boolean room(int bytes) {
+		if(segments != null && pending() + bytes > segments.remaining()){
+			flush(false);
+			if(segments.isOpen() && pending() + bytes > segments.remaining()){
+				rollover();
+			}
+		}
+		if(bytes > buffer.remaining()){
+			flush(false);
+		}
+		if(bytes > buffer.remaining()){
+			droppedBytes += bytes;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the most the buffer can take up in a segment once it is written
+	 */
+	private int pending(){
+		return buffer.position() + (deflater != null ? BLOCK_OVERHEAD : 0);
+	}
+
+	/**
+	 * Puts what is left of a block of log into a journal frame, compressing it if we compress. If the last
+	 * frame still hasn't all been written, because the log failed, nothing more is framed until it has
+	 * been.
+	 * @param from - the block, read from its position to its limit
+	 * @return the frame, to be written to the log
+	 */
+	private ByteBuffer frame(ByteBuffer from){
+		if(pendingFrame.hasRemaining() || !from.hasRemaining()){
+			return pendingFrame;
+		}
+		int length = LogJournal.FRAME_SIZE;
+		while(from.hasRemaining()){
+			int size = Math.min(from.remaining(), block.length);
+			bytesIn += size;
+			if(deflater == null){
+				if(length + size > frame.length){
+					frame = Arrays.copyOf(frame, length + size);
+				}
+				from.get(frame, length, size);
+				length += size;
+				continue;
+			}
+			from.get(block, 0, size);
+			deflater.setInput(block, 0, size);
+			while(true){
+				length += deflater.deflate(frame, length, frame.length - length, Deflater.SYNC_FLUSH);
+				if(length < frame.length){
+					break;
+				}
+				frame = Arrays.copyOf(frame, frame.length * 2);
+			}
+		}
+		LogJournal.putFrame(frame, length - LogJournal.FRAME_SIZE);
+		pendingFrame = ByteBuffer.wrap(frame, 0, length);
+		return pendingFrame;
+	}
+
+	/**
+	 * Writes the buffer to the log, opening it again first if it has failed. Whatever isn't written stays
+	 * in the buffer, or in the frame, for next time. The log is forced to the USB stick every FORCE_TIME.
+	 * @param force - true to also make sure the log is on the USB stick, not just handed to the OS
+	 */
+	private void flush(boolean force){
+		lastFlush = hardware.getClock().getTime();
+		// The segments aren't made until the log has a name, which open() may only find now
+		if(segments == null && channel == null && !open()){
+			return;
+		}
+		if(segments != null){
+			flushSegment(force);
+			return;
+		}
+		buffer.flip();
+		try {
+			ByteBuffer out = frame(buffer);
+			while(out.hasRemaining()){
+				bytesOut += channel.write(out);
+			}
+			if(force || lastFlush - lastForce >= FORCE_TIME){
+				channel.force(false);
+				lastForce = lastFlush;
+			}
+		} catch (IOException e) {
+			fail(e);
+		} finally {
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Copies the buffer into the current segment, starting a new one first if it doesn't fit. The copy
+	 * is forced to the USB stick every FORCE_TIME.
+	 * @param force - true to force it to the USB stick now
+	 */
+	private void flushSegment(boolean force){
+		if(!segments.isOpen() && !open()){
+			return;
+		}
+		if(pending() > segments.remaining()){
+			rollover();
+			if(!segments.isOpen()){
+				return;
+			}
+		}
+		buffer.flip();
+		try {
+			ByteBuffer out = frame(buffer);
+			int size = out.remaining();
+			segments.write(out, lastFlush);
+			bytesOut += size;
+			if(force || lastFlush - lastForce >= FORCE_TIME){
+				segments.force();
+				lastForce = lastFlush;
+			}
+		} catch (IOException e) {
+			fail(e);
+		} finally {
+			buffer.compact();
+		}
+	}
+
+	/**
+	 * Starts the next segment once the current one is full
+	 */
+	private void rollover(){
+		try {
+			startSegment();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Starts the next segment and writes the log header and every definition written so far to it, so
+	 * the segment can be decoded without the ones before it. A frame for the last segment that wasn't
+	 * written goes in this one after them, unless it is compressed, since a compressed segment starts a
+	 * new stream.
+	 * @throws IOException if the segment can't be made
+	 */
+	private void startSegment() throws IOException{
+		long now = hardware.getClock().getTime();
+		segments.roll(now);
+		if(deflater != null){
+			droppedBytes += pendingFrame.remaining();
+			pendingFrame.position(pendingFrame.limit());
+			deflater.reset();
+		}
+		ByteBuffer journal = ByteBuffer.allocate(LogJournal.HEADER_SIZE);
+		LogJournal.putHeader(journal);
+		journal.flip();
+		segments.write(journal, now);
+		bytesOut += LogJournal.HEADER_SIZE;
+		int size = LogFormat.HEADER_SIZE;
+		byte[][] names = new byte[sourcesWritten][];
+		for(int i = 0; i < sourcesWritten; i++){
+			names[i] = Logger.getSource(i).getBytes(StandardCharsets.UTF_8);
+			size += LogFormat.SOURCE_SIZE + names[i].length;
+		}
+		byte[][] templates = new byte[eventsWritten][];
+		for(int i = 0; i < eventsWritten; i++){
+			templates[i] = Logger.getEventTemplate(i).getBytes(StandardCharsets.UTF_8);
+			size += LogFormat.EVENT_SIZE + templates[i].length;
+		}
+		byte[] startFrame = new byte[LogJournal.FRAME_SIZE + size];
+		ByteBuffer start = ByteBuffer.wrap(startFrame, LogJournal.FRAME_SIZE, size);
+		LogFormat.putHeader(start);
+		for(int i = 0; i < names.length; i++){
+			LogFormat.putSource(start, i, names[i]);
+		}
+		for(int i = 0; i < templates.length; i++){
+			LogFormat.putEvent(start, i, Logger.getEventLevel(i), templates[i]);
+		}
+		ByteBuffer out;
+		if(deflater != null){
+			start.position(LogJournal.FRAME_SIZE);
+			out = frame(start);
+		}else{
+			LogJournal.putFrame(startFrame, size);
+			out = ByteBuffer.wrap(startFrame);
+			bytesIn += size;
+		}
+		int written = out.remaining();
+		segments.write(out, now);
+		bytesOut += written;
+	}
+
+	/**
+	 * Opens the log, or starts a new segment, unless it failed less than RETRY_TIME ago. Picks the log's
+	 * name first if the folder couldn't be used when we started.
+	 * @return true if the log is open
+	 */
+	private boolean open(){
+		if(hardware.getClock().getTime() < nextRetry){
+			return false;
+		}
+		try {
+			if(!named){
+				claimName();
+			}
+			if(segments != null){
+				startSegment();
+			}else{
+				File dir = file.getAbsoluteFile().getParentFile();
+				if(dir != null){
+					dir.mkdirs();
+				}
+				channel = new FileOutputStream(file, true).getChannel();
+				file.setWritable(true, false);
+				if(firstOpen){
+					ByteBuffer journal = ByteBuffer.allocate(LogJournal.HEADER_SIZE);
+					LogJournal.putHeader(journal);
+					journal.flip();
+					while(journal.hasRemaining()){
+						bytesOut += channel.write(journal);
+					}
+				}
+			}
+			if(!loggerWorking){
+				System.out.println("LOGGER RECOVERED***************************************************");
 			}
+			firstOpen = false;
+			loggerWorking = true;
+			isWorking = true;
+			return true;
+		} catch (IOException e) {
+			fail(e);
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the log after a failure and waits RETRY_TIME before trying it again. A failed segment is
+	 * left as it is and a new one is started.
+	 * @param e - what went wrong
+	 */
+	private void fail(IOException e){
+		if(segments != null){
+			segments.close();
+		}
+		if(channel != null){
+			try {
+				channel.close();
+			} catch (IOException closeFailed) {}
+			channel = null;
 		}
+		nextRetry = hardware.getClock().getTime() + RETRY_TIME;
+		if(loggerWorking){
+			System.out.println("LOGGER FAILED******************************************************");
+		}
+		loggerWorking = false;
+		isWorking = false;
 	}
 
 	/**
-	 * Adds a message to the queue
-	 * @param message - the message to add to the queue
+	 * Adds a DEBUG message to the ring
+	 * @param message - the message to add to the ring
 	 */
 	public void logString(String message){
-		toLog.add(message);
+		logString(message, Level.DEBUG);
+	}
+
+	/**
+	 * Adds a message to the ring. Doesn't allocate or lock.
+	 * @param message - the message to add to the ring
+	 * @param level - the level of the message, ERROR may wait for room with BLOCK_ERRORS
+	 */
+	public void logString(String message, Level level){
+		long pos = claim(level == Level.ERROR);
+		if(pos != -1){
+			toLog.putText(pos, message, level);
+			toLog.publish(pos);
+		}
+	}
+
+	/**
+	 * Adds a binary record to the ring. Doesn't allocate or lock.
+	 * @param source - the id of the subsystem
+	 * @param event - the id of the event
+	 * @param level - the level of the event, ERROR may wait for room with BLOCK_ERRORS
+	 * @param status - the robot's mode, one of the LogRecord.STATUS_ constants
+	 * @param time - when it happened, in microseconds
+	 * @param argCount - how many of the numbers are used
+	 */
+	public void logRecord(short source, int event, Level level, byte status, long time, int argCount, double a, double b, double c, double d){
+		long pos = claim(level == Level.ERROR);
+		if(pos != -1){
+			toLog.putRecord(pos, source, event, level, status, time, argCount, a, b, c, d);
+			toLog.publish(pos);
+		}
+	}
+
+	/**
+	 * Claims a slot in the ring, following the overflow policy if it is full
+	 * @param error - if the message is an error
+	 * @return the position of the slot, or -1 if the message was dropped
+	 */
+	private long claim(boolean error){
+		long pos = toLog.claim();
+		if(pos != -1){
+			return pos;
+		}
+		switch(overflowPolicy){
+		case DROP_OLDEST:
+			while(pos == -1 && toLog.discardOldest()){
+				droppedMessages.incrementAndGet();
+				pos = toLog.claim();
+			}
+			break;
+		case BLOCK_ERRORS:
+			if(error){
+				long giveUp = System.nanoTime() + BLOCK_TIME;
+				while(pos == -1 && System.nanoTime() - giveUp < 0){
+					wake();
+					LockSupport.parkNanos(BLOCK_PAUSE);
+					pos = toLog.claim();
+				}
+			}
+			break;
+		default:
+			break;
+		}
+		if(pos == -1){
+			droppedMessages.incrementAndGet();
+		}
+		return pos;
 	}
 
 	@Override
@@ -1,25 +1,66 @@
 package org.gosparx.team1126.robot.util;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
 
 /**
  * Used to log messages to files. This is the non singleton Logger that communicates with the singleton LogWriter.
+ * 
+ * Besides text messages, a Logger can log binary records: an event made once with event() or errorEvent()
+ * and up to LogRecord.MAX_ARGS numbers. Logging a record doesn't build any text or allocate anything, so
+ * it is cheap enough to do every loop. The LogDecoder turns the records back into text off the robot.
+ * 
+ * Each subsystem has a Level, set with setLevel() or the robot.logLevel.[subsystem] system property, and
+ * anything below it is thrown away before any text is built. Where the messages that are kept end up
+ * (the log file, the console, the network) is set on the LogWriter.
+ * 
+ * A message that is the same as one of the last few from this Logger, within REPEAT_TIME of it, isn't
+ * sent again. Instead it is counted, and every REPORT_TIME a line saying how many times it repeated is
+ * sent. On top of that each subsystem has a TokenBucket, set with setRateLimit(), so one subsystem
+ * logging too much can't fill the LogWriter's ring or the USB stick.
  * @author Alex Mechler {amechler1998@gmail.com}
  */
 public class Logger{
 
 	/**
-	 * A LogWriter to log our messages
+	 * How important a message is, least important first
 	 */
-	private LogWriter writer;
+	public enum Level{
+		TRACE,
+		DEBUG,
+		ERROR,
+		OFF;
+
+		/**
+		 * @return how the level is shown in the text log
+		 */
+		@Override
+		public String toString(){
+			switch(this){
+			case TRACE:
+				return "TRACE";
+			case DEBUG:
+				return "DEBUG";
+			case ERROR:
+				return "ERROR";
+			case OFF:
+				return "OFF";
+			default:
+				return "UNKNOWN";
+			}
+		}
+	}
 
 	/**
-	 * Used to get field times and robot status
+	 * A LogWriter to log our messages
 	 */
-	private DriverStation ds;
+	private LogWriter writer;
 
 	/**
 	 * The name of the subsystem
@@ -31,6 +72,99 @@ public class Logger{
 	 */
 	private DecimalFormat formatter;
 
+	/**
+	 * The id of the subsystem in binary records
+	 */
+	private short source;
+
+	/**
+	 * Where the time of binary records comes from
+	 */
+	private Clock clock;
+
+	/**
+	 * The names of every subsystem with a Logger, indexed by id
+	 */
+	private static final ArrayList<String> sources = new ArrayList<String>();
+
+	/**
+	 * The templates of every event, indexed by id
+	 */
+	private static final ArrayList<String> events = new ArrayList<String>();
+
+	/**
+	 * The level of every event, indexed by id. Replaced each time an event is made, so it can be read
+	 * without locking.
+	 */
+	private static volatile Level[] eventLevels = new Level[0];
+
+	/**
+	 * The level of each subsystem, indexed by id, null to use defaultLevel. Replaced each time a level is
+	 * set, so it can be read without locking.
+	 */
+	private static volatile Level[] levels = new Level[0];
+
+	/**
+	 * The level of subsystems that haven't had one set
+	 */
+	private static volatile Level defaultLevel = levelProperty("robot.logLevel", Level.TRACE);
+
+	/**
+	 * The rate limit of each subsystem, indexed by id, null for none. Replaced each time a limit is set,
+	 * so it can be read without locking.
+	 */
+	private static volatile TokenBucket[] buckets = new TokenBucket[0];
+
+	/**
+	 * The rate limit each subsystem starts with: messages and records per second, and at once
+	 */
+	private static final double DEFAULT_RATE = 200;
+	private static final int DEFAULT_BURST = 200;
+
+	/**
+	 * Logged in place of the messages and records dropped by the rate limit
+	 */
+	private static final int LIMITED_EVENT = errorEvent("Over the log rate limit, dropped %d messages");
+
+	/**
+	 * The number of recent messages checked for repeats
+	 */
+	private static final int REPEAT_SLOTS = 4;
+
+	/**
+	 * A message is a repeat if it comes within this long of the last one the same, in microseconds
+	 */
+	private static final long REPEAT_TIME = 1000000;
+
+	/**
+	 * How often to log the count of a message that keeps repeating, in microseconds
+	 */
+	private static final long REPORT_TIME = 5000000;
+
+	/**
+	 * The recent messages and their levels
+	 */
+	private final String[] recentMessages = new String[REPEAT_SLOTS];
+	private final Level[] recentLevels = new Level[REPEAT_SLOTS];
+
+	/**
+	 * When each recent message was last seen, and when its first uncounted repeat was, in microseconds
+	 */
+	private final long[] lastSeen = new long[REPEAT_SLOTS];
+	private final long[] firstRepeat = new long[REPEAT_SLOTS];
+
+	/**
+	 * The repeats of each recent message not yet logged
+	 */
+	private final int[] repeats = new int[REPEAT_SLOTS];
+
+	/**
+	 * The number of messages and records this Logger has dropped because of the rate limit, and how many
+	 * of those have been logged
+	 */
+	private final AtomicLong limited = new AtomicLong();
+	private long limitedReported;
+
 	/**
 	 * Creates a new Logger
 	 * @param subsystem The name of the subsystem
@@ -38,7 +172,8 @@ public class Logger{
 	public Logger(String subsystem){
 		try{
 			subsystemName = subsystem;
-			ds = DriverStation.getInstance();
+			source = (short) source(subsystem);
+			clock = Hardware.get().getClock();
 			writer = LogWriter.getInstance();
 			formatter = new DecimalFormat("0000.0000");
 		} catch(Exception e) {
@@ -51,7 +186,7 @@ public class Logger{
 	 * @param message - the message to send
 	 */
 	public void logMessage(String message){
-		logMessage(message, false);
+		log(Level.DEBUG, message);
 	}
 
 	/**
@@ -59,26 +194,388 @@ public class Logger{
 	 * @param message - the message to send
 	 */
 	public void logError(String message){
-		logMessage(message, true);
+		log(Level.ERROR, message);
+	}
+
+	/**
+	 * Sends a DEBUG message, only asking for it if DEBUG is being logged
+	 * @param message - makes the message to send
+	 */
+	public void logMessage(Supplier<String> message){
+		if(isLogging(Level.DEBUG)){
+			log(Level.DEBUG, message.get());
+		}
+	}
+
+	/**
+	 * Sends an ERROR message, only asking for it if ERROR is being logged
+	 * @param message - makes the message to send
+	 */
+	public void logError(Supplier<String> message){
+		if(isLogging(Level.ERROR)){
+			log(Level.ERROR, message.get());
+		}
+	}
+
+	/**
+	 * Sends a DEBUG message made with String.format(), only formatting it if DEBUG is being logged. The
+	 * arguments are still boxed, so use logEvent() for anything logged every loop.
+	 * @param format - the message, as for String.format()
+	 * @param args - what to fill into the message
+	 */
+	public void logMessage(String format, Object... args){
+		if(isLogging(Level.DEBUG)){
+			log(Level.DEBUG, String.format(format, args));
+		}
+	}
+
+	/**
+	 * Sends an ERROR message made with String.format(), only formatting it if ERROR is being logged
+	 * @param format - the message, as for String.format()
+	 * @param args - what to fill into the message
+	 */
+	public void logError(String format, Object... args){
+		if(isLogging(Level.ERROR)){
+			log(Level.ERROR, String.format(format, args));
+		}
+	}
+
+	/**
+	 * @param level - a level
+	 * @return true if messages at the level are being logged for this subsystem
+	 */
+	public boolean isLogging(Level level){
+		Level[] current = levels;
+		Level min = source < current.length && current[source] != null ? current[source] : defaultLevel;
+		return level != Level.OFF && level.compareTo(min) >= 0;
+	}
+
+	/**
+	 * Sets the least important level logged for a subsystem, while the robot is running
+	 * @param subsystem - the name of the subsystem
+	 * @param level - the level, OFF to log nothing
+	 */
+	public static synchronized void setLevel(String subsystem, Level level){
+		int id = source(subsystem);
+		Level[] changed = Arrays.copyOf(levels, Math.max(levels.length, id + 1));
+		changed[id] = level;
+		levels = changed;
+	}
+
+	/**
+	 * Sets the rate limit for a subsystem. Every subsystem starts at DEFAULT_RATE.
+	 * @param subsystem - the name of the subsystem
+	 * @param perSecond - the most messages and records per second on average, 0 for no limit
+	 * @param burst - the most at once
+	 */
+	public static synchronized void setRateLimit(String subsystem, double perSecond, int burst){
+		int id = source(subsystem);
+		TokenBucket[] changed = Arrays.copyOf(buckets, Math.max(buckets.length, id + 1));
+		changed[id] = perSecond > 0 ? new TokenBucket(perSecond, burst) : null;
+		buckets = changed;
+	}
+
+	/**
+	 * Takes from this subsystem's rate limit
+	 * @param now - the time in microseconds
+	 * @return true if there is room to log something
+	 */
+	private boolean allowed(long now){
+		TokenBucket[] current = buckets;
+		TokenBucket bucket = source < current.length ? current[source] : null;
+		if(bucket == null || bucket.take(now)){
+			return true;
+		}
+		limited.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Sets the least important level logged for subsystems that haven't had their own set. Defaults to
+	 * the robot.logLevel system property, or TRACE.
+	 * @param level - the level, OFF to log nothing
+	 */
+	public static void setDefaultLevel(Level level){
+		defaultLevel = level;
+	}
+
+	/**
+	 * Makes a DEBUG event to log with logEvent(). Make events once, in a static final field, not every
+	 * time they are logged.
+	 * @param template - the message, with %f where each number goes as a decimal and %d where it goes as
+	 * a whole number
+	 * @return the id of the event
+	 */
+	public static int event(String template){
+		return event(template, Level.DEBUG);
+	}
+
+	/**
+	 * Makes an ERROR event to log with logEvent(). Make events once, in a static final field, not every
+	 * time they are logged.
+	 * @param template - the message, with %f where each number goes as a decimal and %d where it goes as
+	 * a whole number
+	 * @return the id of the event
+	 */
+	public static int errorEvent(String template){
+		return event(template, Level.ERROR);
+	}
+
+	/**
+	 * Makes a TRACE event to log with logEvent(), for things logged every loop. Make events once, in a
+	 * static final field, not every time they are logged.
+	 * @param template - the message, with %f where each number goes as a decimal and %d where it goes as
+	 * a whole number
+	 * @return the id of the event
+	 */
+	public static int traceEvent(String template){
+		return event(template, Level.TRACE);
+	}
+
+	/**
+	 * Finds or adds an event
+	 * @param template - the message
+	 * @param level - the level it is logged at
+	 * @return the id of the event
+	 */
+	private static synchronized int event(String template, Level level){
+		for(int i = 0; i < events.size(); i++){
+			if(events.get(i).equals(template) && eventLevels[i] == level){
+				return i;
+			}
+		}
+		events.add(template);
+		Level[] changed = Arrays.copyOf(eventLevels, events.size());
+		changed[events.size() - 1] = level;
+		eventLevels = changed;
+		return events.size() - 1;
+	}
+
+	/**
+	 * Finds or adds a subsystem. A new subsystem gets its level from the robot.logLevel.[name] system
+	 * property, if there is one.
+	 * @param name - the name of the subsystem
+	 * @return the id of the subsystem
+	 */
+	static synchronized int source(String name){
+		int id = sources.indexOf(name);
+		if(id == -1){
+			sources.add(name);
+			id = sources.size() - 1;
+			setRateLimit(name, DEFAULT_RATE, DEFAULT_BURST);
+			Level level = levelProperty("robot.logLevel." + name, null);
+			if(level != null){
+				setLevel(name, level);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Reads a level from a system property, in any case. A value that isn't a level is warned about on
+	 * the console rather than stopping the robot from starting.
+	 * @param property - the name of the property
+	 * @param fallback - the level if the property isn't set or isn't a level
+	 * @return the level
+	 */
+	private static Level levelProperty(String property, Level fallback){
+		String value = System.getProperty(property);
+		if(value == null){
+			return fallback;
+		}
+		for(Level level: Level.values()){
+			if(level.name().equalsIgnoreCase(value.trim())){
+				return level;
+			}
+		}
+		System.out.println("Unknown log level " + property + "=" + value + ", using " + (fallback == null ? "the default" : fallback));
+		return fallback;
+	}
+
+	/**
+	 * @return the number of subsystems with a Logger
+	 */
+	static synchronized int getSourceCount(){
+		return sources.size();
+	}
+
+	/**
+	 * @param id - the id of a subsystem
+	 * @return the name of the subsystem
+	 */
+	static synchronized String getSource(int id){
+		return sources.get(id);
+	}
+
+	/**
+	 * @return the number of events
+	 */
+	static synchronized int getEventCount(){
+		return events.size();
+	}
+
+	/**
+	 * @param id - the id of an event
+	 * @return the template of the event
+	 */
+	static synchronized String getEventTemplate(int id){
+		return events.get(id);
+	}
+
+	/**
+	 * Doesn't lock, so it can be used every time a record is logged
+	 * @param id - the id of an event
+	 * @return the level the event is logged at
+	 */
+	static Level getEventLevel(int id){
+		Level[] current = eventLevels;
+		return id >= 0 && id < current.length ? current[id] : Level.DEBUG;
+	}
+
+	/**
+	 * Logs an event with no numbers. Events below this subsystem's level are thrown away.
+	 * @param event - the id from event() or errorEvent()
+	 */
+	public void logEvent(int event){
+		logEvent(event, 0, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Logs an event with one number
+	 * @param event - the id from event() or errorEvent()
+	 */
+	public void logEvent(int event, double a){
+		logEvent(event, 1, a, 0, 0, 0);
+	}
+
+	/**
+	 * Logs an event with two numbers
+	 * @param event - the id from event() or errorEvent()
+	 */
+	public void logEvent(int event, double a, double b){
+		logEvent(event, 2, a, b, 0, 0);
+	}
+
+	/**
+	 * Logs an event with three numbers
+	 * @param event - the id from event() or errorEvent()
+	 */
+	public void logEvent(int event, double a, double b, double c){
+		logEvent(event, 3, a, b, c, 0);
+	}
+
+	/**
+	 * Logs an event with four numbers
+	 * @param event - the id from event() or errorEvent()
+	 */
+	public void logEvent(int event, double a, double b, double c, double d){
+		logEvent(event, 4, a, b, c, d);
+	}
+
+	/**
+	 * Sends a binary record to the LogWriter
+	 * @param event - the id of the event
+	 * @param argCount - how many of the numbers are used
+	 */
+	private void logEvent(int event, int argCount, double a, double b, double c, double d){
+		Level level = getEventLevel(event);
+		if(isLogging(level) && allowed(clock.getTime())){
+			writer.logRecord(source, event, level, LogRecord.status(WorldState.current()), clock.getTime(), argCount, a, b, c, d);
+		}
+	}
+
+	/**
+	 * Sends the message to the LogWriter, if the level is being logged, it isn't a repeat and the rate
+	 * limit allows it
+	 * @param level - the level of the message
+	 * @param message - the message to log
+	 */
+	private void log(Level level, String message){
+		if(!isLogging(level)){
+			return;
+		}
+		long now = clock.getTime();
+		synchronized(repeats){
+			reportRepeats(now, false);
+			int oldest = 0;
+			for(int i = 0; i < REPEAT_SLOTS; i++){
+				if(recentLevels[i] == level && message.equals(recentMessages[i])){
+					if(now - lastSeen[i] < REPEAT_TIME){
+						if(repeats[i] == 0){
+							firstRepeat[i] = now;
+						}
+						repeats[i]++;
+						lastSeen[i] = now;
+						return;
+					}
+					oldest = i;
+					break;
+				}
+				if(lastSeen[i] < lastSeen[oldest]){
+					oldest = i;
+				}
+			}
+			if(repeats[oldest] > 0){
+				reportRepeat(oldest);
+			}
+			recentMessages[oldest] = message;
+			recentLevels[oldest] = level;
+			lastSeen[oldest] = now;
+		}
+		if(allowed(now)){
+			send(level, message);
+		}
+	}
+
+	/**
+	 * Logs the repeat counts that are due, and how many messages the rate limit has dropped. Called by
+	 * GenericSubsystem every logTime(), so counts don't wait for the next message.
+	 */
+	public void flushRepeats(){
+		long now = clock.getTime();
+		synchronized(repeats){
+			reportRepeats(now, true);
+		}
+		long dropped = limited.get();
+		if(dropped != limitedReported){
+			writer.logRecord(source, LIMITED_EVENT, Level.ERROR, LogRecord.status(WorldState.current()), now, 1, dropped - limitedReported, 0, 0, 0);
+			limitedReported = dropped;
+		}
+	}
+
+	/**
+	 * Logs the repeat counts that are due. Must hold the repeats lock.
+	 * @param now - the time in microseconds
+	 * @param stopped - true to also log the counts of messages that have stopped repeating
+	 */
+	private void reportRepeats(long now, boolean stopped){
+		for(int i = 0; i < REPEAT_SLOTS; i++){
+			if(repeats[i] > 0 && (now - firstRepeat[i] >= REPORT_TIME || (stopped && now - lastSeen[i] >= REPEAT_TIME))){
+				reportRepeat(i);
+			}
+		}
+	}
+
+	/**
+	 * Logs how many times a recent message has repeated and starts counting again. Must hold the repeats
+	 * lock.
+	 * @param slot - which recent message
+	 */
+	private void reportRepeat(int slot){
+		double time = (lastSeen[slot] - firstRepeat[slot]) / 1e6;
+		send(recentLevels[slot], recentMessages[slot] + " (repeated " + repeats[slot] + " times in " + Math.round(time * 100) / 100.0 + " s)");
+		repeats[slot] = 0;
 	}
 
 	/**
 	 * Sends the message to the LogWriter with the proper formatting
+	 * @param level - the level of the message
 	 * @param message - the message to log
-	 * @param error - if the message is considered an error
-	 */
-	private void logMessage(String message, boolean error){
-		String status = "";
-		if(ds.isDisabled()){
-			status = "Dis";
-		}else if(ds.isAutonomous()){
-			status = "Aut";
-		}else if(ds.isEnabled()){
-			status = "Tel";
-		}
-		String timeFormatted = formatter.format(Timer.getFPGATimestamp());
-		String toLog = (error ? ("ERROR") : ("DEBUG"))+ "[" + status + "]{" + subsystemName + "}(" + timeFormatted + "):" + message+ "\n";
-		writer.logString(toLog);//TODO:UNCOMMENT TO LOG
-		System.out.print(toLog);
+	 */
+	private void send(Level level, String message){
+		String status = LogRecord.statusName(LogRecord.status(WorldState.current()));
+		String timeFormatted = formatter.format(Hardware.get().getClock().getTimestamp());
+		String toLog = level + "[" + status + "]{" + subsystemName + "}(" + timeFormatted + "):" + message+ "\n";
+		writer.logString(toLog, level);
 	}
 }
@@ -0,0 +1,178 @@
+package org.gosparx.team1126.robot.util;
+
+/**
+ * Loop timing for one subsystem: how long execute() takes, how late the loop wakes up and the time
+ * from the start of one loop to the start of the next. Each is kept in its own histogram for every
+ * part of the match, all allocated up front, so recording a loop costs a few array writes.
+ *
+ * Must only be used from the thread running the subsystem's loop.
+ */
+public class LoopStats {
+
+	/**
+	 * The parts of a match we keep separate timing for
+	 */
+	public enum Phase{
+		DISABLED,
+		AUTONOMOUS,
+		TELEOP;
+	}
+
+	/**
+	 * How often to send the timing to the SmartDashboard, in microseconds
+	 */
+	private static final long PUBLISH_TIME = 1000000;
+
+	/**
+	 * The name of the subsystem the timing is for
+	 */
+	private final String name;
+
+	/**
+	 * How long execute() took, for each phase
+	 */
+	private final LatencyHistogram[] execute;
+
+	/**
+	 * How long after its deadline the loop started, for each phase
+	 */
+	private final LatencyHistogram[] lateness;
+
+	/**
+	 * The time between the start of each loop, for each phase
+	 */
+	private final LatencyHistogram[] period;
+
+	/**
+	 * The phase of the last recorded loop
+	 */
+	private Phase currentPhase;
+
+	/**
+	 * The System.nanoTime() the last loop started at, 0 if there hasn't been one
+	 */
+	private long lastStart;
+
+	/**
+	 * When we last sent the timing to the SmartDashboard, in System.nanoTime() microseconds
+	 */
+	private long lastPublish;
+
+	/**
+	 * Where the timing is shown on the SmartDashboard, made once so that publishing doesn't build strings
+	 */
+	private final DashboardPublisher.Slot executeMaxSlot, executeP99Slot, latenessP99Slot, periodP99Slot, overrunSlot;
+
+	/**
+	 * Creates the timing for a subsystem
+	 * @param name the name of the subsystem
+	 */
+	public LoopStats(String name){
+		this.name = name;
+		Phase[] phases = Phase.values();
+		execute = new LatencyHistogram[phases.length];
+		lateness = new LatencyHistogram[phases.length];
+		period = new LatencyHistogram[phases.length];
+		for(int i = 0; i < phases.length; i++){
+			execute[i] = new LatencyHistogram();
+			lateness[i] = new LatencyHistogram();
+			period[i] = new LatencyHistogram();
+		}
+		currentPhase = Phase.DISABLED;
+		double publishTime = PUBLISH_TIME / 1e6;
+		executeMaxSlot = DashboardPublisher.numberSlot(name + " Execute Max (us)", publishTime);
+		executeP99Slot = DashboardPublisher.numberSlot(name + " Execute p99 (us)", publishTime);
+		latenessP99Slot = DashboardPublisher.numberSlot(name + " Wake Late p99 (us)", publishTime);
+		periodP99Slot = DashboardPublisher.numberSlot(name + " Period p99 (us)", publishTime);
+		overrunSlot = DashboardPublisher.numberSlot(name + " Overruns", publishTime);
+	}
+
+	/**
+	 * Records one loop.
+	 * @param phase the part of the match the loop ran in
+	 * @param start the System.nanoTime() execute() started at
+	 * @param end the System.nanoTime() execute() finished at
+	 * @param late how late the loop woke up in microseconds, or -1 if unknown
+	 * @return the phase that just ended if the robot just became disabled, null otherwise
+	 */
+	public Phase record(Phase phase, long start, long end, long late){
+		int index = phase.ordinal();
+		Phase ended = null;
+		if(phase != currentPhase){
+			if(phase == Phase.DISABLED){
+				ended = currentPhase;
+			}
+			lastStart = 0;
+		}
+		execute[index].record((end - start) / 1000);
+		if(late >= 0){
+			lateness[index].record(late);
+		}
+		if(lastStart != 0){
+			period[index].record((start - lastStart) / 1000);
+		}
+		lastStart = start;
+		currentPhase = phase;
+		return ended;
+	}
+
+	/**
+	 * Sends the timing for the current phase to the SmartDashboard, if it has been long enough since
+	 * we last did.
+	 * @param now the current System.nanoTime() in microseconds
+	 * @param overruns the number of overruns the loop has had
+	 */
+	public void publish(long now, long overruns){
+		if(now - lastPublish < PUBLISH_TIME){
+			return;
+		}
+		lastPublish = now;
+		int index = currentPhase.ordinal();
+		executeMaxSlot.set(execute[index].getMax());
+		executeP99Slot.set(execute[index].getPercentile(99));
+		latenessP99Slot.set(lateness[index].getPercentile(99));
+		periodP99Slot.set(period[index].getPercentile(99));
+		overrunSlot.set(overruns);
+	}
+
+	/**
+	 * Writes the timing for a phase to the log
+	 * @param log where to write the timing
+	 * @param phase the phase to write
+	 */
+	public void logSummary(Logger log, Phase phase){
+		int index = phase.ordinal();
+		log.logMessage(describe("execute", phase, execute[index]));
+		log.logMessage(describe("wake late", phase, lateness[index]));
+		log.logMessage(describe("period", phase, period[index]));
+	}
+
+	/**
+	 * @return the histograms of execute() time, indexed by Phase.ordinal()
+	 */
+	public LatencyHistogram[] getExecute(){
+		return execute;
+	}
+
+	/**
+	 * @return the histograms of wake up lateness, indexed by Phase.ordinal()
+	 */
+	public LatencyHistogram[] getLateness(){
+		return lateness;
+	}
+
+	/**
+	 * @return the histograms of loop period, indexed by Phase.ordinal()
+	 */
+	public LatencyHistogram[] getPeriod(){
+		return period;
+	}
+
+	/**
+	 * @return a line describing the histogram
+	 */
+	private String describe(String what, Phase phase, LatencyHistogram hist){
+		return name + " " + phase + " " + what + " (us): count " + hist.getCount() + " mean " + (long) hist.getMean() +
+				" p50 " + hist.getPercentile(50) + " p99 " + hist.getPercentile(99) + " max " + hist.getMax();
+	}
+}
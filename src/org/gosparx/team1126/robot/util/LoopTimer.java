@@ -0,0 +1,175 @@
+package org.gosparx.team1126.robot.util;
+
+import org.gosparx.team1126.robot.hal.Clock;
+import org.gosparx.team1126.robot.hal.Hardware;
+
+/**
+ * Keeps a loop running at a fixed period by sleeping until absolute deadlines on the robot's Clock,
+ * rather than sleeping a fixed time after each loop. Loops that finish after their deadline are counted
+ * as overruns and handled with the OverrunPolicy.
+ */
+public class LoopTimer {
+
+	/**
+	 * What to do when a loop finishes after the deadline for the next loop has already passed.
+	 */
+	public enum OverrunPolicy{
+		/* Drop the missed loops and start again at the next deadline that is still in the future */
+		SKIP,
+
+		/* Run the missed loops back to back, without sleeping, until we are back on schedule */
+		CATCH_UP;
+	}
+
+	/**
+	 * The most loops CATCH_UP will run back to back before giving up and skipping the rest
+	 */
+	private static final int MAX_CATCH_UP = 5;
+
+	/**
+	 * The length of a loop in microseconds
+	 */
+	private long period;
+
+	/**
+	 * The FPGA time in microseconds that the next loop should start at
+	 */
+	private long nextDeadline;
+
+	/**
+	 * What to do when we overrun
+	 */
+	private OverrunPolicy policy;
+
+	/**
+	 * The number of loops that finished after the next deadline
+	 */
+	private volatile long overruns;
+
+	/**
+	 * The number of loops that were dropped by SKIP
+	 */
+	private volatile long skipped;
+
+	/**
+	 * How late the most recent loop started, in microseconds
+	 */
+	private long lateness;
+
+	/**
+	 * Where we get the time from
+	 */
+	private final Clock clock;
+
+	/**
+	 * What we sleep with
+	 */
+	private final Clock.Sleeper sleeper;
+
+	/**
+	 * Creates a new LoopTimer for the current thread
+	 * @param periodMs the length of a loop in milliseconds
+	 * @param policy what to do when we overrun
+	 */
+	public LoopTimer(long periodMs, OverrunPolicy policy){
+		this(periodMs, policy, Hardware.get().getClock().createSleeper());
+	}
+
+	/**
+	 * Creates a new LoopTimer
+	 * @param periodMs the length of a loop in milliseconds
+	 * @param policy what to do when we overrun
+	 * @param sleeper what the thread running the loop sleeps with, from the robot's Clock
+	 */
+	public LoopTimer(long periodMs, OverrunPolicy policy, Clock.Sleeper sleeper){
+		this.clock = Hardware.get().getClock();
+		this.sleeper = sleeper;
+		this.period = Math.max(1, periodMs) * 1000;
+		this.policy = policy;
+		overruns = 0;
+		skipped = 0;
+		reset();
+	}
+
+	/**
+	 * Starts the schedule over with the next deadline one period from now.
+	 */
+	public void reset(){
+		nextDeadline = clock.getTime() + period;
+	}
+
+	/**
+	 * Changes the length of a loop, starting with the loop after the next deadline.
+	 * @param periodMs the new length of a loop in milliseconds
+	 */
+	public void setPeriod(long periodMs){
+		period = Math.max(1, periodMs) * 1000;
+	}
+
+	/**
+	 * Sleeps until the start of the next loop, or until wake() is called.
+	 * @return true if we reached the start of the next loop, false if we were woken up early. When woken
+	 * early the next call waits for the same deadline.
+	 */
+	public boolean waitForNextPeriod(){
+		long now = clock.getTime();
+		if(now > nextDeadline){
+			overruns++;
+			long behind = (now - nextDeadline) / period;
+			if(policy == OverrunPolicy.SKIP || behind >= MAX_CATCH_UP){
+				skipped += behind + 1;
+				nextDeadline += (behind + 1) * period;
+			}
+		}
+		if(!sleeper.sleepUntil(nextDeadline)){
+			return false;
+		}
+		lateness = Math.max(0, clock.getTime() - nextDeadline);
+		nextDeadline += period;
+		return true;
+	}
+
+	/**
+	 * Ends the current waitForNextPeriod() early. If the loop isn't waiting, the next wait returns
+	 * straight away.
+	 */
+	public void wake(){
+		sleeper.wake();
+	}
+
+	/**
+	 * Lets the Clock know this loop won't sleep again
+	 */
+	public void close(){
+		sleeper.close();
+	}
+
+	/**
+	 * @return the number of loops that finished after the next deadline had passed
+	 */
+	public long getOverruns(){
+		return overruns;
+	}
+
+	/**
+	 * @return the number of loops that were dropped because of overruns
+	 */
+	public long getSkipped(){
+		return skipped;
+	}
+
+	/**
+	 * @return how late, in microseconds, the current loop was woken up after its deadline. 0 if we
+	 * haven't waited for a loop yet.
+	 */
+	public long getLateness(){
+		return lateness;
+	}
+
+	/**
+	 * @return the length of a loop in microseconds
+	 */
+	public long getPeriod(){
+		return period;
+	}
+}
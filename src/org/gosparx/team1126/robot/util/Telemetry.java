@@ -0,0 +1,716 @@
+package org.gosparx.team1126.robot.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.gosparx.team1126.robot.hal.PowerPanel;
+import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+import org.gosparx.team1126.robot.util.LoopStats.Phase;
+
+/**
+ * Records typed channels of numbers every cycle, separate from the text log. Subsystems make a channel
+ * once with doubleChannel() or intChannel() and put() its value each loop, which only stores it. This
+ * thread takes one row of every channel each cycle into columns of primitives, and writes them as a
+ * block once BLOCK_ROWS are full or the robot changes mode. Channels that no subsystem puts, like the
+ * WorldState and the PDP currents, are read here from a WorldSampler.Source. The TelemetryReader loads a
+ * recording back into arrays.
+ *
+ * A recording starts with MAGIC and VERSION, then holds blocks one after another, numbers big endian:
+ *
+ * int rows, short channels, short new channels, then for each new channel: byte Type ordinal, short
+ * length, the name in UTF-8. Then rows longs of time in microseconds, then for each channel in the order
+ * they were made rows doubles or rows ints.
+ *
+ * Channels made after a block was written are new in the next block, so a channel is missing from the
+ * blocks before it was made.
+ *
+ * When a match is recorded for the ReplayRobot, the subsystems run on the SubsystemScheduler and this is
+ * scheduled after them with recordEveryCycle(), so each row is one tick: the inputs the tick saw, read
+ * by readInputs() before anything else in the tick, and the outputs it set. The rows are then taken on
+ * the scheduler's thread, so full blocks are handed to a writer thread of their own and the scheduler
+ * never waits on the USB stick.
+ */
+public class Telemetry extends GenericSubsystem{
+
+	/**
+	 * The first 4 bytes of every recording, "SPRT"
+	 */
+	public static final int MAGIC = 0x53505254;
+
+	/**
+	 * The version of the layout
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * What a channel holds
+	 */
+	public enum Type{
+		DOUBLE,
+		INT;
+
+		/**
+		 * @return a human readable version of the type
+		 */
+		@Override
+		public String toString(){
+			switch(this){
+			case DOUBLE:
+				return "Double";
+			case INT:
+				return "Int";
+			default:
+				return "Unknown type";
+			}
+		}
+	}
+
+	/**
+	 * The most channels there can be
+	 */
+	public static final int MAX_CHANNELS = 128;
+
+	/**
+	 * The rows in a block: 5 seconds of 20ms cycles, or 2.5 seconds of 10ms ticks when recording every
+	 * cycle
+	 */
+	private static final int BLOCK_ROWS = 250;
+
+	/**
+	 * How often a row is taken while disabled, in microseconds. Every cycle is only needed while enabled.
+	 */
+	private static final long DISABLED_TIME = 1000000;
+
+	/**
+	 * How long to wait after a failure before opening the recording again, in microseconds
+	 */
+	private static final long RETRY_TIME = 1000000;
+
+	/**
+	 * The number of PDP channels recorded
+	 */
+	private static final int PDP_CHANNELS = 16;
+
+	/**
+	 * The name and type of every channel, indexed by id
+	 */
+	private static final String[] names = new String[MAX_CHANNELS];
+	private static final Type[] types = new Type[MAX_CHANNELS];
+
+	/**
+	 * The number of channels, set after the name and type are filled in so they can be read without
+	 * locking
+	 */
+	private static volatile int channelCount;
+
+	/**
+	 * The last value put for each channel, as the bits of a double or as an int
+	 */
+	private static final AtomicLongArray latest = new AtomicLongArray(MAX_CHANNELS);
+
+	/**
+	 * Where the channels that are read here come from, indexed by id. Replaced rather than changed so a
+	 * half added source is never seen.
+	 */
+	private volatile WorldSampler.Source[] sources = new WorldSampler.Source[MAX_CHANNELS];
+
+	/**
+	 * Where the channels read by readInputs() come from, indexed by id. Replaced rather than changed so
+	 * a half added input is never seen.
+	 */
+	private static volatile WorldSampler.Source[] inputs = new WorldSampler.Source[MAX_CHANNELS];
+
+	/**
+	 * Support for the singleton model
+	 */
+	private static Telemetry telemetry;
+
+	/**
+	 * True to take a row every cycle in every mode, in step with the SubsystemScheduler
+	 */
+	private volatile boolean everyCycle;
+
+	/**
+	 * The folder to write to, the same as the log
+	 */
+	private static final String FILE_PATH = System.getProperty("robot.logDir", "/U/sda1/");
+
+	/**
+	 * The recording
+	 */
+	private File file;
+
+	/**
+	 * The recording, kept open for the whole run. null while it is not open.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * The block rows are being taken into, and the other one, which is free unless it is full
+	 */
+	private Block filling = new Block(), spare = new Block();
+
+	/**
+	 * The block waiting for the writer, null once it has been written
+	 */
+	private volatile Block full;
+
+	/**
+	 * Writes the blocks when recording every cycle, null when this thread writes them
+	 */
+	private BlockWriter writer;
+
+	/**
+	 * The number of channels already in the recording
+	 */
+	private int channelsWritten;
+
+	/**
+	 * A block ready to write, reused and grown as needed
+	 */
+	private ByteBuffer out = ByteBuffer.allocate(64 * 1024);
+
+	/**
+	 * When the last row was taken and when we can next try to open the recording, in microseconds
+	 */
+	private long lastRow, nextRetry;
+
+	/**
+	 * The bytes at the start of the recording that were written whole, so a block only partly written
+	 * before a failure can be cut off
+	 */
+	private long written;
+
+	/**
+	 * The snapshot the row is being taken from, so every channel in a row comes from the same one
+	 */
+	private volatile WorldState row = WorldState.current();
+
+	/**
+	 * The robot mode in the last loop, to write the block when it changes
+	 */
+	private Phase lastMode = Phase.DISABLED;
+
+	/**
+	 * The rows taken, and the rows dropped because the recording couldn't be written
+	 */
+	private volatile long rowsTaken;
+	private final AtomicLong rowsDropped = new AtomicLong(0);
+
+	/**
+	 * @return the only Telemetry
+	 */
+	public static synchronized Telemetry getInstance(){
+		if(telemetry == null){
+			telemetry = new Telemetry();
+		}
+		return telemetry;
+	}
+
+	/**
+	 * Creates the recorder
+	 */
+	private Telemetry(){
+		super("Telemetry", Thread.NORM_PRIORITY);
+	}
+
+	/**
+	 * Makes a channel of doubles. Call once, usually into a static final.
+	 * @param name what the channel is called in the recording, like "Drives.LeftSpeed"
+	 * @return the id of the channel, to put() its values
+	 */
+	public static int doubleChannel(String name){
+		return channel(name, Type.DOUBLE);
+	}
+
+	/**
+	 * Makes a channel of ints, such as the ordinal of a state. Call once, usually into a static final.
+	 * @param name what the channel is called in the recording
+	 * @return the id of the channel, to put() its values
+	 */
+	public static int intChannel(String name){
+		return channel(name, Type.INT);
+	}
+
+	/**
+	 * Makes a channel
+	 * @param name what the channel is called in the recording
+	 * @param type what it holds
+	 * @return the id of the channel
+	 */
+	private static synchronized int channel(String name, Type type){
+		int count = channelCount;
+		for(int i = 0; i < count; i++){
+			if(names[i].equals(name)){
+				return i;
+			}
+		}
+		if(count == MAX_CHANNELS){
+			throw new IllegalStateException("Too many telemetry channels: " + name);
+		}
+		names[count] = name;
+		types[count] = type;
+		channelCount = count + 1;
+		return count;
+	}
+
+	/**
+	 * Sets the value of a double channel for the next row. Doesn't allocate or lock.
+	 * @param channel the id from doubleChannel()
+	 * @param value the value
+	 */
+	public static void put(int channel, double value){
+		latest.lazySet(channel, Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * Sets the value of an int channel for the next row. Doesn't allocate or lock.
+	 * @param channel the id from intChannel()
+	 * @param value the value
+	 */
+	public static void put(int channel, int value){
+		latest.lazySet(channel, value);
+	}
+
+	/**
+	 * Makes a double channel that is read by readInputs() at the start of each cycle, before anything
+	 * else reads the hardware, rather than when the row is taken
+	 * @param name what the channel is called in the recording
+	 * @param source what to read the value from
+	 */
+	public static synchronized void addInput(String name, WorldSampler.Source source){
+		WorldSampler.Source[] newInputs = inputs.clone();
+		newInputs[doubleChannel(name)] = source;
+		inputs = newInputs;
+	}
+
+	/**
+	 * Reads every input channel into the next row. Called by the WorldSampler at the start of its sample.
+	 */
+	public static void readInputs(){
+		WorldSampler.Source[] read = inputs;
+		int count = channelCount;
+		for(int i = 0; i < count; i++){
+			if(read[i] != null){
+				put(i, read[i].read());
+			}
+		}
+	}
+
+	/**
+	 * Takes a row every cycle in every mode, once per WorldSampler sample, for running on the
+	 * SubsystemScheduler after the subsystems. Must be called before the Telemetry starts.
+	 */
+	public void recordEveryCycle(){
+		everyCycle = true;
+	}
+
+	/**
+	 * Reads a double channel here every cycle, for values no subsystem puts
+	 * @param name what the channel is called in the recording
+	 * @param source what to read the value from
+	 */
+	public synchronized void addSource(String name, WorldSampler.Source source){
+		WorldSampler.Source[] newSources = sources.clone();
+		newSources[doubleChannel(name)] = source;
+		sources = newSources;
+	}
+
+	/**
+	 * Opens the recording and adds the WorldState, driver station and PDP channels
+	 */
+	@Override
+	protected boolean init(){
+		for(final WorldState.Channel channel: WorldState.Channel.values()){
+			addSource("World." + channel.name(), new WorldSampler.Source(){
+				public double read(){
+					return row.get(channel);
+				}
+			});
+		}
+		addSource("DS.Enabled", new WorldSampler.Source(){
+			public double read(){
+				return row.isEnabled() ? 1 : 0;
+			}
+		});
+		addSource("DS.Autonomous", new WorldSampler.Source(){
+			public double read(){
+				return row.isAutonomous() ? 1 : 0;
+			}
+		});
+		addSource("DS.Test", new WorldSampler.Source(){
+			public double read(){
+				return row.isTest() ? 1 : 0;
+			}
+		});
+		addSource("DS.FMSAttached", new WorldSampler.Source(){
+			public double read(){
+				return row.isFMSAttached() ? 1 : 0;
+			}
+		});
+		addSource("DS.Alliance", new WorldSampler.Source(){
+			public double read(){
+				return row.getAlliance().ordinal();
+			}
+		});
+		addSource("DS.MatchTime", new WorldSampler.Source(){
+			public double read(){
+				return row.getMatchTime();
+			}
+		});
+		final PowerPanel pdp = hardware.createPowerPanel();
+		for(int i = 0; i < PDP_CHANNELS; i++){
+			final int pdpChannel = i;
+			addSource("PDP.Current" + i, new WorldSampler.Source(){
+				public double read(){
+					return pdp.getCurrent(pdpChannel);
+				}
+			});
+		}
+		if(everyCycle){
+			writer = new BlockWriter();
+			writer.start();
+		}else{
+			openFile();
+		}
+		return true;
+	}
+
+	/**
+	 * Makes the recording and opens it. Called on the thread that writes the blocks.
+	 */
+	private void openFile(){
+		Calendar cal = Calendar.getInstance();
+		file = newFile("telemetry" + (cal.get(Calendar.MONTH) + 1) + "-" + cal.get(Calendar.DATE) + "-" + cal.get(Calendar.YEAR) + "(" + cal.get(Calendar.HOUR_OF_DAY) + "-" + cal.get(Calendar.MINUTE) + "-" + cal.get(Calendar.SECOND) + ")");
+		open();
+	}
+
+	/**
+	 * Takes a row, every cycle while enabled and every DISABLED_TIME while disabled, and writes the block
+	 * once it is full or the robot changes mode
+	 */
+	@Override
+	protected boolean execute(WorldState world){
+		row = world;
+		long now = world.getFPGATime();
+		Phase mode = world.isDisabled() ? Phase.DISABLED : world.isAutonomous() ? Phase.AUTONOMOUS : Phase.TELEOP;
+		if(mode != lastMode){
+			handOff();
+			lastMode = mode;
+		}
+		if(everyCycle || mode != Phase.DISABLED || now - lastRow >= DISABLED_TIME){
+			takeRow(now);
+			if(filling.rows == BLOCK_ROWS){
+				handOff();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes the block and starts the next one, or when recording every cycle swaps it with the spare
+	 * for the writer to write. If the writer is still busy with the last block this one is dropped.
+	 */
+	private void handOff(){
+		if(filling.rows == 0){
+			return;
+		}
+		if(writer == null){
+			write(filling);
+			filling.rows = 0;
+		}else if(full == null){
+			Block done = filling;
+			filling = spare;
+			spare = done;
+			full = done;
+			writer.wake();
+		}else{
+			rowsDropped.addAndGet(filling.rows);
+			filling.rows = 0;
+		}
+	}
+
+	/**
+	 * Copies the latest value of every channel into the next row of the block
+	 * @param now the time of the row in microseconds
+	 */
+	private void takeRow(long now){
+		Block block = filling;
+		int rows = block.rows;
+		if(rows == 0){
+			block.channels = channelCount;
+		}
+		double[][] doubles = block.doubles;
+		int[][] ints = block.ints;
+		WorldSampler.Source[] read = sources;
+		for(int i = 0; i < block.channels; i++){
+			if(read[i] != null){
+				put(i, read[i].read());
+			}
+			long bits = latest.get(i);
+			if(types[i] == Type.DOUBLE){
+				if(doubles[i] == null){
+					doubles[i] = new double[BLOCK_ROWS];
+				}
+				doubles[i][rows] = Double.longBitsToDouble(bits);
+			}else{
+				if(ints[i] == null){
+					ints[i] = new int[BLOCK_ROWS];
+				}
+				ints[i][rows] = (int) bits;
+			}
+		}
+		block.times[rows] = now;
+		block.rows = rows + 1;
+		rowsTaken++;
+		lastRow = now;
+	}
+
+	/**
+	 * Writes a block to the recording in one write. If the recording can't be written the block is
+	 * dropped.
+	 * @param block the block, which the caller empties afterwards
+	 */
+	private void write(Block block){
+		int rows = block.rows;
+		int blockChannels = block.channels;
+		int size = 8 + rows * 8;
+		byte[][] newNames = new byte[blockChannels - Math.min(channelsWritten, blockChannels)][];
+		for(int i = 0; i < newNames.length; i++){
+			newNames[i] = names[channelsWritten + i].getBytes(StandardCharsets.UTF_8);
+			size += 3 + newNames[i].length;
+		}
+		for(int i = 0; i < blockChannels; i++){
+			size += rows * (types[i] == Type.DOUBLE ? 8 : 4);
+		}
+		if(out.capacity() < size){
+			out = ByteBuffer.allocate(size);
+		}
+		out.clear();
+		out.putInt(rows);
+		out.putShort((short) blockChannels);
+		out.putShort((short) newNames.length);
+		for(int i = 0; i < newNames.length; i++){
+			out.put((byte) types[channelsWritten + i].ordinal());
+			out.putShort((short) newNames[i].length);
+			out.put(newNames[i]);
+		}
+		for(int row = 0; row < rows; row++){
+			out.putLong(block.times[row]);
+		}
+		for(int i = 0; i < blockChannels; i++){
+			if(types[i] == Type.DOUBLE){
+				for(int row = 0; row < rows; row++){
+					out.putDouble(block.doubles[i][row]);
+				}
+			}else{
+				for(int row = 0; row < rows; row++){
+					out.putInt(block.ints[i][row]);
+				}
+			}
+		}
+		out.flip();
+		if(channel != null || open()){
+			try {
+				while(out.hasRemaining()){
+					channel.write(out);
+				}
+				written += out.limit();
+				channelsWritten = Math.max(channelsWritten, blockChannels);
+			} catch (IOException e) {
+				fail();
+				rowsDropped.addAndGet(rows);
+			}
+		}else{
+			rowsDropped.addAndGet(rows);
+		}
+	}
+
+	/**
+	 * Makes a recording that doesn't exist yet, adding a count to the name if one from the same second
+	 * is already there, so a quick reboot never writes over the last match
+	 * @param name the name without the .tlm
+	 * @return the new empty recording, or one that couldn't be made, which open() will retry
+	 */
+	private File newFile(String name){
+		File dir = new File(FILE_PATH).getAbsoluteFile();
+		dir.mkdirs();
+		File file = new File(dir, name + ".tlm");
+		try {
+			for(int count = 1; !file.createNewFile(); count++){
+				file = new File(dir, name + "-" + count + ".tlm");
+			}
+		} catch (IOException e) {
+			LOG.logError("Can't create " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+		return file;
+	}
+
+	/**
+	 * Opens the recording, unless it failed less than RETRY_TIME ago. Cuts off anything after the last
+	 * whole block, and writes MAGIC and VERSION first if the recording is new.
+	 * @return true if the recording is open
+	 */
+	private boolean open(){
+		if(file == null || hardware.getClock().getTime() < nextRetry){
+			return false;
+		}
+		try {
+			File dir = file.getAbsoluteFile().getParentFile();
+			if(dir != null){
+				dir.mkdirs();
+			}
+			channel = new FileOutputStream(file, true).getChannel();
+			if(channel.size() > written){
+				channel.truncate(written);
+			}
+			if(written == 0){
+				ByteBuffer header = ByteBuffer.allocate(5);
+				header.putInt(MAGIC);
+				header.put(VERSION);
+				header.flip();
+				while(header.hasRemaining()){
+					channel.write(header);
+				}
+				written = header.limit();
+			}
+			isWorking = true;
+			return true;
+		} catch (IOException e) {
+			fail();
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the recording after a failure and waits RETRY_TIME before trying it again
+	 */
+	private void fail(){
+		if(channel != null){
+			try {
+				channel.close();
+			} catch (IOException closeFailed) {}
+			channel = null;
+		}
+		nextRetry = hardware.getClock().getTime() + RETRY_TIME;
+		if(isWorking){
+			LOG.logError("Can't write the telemetry to " + file);
+		}
+		isWorking = false;
+	}
+
+	/**
+	 * @return the rows taken so far
+	 */
+	public long getRowsTaken(){
+		return rowsTaken;
+	}
+
+	/**
+	 * @return the rows dropped because the recording couldn't be written
+	 */
+	public long getRowsDropped(){
+		return rowsDropped.get();
+	}
+
+	/**
+	 * Takes a row every cycle, or with every WorldSampler sample when recording every cycle
+	 */
+	@Override
+	protected long sleepTime(){
+		return everyCycle ? WorldSampler.getInstance().sleepTime() : 20;
+	}
+
+	/**
+	 * Logs how much has been recorded
+	 */
+	@Override
+	protected void writeLog(){
+		LOG.logMessage("Rows taken: %d dropped: %d channels: %d", rowsTaken, rowsDropped.get(), channelCount);
+	}
+
+	@Override
+	protected void liveWindow(){
+
+	}
+
+	/**
+	 * The rows of one block, in columns of primitives
+	 */
+	private static class Block{
+
+		/**
+		 * The time of each row, in microseconds
+		 */
+		private final long[] times = new long[BLOCK_ROWS];
+
+		/**
+		 * The columns, indexed by channel id. Only the one for the channel's type is used.
+		 */
+		private final double[][] doubles = new double[MAX_CHANNELS][];
+		private final int[][] ints = new int[MAX_CHANNELS][];
+
+		/**
+		 * The rows in the block, and the channels it has
+		 */
+		private int rows, channels;
+	}
+
+	/**
+	 * Makes the recording and writes each block handed to it, so the thread taking the rows doesn't
+	 * have to
+	 */
+	private class BlockWriter extends GenericSubsystem{
+
+		/**
+		 * Creates the writer
+		 */
+		private BlockWriter(){
+			super("TelemetryWriter", Thread.NORM_PRIORITY);
+		}
+
+		/**
+		 * Makes the recording
+		 */
+		@Override
+		protected boolean init(){
+			openFile();
+			return true;
+		}
+
+		/**
+		 * Writes the full block, if there is one, and gives it back as the spare
+		 */
+		@Override
+		protected boolean execute(WorldState world){
+			Block block = full;
+			if(block != null){
+				write(block);
+				block.rows = 0;
+				full = null;
+			}
+			return false;
+		}
+
+		/**
+		 * Checks for a block every cycle, and is woken when one is handed over
+		 */
+		@Override
+		protected long sleepTime(){
+			return 20;
+		}
+
+		@Override
+		protected void writeLog(){}
+
+		@Override
+		protected void liveWindow(){}
+	}
+}
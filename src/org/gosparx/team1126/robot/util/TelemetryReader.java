@@ -0,0 +1,276 @@
+package org.gosparx.team1126.robot.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Loads a recording from Telemetry into one array per channel, for looking at a match off the robot. A
+ * channel that is missing from some blocks, because it was made part way through, is NaN (or 0 for
+ * ints) in those rows. Run it to turn a recording into CSV:
+ *
+ * java -cp robot.jar org.gosparx.team1126.robot.util.TelemetryReader telemetry.tlm > match.csv
+ */
+public class TelemetryReader {
+
+	/**
+	 * The name and type of each channel, indexed by id
+	 */
+	private final ArrayList<String> names = new ArrayList<String>();
+	private final ArrayList<Telemetry.Type> types = new ArrayList<Telemetry.Type>();
+
+	/**
+	 * The values of each channel, indexed by id. Only the one for the channel's type is used.
+	 */
+	private final ArrayList<double[]> doubles = new ArrayList<double[]>();
+	private final ArrayList<int[]> ints = new ArrayList<int[]>();
+
+	/**
+	 * The time of each row in microseconds
+	 */
+	private long[] times = new long[0];
+
+	/**
+	 * The rows loaded
+	 */
+	private int rows;
+
+	/**
+	 * True if the recording ended part way through a block, which was left out
+	 */
+	private boolean torn;
+
+	/**
+	 * Prints a recording as CSV, one row per line with a column per channel
+	 * @param args the recording
+	 */
+	public static void main(String[] args) throws IOException{
+		if(args.length != 1){
+			System.err.println("Usage: TelemetryReader <recording>");
+			System.exit(1);
+		}
+		TelemetryReader reader = load(new File(args[0]));
+		reader.printCSV(System.out);
+		System.out.flush();
+		if(reader.isTorn()){
+			System.err.println("The recording ends part way through a block, loaded " + reader.getRows() + " rows");
+		}
+	}
+
+	/**
+	 * Loads a recording
+	 * @param file the recording
+	 * @return the recording as arrays
+	 * @throws IOException if it can't be read or isn't a recording
+	 */
+	public static TelemetryReader load(File file) throws IOException{
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try{
+			TelemetryReader reader = new TelemetryReader();
+			reader.read(in);
+			return reader;
+		}finally{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads every block of a recording. A block cut off at the end is left out.
+	 * @param in the recording
+	 * @throws IOException if it can't be read or isn't a recording
+	 */
+	public void read(InputStream in) throws IOException{
+		DataInputStream data = new DataInputStream(in);
+		if(data.readInt() != Telemetry.MAGIC){
+			throw new IOException("Not a telemetry recording");
+		}
+		byte version = data.readByte();
+		if(version < 1 || version > Telemetry.VERSION){
+			throw new IOException("Unknown telemetry version " + version);
+		}
+		while(true){
+			int first = data.read();
+			if(first == -1){
+				return;
+			}
+			try{
+				readBlock(first, data);
+			}catch(EOFException e){
+				torn = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the rest of a block and adds its rows
+	 * @param first the first byte of the block, already read
+	 * @param data the rest of the block
+	 */
+	private void readBlock(int first, DataInputStream data) throws IOException{
+		int blockRows = first << 24 | data.readUnsignedByte() << 16 | data.readUnsignedShort();
+		int channels = data.readUnsignedShort();
+		int newChannels = data.readUnsignedShort();
+		Telemetry.Type[] all = Telemetry.Type.values();
+		for(int i = 0; i < newChannels; i++){
+			int type = data.readByte();
+			byte[] name = new byte[data.readUnsignedShort()];
+			data.readFully(name);
+			names.add(new String(name, StandardCharsets.UTF_8));
+			types.add(type >= 0 && type < all.length ? all[type] : Telemetry.Type.DOUBLE);
+			doubles.add(null);
+			ints.add(null);
+		}
+		if(blockRows < 0 || channels > names.size()){
+			throw new IOException("Bad telemetry block");
+		}
+		long[] blockTimes = new long[blockRows];
+		for(int row = 0; row < blockRows; row++){
+			blockTimes[row] = data.readLong();
+		}
+		double[][] blockDoubles = new double[channels][];
+		int[][] blockInts = new int[channels][];
+		for(int i = 0; i < channels; i++){
+			if(types.get(i) == Telemetry.Type.DOUBLE){
+				blockDoubles[i] = new double[blockRows];
+				for(int row = 0; row < blockRows; row++){
+					blockDoubles[i][row] = data.readDouble();
+				}
+			}else{
+				blockInts[i] = new int[blockRows];
+				for(int row = 0; row < blockRows; row++){
+					blockInts[i][row] = data.readInt();
+				}
+			}
+		}
+		// Only added once the whole block has been read
+		int start = rows;
+		rows += blockRows;
+		times = Arrays.copyOf(times, rows);
+		System.arraycopy(blockTimes, 0, times, start, blockRows);
+		for(int i = 0; i < names.size(); i++){
+			if(types.get(i) == Telemetry.Type.DOUBLE){
+				double[] column = grow(doubles.get(i) == null ? new double[0] : doubles.get(i), start, rows);
+				if(i < channels){
+					System.arraycopy(blockDoubles[i], 0, column, start, blockRows);
+				}
+				doubles.set(i, column);
+			}else{
+				int[] column = Arrays.copyOf(ints.get(i) == null ? new int[0] : ints.get(i), rows);
+				if(i < channels){
+					System.arraycopy(blockInts[i], 0, column, start, blockRows);
+				}
+				ints.set(i, column);
+			}
+		}
+	}
+
+	/**
+	 * @return column made rows long, with NaN from filled on
+	 */
+	private static double[] grow(double[] column, int filled, int rows){
+		int had = column.length;
+		double[] grown = Arrays.copyOf(column, rows);
+		Arrays.fill(grown, Math.min(had, filled), rows, Double.NaN);
+		return grown;
+	}
+
+	/**
+	 * Prints the recording as CSV, with the time in seconds first
+	 * @param out where to print it
+	 */
+	public void printCSV(PrintStream out){
+		StringBuilder line = new StringBuilder();
+		line.append("Time");
+		for(String name: names){
+			line.append(',').append(name);
+		}
+		out.println(line);
+		for(int row = 0; row < rows; row++){
+			line.setLength(0);
+			line.append(times[row] / 1e6);
+			for(int i = 0; i < names.size(); i++){
+				line.append(',');
+				if(types.get(i) == Telemetry.Type.DOUBLE){
+					line.append(doubles.get(i)[row]);
+				}else{
+					line.append(ints.get(i)[row]);
+				}
+			}
+			out.println(line);
+		}
+	}
+
+	/**
+	 * @return the number of rows loaded
+	 */
+	public int getRows(){
+		return rows;
+	}
+
+	/**
+	 * @return the time of each row in microseconds
+	 */
+	public long[] getTimes(){
+		return times;
+	}
+
+	/**
+	 * @return the name of every channel, in the order they were made
+	 */
+	public String[] getChannels(){
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * @param name the channel
+	 * @return what the channel holds, or null if there is no such channel
+	 */
+	public Telemetry.Type getType(String name){
+		int id = names.indexOf(name);
+		return id == -1 ? null : types.get(id);
+	}
+
+	/**
+	 * @param name the channel
+	 * @return every value of the channel, ints turned into doubles, or null if there is no such channel
+	 */
+	public double[] getDoubles(String name){
+		int id = names.indexOf(name);
+		if(id == -1){
+			return null;
+		}
+		if(types.get(id) == Telemetry.Type.DOUBLE){
+			return doubles.get(id);
+		}
+		double[] column = new double[rows];
+		for(int row = 0; row < rows; row++){
+			column[row] = ints.get(id)[row];
+		}
+		return column;
+	}
+
+	/**
+	 * @param name an int channel
+	 * @return every value of the channel, or null if there is no such int channel
+	 */
+	public int[] getInts(String name){
+		int id = names.indexOf(name);
+		return id == -1 || types.get(id) != Telemetry.Type.INT ? null : ints.get(id);
+	}
+
+	/**
+	 * @return true if the recording ended part way through a block, which was left out
+	 */
+	public boolean isTorn(){
+		return torn;
+	}
+}
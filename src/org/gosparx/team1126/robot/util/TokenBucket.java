@@ -0,0 +1,75 @@
+package org.gosparx.team1126.robot.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how often something can happen. The bucket fills with tokens at a steady rate up to a burst
+ * size, and each time takes one. Times are passed in, in microseconds, so it works on any Clock and never
+ * looks at the time itself.
+ *
+ * Rather than counting tokens, the bucket keeps the time it will next be empty, which is one number, so
+ * any thread may take from it without locking.
+ */
+public class TokenBucket {
+
+	/**
+	 * The time one token takes to come back, in nanoseconds
+	 */
+	private final long interval;
+
+	/**
+	 * How far ahead of now the empty time can be, in nanoseconds, which is burst tokens
+	 */
+	private final long limit;
+
+	/**
+	 * The time the bucket will be empty if nothing else is taken, in nanoseconds. Starts long ago, so the
+	 * bucket starts full.
+	 */
+	private final AtomicLong emptyAt = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * The number of times take() said no
+	 */
+	private final AtomicLong denied = new AtomicLong();
+
+	/**
+	 * Creates a full bucket
+	 * @param perSecond how many can happen per second, on average
+	 * @param burst how many can happen at once after a quiet spell
+	 */
+	public TokenBucket(double perSecond, double burst){
+		if(perSecond <= 0 || burst < 1){
+			throw new IllegalArgumentException("Rate must be above 0 and burst at least 1");
+		}
+		interval = Math.max(1, (long) (1e9 / perSecond));
+		limit = (long) (burst * interval);
+	}
+
+	/**
+	 * Takes a token if there is one
+	 * @param now the time in microseconds
+	 * @return true if it can happen
+	 */
+	public boolean take(long now){
+		long nowNanos = now * 1000;
+		while(true){
+			long empty = emptyAt.get();
+			long next = Math.max(empty, nowNanos) + interval;
+			if(next - nowNanos > limit){
+				denied.incrementAndGet();
+				return false;
+			}
+			if(emptyAt.compareAndSet(empty, next)){
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of times take() said no
+	 */
+	public long getDenied(){
+		return denied.get();
+	}
+}
@@ -0,0 +1,136 @@
+package org.gosparx.team1126.robot.util;
+
+import org.gosparx.team1126.robot.subsystem.GenericSubsystem;
+import org.gosparx.team1126.robot.util.WorldState.Channel;
+
+/**
+ * Reads the driver station and every registered sensor once per cycle into a WorldState. Should run
+ * before everything else: it is started first, and it is the first subsystem in the scheduler's
+ * INPUT stage.
+ */
+public class WorldSampler extends GenericSubsystem{
+
+	/**
+	 * Something that provides the value of a channel
+	 */
+	public interface Source{
+		public double read();
+	}
+
+	/**
+	 * Support for singleton
+	 */
+	private static WorldSampler sampler;
+
+	/**
+	 * The sources for each channel, indexed by Channel.ordinal(). Replaced rather than changed so the
+	 * sampler never sees a half added source.
+	 */
+	private volatile Source[] sources;
+
+	/**
+	 * The number of the sample in progress, or the last sample if none is in progress
+	 */
+	private volatile long startedSequence;
+
+	/**
+	 * @return the only WorldSampler
+	 */
+	public static synchronized WorldSampler getInstance(){
+		if(sampler == null){
+			sampler = new WorldSampler();
+		}
+		return sampler;
+	}
+
+	/**
+	 * Creates the sampler and takes the first sample, so there is a snapshot before anything starts.
+	 */
+	private WorldSampler(){
+		super("WorldSampler", Thread.MAX_PRIORITY);
+		sources = new Source[Channel.values().length];
+		startedSequence = 0;
+		sample();
+	}
+
+	/**
+	 * Sets where a channel's value comes from
+	 * @param channel the channel
+	 * @param source what to read the value from
+	 */
+	public synchronized void addSource(Channel channel, Source source){
+		Source[] newSources = sources.clone();
+		newSources[channel.ordinal()] = source;
+		sources = newSources;
+	}
+
+	/**
+	 * Used when resetting a sensor: any snapshot with a sequence larger than this was sampled after
+	 * the reset.
+	 * @return the number of the sample in progress, or of the last sample if none is in progress
+	 */
+	public long getStartedSequence(){
+		return startedSequence;
+	}
+
+	@Override
+	protected boolean init() {
+		return true;
+	}
+
+	@Override
+	protected void liveWindow() {
+
+	}
+
+	/**
+	 * Takes a sample
+	 */
+	@Override
+	protected boolean execute(WorldState world) {
+		sample();
+		return false;
+	}
+
+	/**
+	 * Samples faster than the 20ms subsystems so their snapshot is never more than half a loop old
+	 */
+	@Override
+	protected long sleepTime() {
+		return 10;
+	}
+
+	@Override
+	protected void writeLog() {
+
+	}
+
+	/**
+	 * Fills in the next snapshot and publishes it
+	 */
+	private void sample(){
+		// First, so a recorded match has the inputs this cycle sees
+		Telemetry.readInputs();
+		WorldState state = WorldState.next();
+		// Counted before anything is read, see getStartedSequence()
+		long sequence = startedSequence + 1;
+		startedSequence = sequence;
+		state.sequence = sequence;
+		state.fpgaTime = hardware.getClock().getTime();
+		state.timestamp = state.fpgaTime / 1000000.0;
+		state.enabled = ds.isEnabled();
+		state.autonomous = ds.isAutonomous();
+		state.operatorControl = ds.isOperatorControl();
+		state.test = ds.isTest();
+		state.fmsAttached = ds.isFMSAttached();
+		state.alliance = ds.getAlliance();
+		state.matchTime = ds.getMatchTime();
+		Source[] current = sources;
+		for(int i = 0; i < current.length; i++){
+			if(current[i] != null){
+				state.values[i] = current[i].read();
+			}
+		}
+		WorldState.publish(state);
+	}
+}
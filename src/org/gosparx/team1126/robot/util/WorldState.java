@@ -0,0 +1,192 @@
+package org.gosparx.team1126.robot.util;
+
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+
+/**
+ * Everything the subsystems need to know about the robot and the driver station, sampled once per
+ * cycle by the WorldSampler with one timestamp. Every subsystem that reads the same snapshot sees the
+ * same values, and the HAL is only asked once per cycle.
+ *
+ * Every sample is a new snapshot that is never changed once it is published, so a snapshot can't be
+ * half way through an update while it is read, and can be kept as long as needed. A subsystem is
+ * handed one in execute() so the whole loop sees the same one.
+ */
+public class WorldState {
+
+	/**
+	 * The sensor values in a snapshot
+	 */
+	public enum Channel{
+		/* Inches */
+		LEFT_DRIVE_DISTANCE,
+
+		/* Inches */
+		RIGHT_DRIVE_DISTANCE,
+
+		/* Degrees */
+		ANGLE_GYRO,
+
+		/* Degrees */
+		TILT_GYRO,
+
+		/* Degrees, without the offset */
+		LEFT_ARM_DISTANCE,
+
+		/* Degrees, without the offset */
+		RIGHT_ARM_DISTANCE;
+	}
+
+	/**
+	 * The most recently published snapshot. Writing it publishes everything the sampler filled in.
+	 */
+	private static volatile WorldState current = new WorldState();
+
+	/**
+	 * The number of the sample this snapshot holds, counting up from 1
+	 */
+	long sequence;
+
+	/**
+	 * The FPGA time in seconds that the snapshot was taken at
+	 */
+	double timestamp;
+
+	/**
+	 * The FPGA time in microseconds that the snapshot was taken at
+	 */
+	long fpgaTime;
+
+	/**
+	 * The driver station's state when the snapshot was taken
+	 */
+	boolean enabled, autonomous, operatorControl, test, fmsAttached;
+
+	/**
+	 * Our alliance
+	 */
+	Alliance alliance;
+
+	/**
+	 * The seconds left in the current period of the match
+	 */
+	double matchTime;
+
+	/**
+	 * The sensor values, indexed by Channel.ordinal()
+	 */
+	final double[] values;
+
+	/**
+	 * Creates an empty snapshot. The robot counts as disabled until the first sample.
+	 */
+	private WorldState(){
+		values = new double[Channel.values().length];
+	}
+
+	/**
+	 * @return the most recent snapshot
+	 */
+	public static WorldState current(){
+		return current;
+	}
+
+	/**
+	 * @return a new snapshot for the WorldSampler to fill in
+	 */
+	static WorldState next(){
+		return new WorldState();
+	}
+
+	/**
+	 * Makes the filled snapshot the current one. It must not be changed after this.
+	 * @param state the snapshot from next(), now filled
+	 */
+	static void publish(WorldState state){
+		current = state;
+	}
+
+	/**
+	 * @return the number of the sample in this snapshot. Later samples have larger numbers.
+	 */
+	public long getSequence(){
+		return sequence;
+	}
+
+	/**
+	 * @return the FPGA time in seconds when the snapshot was taken
+	 */
+	public double getTimestamp(){
+		return timestamp;
+	}
+
+	/**
+	 * @return the FPGA time in microseconds when the snapshot was taken
+	 */
+	public long getFPGATime(){
+		return fpgaTime;
+	}
+
+	/**
+	 * @return if the robot is enabled
+	 */
+	public boolean isEnabled(){
+		return enabled;
+	}
+
+	/**
+	 * @return if the robot is disabled
+	 */
+	public boolean isDisabled(){
+		return !enabled;
+	}
+
+	/**
+	 * @return if we are in autonomous
+	 */
+	public boolean isAutonomous(){
+		return autonomous;
+	}
+
+	/**
+	 * @return if we are in teleop
+	 */
+	public boolean isOperatorControl(){
+		return operatorControl;
+	}
+
+	/**
+	 * @return if we are in test
+	 */
+	public boolean isTest(){
+		return test;
+	}
+
+	/**
+	 * @return if the field management system is attached
+	 */
+	public boolean isFMSAttached(){
+		return fmsAttached;
+	}
+
+	/**
+	 * @return our alliance
+	 */
+	public Alliance getAlliance(){
+		return alliance;
+	}
+
+	/**
+	 * @return the seconds left in the current period of the match
+	 */
+	public double getMatchTime(){
+		return matchTime;
+	}
+
+	/**
+	 * @param channel the sensor to get
+	 * @return the value of the sensor, 0 if nothing provides it
+	 */
+	public double get(Channel channel){
+		return values[channel.ordinal()];
+	}
+}